@@ -3,9 +3,9 @@ package com.upserve.uppend;
 import com.google.common.collect.Maps;
 
 import java.io.*;
-import java.util.Map;
+import java.util.*;
 import java.util.function.*;
-import java.util.stream.Stream;
+import java.util.stream.*;
 
 /**
  * Wraps an {@code AppendOnlyStore} and {@code Serializer} and provides
@@ -69,6 +69,22 @@ public class AppendOnlyObjectStore<T> implements AutoCloseable, RegisteredFlusha
         return store.readSequential(partitionEntropy, key).map(deserializer);
     }
 
+    /**
+     * Read objects that have been stored under many keys in a given partition
+     *
+     * @param partitionEntropy the partition under which to retrieve
+     * @param keys the keys under which to retrieve
+     * @return a map with an entry for each distinct key to a stream of the
+     * stored objects, which is empty if the key is not present
+     * @throws IllegalArgumentException if partition is invalid
+     */
+    public Map<String, Stream<T>> readMany(String partitionEntropy, Collection<String> keys) {
+        return store.readMany(partitionEntropy, keys)
+                .entrySet()
+                .stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().map(deserializer)));
+    }
+
     /**
      * Read the last object that was stored under a given partition and key
      *
@@ -91,6 +107,55 @@ public class AppendOnlyObjectStore<T> implements AutoCloseable, RegisteredFlusha
         return store.keys();
     }
 
+    /**
+     * Enumerate the keys in sorted order
+     *
+     * @return a sorted stream of string keys
+     */
+    public Stream<String> keysSorted() {
+        return store.keysSorted();
+    }
+
+    /**
+     * Enumerate the keys in the given range in sorted order
+     *
+     * @param fromKey the inclusive lower bound, or null for no lower bound
+     * @param toKey the exclusive upper bound, or null for no upper bound
+     * @return a sorted stream of string keys in the range
+     */
+    public Stream<String> keys(String fromKey, String toKey) {
+        return store.keys(fromKey, toKey);
+    }
+
+    /**
+     * Scan the keys starting with the given prefix in sorted order,
+     * returning a stream of entries for each key
+     *
+     * @param prefix the prefix of the keys to scan
+     * @return a key sorted stream of entries of key to stream of deserialized values
+     */
+    public Stream<Map.Entry<String, Stream<T>>> scanPrefix(String prefix) {
+        return store.scanPrefix(prefix).map(entry ->
+                Maps.immutableEntry(
+                        entry.getKey(),
+                        entry.getValue().map(deserializer)
+                ));
+    }
+
+    /**
+     * Scan all the values in the order they are stored in the blob files,
+     * returning a stream of key and deserialized value pairs
+     *
+     * @return a stream of entries of key to deserialized value
+     */
+    public Stream<Map.Entry<String, T>> scanPhysical() {
+        return store.scanPhysical().map(entry ->
+                Maps.immutableEntry(
+                        entry.getKey(),
+                        deserializer.apply(entry.getValue())
+                ));
+    }
+
     /**
      * Scan all the keys and values, returning a stream of
      * entries for each key
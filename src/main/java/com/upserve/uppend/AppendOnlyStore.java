@@ -1,5 +1,7 @@
 package com.upserve.uppend;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Add byte arrays under a key and partition, and retrieve them. Note the
  * expectation that the byte arrays are appended to the value, which is an
@@ -16,6 +18,35 @@ public interface AppendOnlyStore extends ReadOnlyAppendOnlyStore, RegisteredFlus
      */
     void append(String partitionEntropy, String key, byte[] value);
 
+    /**
+     * Append a byte array under a given partition and key without waiting
+     * for it to be durable, even for group commit
+     *
+     * @param partitionEntropy the partition to store under
+     * @param key the key to store under
+     * @param value the value to append
+     * @return a future which completes when the append is synced to disk,
+     * already complete if the store has no durability
+     * @throws IllegalArgumentException if partition is invalid
+     */
+    CompletableFuture<Void> appendDurable(String partitionEntropy, String key, byte[] value);
+
+    /**
+     * Append a byte array under a given partition and key, returning an
+     * opaque handle with which the value can be read back directly, without
+     * looking up the key. The value is always stored as a blob, even when it
+     * is small enough to inline or the store packs values. Handles are only
+     * available in a store with a partition count.
+     *
+     * @param partitionEntropy the partition to store under
+     * @param key the key to store under
+     * @param value the value to append
+     * @return the handle of the value
+     * @throws IllegalArgumentException if partition is invalid
+     * @throws IllegalStateException if the store has no partition count
+     */
+    long appendWithHandle(String partitionEntropy, String key, byte[] value);
+
     /**
      * Flush any pending appends to durable storage. Will not return until
      * the flush is completed.
@@ -23,6 +54,12 @@ public interface AppendOnlyStore extends ReadOnlyAppendOnlyStore, RegisteredFlus
     @Override
     void flush();
 
+    /**
+     * Flush and then sync everything appended before the call to disk. Will
+     * not return until the sync is completed.
+     */
+    void sync();
+
     /**
      * Trim flushes any pending changes and then close cached resources to
      * reduce heap consumption
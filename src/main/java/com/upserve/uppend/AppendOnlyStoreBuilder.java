@@ -1,6 +1,6 @@
 package com.upserve.uppend;
 
-import com.upserve.uppend.blobs.NativeIO;
+import com.upserve.uppend.blobs.*;
 import com.upserve.uppend.metrics.*;
 
 public class AppendOnlyStoreBuilder extends FileStoreBuilder<AppendOnlyStoreBuilder> {
@@ -11,11 +11,38 @@ public class AppendOnlyStoreBuilder extends FileStoreBuilder<AppendOnlyStoreBuil
     // Blob Cache Options
     public static final int DEFAULT_BLOB_PAGE_SIZE =  NativeIO.pageSize * 1024;
     private int blobPageSize = DEFAULT_BLOB_PAGE_SIZE;
+    private PageBackend blobPageBackend = DEFAULT_PAGE_BACKEND;
+    private boolean blobPageSizeClasses = false;
 
 
     public static final boolean DEFAULT_CACHE_BUFFERS = true; // Defaults to madvise normal LRU like page cache behavior
     private boolean cacheBuffers = DEFAULT_CACHE_BUFFERS;
 
+    public static final boolean DEFAULT_BLOB_PREFETCH = false; // Off by default!
+    private boolean blobPrefetch = DEFAULT_BLOB_PREFETCH;
+
+    public static final int DEFAULT_SCAN_READ_AHEAD_PAGES = 2;
+    private int scanReadAheadPages = DEFAULT_SCAN_READ_AHEAD_PAGES;
+
+    public static final int DEFAULT_PHYSICAL_SCAN_CHUNK_VALUES = 1 << 20;
+    private int physicalScanChunkValues = DEFAULT_PHYSICAL_SCAN_CHUNK_VALUES;
+
+    private int asyncReadThreads = 0; // Off by default!
+    private AsyncBlobReader asyncBlobReader = null;
+
+    private boolean inlineSmallValues = false; // Off by default!
+
+    private int valuePackingBytes = 0; // Off by default!
+
+    private boolean compactFormat = false; // Off by default!
+
+    public static final int DEFAULT_BLOB_COMPRESSION_THRESHOLD = 256;
+    private BlobCodec blobCodec = null; // Off by default!
+    private int blobCompressionThreshold = DEFAULT_BLOB_COMPRESSION_THRESHOLD;
+
+    private long blobValueCacheBytes = 0; // Off by default!
+    private BlobValueCache blobValueCache = null;
+
     private BlobStoreMetrics.Adders blobStoreMetricsAdders = new BlobStoreMetrics.Adders();
     private BlockedLongMetrics.Adders blockedLongMetricsAdders = new BlockedLongMetrics.Adders();
 
@@ -39,11 +66,176 @@ public class AppendOnlyStoreBuilder extends FileStoreBuilder<AppendOnlyStoreBuil
         return this;
     }
 
+    /**
+     * Set the I/O used for the pages of the blob files. Direct I/O keeps large blob reads from evicting the key
+     * index from the page cache.
+     *
+     * @param blobPageBackend mapped, positional file channel or direct I/O pages
+     * @return the builder
+     */
+    public AppendOnlyStoreBuilder withBlobPageBackend(PageBackend blobPageBackend) {
+        this.blobPageBackend = blobPageBackend;
+        return this;
+    }
+
+    /**
+     * Create new blob files with size classes: the first blob pages of each hash are small and double in size up to
+     * the blob page size, so that partitions which hold little data do not reserve a whole blob page per hash. Blob
+     * files which already exist keep the layout they were created with.
+     *
+     * @param blobPageSizeClasses whether new blob files use size classes
+     * @return the builder
+     */
+    public AppendOnlyStoreBuilder withBlobPageSizeClasses(boolean blobPageSizeClasses) {
+        this.blobPageSizeClasses = blobPageSizeClasses;
+        return this;
+    }
+
     public AppendOnlyStoreBuilder withCacheBuffers(boolean cacheBuffers) {
         this.cacheBuffers = cacheBuffers;
         return this;
     }
 
+    /**
+     * Prefetch the blobs of a key with WILLNEED once its blob positions are known, so that the reads of a key with
+     * many values overlap their I/O. This costs an madvise call per run of adjacent pages the values start on, which
+     * only pays off when the blobs are not already in the page cache.
+     *
+     * @param blobPrefetch whether to prefetch blobs
+     * @return the builder
+     */
+    public AppendOnlyStoreBuilder withBlobPrefetch(boolean blobPrefetch) {
+        this.blobPrefetch = blobPrefetch;
+        return this;
+    }
+
+    /**
+     * Set the number of blob pages to prefetch ahead of a physical scan. Pages behind the scan are released.
+     *
+     * @param scanReadAheadPages the number of blob pages to read ahead, zero to only advise sequential access
+     * @return the builder
+     */
+    public AppendOnlyStoreBuilder withScanReadAheadPages(int scanReadAheadPages) {
+        if (scanReadAheadPages < 0) throw new IllegalArgumentException("Scan read ahead pages must not be negative: " + scanReadAheadPages);
+        this.scanReadAheadPages = scanReadAheadPages;
+        return this;
+    }
+
+    /**
+     * Set the number of values a physical scan sorts at once. The scan indexes one range of a blob virtual file at a
+     * time, with ranges chosen to hold about this many values, so that the memory it holds is bounded rather than
+     * growing with the number of values in the file. Each range walks the block lists of the keys with values in it,
+     * so smaller chunks mean more walks of the block lists of keys whose values are spread over the file.
+     *
+     * @param physicalScanChunkValues the number of values to index for each range of a blob virtual file
+     * @return the builder
+     */
+    public AppendOnlyStoreBuilder withPhysicalScanChunkValues(int physicalScanChunkValues) {
+        if (physicalScanChunkValues <= 0) throw new IllegalArgumentException("Physical scan chunk values must be positive: " + physicalScanChunkValues);
+        this.physicalScanChunkValues = physicalScanChunkValues;
+        return this;
+    }
+
+    /**
+     * Read blobs in the background through a reader shared by the partitions of the store. Where the kernel supports
+     * io_uring, blobs are read through a ring, otherwise with pread on a pool of threads. Multi-key reads submit the
+     * reads of every key before waiting for any, and scans submit the reads of the keys ahead of the one being
+     * consumed, so that they keep the device queue full. The batches of a key with many values are read concurrently.
+     *
+     * @param asyncReadThreads the number of blob reads in flight, or 0 to read blobs in the caller's thread
+     * @return the builder
+     */
+    public AppendOnlyStoreBuilder withAsyncReadThreads(int asyncReadThreads) {
+        if (asyncReadThreads < 0) throw new IllegalArgumentException("Async read threads must not be negative: " + asyncReadThreads);
+        this.asyncReadThreads = asyncReadThreads;
+        return this;
+    }
+
+    /**
+     * Store values of up to 7 bytes in the block slot which would otherwise hold their blob position, skipping the
+     * blob store for them. Stores with inline values can be read whether or not this is set; older versions of the
+     * store can not read them.
+     *
+     * @param inlineSmallValues whether to inline small values
+     * @return the builder
+     */
+    public AppendOnlyStoreBuilder withInlineSmallValues(boolean inlineSmallValues) {
+        this.inlineSmallValues = inlineSmallValues;
+        return this;
+    }
+
+    /**
+     * Buffer the appends of each key in memory and write them out together as one packed chunk record, which takes a
+     * single block slot and a single blob read. The buffered values of a key are written once they reach the given
+     * size, and every buffered value is written when the store is flushed, synced or closed, so with an auto flush
+     * delay no value stays invisible to readers for longer than the delay. Stores with packed chunks can be read
+     * whether or not this is set; older versions of the store can not read them.
+     *
+     * @param valuePackingBytes the size at which the buffered values of a key are written, or 0 to write every value
+     *                          when it is appended
+     * @return the builder
+     */
+    public AppendOnlyStoreBuilder withValuePackingBytes(int valuePackingBytes) {
+        if (valuePackingBytes < 0) throw new IllegalArgumentException("Value packing bytes must not be negative: " + valuePackingBytes);
+        this.valuePackingBytes = valuePackingBytes;
+        return this;
+    }
+
+    /**
+     * Create new partitions in the compact format, which stores the values of a key's blocks as zig-zag varint deltas
+     * between consecutive blob positions and prefixes blob records with a varint length rather than a 4 byte int, so
+     * that the blocks files are several times smaller and the blob records of small values a few bytes smaller. The
+     * format is recorded in each partition, so existing partitions keep their format and are read either way; older
+     * versions of the store can not read compact partitions.
+     *
+     * @param compactFormat whether new partitions use the compact format
+     * @return the builder
+     */
+    public AppendOnlyStoreBuilder withCompactFormat(boolean compactFormat) {
+        this.compactFormat = compactFormat;
+        return this;
+    }
+
+    /**
+     * Compress blob records of at least the compression threshold with a codec, such as {@link DeflateCodec}. Each
+     * record is compressed on its own, and stored as it is if it does not get smaller, so positions are unchanged and
+     * only records which benefit are decompressed on read. A store with compressed records must be opened with the
+     * same codec to read them; older versions of the store can not read them.
+     *
+     * @param blobCodec the codec to compress blob records with, or null to store them as they are
+     * @return the builder
+     */
+    public AppendOnlyStoreBuilder withBlobCodec(BlobCodec blobCodec) {
+        this.blobCodec = blobCodec;
+        return this;
+    }
+
+    /**
+     * @param blobCompressionThreshold the size in bytes of the smallest blob record to compress
+     * @return the builder
+     */
+    public AppendOnlyStoreBuilder withBlobCompressionThreshold(int blobCompressionThreshold) {
+        if (blobCompressionThreshold < 0) throw new IllegalArgumentException("Blob compression threshold must not be negative: " + blobCompressionThreshold);
+        this.blobCompressionThreshold = blobCompressionThreshold;
+        return this;
+    }
+
+    /**
+     * Keep recently read blob values in a cache outside the heap, shared by the partitions of the store, so that hot
+     * values are served from memory even when the page cache is not kept for the blob files, as with
+     * {@link #withCacheBuffers(boolean)} false. Values are only admitted in place of values read less often, so scans
+     * do not flush the cache. Evicted values are freed straight away, so the cache holds at most this much direct
+     * memory, which counts towards -XX:MaxDirectMemorySize.
+     *
+     * @param blobValueCacheBytes the number of bytes of values to cache, or 0 for no cache
+     * @return the builder
+     */
+    public AppendOnlyStoreBuilder withBlobValueCacheBytes(long blobValueCacheBytes) {
+        if (blobValueCacheBytes < 0) throw new IllegalArgumentException("Blob value cache bytes must not be negative: " + blobValueCacheBytes);
+        this.blobValueCacheBytes = blobValueCacheBytes;
+        return this;
+    }
+
     public AppendOnlyStore build() {
         return build(false);
     }
@@ -66,6 +258,14 @@ public class AppendOnlyStoreBuilder extends FileStoreBuilder<AppendOnlyStoreBuil
         return blobPageSize;
     }
 
+    public PageBackend getBlobPageBackend() {
+        return blobPageBackend;
+    }
+
+    public boolean getBlobPageSizeClasses() {
+        return blobPageSizeClasses;
+    }
+
     public BlobStoreMetrics.Adders getBlobStoreMetricsAdders() { return blobStoreMetricsAdders; }
 
     public BlockedLongMetrics.Adders getBlockedLongMetricsAdders() { return blockedLongMetricsAdders; }
@@ -74,12 +274,90 @@ public class AppendOnlyStoreBuilder extends FileStoreBuilder<AppendOnlyStoreBuil
         return cacheBuffers;
     }
 
+    public boolean getBlobPrefetch() {
+        return blobPrefetch;
+    }
+
+    public int getScanReadAheadPages() {
+        return scanReadAheadPages;
+    }
+
+    public int getPhysicalScanChunkValues() {
+        return physicalScanChunkValues;
+    }
+
+    public boolean getInlineSmallValues() {
+        return inlineSmallValues;
+    }
+
+    public int getValuePackingBytes() {
+        return valuePackingBytes;
+    }
+
+    public boolean getCompactFormat() {
+        return compactFormat;
+    }
+
+    public BlobCodec getBlobCodec() {
+        return blobCodec;
+    }
+
+    public int getBlobCompressionThreshold() {
+        return blobCompressionThreshold;
+    }
+
+    public long getBlobValueCacheBytes() {
+        return blobValueCacheBytes;
+    }
+
+    /**
+     * The blob value cache shared by every partition of the store
+     *
+     * @return the cache, or null if there is no cache
+     */
+    public synchronized BlobValueCache getBlobValueCache() {
+        if (blobValueCacheBytes == 0) return null;
+        if (blobValueCache == null) {
+            blobValueCache = new BlobValueCache(blobValueCacheBytes);
+        }
+        return blobValueCache;
+    }
+
+    public int getAsyncReadThreads() {
+        return asyncReadThreads;
+    }
+
+    /**
+     * The blob reader shared by every partition of the store
+     *
+     * @return the reader, or null if async reads are off
+     */
+    public synchronized AsyncBlobReader getAsyncBlobReader() {
+        if (asyncReadThreads == 0) return null;
+        if (asyncBlobReader == null) {
+            asyncBlobReader = new AsyncBlobReader(asyncReadThreads);
+        }
+        return asyncBlobReader;
+    }
+
     @Override
     public String toString() {
         return "AppendOnlyStoreBuilder{" +
                 "blobsPerBlock=" + blobsPerBlock +
                 ", blobPageSize=" + blobPageSize +
+                ", blobPageBackend=" + blobPageBackend +
+                ", blobPageSizeClasses=" + blobPageSizeClasses +
                 ", cacheBuffers=" + cacheBuffers +
+                ", blobPrefetch=" + blobPrefetch +
+                ", scanReadAheadPages=" + scanReadAheadPages +
+                ", physicalScanChunkValues=" + physicalScanChunkValues +
+                ", asyncReadThreads=" + asyncReadThreads +
+                ", inlineSmallValues=" + inlineSmallValues +
+                ", valuePackingBytes=" + valuePackingBytes +
+                ", compactFormat=" + compactFormat +
+                ", blobCodec=" + blobCodec +
+                ", blobCompressionThreshold=" + blobCompressionThreshold +
+                ", blobValueCacheBytes=" + blobValueCacheBytes +
                 ", blobStoreMetricsAdders=" + blobStoreMetricsAdders +
                 ", blockedLongMetricsAdders=" + blockedLongMetricsAdders +
                 '}' + super.toString();
@@ -4,21 +4,35 @@ import com.google.common.collect.Maps;
 import com.upserve.uppend.blobs.*;
 import com.upserve.uppend.lookup.*;
 import com.upserve.uppend.util.SafeDeleting;
+import it.unimi.dsi.fastutil.longs.*;
 import org.slf4j.Logger;
 
 import java.io.*;
 import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.*;
 import java.util.stream.*;
 
 public class AppendStorePartition extends Partition implements Flushable, Closeable {
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+    private static final int READ_BATCH_SIZE = 256;
+    private static final long PACKED_KEY_INDEX = 1L << 32;
+    private static final int PHYSICAL_SCAN_BUCKETS = 4096;
+
     private final BlockedLongs blocks;
     private final VirtualAppendOnlyBlobStore[] blobs;
     private final VirtualPageFile blobFile;
+    private final boolean blobPrefetch;
+    private final int scanReadAheadPages;
+    private final int physicalScanChunkValues;
+    private final AsyncBlobReader asyncReader;
+    private final boolean inlineSmallValues;
+    private final ValuePacker packer;
 
     private static Path blobsFile(Path partitiondDir) {
         return partitiondDir.resolve("blobStore");
@@ -36,14 +50,20 @@ public class AppendStorePartition extends Partition implements Flushable, Closea
                 blocksFile(partitionDir),
                 builder.getBlobsPerBlock(),
                 false,
-                builder.getBlockedLongMetricsAdders()
+                builder.getBlockedLongMetricsAdders(),
+                builder.getIndexResidencyPolicy(),
+                builder.getCompactFormat()
         );
         VirtualPageFile blobs = new VirtualPageFile(
                 blobsFile(partitionDir),
                 builder.getLookupHashCount(),
                 builder.getBlobPageSize(),
                 builder.getTargetBufferSize(),
-                false
+                false,
+                true,
+                builder.getBlobPageBackend(),
+                ResidencyPolicy.NONE,
+                builder.getBlobPageSizeClasses()
         );
         VirtualPageFile metadata = new VirtualPageFile(
                 metadataPath(partitionDir),
@@ -53,7 +73,10 @@ public class AppendStorePartition extends Partition implements Flushable, Closea
                         builder.getMetadataPageSize(),
                         builder.getLookupHashCount(),
                         builder.getTargetBufferSize()),
-                false
+                false,
+                true,
+                builder.getMetadataPageBackend(),
+                builder.getIndexResidencyPolicy()
         );
         VirtualPageFile keys = new VirtualPageFile(
                 keysPath(partitionDir),
@@ -64,7 +87,10 @@ public class AppendStorePartition extends Partition implements Flushable, Closea
                         builder.getLookupHashCount(),
                         builder.getTargetBufferSize()
                 ),
-                false
+                false,
+                true,
+                builder.getLookupPageBackend(),
+                builder.getIndexResidencyPolicy()
         );
 
         return new AppendStorePartition(keys, metadata, blobs, blocks, false, builder);
@@ -81,7 +107,8 @@ public class AppendStorePartition extends Partition implements Flushable, Closea
                 blocksFile(partitionDir),
                 builder.getBlobsPerBlock(),
                 readOnly,
-                builder.getBlockedLongMetricsAdders()
+                builder.getBlockedLongMetricsAdders(),
+                builder.getIndexResidencyPolicy()
         );
 
         // Allow control of caching buffers only for large blob content
@@ -91,7 +118,8 @@ public class AppendStorePartition extends Partition implements Flushable, Closea
                 builder.getBlobPageSize(),
                 builder.getTargetBufferSize(),
                 readOnly,
-                builder.getCacheBuffers()
+                builder.getCacheBuffers(),
+                builder.getBlobPageBackend()
         );
         VirtualPageFile metadata = new VirtualPageFile(
                 metadataPath(partitionDir),
@@ -102,7 +130,10 @@ public class AppendStorePartition extends Partition implements Flushable, Closea
                         builder.getLookupHashCount(),
                         builder.getTargetBufferSize()
                 ),
-                readOnly
+                readOnly,
+                true,
+                builder.getMetadataPageBackend(),
+                builder.getIndexResidencyPolicy()
         );
         VirtualPageFile keys = new VirtualPageFile(
                 keysPath(partitionDir),
@@ -113,7 +144,10 @@ public class AppendStorePartition extends Partition implements Flushable, Closea
                         builder.getLookupHashCount(),
                         builder.getTargetBufferSize()
                 ),
-                readOnly
+                readOnly,
+                true,
+                builder.getLookupPageBackend(),
+                builder.getIndexResidencyPolicy()
         );
 
         return new AppendStorePartition(keys, metadata, blobs, blocks, readOnly, builder);
@@ -126,32 +160,118 @@ public class AppendStorePartition extends Partition implements Flushable, Closea
 
         this.blocks = blocks;
         this.blobFile = blobsFile;
+        this.blobPrefetch = builder.getBlobPrefetch();
+        this.scanReadAheadPages = builder.getScanReadAheadPages();
+        this.physicalScanChunkValues = builder.getPhysicalScanChunkValues();
+        this.asyncReader = builder.getAsyncBlobReader();
+        this.inlineSmallValues = builder.getInlineSmallValues();
+        this.packer = !readOnly && builder.getValuePackingBytes() > 0 ? new ValuePacker(builder.getValuePackingBytes(), this::write) : null;
 
         blobs = IntStream.range(0, hashCount)
                 .mapToObj(virtualFileNumber -> new VirtualAppendOnlyBlobStore(
-                        virtualFileNumber, blobsFile, builder.getBlobStoreMetricsAdders()
+                        virtualFileNumber, blobsFile, builder.getBlobStoreMetricsAdders(), blocks.isCompact(),
+                        builder.getBlobCodec(), builder.getBlobCompressionThreshold()
                         )
                 )
                 .toArray(VirtualAppendOnlyBlobStore[]::new);
+        if (builder.getBlobValueCache() != null) {
+            Arrays.stream(blobs).forEach(blobStore -> blobStore.setValueCache(builder.getBlobValueCache()));
+        }
+
+        if (!readOnly && builder.getDurability() != Durability.NONE) {
+            blobsFile.setTrackWrites(true);
+            blocks.setTrackWrites(true);
+        }
+        if (!readOnly && builder.getWritebackScheduler() != null) {
+            blobsFile.setWriteback(builder.getWritebackScheduler());
+            blocks.setWriteback(builder.getWritebackScheduler());
+        }
+        if (!readOnly && builder.getPreallocationHeadroomBytes() > 0) {
+            blobsFile.setPreallocation(builder.getPreallocationHeadroomBytes());
+            blocks.setPreallocation(builder.getPreallocationHeadroomBytes());
+        }
+        if (!readOnly && builder.getPrefaultAheadBytes() > 0) {
+            blobsFile.setPrefault(builder.getPrefaultAheadBytes());
+            blocks.setPrefault(builder.getPrefaultAheadBytes());
+        }
     }
 
     void append(String key, byte[] blob) {
+        if (packer != null) {
+            packer.add(key, blob);
+        } else {
+            write(key, blob);
+        }
+    }
+
+    /**
+     * Append a value as a blob, never inline or packed, so that it can be read back directly by its handle. The values
+     * of the key buffered by the packer are written first to keep the values of the key in order.
+     *
+     * @param partitionNumber the number of this partition
+     * @param key the key to append under
+     * @param blob the value
+     * @return the handle of the value
+     */
+    long appendWithHandle(int partitionNumber, String key, byte[] blob) {
+        if (packer != null) packer.flush(key);
+        LookupKey lookupKey = new LookupKey(key);
+        final int hash = keyHash(lookupKey);
+        ValueHandles.check(partitionNumber, hash);
+
+        // Nothing refers to the blob until it is linked, so a position past the range of a handle fails the append
+        final long blobPos = blobs[hash].append(blob, ValueHandles.POSITION_MASK);
+        final long blockPos = lookups[hash].putIfNotExists(lookupKey, blocks::allocate);
+        blocks.append(blockPos, blobPos);
+        log.trace("appending {} bytes with a handle (blob pos {}, block pos {}) for hash '{}', key '{}'", blob.length, blobPos, blockPos, hash, key);
+        return ValueHandles.encode(partitionNumber, hash, blobPos);
+    }
+
+    byte[] readHandle(long handle) {
+        return blobs[ValueHandles.virtualFileNumber(handle)].read(ValueHandles.blobPosition(handle));
+    }
+
+    /**
+     * Read the values of handles which all refer to the same virtual file, so that neighbouring records are copied
+     * together
+     */
+    byte[][] readHandles(int virtualFileNumber, long[] handles) {
+        return blobs[virtualFileNumber].read(Arrays.stream(handles).map(ValueHandles::blobPosition).toArray());
+    }
+
+    private void write(String key, byte[] blob) {
         LookupKey lookupKey = new LookupKey(key);
         final int hash = keyHash(lookupKey);
 
-        final long blobPos = blobs[hash].append(blob);
+        final long blobPos = inlineSmallValues && InlineValues.fits(blob) ? InlineValues.encode(blob) : blobs[hash].append(blob);
         final long blockPos = lookups[hash].putIfNotExists(lookupKey, blocks::allocate);
         blocks.append(blockPos, blobPos);
         log.trace("appending {} bytes (blob pos {}, block pos {}) for hash '{}', key '{}'", blob.length, blobPos, blockPos, hash, key);
     }
 
+    /**
+     * Write the values of a key buffered by the packer, as a single value or as one packed chunk
+     */
+    private void write(String key, List<byte[]> values) {
+        if (values.size() == 1) {
+            write(key, values.get(0));
+            return;
+        }
+        LookupKey lookupKey = new LookupKey(key);
+        final int hash = keyHash(lookupKey);
+
+        final long blobPos = blobs[hash].append(ValuePacker.pack(values));
+        final long blockPos = lookups[hash].putIfNotExists(lookupKey, blocks::allocate);
+        blocks.append(blockPos, InlineValues.packed(blobPos));
+        log.trace("appending {} packed values (blob pos {}, block pos {}) for hash '{}', key '{}'", values.size(), blobPos, blockPos, hash, key);
+    }
+
     Stream<byte[]> read(String key) {
         LookupKey lookupKey = new LookupKey(key);
         final int hash = keyHash(lookupKey);
 
         // Values stream can now be parallel, but it breaks everything...
-        LongStream longStream = blocks.values(lookups[hash].getValue(lookupKey));
-        return longStream.mapToObj(blobs[hash]::read);
+        return readBlobs(hash, lookups[hash].getValue(lookupKey));
         //return blocks.lazyValues(lookups[hash].getValue(lookupKey)).parallel().mapToObj(blobs[hash]::read);
     }
 
@@ -159,35 +279,351 @@ public class AppendStorePartition extends Partition implements Flushable, Closea
         LookupKey lookupKey = new LookupKey(key);
         final int hash = keyHash(lookupKey);
 
-        return blocks.values(lookups[hash].getValue(lookupKey)).mapToObj(blobs[hash]::read);
+        return readBlobs(hash, lookups[hash].getValue(lookupKey));
+    }
+
+    Map<String, Stream<byte[]>> readMany(Collection<String> keys) {
+        return lookupMany(keys, this::readBlobsAhead);
+    }
+
+    /**
+     * Read the blobs of a key in batches which copy neighbouring records together. When the key has more than one batch
+     * and there is an async reader, the batches are read concurrently, otherwise they are prefetched and read in turn.
+     * Packed chunks are unpacked in place.
+     */
+    private Stream<byte[]> readBlobs(int hash, Long blockPos) {
+        long[] values = blocks.values(blockPos).toArray();
+        if (values.length == 1 && !InlineValues.isPacked(values[0])) return Stream.of(readValue(hash, values[0]));
+        if (values.length < 2) return Arrays.stream(readValues(hash, values));
+        final int batches = (values.length + READ_BATCH_SIZE - 1) / READ_BATCH_SIZE;
+        if (asyncReader != null && batches > 1) return readBlobsAsync(hash, values, batches);
+        if (blobPrefetch) blobs[hash].prefetch(InlineValues.blobPositions(values));
+        // Batches keep the blobs of a key with very many values from all being held at once
+        return IntStream.range(0, batches)
+                .mapToObj(batch -> readValues(hash, readBatch(values, batch)))
+                .flatMap(Arrays::stream);
+    }
+
+    /**
+     * Read the batches of a key's values on the async reader, with a batch in flight for each of its threads. The first
+     * batches are submitted at once and each batch taken from the stream submits the next, so the blobs held at once
+     * stay bounded as they are for the batches of the synchronous read.
+     */
+    private Stream<byte[]> readBlobsAsync(int hash, long[] values, int batches) {
+        final Deque<CompletableFuture<byte[][]>> inFlight = new ArrayDeque<>();
+        final Iterator<byte[][]> iterator = new Iterator<byte[][]>() {
+            private int submitted = 0;
+
+            {
+                submit();
+            }
+
+            private void submit() {
+                while (submitted < batches && inFlight.size() < asyncReader.getThreads()) {
+                    final long[] batch = readBatch(values, submitted++);
+                    inFlight.add(asyncReader.read(blobs[hash], InlineValues.blobPositions(batch)).thenApply(blobValues -> mergeValues(batch, blobValues)));
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !inFlight.isEmpty();
+            }
+
+            @Override
+            public byte[][] next() {
+                if (inFlight.isEmpty()) throw new NoSuchElementException();
+                final CompletableFuture<byte[][]> next = inFlight.remove();
+                submit();
+                return next.join();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliterator(iterator, batches, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .flatMap(Arrays::stream);
+    }
+
+    /**
+     * Submit the reads of a key's blobs to the async reader and return a stream which waits for them, so that a caller
+     * working through many keys has the reads of the next keys in flight while it consumes one. A key with more than
+     * one batch is read as {@link #readBlobs} does, which submits its first batches at once. Without an async reader
+     * the blobs are read as they are by {@link #readBlobs}.
+     */
+    private Stream<byte[]> readBlobsAhead(int hash, Long blockPos) {
+        if (asyncReader == null) return readBlobs(hash, blockPos);
+        long[] values = blocks.values(blockPos).toArray();
+        final int batches = (values.length + READ_BATCH_SIZE - 1) / READ_BATCH_SIZE;
+        if (batches > 1) return readBlobsAsync(hash, values, batches);
+
+        final long[] positions = InlineValues.blobPositions(values);
+        if (positions.length == 0) return Arrays.stream(mergeValues(values, new byte[0][]));
+        if (values.length == 1 && !InlineValues.isPacked(values[0])) {
+            final CompletableFuture<byte[]> future = asyncReader.read(blobs[hash], values[0]);
+            return Stream.of(future).map(CompletableFuture::join);
+        }
+        final CompletableFuture<byte[][]> future = asyncReader.read(blobs[hash], positions).thenApply(blobValues -> mergeValues(values, blobValues));
+        return Stream.of(future).flatMap(batch -> Arrays.stream(batch.join()));
+    }
+
+    /**
+     * Take the entries of a scan up to the depth of the async reader ahead of the caller, so that the reads submitted
+     * for the values of the entries taken ahead are in flight while the caller consumes the current one
+     */
+    private <T> Iterator<T> readAhead(Iterator<T> source) {
+        final int depth = asyncReader.getThreads();
+        final Deque<T> ahead = new ArrayDeque<>(depth);
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                fill();
+                return !ahead.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                fill();
+                if (ahead.isEmpty()) throw new NoSuchElementException();
+                return ahead.remove();
+            }
+
+            private void fill() {
+                while (ahead.size() < depth && source.hasNext()) ahead.add(source.next());
+            }
+        };
+    }
+
+    private Stream<Map.Entry<String, Stream<byte[]>>> scanBlobs(int virtualFileNumber) {
+        final Stream<Map.Entry<LookupKey, Long>> entries = lookups[virtualFileNumber].scan();
+        if (asyncReader == null) {
+            return entries.map(entry -> Maps.immutableEntry(entry.getKey().string(), readBlobs(virtualFileNumber, entry.getValue())));
+        }
+        final Iterator<Map.Entry<String, Stream<byte[]>>> iterator = readAhead(entries
+                .map(entry -> Maps.immutableEntry(entry.getKey().string(), readBlobsAhead(virtualFileNumber, entry.getValue())))
+                .iterator());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(entries::close);
+    }
+
+    private static long[] readBatch(long[] values, int batch) {
+        return Arrays.copyOfRange(values, batch * READ_BATCH_SIZE, Math.min(values.length, (batch + 1) * READ_BATCH_SIZE));
+    }
+
+    /**
+     * Read the value of a block slot which is not a packed chunk, so either an inline value or the position of a blob
+     */
+    private byte[] readValue(int hash, long value) {
+        return InlineValues.isInline(value) ? InlineValues.decode(value) : blobs[hash].read(value);
+    }
+
+    /**
+     * Read the values of a packed chunk
+     */
+    byte[][] readPacked(int hash, long value) {
+        return ValuePacker.unpack(blobs[hash].read(InlineValues.packedPosition(value)));
+    }
+
+    private byte[][] readValues(int hash, long[] values) {
+        return mergeValues(values, blobs[hash].read(InlineValues.blobPositions(values)));
+    }
+
+    /**
+     * Put the blobs read for the blob positions of some block slots back together with their inline values, unpacking
+     * packed chunks
+     */
+    private static byte[][] mergeValues(long[] values, byte[][] blobValues) {
+        if (blobValues.length == values.length && Arrays.stream(values).noneMatch(InlineValues::isPacked)) return blobValues;
+
+        final List<byte[]> result = new ArrayList<>(values.length);
+        int blobIndex = 0;
+        for (long value : values) {
+            if (InlineValues.isInline(value)) {
+                result.add(InlineValues.decode(value));
+            } else if (InlineValues.isPacked(value)) {
+                Collections.addAll(result, ValuePacker.unpack(blobValues[blobIndex++]));
+            } else {
+                result.add(blobValues[blobIndex++]);
+            }
+        }
+        return result.toArray(new byte[0][]);
     }
 
     byte[] readLast(String key) {
         LookupKey lookupKey = new LookupKey(key);
         final int hash = keyHash(lookupKey);
 
-        return blobs[hash].read(blocks.lastValue(lookups[hash].getValue(lookupKey)));
+        final long value = blocks.lastValue(lookups[hash].getValue(lookupKey));
+        if (InlineValues.isPacked(value)) {
+            final byte[][] packed = readPacked(hash, value);
+            return packed[packed.length - 1];
+        }
+        return readValue(hash, value);
+    }
+
+    Iterator<Map.Entry<LookupKey, Stream<byte[]>>> sortedScan(LookupKey fromKey, LookupKey toKey) {
+        if (asyncReader == null) return sortedEntries(fromKey, toKey, this::readBlobs);
+        return readAhead(sortedEntries(fromKey, toKey, this::readBlobsAhead));
     }
 
     Stream<Map.Entry<String, Stream<byte[]>>> scan() {
         return IntStream.range(0, hashCount)
                 .parallel()
                 .boxed()
-                .flatMap(virtualFileNumber ->
-                        lookups[virtualFileNumber].scan().map(entry -> Maps.immutableEntry(
-                                entry.getKey().string(),
-                                blocks.values(entry.getValue()).mapToObj(blobs[virtualFileNumber]::read)
-                        ))
-                );
+                .flatMap(this::scanBlobs);
     }
 
     void scan(BiConsumer<String, Stream<byte[]>> callback) {
         IntStream.range(0, hashCount)
                 .parallel()
                 .boxed()
-                .forEach(virtualFileNumber ->
-                        lookups[virtualFileNumber].scan().forEach(entry -> callback.accept(entry.getKey().string(), blocks.values(entry.getValue()).mapToObj(blobs[virtualFileNumber]::read))
-                        ));
+                .forEach(virtualFileNumber -> {
+                    try (Stream<Map.Entry<String, Stream<byte[]>>> entries = scanBlobs(virtualFileNumber)) {
+                        entries.forEach(entry -> callback.accept(entry.getKey(), entry.getValue()));
+                    }
+                });
+    }
+
+    /**
+     * Scan the values in the order they are stored in each blob virtual file rather than key by key, so that a full
+     * scan is sequential I/O. The blob pages are advised sequential, read ahead of the scan and released behind it.
+     * <p>
+     * The blob to key mapping is a reverse index built from the key block lists. So that its memory does not grow with
+     * the number of values, each virtual file is split into ranges of blob positions which hold about
+     * {@link AppendOnlyStoreBuilder#withPhysicalScanChunkValues(int)} values each, and a range is indexed and sorted
+     * only when the scan reaches it. A range costs 16 bytes per value, plus about 20 bytes per key of the virtual file for the
+     * key snapshot and the span of blob positions of each key, for each virtual file being scanned; virtual files are
+     * scanned in parallel, so up to one per worker thread at once. The block lists are walked once to count the values
+     * in each part of the file, and that walk records the lowest and highest blob position of each key and whether it
+     * has inline values. Later walks for the inline values and for each range skip the keys which have nothing in
+     * them, except for the last range which walks every key to pick up values appended during the scan. So a key whose
+     * values were appended close together is walked about three times, while a key with values spread over the whole
+     * file is still walked once per range.
+     *
+     * @return a stream of key and value pairs, with a pair for each value of a key
+     */
+    Stream<Map.Entry<String, byte[]>> scanPhysical() {
+        return IntStream.range(0, hashCount)
+                .parallel()
+                .boxed()
+                .flatMap(this::scanPhysical);
+    }
+
+    private Stream<Map.Entry<String, byte[]>> scanPhysical(int virtualFileNumber) {
+        final LookupDataCursor cursor = lookups[virtualFileNumber].cursor();
+
+        // Count the values in each bucket of the virtual file. Positions past the end seen here are appended during the
+        // scan and belong to the last bucket.
+        final long bucketSize = Math.max(1, (blobs[virtualFileNumber].getPosition() + PHYSICAL_SCAN_BUCKETS - 1) / PHYSICAL_SCAN_BUCKETS);
+        final long[] bucketCounts = new long[PHYSICAL_SCAN_BUCKETS];
+        final long[] lowestPositions = new long[cursor.size()];
+        final long[] highestPositions = new long[cursor.size()];
+        final BitSet inlineKeys = new BitSet(cursor.size());
+        for (int keyIndex = 0; cursor.moveTo(keyIndex); keyIndex++) {
+            long lowest = Long.MAX_VALUE;
+            long highest = -1;
+            for (long value : blocks.valuesArray(cursor.value())) {
+                if (InlineValues.isInline(value)) {
+                    inlineKeys.set(keyIndex);
+                } else {
+                    final long position = InlineValues.blobPosition(value);
+                    bucketCounts[(int) Math.min(PHYSICAL_SCAN_BUCKETS - 1, position / bucketSize)]++;
+                    lowest = Math.min(lowest, position);
+                    highest = Math.max(highest, position);
+                }
+            }
+            lowestPositions[keyIndex] = lowest;
+            highestPositions[keyIndex] = highest;
+        }
+
+        // Merge neighbouring buckets into ranges of up to the chunk size, a bucket with more values is a range of its own
+        LongArrayList bounds = new LongArrayList();
+        bounds.add(0);
+        long rangeCount = 0;
+        for (int bucket = 0; bucket < PHYSICAL_SCAN_BUCKETS; bucket++) {
+            if (rangeCount > 0 && rangeCount + bucketCounts[bucket] > physicalScanChunkValues) {
+                bounds.add(bucket * bucketSize);
+                rangeCount = 0;
+            }
+            rangeCount += bucketCounts[bucket];
+        }
+        bounds.add(Long.MAX_VALUE);
+
+        SequentialReadAdvisor advisor = new SequentialReadAdvisor(blobs[virtualFileNumber], scanReadAheadPages);
+        // Inline values need no reads, so they are streamed straight from the block lists ahead of the blobs
+        Stream<Map.Entry<String, byte[]>> inlineValues = inlineKeys.stream()
+                .boxed()
+                .flatMap(keyIndex -> {
+                    cursor.moveTo(keyIndex);
+                    final long[] values = Arrays.stream(blocks.valuesArray(cursor.value())).filter(InlineValues::isInline).toArray();
+                    if (values.length == 0) return Stream.empty();
+                    final String key = keyString(cursor);
+                    return Arrays.stream(values).mapToObj(value -> Maps.immutableEntry(key, InlineValues.decode(value)));
+                });
+        return Stream.concat(
+                inlineValues,
+                IntStream.range(0, bounds.size() - 1)
+                        .boxed()
+                        .flatMap(range -> scanPhysicalRange(virtualFileNumber, cursor, lowestPositions, highestPositions, bounds.getLong(range), bounds.getLong(range + 1), advisor))
+        ).onClose(advisor::close);
+    }
+
+    /**
+     * Index, sort and read the blobs of a virtual file with positions in a range. Only the block lists of keys with a
+     * blob position span which overlaps the range are walked, or of every key for the open ended last range.
+     */
+    private Stream<Map.Entry<String, byte[]>> scanPhysicalRange(int virtualFileNumber, LookupDataCursor cursor, long[] lowestPositions, long[] highestPositions, long from, long to, SequentialReadAdvisor advisor) {
+        // Packed chunks are sorted by the position of their blob, and marked in the key index
+        LongArrayList blobPositions = new LongArrayList();
+        LongArrayList keyIndexes = new LongArrayList();
+        for (int keyIndex = 0; keyIndex < lowestPositions.length; keyIndex++) {
+            if (to != Long.MAX_VALUE && (highestPositions[keyIndex] < from || lowestPositions[keyIndex] >= to)) continue;
+            cursor.moveTo(keyIndex);
+            for (long value : blocks.valuesArray(cursor.value())) {
+                if (InlineValues.isInline(value)) continue;
+                final long position = InlineValues.blobPosition(value);
+                if (position < from || position >= to) continue;
+                blobPositions.add(position);
+                keyIndexes.add(InlineValues.isPacked(value) ? keyIndex | PACKED_KEY_INDEX : keyIndex);
+            }
+        }
+
+        final long[] positions = blobPositions.toLongArray();
+        final long[] keys = keyIndexes.toLongArray();
+        LongArrays.quickSort(positions, keys);
+
+        return IntStream.range(0, positions.length)
+                .boxed()
+                .flatMap(index -> {
+                    advisor.advance(positions[index]);
+                    cursor.moveTo((int) keys[index]);
+                    final String key = keyString(cursor);
+                    if ((keys[index] & PACKED_KEY_INDEX) != 0) {
+                        return Arrays.stream(ValuePacker.unpack(blobs[virtualFileNumber].read(positions[index])))
+                                .map(value -> Maps.immutableEntry(key, value));
+                    }
+                    return Stream.of(Maps.immutableEntry(key, blobs[virtualFileNumber].read(positions[index])));
+                });
+    }
+
+    private static String keyString(LookupDataCursor cursor) {
+        return StandardCharsets.US_ASCII.decode(cursor.keyBytes().duplicate()).toString();
+    }
+
+    LookupDataCursor keyCursor(int virtualFileNumber) {
+        return lookups[virtualFileNumber].cursor();
+    }
+
+    /**
+     * Replace the contents of a reused list with the slot values of a key
+     */
+    void blobPositions(int virtualFileNumber, long blockPos, LongArrayList positions) {
+        positions.clear();
+        blocks.valuesInto(blockPos, positions);
+        if (blobPrefetch && positions.size() > 1) blobs[virtualFileNumber].prefetch(InlineValues.blobPositions(positions.elements(), positions.size()));
+    }
+
+    ByteBuffer readBlob(int virtualFileNumber, long blobPos, ByteBuffer buffer, IntFunction<ByteBuffer> bufferSupplier, ViewPin pin) {
+        if (InlineValues.isPacked(blobPos)) throw new IllegalArgumentException("Packed chunk must be read with readPacked: " + blobPos);
+        if (InlineValues.isInline(blobPos)) return ByteBuffer.wrap(InlineValues.decode(blobPos));
+        return blobs[virtualFileNumber].read(blobPos, buffer, bufferSupplier, pin);
     }
 
     Stream<String> keys() {
@@ -198,6 +634,7 @@ public class AppendStorePartition extends Partition implements Flushable, Closea
     }
 
     void clear() throws IOException {
+        if (packer != null) packer.discard();
         getLongKeyFile().close();
         getMetadataBlobFile().close();
         blobFile.close();
@@ -206,6 +643,24 @@ public class AppendStorePartition extends Partition implements Flushable, Closea
         SafeDeleting.removeDirectory(longKeyFile.getFilePath().getParent());
     }
 
+    @Override
+    public void flush() {
+        if (packer != null) packer.flush();
+        super.flush();
+        blobFile.flush();
+    }
+
+    /**
+     * Sync the blobs and blocks before the lookups which refer to them
+     */
+    @Override
+    void sync() {
+        if (packer != null) packer.flush();
+        blobFile.sync();
+        blocks.sync();
+        super.sync();
+    }
+
     @Override
     public void close() throws IOException {
         super.close();
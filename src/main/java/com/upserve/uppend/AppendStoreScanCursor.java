@@ -0,0 +1,107 @@
+package com.upserve.uppend;
+
+import com.upserve.uppend.blobs.ViewPin;
+import com.upserve.uppend.lookup.LookupDataCursor;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A {@link ScanCursor} over a share of the hash buckets of the partitions of an append only store. A value within a
+ * single mapped page is a view of the page, which keeps its mapped window pinned until the cursor moves on.
+ */
+class AppendStoreScanCursor implements ScanCursor {
+    private static final int INITIAL_VALUE_BUFFER_SIZE = 4096;
+
+    private final List<AppendStorePartition> partitions;
+    private final List<Integer> hashes;
+
+    private int bucket = -1;
+    private AppendStorePartition partition;
+    private int hash;
+    private LookupDataCursor lookupCursor;
+
+    private final LongArrayList blobPositions = new LongArrayList();
+    private boolean onKey;
+    private int valueIndex;
+    private byte[][] packedValues;
+    private int packedIndex;
+    private ByteBuffer valueCopyBuffer = ByteBuffer.allocate(INITIAL_VALUE_BUFFER_SIZE);
+    private ByteBuffer value;
+    private final ViewPin pin = new ViewPin();
+
+    /**
+     * @param partitions the partition of each hash bucket to scan
+     * @param hashes the hash of each hash bucket to scan
+     */
+    AppendStoreScanCursor(List<AppendStorePartition> partitions, List<Integer> hashes) {
+        this.partitions = partitions;
+        this.hashes = hashes;
+    }
+
+    @Override
+    public boolean nextKey() {
+        onKey = false;
+        packedValues = null;
+        value = null;
+        pin.release();
+        while (lookupCursor == null || !lookupCursor.next()) {
+            if (++bucket >= partitions.size()) {
+                bucket = partitions.size();
+                lookupCursor = null;
+                return false;
+            }
+            partition = partitions.get(bucket);
+            hash = hashes.get(bucket);
+            lookupCursor = partition.keyCursor(hash);
+        }
+        partition.blobPositions(hash, lookupCursor.value(), blobPositions);
+        onKey = true;
+        valueIndex = 0;
+        return true;
+    }
+
+    @Override
+    public ByteBuffer keyBytes() {
+        if (!onKey) throw new IllegalStateException("Cursor is not positioned on a key");
+        return lookupCursor.keyBytes();
+    }
+
+    @Override
+    public boolean nextValue() {
+        if (!onKey) throw new IllegalStateException("Cursor is not positioned on a key");
+        pin.release();
+        if (packedValues != null && packedIndex < packedValues.length) {
+            value = ByteBuffer.wrap(packedValues[packedIndex++]);
+            return true;
+        }
+        packedValues = null;
+        if (valueIndex >= blobPositions.size()) {
+            value = null;
+            return false;
+        }
+        final long blobPos = blobPositions.getLong(valueIndex++);
+        if (InlineValues.isPacked(blobPos)) {
+            // Packed chunks always hold more than one value
+            packedValues = partition.readPacked(hash, blobPos);
+            packedIndex = 1;
+            value = ByteBuffer.wrap(packedValues[0]);
+            return true;
+        }
+        value = partition.readBlob(hash, blobPos, valueCopyBuffer, size -> valueCopyBuffer = ByteBuffer.allocate(size), pin);
+        return true;
+    }
+
+    @Override
+    public ByteBuffer valueBuffer() {
+        if (value == null) throw new IllegalStateException("Cursor is not positioned on a value");
+        return value;
+    }
+
+    @Override
+    public void close() {
+        value = null;
+        pin.release();
+    }
+}
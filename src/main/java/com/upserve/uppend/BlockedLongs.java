@@ -1,8 +1,10 @@
 package com.upserve.uppend;
 
 import com.google.common.util.concurrent.Striped;
-import com.upserve.uppend.blobs.NativeIO;
+import com.upserve.uppend.blobs.*;
 import com.upserve.uppend.metrics.*;
+import com.upserve.uppend.util.Varint;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import org.slf4j.Logger;
 
 import java.io.*;
@@ -25,17 +27,29 @@ public class BlockedLongs implements AutoCloseable, Flushable {
     private static final int PAGE_SIZE = 128 * 1024 * 1024; // allocate 128 MB chunks
     private static final int MAX_PAGES = 32 * 1024; // max 4 TB
 
-    static final int HEADER_BYTES = NativeIO.pageSize; // Currently 16 used for file size and append count
+    static final int HEADER_BYTES = NativeIO.pageSize; // Currently 24 used for file size, append count and format
     private static final int posBufPosition = 0;
     private static final int appendBufPosition = 8;
+    private static final int formatPosition = 16;
+
+    // Blocks of fixed 8 byte slots: size | -next, prev | -last, values...
+    static final long FORMAT_FIXED = 0;
+    // Blocks of zig-zag varint deltas: size | -next, prev | -last, last value, count << 32 | used bytes, deltas...
+    static final long FORMAT_COMPACT = 1;
+    private static final int COMPACT_BLOCK_HEADER_BYTES = 32;
+    private static final long[] NO_VALUES = new long[]{};
 
     private final Path file;
 
     private final int valuesPerBlock;
     private final int blockSize;
+    private final boolean compact;
+    private final int compactCapacity;
 
     private final FileChannel blocks;
-    private final MappedByteBuffer[] pages;
+    private final MappedWindows pages;
+    private volatile Preallocator preallocator;
+    private volatile Prefaulter prefaulter;
 
     private final MappedByteBuffer posBuf;
     private final AtomicLong posMem;
@@ -54,6 +68,23 @@ public class BlockedLongs implements AutoCloseable, Flushable {
     }
 
     BlockedLongs(Path file, int valuesPerBlock, boolean readOnly, BlockedLongMetrics.Adders blockedLongMetricsAdders) {
+        this(file, valuesPerBlock, readOnly, blockedLongMetricsAdders, ResidencyPolicy.NONE);
+    }
+
+    BlockedLongs(Path file, int valuesPerBlock, boolean readOnly, BlockedLongMetrics.Adders blockedLongMetricsAdders, ResidencyPolicy residency) {
+        this(file, valuesPerBlock, readOnly, blockedLongMetricsAdders, residency, false);
+    }
+
+    /**
+     * @param file the blocks file
+     * @param valuesPerBlock the number of 8 byte slots which sizes a block
+     * @param readOnly whether the file is opened read only
+     * @param blockedLongMetricsAdders the metrics to record to
+     * @param residency the policy for keeping the mapped pages of the file resident
+     * @param compact whether a new file stores the values of a block as zig-zag varint deltas, so that a block of the
+     *                same size holds several times as many increasing values; an existing file keeps its format
+     */
+    BlockedLongs(Path file, int valuesPerBlock, boolean readOnly, BlockedLongMetrics.Adders blockedLongMetricsAdders, ResidencyPolicy residency, boolean compact) {
         if (file == null) {
             throw new IllegalArgumentException("null file");
         }
@@ -104,8 +135,8 @@ public class BlockedLongs implements AutoCloseable, Flushable {
             stripedLocks = Striped.lock(LOCK_SIZE);
         }
 
-        pages = new MappedByteBuffer[MAX_PAGES];
-        ensurePage(0);
+        pages = new MappedWindows(file, blocks, readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, HEADER_BYTES, PAGE_SIZE, MAX_PAGES, null, residency);
+        pages.preload(0);
         currentPage = new AtomicInteger(0);
 
         try {
@@ -116,18 +147,24 @@ public class BlockedLongs implements AutoCloseable, Flushable {
         }
         long pos = posBuf.getLong(0);
 
+        final long format;
         if (pos == 0) {
             // This is a new file
-            try {
-                blocks.write(ByteBuffer.wrap(new byte[HEADER_BYTES]), 0L);
-            } catch (IOException e) {
-                throw new UncheckedIOException("Unable to write blank header to file " + file, e);
-            }
+            format = compact ? FORMAT_COMPACT : FORMAT_FIXED;
+            writeBlankHeader(format);
             posBuf.putLong(HEADER_BYTES);
             pos = HEADER_BYTES;
         }
         else if (pos < HEADER_BYTES) {
             throw new IllegalStateException("negative pos (" + pos + "): " + file);
+        } else {
+            format = readFormat();
+        }
+        this.compact = format == FORMAT_COMPACT;
+        compactCapacity = blockSize - COMPACT_BLOCK_HEADER_BYTES;
+        // A delta takes up to 10 bytes, which needs at least 4 values per block
+        if (this.compact && compactCapacity < 10) {
+            throw new IllegalArgumentException("bad compact block capacity (< 10 bytes after the " + COMPACT_BLOCK_HEADER_BYTES + " byte header): " + compactCapacity + " bytes for " + valuesPerBlock + " values per block");
         }
 
         try {
@@ -149,6 +186,37 @@ public class BlockedLongs implements AutoCloseable, Flushable {
         posMem = new AtomicLong(pos);
     }
 
+    private void writeBlankHeader(long format) {
+        try {
+            blocks.write(ByteBuffer.wrap(new byte[HEADER_BYTES]), 0L);
+            ByteBuffer formatBuf = ByteBuffer.allocate(8).putLong(0, format);
+            blocks.write(formatBuf, formatPosition);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write blank header to file " + file, e);
+        }
+    }
+
+    private long readFormat() {
+        ByteBuffer formatBuf = ByteBuffer.allocate(8);
+        try {
+            blocks.read(formatBuf, formatPosition);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read format of file " + file, e);
+        }
+        final long format = formatBuf.getLong(0);
+        if (format != FORMAT_FIXED && format != FORMAT_COMPACT) {
+            throw new IllegalStateException("unknown blocks format (" + format + "): " + file);
+        }
+        return format;
+    }
+
+    /**
+     * @return whether the blocks hold zig-zag varint deltas rather than fixed 8 byte values
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
     /**
      * Allocate a new block of longs
      *
@@ -159,6 +227,8 @@ public class BlockedLongs implements AutoCloseable, Flushable {
         blockedLongMetricsAdders.blockAllocationCounter.increment();
         long pos = posMem.getAndAdd(blockSize);
         posBuf.putLong(0, posMem.get());
+        if (preallocator != null) preallocator.advanced(pos + blockSize);
+        if (prefaulter != null) prefaulter.advanced(pos + blockSize);
         return pos;
     }
 
@@ -202,8 +272,6 @@ public class BlockedLongs implements AutoCloseable, Flushable {
     public void append(final long pos, final long val) {
         log.trace("appending value {} to {} at {}", val, file, pos);
         if (readOnly) throw new RuntimeException("Can not append a read only blocked longs file: " + file);
-        // size | -next
-        // prev | -last
 
         blockedLongMetricsAdders.appendCounter.increment();
         appendCounter.increment();
@@ -212,42 +280,125 @@ public class BlockedLongs implements AutoCloseable, Flushable {
         Lock lock = stripedLocks.getAt((int) (pos % LOCK_SIZE));
         lock.lock();
         try {
-            final long prev = readLong(pos + 8);
-            if (prev > 0) {
-                throw new IllegalStateException("append called at non-starting block: pos=" + pos + " in path: " + file);
-            }
-            long last = prev == 0 ? pos : -prev;
-            long size = readLong(last);
-            if (size < 0) {
-                log.debug("Read repair for last block with a next: pos=" + pos + " in path: " + file);
-                // The the new position was set and this block is full, but is not updated yet
-                last = -size;
-                size = readLong(last);
-                writeLong(pos + 8, -last);
-            }
+            appendLocked(pos, val);
+        } finally {
+            lock.unlock();
+            blockedLongMetricsAdders.appendTimer.add(System.nanoTime() - tic);
+        }
+        log.trace("appended value {} to {} at {}", val, file, pos);
+    }
 
-            if (size > valuesPerBlock) {
-                throw new IllegalStateException("too high num values: expected <= " + valuesPerBlock + ", got " + size + ": pos=" + pos + " in path: " + file);
-            }
-            if (size == valuesPerBlock) {
-                long newPos = allocate();
-                // write new value in new block
-                writeLong(newPos, 1);
-                writeLong(newPos + 8, last);
-                writeLong(newPos + 16, val);
-                // link to last->next
-                writeLong(last, -newPos);
-                // link to first->last
-                writeLong(pos + 8, -newPos);
-            } else {
-                writeLong(last + 16 + 8 * size, val);
-                writeLong(last, size + 1);
+    /**
+     * Append several values together, so that the values of concurrent appends to the same block are never
+     * interleaved with them
+     *
+     * @param pos the position of the starting block
+     * @param vals the values to append in order
+     */
+    public void append(final long pos, final long[] vals) {
+        log.trace("appending {} values to {} at {}", vals.length, file, pos);
+        if (readOnly) throw new RuntimeException("Can not append a read only blocked longs file: " + file);
+
+        blockedLongMetricsAdders.appendCounter.add(vals.length);
+        appendCounter.add(vals.length);
+        final long tic = System.nanoTime();
+
+        Lock lock = stripedLocks.getAt((int) (pos % LOCK_SIZE));
+        lock.lock();
+        try {
+            for (long val : vals) {
+                appendLocked(pos, val);
             }
         } finally {
             lock.unlock();
             blockedLongMetricsAdders.appendTimer.add(System.nanoTime() - tic);
         }
-        log.trace("appended value {} to {} at {}", val, file, pos);
+    }
+
+    private void appendLocked(final long pos, final long val) {
+        if (compact) {
+            appendCompactLocked(pos, val);
+            return;
+        }
+        // size | -next
+        // prev | -last
+        final long prev = readLong(pos + 8);
+        if (prev > 0) {
+            throw new IllegalStateException("append called at non-starting block: pos=" + pos + " in path: " + file);
+        }
+        long last = prev == 0 ? pos : -prev;
+        long size = readLong(last);
+        if (size < 0) {
+            log.debug("Read repair for last block with a next: pos=" + pos + " in path: " + file);
+            // The the new position was set and this block is full, but is not updated yet
+            last = -size;
+            size = readLong(last);
+            writeLong(pos + 8, -last);
+        }
+
+        if (size > valuesPerBlock) {
+            throw new IllegalStateException("too high num values: expected <= " + valuesPerBlock + ", got " + size + ": pos=" + pos + " in path: " + file);
+        }
+        if (size == valuesPerBlock) {
+            long newPos = allocate();
+            // write new value in new block
+            writeLong(newPos, 1);
+            writeLong(newPos + 8, last);
+            writeLong(newPos + 16, val);
+            // link to last->next
+            writeLong(last, -newPos);
+            // link to first->last
+            writeLong(pos + 8, -newPos);
+        } else {
+            writeLong(last + 16 + 8 * size, val);
+            writeLong(last, size + 1);
+        }
+    }
+
+    private void appendCompactLocked(final long pos, final long val) {
+        // size | -next
+        // prev | -last
+        // last value
+        // count << 32 | used bytes
+        final long prev = readLong(pos + 8);
+        if (prev > 0) {
+            throw new IllegalStateException("append called at non-starting block: pos=" + pos + " in path: " + file);
+        }
+        long last = prev == 0 ? pos : -prev;
+        long size = readLong(last);
+        if (size < 0) {
+            log.debug("Read repair for last block with a next: pos=" + pos + " in path: " + file);
+            last = -size;
+            size = readLong(last);
+            writeLong(pos + 8, -last);
+        }
+        if (size > compactCapacity) {
+            throw new IllegalStateException("too high num values: expected <= " + compactCapacity + ", got " + size + ": pos=" + pos + " in path: " + file);
+        }
+
+        final int used = size == 0 ? 0 : (int) readLong(last + 24);
+        final long delta = Varint.zigZag(val - (size == 0 ? 0 : readLong(last + 16)));
+        final int length = Varint.computeSize(delta);
+        if (used + length > compactCapacity) {
+            long newPos = allocate();
+            // write new value in new block, as a delta from zero
+            final long newDelta = Varint.zigZag(val);
+            final int newLength = Varint.computeSize(newDelta);
+            writeVarint(newPos + COMPACT_BLOCK_HEADER_BYTES, newDelta, newLength);
+            writeLong(newPos + 16, val);
+            writeLong(newPos + 24, (1L << 32) | newLength);
+            writeLong(newPos + 8, last);
+            writeLong(newPos, 1);
+            // link to last->next
+            writeLong(last, -newPos);
+            // link to first->last
+            writeLong(pos + 8, -newPos);
+        } else {
+            writeVarint(last + COMPACT_BLOCK_HEADER_BYTES + used, delta, length);
+            writeLong(last + 16, val);
+            writeLong(last + 24, ((size + 1) << 32) | (used + length));
+            writeLong(last, size + 1);
+        }
     }
 
     public LongStream values(Long pos) {
@@ -277,6 +428,7 @@ public class BlockedLongs implements AutoCloseable, Flushable {
             log.error("Bad position value {} in file {} of size {}", pos, file, size());
             return new long[]{};
         }
+        if (compact) return compactValuesArray(pos);
 
         // size | -next
         // prev | -last
@@ -313,6 +465,72 @@ public class BlockedLongs implements AutoCloseable, Flushable {
         }
     }
 
+    /**
+     * Add the values of a block list to a list, so that a reader of many keys can reuse one growable array rather than
+     * allocate an array for each key
+     *
+     * @param pos the position of the first block of the list
+     * @param values the list to add the values to
+     */
+    public void valuesInto(long pos, LongArrayList values) {
+        if (pos < 0 || pos > size()) {
+            log.error("Bad position value {} in file {} of size {}", pos, file, size());
+            return;
+        }
+        if (compact) {
+            compactValuesInto(pos, values);
+            return;
+        }
+
+        while (true) {
+            final long size = readLong(pos);
+            if (size > valuesPerBlock) {
+                throw new IllegalStateException("too high num values: expected <= " + valuesPerBlock + ", got " + size);
+            }
+            final int numValues = size < 0 ? valuesPerBlock : (int) size;
+            for (int i = 0; i < numValues; i++) {
+                values.add(readLong(pos + 16 + i * 8));
+            }
+            if (size >= 0) return;
+            pos = -size;
+        }
+    }
+
+    private long[] compactValuesArray(long pos) {
+        LongArrayList values = LongArrayList.wrap(NO_VALUES);
+        compactValuesInto(pos, values);
+        return values.size() == values.elements().length ? values.elements() : values.toLongArray();
+    }
+
+    private void compactValuesInto(long pos, LongArrayList valueList) {
+        int numValues = valueList.size();
+        byte[] deltas = new byte[0];
+        while (pos != 0) {
+            // The count and used bytes are written after the deltas they cover
+            final long size = readLong(pos);
+            final long fill = readLong(pos + 24);
+            final int count = (int) (fill >>> 32);
+            final int used = (int) fill;
+            if (used > compactCapacity) {
+                throw new IllegalStateException("too high num bytes: expected <= " + compactCapacity + ", got " + used + ": pos=" + pos);
+            }
+            if (count > 0) {
+                if (deltas.length < used) deltas = new byte[compactCapacity];
+                readBytes(pos + COMPACT_BLOCK_HEADER_BYTES, deltas, used);
+                valueList.size(numValues + count);
+                final long[] values = valueList.elements();
+                Varint.readLongs(deltas, 0, values, numValues, count);
+                long value = 0;
+                for (int i = numValues; i < numValues + count; i++) {
+                    value += Varint.unZigZag(values[i]);
+                    values[i] = value;
+                }
+                numValues += count;
+            }
+            pos = size < 0 ? -size : 0;
+        }
+    }
+
 //    public LongStream lazyValues(Long pos) {
 //        /*
 //        Lazy values is much slower in Performance tests with a large number of blocks.
@@ -393,10 +611,14 @@ public class BlockedLongs implements AutoCloseable, Flushable {
                 last = -size;
                 size = readLong(last);
             }
-            if (size > valuesPerBlock) {
-                throw new IllegalStateException("too high num values: expected <= " + valuesPerBlock + ", got " + size + ": pos=" + pos);
+            if (compact) {
+                value = readLong(last + 16);
+            } else {
+                if (size > valuesPerBlock) {
+                    throw new IllegalStateException("too high num values: expected <= " + valuesPerBlock + ", got " + size + ": pos=" + pos);
+                }
+                value = readLong(last + 16 + 8 * (size - 1));
             }
-            value = readLong(last + 16 + 8 * (size - 1));
         }
         log.trace("got value from {} at {}: {}", file, pos, value);
         blockedLongMetricsAdders.readLastTimer.add(System.nanoTime() - tic);
@@ -407,23 +629,22 @@ public class BlockedLongs implements AutoCloseable, Flushable {
     public void clear() {
         log.debug("clearing {}", file);
         IntStream.range(0, LOCK_SIZE).forEach(index -> stripedLocks.getAt(index).lock());
+        if (prefaulter != null) prefaulter.pause();
         try {
             blocks.truncate(HEADER_BYTES);
-            try {
-                blocks.write(ByteBuffer.wrap(new byte[HEADER_BYTES]), 0L);
-            } catch (IOException e) {
-                throw new UncheckedIOException("Unable to write blank header to file " + file, e);
-            }
+            writeBlankHeader(compact ? FORMAT_COMPACT : FORMAT_FIXED);
             posBuf.putLong(0, HEADER_BYTES);
             posMem.set(HEADER_BYTES);
+            if (preallocator != null) preallocator.reset();
             appendCountBuf.putLong(0, 0L);
             initialAppendCount = 0L;
-            Arrays.fill(pages, null);
+            pages.unmapAll();
             currentPage.set(0);
-            ensurePage(0);
+            pages.preload(0);
         } catch (IOException e) {
             throw new UncheckedIOException("unable to clear", e);
         } finally {
+            if (prefaulter != null) prefaulter.resume();
             IntStream.range(0, LOCK_SIZE).forEach(index -> stripedLocks.getAt(index).unlock());
         }
     }
@@ -432,9 +653,10 @@ public class BlockedLongs implements AutoCloseable, Flushable {
     public void close() throws IOException {
         log.debug("closing {}", file);
 
-        Arrays.fill(pages, null);
-
         flush();
+        if (prefaulter != null) prefaulter.close();
+        pages.close();
+        if (preallocator != null) preallocator.close(posMem.get());
         blocks.close();
     }
 
@@ -447,13 +669,72 @@ public class BlockedLongs implements AutoCloseable, Flushable {
         log.debug("flushed {}", file);
     }
 
+    /**
+     * Track the blocks written so that {@link #sync()} only writes back the dirty ranges of the file
+     *
+     * @param trackWrites whether to track writes
+     */
+    public void setTrackWrites(boolean trackWrites) {
+        pages.setTrackWrites(trackWrites);
+    }
+
+    /**
+     * Start writeback of the blocks written at the rate of a scheduler, rather than leaving them to the kernel's
+     * bursty dirty page writeback
+     *
+     * @param scheduler the writeback scheduler
+     */
+    public void setWriteback(WritebackScheduler scheduler) {
+        if (!readOnly) pages.setWriteback(scheduler);
+    }
+
+    /**
+     * Keep disk blocks allocated ahead of the blocks allocated in the file, so that it grows in large extents. Skipped
+     * with a warning where fallocate is not supported.
+     *
+     * @param headroomBytes the number of bytes to keep allocated ahead of the next block
+     */
+    public void setPreallocation(long headroomBytes) {
+        if (readOnly) return;
+        try {
+            preallocator = new Preallocator(file, headroomBytes, posMem::get);
+        } catch (IOException e) {
+            log.warn("Unable to preallocate {}", file, e);
+            return;
+        }
+        preallocator.advanced(posMem.get());
+    }
+
+    /**
+     * Fault in the pages ahead of the next block on a background thread, so that writers do not take the fault when
+     * they first write to a newly allocated block
+     *
+     * @param aheadBytes the number of bytes to keep faulted in ahead of the next block
+     */
+    public void setPrefault(long aheadBytes) {
+        if (readOnly) return;
+        prefaulter = new Prefaulter(pages, aheadBytes, posMem::get);
+        prefaulter.advanced(posMem.get());
+    }
+
+    /**
+     * Synchronously write the blocks and header to disk, making every append before the call durable
+     */
+    public void sync() {
+        if (readOnly) return;
+        flush();
+        pages.sync();
+        posBuf.force();
+        appendCountBuf.force();
+    }
+
     public void trim() {
         IntStream.range(0, LOCK_SIZE).forEach(index -> stripedLocks.getAt(index).lock());
         try {
             flush();
-            Arrays.fill(pages, null);
+            pages.unmapAll();
             currentPage.set(0);
-            ensurePage(0);
+            pages.preload(0);
         } finally {
             IntStream.range(0, LOCK_SIZE).forEach(index -> stripedLocks.getAt(index).unlock());
         }
@@ -461,54 +742,84 @@ public class BlockedLongs implements AutoCloseable, Flushable {
 
     private long readLong(long pos) {
         int pagePos = (int) ((pos - HEADER_BYTES) % (long) PAGE_SIZE);
-        return page(pos).getLong(pagePos);
+        MappedWindow page = page(pos);
+        try {
+            return page.buffer().getLong(pagePos);
+        } finally {
+            page.release();
+        }
     }
 
     protected void writeLong(long pos, long val) {
         int pagePos = (int) ((pos - HEADER_BYTES) % (long) PAGE_SIZE);
-        page(pos).putLong(pagePos, val);
+        MappedWindow page = page(pos);
+        try {
+            page.buffer().putLong(pagePos, val);
+            page.written(pagePos, 8);
+        } finally {
+            page.release();
+        }
+    }
+
+    /**
+     * Encode a varint straight into the blocks, where it may cross from one page into the next
+     *
+     * @param length the encoded length of the value from {@link Varint#computeSize(long)}
+     */
+    private void writeVarint(long pos, long value, int length) {
+        int offset = 0;
+        while (offset < length) {
+            int pagePos = (int) ((pos + offset - HEADER_BYTES) % (long) PAGE_SIZE);
+            int pageLength = Math.min(length - offset, PAGE_SIZE - pagePos);
+            MappedWindow page = page(pos + offset);
+            try {
+                ByteBuffer buffer = page.buffer();
+                for (int i = 0; i < pageLength; i++, offset++) {
+                    buffer.put(pagePos + i, (byte) (offset == length - 1 ? value : 128 | value & 127));
+                    value >>>= 7;
+                }
+                page.written(pagePos, pageLength);
+            } finally {
+                page.release();
+            }
+        }
     }
 
-    private MappedByteBuffer page(long pos) {
+    private void readBytes(long pos, byte[] bytes, int length) {
+        int offset = 0;
+        while (offset < length) {
+            int pagePos = (int) ((pos + offset - HEADER_BYTES) % (long) PAGE_SIZE);
+            int pageLength = Math.min(length - offset, PAGE_SIZE - pagePos);
+            MappedWindow page = page(pos + offset);
+            try {
+                ByteBuffer buffer = page.buffer().duplicate();
+                buffer.position(pagePos);
+                buffer.get(bytes, offset, pageLength);
+            } finally {
+                page.release();
+            }
+            offset += pageLength;
+        }
+    }
+
+    private MappedWindow page(long pos) {
         long pageIndexLong = (pos - HEADER_BYTES) / PAGE_SIZE;
         if (pageIndexLong > Integer.MAX_VALUE) {
             throw new RuntimeException("page index exceeded max int: " + pageIndexLong);
         }
         int pageIndex = (int) pageIndexLong;
 
-        MappedByteBuffer page = ensurePage(pageIndex);
         preloadPage(pageIndex + 1);
-        return page;
+        return pages.acquire(pageIndex);
     }
 
     private void preloadPage(int pageIndex) {
-        if (pageIndex < MAX_PAGES && pages[pageIndex] == null) {
+        if (pageIndex < MAX_PAGES && !pages.isMapped(pageIndex)) {
             // preload page
             int prev = currentPage.getAndUpdate(current -> Math.max(pageIndex, current));
             if (prev < pageIndex) {
-                ensurePage(pageIndex);
-            }
-        }
-    }
-
-    private MappedByteBuffer ensurePage(int pageIndex) {
-        MappedByteBuffer page = pages[pageIndex];
-        if (page == null) {
-            synchronized (pages) {
-                page = pages[pageIndex];
-                if (page == null) {
-                    long pageStart = (long) pageIndex * PAGE_SIZE + HEADER_BYTES;
-                    try {
-                        FileChannel.MapMode mapMode = readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
-                        page = blocks.map(mapMode, pageStart, PAGE_SIZE);
-                        // Could experiment with advise_random to reduce memory use or advise_willneed to hold more in page cache?
-                    } catch (IOException e) {
-                        throw new UncheckedIOException("unable to map page at page index " + pageIndex + " (" + pageStart + " + " + PAGE_SIZE + ") in " + file, e);
-                    }
-                    pages[pageIndex] = page;
-                }
+                pages.preload(pageIndex);
             }
         }
-        return page;
     }
 }
@@ -47,6 +47,12 @@ public interface CounterStore extends ReadOnlyCounterStore, RegisteredFlushable
     @Override
     void flush();
 
+    /**
+     * Flush and then sync every change before the call to disk. Will not
+     * return until the sync is completed.
+     */
+    void sync();
+
     /**
      * Trim flushes any pending changes and then close cached resources to
      * reduce heap consumption
@@ -28,7 +28,10 @@ public class CounterStorePartition extends Partition {
                         builder.getLookupHashCount(),
                         builder.getTargetBufferSize()
                 ),
-                false
+                false,
+                true,
+                builder.getMetadataPageBackend(),
+                builder.getIndexResidencyPolicy()
         );
         VirtualPageFile keys = new VirtualPageFile(
                 keysPath(partitionDir),
@@ -39,7 +42,10 @@ public class CounterStorePartition extends Partition {
                         builder.getLookupHashCount(),
                         builder.getTargetBufferSize()
                 ),
-                false
+                false,
+                true,
+                builder.getLookupPageBackend(),
+                builder.getIndexResidencyPolicy()
         );
 
         return new CounterStorePartition(keys, metadata, false, builder);
@@ -60,7 +66,10 @@ public class CounterStorePartition extends Partition {
                         builder.getLookupHashCount(),
                         builder.getTargetBufferSize()
                 ),
-                readOnly
+                readOnly,
+                true,
+                builder.getMetadataPageBackend(),
+                builder.getIndexResidencyPolicy()
         );
         VirtualPageFile keys = new VirtualPageFile(
                 keysPath(partitiondDir),
@@ -71,7 +80,11 @@ public class CounterStorePartition extends Partition {
                         builder.getLookupHashCount(),
                         builder.getTargetBufferSize()
                 ),
-                readOnly);
+                readOnly,
+                true,
+                builder.getLookupPageBackend(),
+                builder.getIndexResidencyPolicy()
+        );
 
         return new CounterStorePartition(keys, metadata, readOnly, builder);
     }
@@ -101,6 +114,14 @@ public class CounterStorePartition extends Partition {
         return lookups[hash].getValue(lookupKey);
     }
 
+    public Map<String, Long> getMany(Collection<String> keys) {
+        return lookupMany(keys, (hash, value) -> value);
+    }
+
+    Iterator<Map.Entry<LookupKey, Long>> sortedScan(LookupKey fromKey, LookupKey toKey) {
+        return sortedEntries(fromKey, toKey, (hash, value) -> value);
+    }
+
     public Stream<Map.Entry<String, Long>> scan() {
         return IntStream.range(0, hashCount)
                 .parallel()
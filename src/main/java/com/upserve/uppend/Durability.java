@@ -0,0 +1,21 @@
+package com.upserve.uppend;
+
+/**
+ * When writes to a store are synced to disk. Every mode survives a process crash once a write returns, since writes
+ * go to the page cache; the modes differ in what survives a crash of the host.
+ */
+public enum Durability {
+    /**
+     * Writes are left to the kernel's writeback and to close
+     */
+    NONE,
+    /**
+     * Writes are synced by a background thread at a fixed interval, bounding what a host crash can lose
+     */
+    PERIODIC,
+    /**
+     * Each write waits until it is synced. Concurrent writers share a sync: a background thread syncs everything
+     * written since its last sync in one batch and then releases every writer waiting on that batch.
+     */
+    GROUP_COMMIT
+}
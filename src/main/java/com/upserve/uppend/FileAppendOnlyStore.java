@@ -1,14 +1,16 @@
 package com.upserve.uppend;
 
-import com.upserve.uppend.lookup.LookupData;
+import com.google.common.collect.Maps;
+import com.upserve.uppend.lookup.*;
 import com.upserve.uppend.metrics.*;
 import com.upserve.uppend.metrics.LookupDataMetrics;
 import org.slf4j.Logger;
 
 import java.lang.invoke.MethodHandles;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.*;
-import java.util.stream.Stream;
+import java.util.stream.*;
 
 public class FileAppendOnlyStore extends FileStore<AppendStorePartition> implements AppendOnlyStore {
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -19,6 +21,8 @@ public class FileAppendOnlyStore extends FileStore<AppendStorePartition> impleme
     final BlobStoreMetrics.Adders blobStoreMetricsAdders;
     final BlockedLongMetrics.Adders blockedLongMetricsAdders;
 
+    private final boolean numberedPartitions;
+
     FileAppendOnlyStore(boolean readOnly, AppendOnlyStoreBuilder builder) {
         super(readOnly, builder);
 
@@ -28,6 +32,7 @@ public class FileAppendOnlyStore extends FileStore<AppendStorePartition> impleme
 
         blobStoreMetricsAdders = builder.getBlobStoreMetricsAdders();
         blockedLongMetricsAdders = builder.getBlockedLongMetricsAdders();
+        numberedPartitions = builder.getPartitionCount() > 0;
     }
 
     @Override
@@ -46,7 +51,30 @@ public class FileAppendOnlyStore extends FileStore<AppendStorePartition> impleme
     public void append(String partitionEntropy, String key, byte[] value) {
         log.trace("appending for partition '{}', key '{}'", partitionEntropy, key);
         if (readOnly) throw new RuntimeException("Can not append to store opened in read only mode:" + dir);
-        getOrCreate(partitionEntropy).append(key, value);
+        final AppendStorePartition partition = getOrCreate(partitionEntropy);
+        partition.append(key, value);
+        written(partition);
+    }
+
+    @Override
+    public CompletableFuture<Void> appendDurable(String partitionEntropy, String key, byte[] value) {
+        log.trace("appending durable for partition '{}', key '{}'", partitionEntropy, key);
+        if (readOnly) throw new RuntimeException("Can not append to store opened in read only mode:" + dir);
+        final AppendStorePartition partition = getOrCreate(partitionEntropy);
+        partition.append(key, value);
+        return writtenFuture(partition);
+    }
+
+    @Override
+    public long appendWithHandle(String partitionEntropy, String key, byte[] value) {
+        log.trace("appending with handle for partition '{}', key '{}'", partitionEntropy, key);
+        if (readOnly) throw new RuntimeException("Can not append to store opened in read only mode:" + dir);
+        checkNumberedPartitions();
+        final String partition = partitionHash(partitionEntropy);
+        final AppendStorePartition appendStorePartition = partitionMap.computeIfAbsent(partition, getCreatePartitionFunction());
+        final long handle = appendStorePartition.appendWithHandle(ValueHandles.partitionNumber(partition), key, value);
+        written(appendStorePartition);
+        return handle;
     }
 
     @Override
@@ -66,6 +94,16 @@ public class FileAppendOnlyStore extends FileStore<AppendStorePartition> impleme
                 .orElse(Stream.empty());
     }
 
+    @Override
+    public Map<String, Stream<byte[]>> readMany(String partitionEntropy, Collection<String> keys) {
+        log.trace("reading {} keys in partition {}", keys.size(), partitionEntropy);
+        return getIfPresent(partitionEntropy)
+                .map(partitionObject -> partitionObject.readMany(keys))
+                .orElseGet(() -> keys.stream()
+                        .distinct()
+                        .collect(Collectors.toMap(Function.identity(), key -> Stream.empty())));
+    }
+
     public byte[] readLast(String partitionEntropy, String key) {
         log.trace("reading last in partition {} with key {}", partitionEntropy, key);
         return getIfPresent(partitionEntropy)
@@ -73,6 +111,47 @@ public class FileAppendOnlyStore extends FileStore<AppendStorePartition> impleme
                 .orElse(null);
     }
 
+    @Override
+    public byte[] readHandle(long handle) {
+        log.trace("reading handle {}", handle);
+        checkNumberedPartitions();
+        return handlePartition(handle)
+                .map(partitionObject -> partitionObject.readHandle(handle))
+                .orElse(null);
+    }
+
+    @Override
+    public byte[][] readHandles(long[] handles) {
+        log.trace("reading {} handles", handles.length);
+        checkNumberedPartitions();
+        final byte[][] values = new byte[handles.length][];
+        // Handles of the same partition and virtual file are read together
+        Map<Long, List<Integer>> groups = IntStream.range(0, handles.length)
+                .boxed()
+                .collect(Collectors.groupingBy(index -> handles[index] >>> ValueHandles.POSITION_BITS));
+        groups.values().forEach(indexes -> {
+            final long[] groupHandles = indexes.stream().mapToLong(index -> handles[index]).toArray();
+            handlePartition(groupHandles[0]).ifPresent(partitionObject -> {
+                final byte[][] groupValues = partitionObject.readHandles(ValueHandles.virtualFileNumber(groupHandles[0]), groupHandles);
+                for (int i = 0; i < groupValues.length; i++) {
+                    values[indexes.get(i)] = groupValues[i];
+                }
+            });
+        });
+        return values;
+    }
+
+    private Optional<AppendStorePartition> handlePartition(long handle) {
+        return Optional.ofNullable(partitionMap.computeIfAbsent(
+                ValueHandles.partitionName(ValueHandles.partition(handle)),
+                getOpenPartitionFunction()
+        ));
+    }
+
+    private void checkNumberedPartitions() {
+        if (!numberedPartitions) throw new IllegalStateException("Value handles need a store with a partition count: " + name);
+    }
+
     @Override
     public Stream<String> keys() {
         log.trace("getting keys for {}", getName());
@@ -80,12 +159,64 @@ public class FileAppendOnlyStore extends FileStore<AppendStorePartition> impleme
                 .flatMap(AppendStorePartition::keys);
     }
 
+    @Override
+    public Stream<String> keysSorted() {
+        return keys(null, null);
+    }
+
+    @Override
+    public Stream<String> keys(String fromKey, String toKey) {
+        log.trace("getting sorted keys in {} from {} to {}", getName(), fromKey, toKey);
+        LookupKey fromLookupKey = fromKey == null ? null : new LookupKey(fromKey);
+        LookupKey toLookupKey = toKey == null ? null : new LookupKey(toKey);
+        return mergePartitions(partition -> partition.sortedKeys(fromLookupKey, toLookupKey), LookupKey::compareTo)
+                .map(LookupKey::string);
+    }
+
+    @Override
+    public Stream<Map.Entry<String, Stream<byte[]>>> scanPrefix(String prefix) {
+        LookupKey fromLookupKey = new LookupKey(prefix);
+        LookupKey toLookupKey = fromLookupKey.prefixUpperBound();
+        return mergePartitions(partition -> partition.sortedScan(fromLookupKey, toLookupKey), Map.Entry.comparingByKey())
+                .map(entry -> Maps.immutableEntry(entry.getKey().string(), entry.getValue()));
+    }
+
     @Override
     public Stream<Map.Entry<String, Stream<byte[]>>> scan() {
         return streamPartitions()
                 .flatMap(AppendStorePartition::scan);
     }
 
+    @Override
+    public Stream<Map.Entry<String, byte[]>> scanPhysical() {
+        return streamPartitions()
+                .flatMap(AppendStorePartition::scanPhysical);
+    }
+
+    @Override
+    public List<ScanCursor> scanCursors(int count) {
+        if (count < 1) throw new IllegalArgumentException("Cursor count must be positive: " + count);
+
+        List<List<AppendStorePartition>> partitions = new ArrayList<>(count);
+        List<List<Integer>> hashes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            partitions.add(new ArrayList<>());
+            hashes.add(new ArrayList<>());
+        }
+
+        int bucket = 0;
+        for (AppendStorePartition partition : streamPartitions().collect(Collectors.toList())) {
+            for (int hash = 0; hash < partition.hashCount; hash++, bucket++) {
+                partitions.get(bucket % count).add(partition);
+                hashes.get(bucket % count).add(hash);
+            }
+        }
+
+        return IntStream.range(0, count)
+                .mapToObj(i -> new AppendStoreScanCursor(partitions.get(i), hashes.get(i)))
+                .collect(Collectors.toList());
+    }
+
     @Override
     public void scan(BiConsumer<String, Stream<byte[]>> callback) {
         streamPartitions()
@@ -140,4 +271,9 @@ public class FileAppendOnlyStore extends FileStore<AppendStorePartition> impleme
     public LongBlobStoreMetrics getLongBlobStoreMetrics() {
         return super.getLongBlobStoreMetrics();
     }
+
+    @Override
+    public SyncMetrics getSyncMetrics() {
+        return super.getSyncMetrics();
+    }
 }
@@ -1,5 +1,7 @@
 package com.upserve.uppend;
 
+import com.google.common.collect.Maps;
+import com.upserve.uppend.lookup.LookupKey;
 import com.upserve.uppend.metrics.*;
 import org.slf4j.Logger;
 
@@ -30,7 +32,10 @@ public class FileCounterStore extends FileStore<CounterStorePartition> implement
     public Long set(String partitionEntropy, String key, long value) {
         log.trace("setting {}={} in partition '{}'", key, value, partitionEntropy);
         if (readOnly) throw new RuntimeException("Can not set value of counter store opened in read only mode:" + dir);
-        return getOrCreate(partitionEntropy).set(key, value);
+        final CounterStorePartition partition = getOrCreate(partitionEntropy);
+        final Long previous = partition.set(key, value);
+        written(partition);
+        return previous;
     }
 
     @Override
@@ -38,7 +43,10 @@ public class FileCounterStore extends FileStore<CounterStorePartition> implement
         log.trace("incrementing by {} key '{}' in partition '{}'", delta, key, partitionEntropy);
         if (readOnly)
             throw new RuntimeException("Can not increment value of counter store opened in read only mode:" + dir);
-        return getOrCreate(partitionEntropy).increment(key, delta);
+        final CounterStorePartition partition = getOrCreate(partitionEntropy);
+        final long result = partition.increment(key, delta);
+        written(partition);
+        return result;
     }
 
     @Override
@@ -47,6 +55,12 @@ public class FileCounterStore extends FileStore<CounterStorePartition> implement
         return getIfPresent(partitionEntropy).map(partitionObject -> partitionObject.get(key)).orElse(null);
     }
 
+    @Override
+    public Map<String, Long> getMany(String partitionEntropy, Collection<String> keys) {
+        log.trace("getting values for {} keys in partition '{}'", keys.size(), partitionEntropy);
+        return getIfPresent(partitionEntropy).map(partitionObject -> partitionObject.getMany(keys)).orElse(Collections.emptyMap());
+    }
+
     @Override
     public Stream<String> keys() {
         log.trace("getting keys in {}", getName());
@@ -54,6 +68,28 @@ public class FileCounterStore extends FileStore<CounterStorePartition> implement
                 .flatMap(CounterStorePartition::keys);
     }
 
+    @Override
+    public Stream<String> keysSorted() {
+        return keys(null, null);
+    }
+
+    @Override
+    public Stream<String> keys(String fromKey, String toKey) {
+        log.trace("getting sorted keys in {} from {} to {}", getName(), fromKey, toKey);
+        LookupKey fromLookupKey = fromKey == null ? null : new LookupKey(fromKey);
+        LookupKey toLookupKey = toKey == null ? null : new LookupKey(toKey);
+        return mergePartitions(partition -> partition.sortedKeys(fromLookupKey, toLookupKey), LookupKey::compareTo)
+                .map(LookupKey::string);
+    }
+
+    @Override
+    public Stream<Map.Entry<String, Long>> scanPrefix(String prefix) {
+        LookupKey fromLookupKey = new LookupKey(prefix);
+        LookupKey toLookupKey = fromLookupKey.prefixUpperBound();
+        return mergePartitions(partition -> partition.sortedScan(fromLookupKey, toLookupKey), Map.Entry.comparingByKey())
+                .map(entry -> Maps.immutableEntry(entry.getKey().string(), entry.getValue()));
+    }
+
     @Override
     public Stream<Map.Entry<String, Long>> scan() {
         return streamPartitions()
@@ -98,4 +134,9 @@ public class FileCounterStore extends FileStore<CounterStorePartition> implement
     public MutableBlobStoreMetrics getMutableBlobStoreMetrics(){
         return super.getMutableBlobStoreMetrics();
     }
+
+    @Override
+    public SyncMetrics getSyncMetrics(){
+        return super.getSyncMetrics();
+    }
 }
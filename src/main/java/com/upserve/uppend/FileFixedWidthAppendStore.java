@@ -0,0 +1,127 @@
+package com.upserve.uppend;
+
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.*;
+
+/**
+ * Stores each value as the fewest longs which hold its bytes, appended together so that the values of a key are a
+ * whole number of longs apart in its blocks. Reads pack the values back to back at a stride of the value width.
+ */
+public class FileFixedWidthAppendStore extends FileStore<LongAppendStorePartition> implements FixedWidthAppendStore {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Function<String, LongAppendStorePartition> openPartitionFunction;
+    private final Function<String, LongAppendStorePartition> createPartitionFunction;
+
+    private final int valueWidth;
+    private final int longsPerValue;
+
+    FileFixedWidthAppendStore(boolean readOnly, FixedWidthAppendStoreBuilder builder) {
+        super(readOnly, builder);
+
+        valueWidth = builder.getValueWidth();
+        longsPerValue = (valueWidth + 7) / 8;
+        final int longsPerBlock = builder.getValuesPerBlock() * longsPerValue;
+
+        openPartitionFunction = partitionKey -> LongAppendStorePartition.openPartition(partitionsDir, partitionKey, readOnly, builder, longsPerBlock, builder.getBlockedLongMetricsAdders());
+        createPartitionFunction = partitionKey -> LongAppendStorePartition.createPartition(partitionsDir, partitionKey, builder, longsPerBlock, builder.getBlockedLongMetricsAdders());
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getValueWidth() {
+        return valueWidth;
+    }
+
+    @Override
+    public void append(String partitionEntropy, String key, byte[] value) {
+        log.trace("appending for partition '{}', key '{}'", partitionEntropy, key);
+        if (readOnly) throw new RuntimeException("Can not append to store opened in read only mode:" + dir);
+        if (value.length != valueWidth) {
+            throw new IllegalArgumentException("Value of " + value.length + " bytes does not match the value width " + valueWidth + " of store " + name);
+        }
+        final LongAppendStorePartition partition = getOrCreate(partitionEntropy);
+        partition.append(key, toLongs(value));
+        written(partition);
+    }
+
+    @Override
+    public ByteBuffer read(String partitionEntropy, String key) {
+        log.trace("reading in partition {} with key {}", partitionEntropy, key);
+        return getIfPresent(partitionEntropy)
+                .map(partitionObject -> toValues(partitionObject.read(key)))
+                .orElseGet(() -> ByteBuffer.allocate(0));
+    }
+
+    @Override
+    public Map<String, ByteBuffer> readMany(String partitionEntropy, Collection<String> keys) {
+        log.trace("reading {} keys in partition {}", keys.size(), partitionEntropy);
+        return getIfPresent(partitionEntropy)
+                .map(partitionObject -> partitionObject.readMany(keys).entrySet().stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, entry -> toValues(entry.getValue()))))
+                .orElse(Collections.emptyMap());
+    }
+
+    @Override
+    public Stream<String> keys() {
+        log.trace("getting keys for {}", getName());
+        return streamPartitions()
+                .flatMap(LongAppendStorePartition::keys);
+    }
+
+    @Override
+    public Stream<Map.Entry<String, ByteBuffer>> scan() {
+        return streamPartitions()
+                .flatMap(LongAppendStorePartition::scan)
+                .map(entry -> Maps.immutableEntry(entry.getKey(), toValues(entry.getValue())));
+    }
+
+    @Override
+    public long keyCount() {
+        return streamPartitions()
+                .mapToLong(LongAppendStorePartition::keyCount)
+                .sum();
+    }
+
+    private long[] toLongs(byte[] value) {
+        ByteBuffer buffer = ByteBuffer.allocate(longsPerValue * 8);
+        buffer.put(value).clear();
+        long[] longs = new long[longsPerValue];
+        buffer.asLongBuffer().get(longs);
+        return longs;
+    }
+
+    private ByteBuffer toValues(long[] longs) {
+        final int count = longs.length / longsPerValue;
+        ByteBuffer padded = ByteBuffer.allocate(count * longsPerValue * 8);
+        padded.asLongBuffer().put(longs, 0, count * longsPerValue);
+        if (valueWidth == longsPerValue * 8) return padded;
+
+        ByteBuffer values = ByteBuffer.allocate(count * valueWidth);
+        for (int i = 0; i < count; i++) {
+            values.put(padded.array(), i * longsPerValue * 8, valueWidth);
+        }
+        values.flip();
+        return values;
+    }
+
+    @Override
+    Function<String, LongAppendStorePartition> getOpenPartitionFunction() {
+        return openPartitionFunction;
+    }
+
+    @Override
+    Function<String, LongAppendStorePartition> getCreatePartitionFunction() {
+        return createPartitionFunction;
+    }
+}
@@ -0,0 +1,85 @@
+package com.upserve.uppend;
+
+import org.slf4j.Logger;
+
+import java.lang.invoke.MethodHandles;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.*;
+
+public class FileLongAppendStore extends FileStore<LongAppendStorePartition> implements LongAppendStore {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Function<String, LongAppendStorePartition> openPartitionFunction;
+    private final Function<String, LongAppendStorePartition> createPartitionFunction;
+
+    FileLongAppendStore(boolean readOnly, LongAppendStoreBuilder builder) {
+        super(readOnly, builder);
+
+        openPartitionFunction = partitionKey -> LongAppendStorePartition.openPartition(partitionsDir, partitionKey, readOnly, builder, builder.getValuesPerBlock(), builder.getBlockedLongMetricsAdders());
+        createPartitionFunction = partitionKey -> LongAppendStorePartition.createPartition(partitionsDir, partitionKey, builder, builder.getValuesPerBlock(), builder.getBlockedLongMetricsAdders());
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void append(String partitionEntropy, String key, long value) {
+        log.trace("appending for partition '{}', key '{}'", partitionEntropy, key);
+        if (readOnly) throw new RuntimeException("Can not append to store opened in read only mode:" + dir);
+        final LongAppendStorePartition partition = getOrCreate(partitionEntropy);
+        partition.append(key, value);
+        written(partition);
+    }
+
+    @Override
+    public LongStream read(String partitionEntropy, String key) {
+        log.trace("reading in partition {} with key {}", partitionEntropy, key);
+        return getIfPresent(partitionEntropy)
+                .map(partitionObject -> Arrays.stream(partitionObject.read(key)))
+                .orElse(LongStream.empty());
+    }
+
+    @Override
+    public Map<String, LongStream> readMany(String partitionEntropy, Collection<String> keys) {
+        log.trace("reading {} keys in partition {}", keys.size(), partitionEntropy);
+        Map<String, long[]> values = getIfPresent(partitionEntropy)
+                .map(partitionObject -> partitionObject.readMany(keys))
+                .orElse(Collections.emptyMap());
+        return keys.stream()
+                .distinct()
+                .collect(Collectors.toMap(Function.identity(), key -> Arrays.stream(values.getOrDefault(key, new long[0]))));
+    }
+
+    @Override
+    public Stream<String> keys() {
+        log.trace("getting keys for {}", getName());
+        return streamPartitions()
+                .flatMap(LongAppendStorePartition::keys);
+    }
+
+    @Override
+    public Stream<Map.Entry<String, long[]>> scan() {
+        return streamPartitions()
+                .flatMap(LongAppendStorePartition::scan);
+    }
+
+    @Override
+    public long keyCount() {
+        return streamPartitions()
+                .mapToLong(LongAppendStorePartition::keyCount)
+                .sum();
+    }
+
+    @Override
+    Function<String, LongAppendStorePartition> getOpenPartitionFunction() {
+        return openPartitionFunction;
+    }
+
+    @Override
+    Function<String, LongAppendStorePartition> getCreatePartitionFunction() {
+        return createPartitionFunction;
+    }
+}
@@ -3,7 +3,7 @@ package com.upserve.uppend;
 import com.google.common.hash.*;
 import com.upserve.uppend.lookup.LookupData;
 import com.upserve.uppend.metrics.*;
-import com.upserve.uppend.util.SafeDeleting;
+import com.upserve.uppend.util.*;
 import org.slf4j.Logger;
 
 import java.io.*;
@@ -15,8 +15,8 @@ import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Function;
-import java.util.stream.Stream;
+import java.util.function.*;
+import java.util.stream.*;
 
 abstract class FileStore<T extends Partition> implements AutoCloseable, RegisteredFlushable, Trimmable {
     static final int MAX_NUM_PARTITIONS = 9999;
@@ -40,6 +40,10 @@ abstract class FileStore<T extends Partition> implements AutoCloseable, Register
     final LookupDataMetrics.Adders lookupDataMetricsAdders;
     final LongBlobStoreMetrics.Adders longBlobStoreMetricsAdders;
     final MutableBlobStoreMetrics.Adders mutableBlobStoreMetricsAdders;
+    final SyncMetrics.Adders syncMetricsAdders;
+
+    final Durability durability;
+    private final StoreSyncer syncer;
 
     final AtomicBoolean isClosed;
 
@@ -107,6 +111,19 @@ abstract class FileStore<T extends Partition> implements AutoCloseable, Register
         this.lookupDataMetricsAdders = builder.getLookupDataMetricsAdders();
         this.longBlobStoreMetricsAdders = builder.getLongBlobStoreMetricsAdders();
         this.mutableBlobStoreMetricsAdders = builder.getMutableBlobStoreMetricsAdders();
+        this.syncMetricsAdders = builder.getSyncMetricsAdders();
+
+        durability = readOnly ? Durability.NONE : builder.getDurability();
+        switch (durability) {
+            case PERIODIC:
+                syncer = new StoreSyncer(name, durability, TimeUnit.MILLISECONDS.toNanos(builder.getSyncIntervalMillis()), this::syncWritten, syncMetricsAdders);
+                break;
+            case GROUP_COMMIT:
+                syncer = new StoreSyncer(name, durability, TimeUnit.MICROSECONDS.toNanos(builder.getGroupCommitDelayMicros()), this::syncWritten, syncMetricsAdders);
+                break;
+            default:
+                syncer = null;
+        }
     }
 
     String partitionHash(String partition) {
@@ -155,6 +172,22 @@ abstract class FileStore<T extends Partition> implements AutoCloseable, Register
         return partitionMap.values().parallelStream();
     }
 
+    /**
+     * Merge the sorted iterators of every partition into a single sorted sequential stream
+     *
+     * @param partitionIterator function returning the sorted iterator for a partition
+     * @param comparator the sort order of the partition iterators
+     * @param <V> the type of the values
+     * @return a sorted sequential stream of the values of all partitions
+     */
+    <V> Stream<V> mergePartitions(Function<T, Iterator<V>> partitionIterator, Comparator<V> comparator) {
+        List<Iterator<V>> iterators = streamPartitions().map(partitionIterator).collect(Collectors.toList());
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(new MergingIterator<>(comparator, iterators), Spliterator.ORDERED | Spliterator.NONNULL),
+                false
+        );
+    }
+
     @Override
     public void flush() {
         // Flush lookups, then blocks, then blobs, since this is the access order of a read.
@@ -178,6 +211,63 @@ abstract class FileStore<T extends Partition> implements AutoCloseable, Register
         log.debug("Flushed!");
     }
 
+    /**
+     * Synchronously write everything written to the store before the call to disk. The blocks and blobs of each
+     * partition are synced before the lookups which point to them, so a durable key never refers to lost values.
+     */
+    public void sync() {
+        if (readOnly) throw new RuntimeException("Can not sync a store opened in read only mode:" + dir);
+        syncPartitions(T::sync);
+    }
+
+    /**
+     * Sync only the partitions written since their last sync, for the periodic and group commit syncs of the store
+     */
+    private void syncWritten() {
+        syncPartitions(T::syncIfWritten);
+    }
+
+    private void syncPartitions(Consumer<T> partitionSync) {
+        ForkJoinTask task = AutoFlusher.flusherWorkPool.submit(() ->
+                partitionMap.values().parallelStream().forEach(partitionSync)
+        );
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Sync interrupted: " + dir, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Partition map sync failed with", e);
+        }
+    }
+
+    /**
+     * Note a completed write to a partition. For group commit this waits until the write is durable.
+     *
+     * @param partition the partition written
+     */
+    void written(T partition) {
+        if (syncer == null) return;
+        partition.written();
+        if (durability == Durability.GROUP_COMMIT) {
+            syncer.awaitWritten();
+        } else {
+            syncer.written();
+        }
+    }
+
+    /**
+     * Note a completed write without waiting for it to be durable
+     *
+     * @param partition the partition written
+     * @return a future which completes when the write is durable, already complete if the store has no durability
+     */
+    CompletableFuture<Void> writtenFuture(T partition) {
+        if (syncer == null) return CompletableFuture.completedFuture(null);
+        partition.written();
+        return syncer.written();
+    }
+
     @Override
     public void trim(){
         log.debug("Trimming!");
@@ -228,6 +318,7 @@ abstract class FileStore<T extends Partition> implements AutoCloseable, Register
         }
 
         if (!readOnly && flushDelaySeconds > 0) AutoFlusher.deregister(this);
+        if (syncer != null) syncer.close();
 
         closePartitions();
 
@@ -284,6 +375,10 @@ abstract class FileStore<T extends Partition> implements AutoCloseable, Register
         return new MutableBlobStoreMetrics(mutableBlobStoreMetricsAdders, mutableBlobStoreAllocatedPagesStatistics);
     }
 
+    public SyncMetrics getSyncMetrics() {
+        return new SyncMetrics(syncMetricsAdders);
+    }
+
     public LongBlobStoreMetrics getLongBlobStoreMetrics() {
         LongSummaryStatistics longBlobStoreAllocatedPagesStatistics = streamPartitions()
                 .mapToLong(partition -> partition.longKeyFile.getAllocatedPageCount())
@@ -1,7 +1,7 @@
 package com.upserve.uppend;
 
 import com.codahale.metrics.MetricRegistry;
-import com.upserve.uppend.blobs.NativeIO;
+import com.upserve.uppend.blobs.*;
 import com.upserve.uppend.metrics.*;
 
 import java.nio.file.Path;
@@ -29,6 +29,43 @@ public class FileStoreBuilder<T extends FileStoreBuilder<T>> {
 
     private int targetBufferSize = TARGET_PRODUCTION_BUFFER_SIZE;
 
+    public static final PageBackend DEFAULT_PAGE_BACKEND = PageBackend.MAPPED;
+    private PageBackend lookupPageBackend = DEFAULT_PAGE_BACKEND;
+    private PageBackend metadataPageBackend = DEFAULT_PAGE_BACKEND;
+
+    // Index residency options
+    public static final long DEFAULT_INDEX_MEMORY_BUDGET = 256L * 1024 * 1024;
+    private boolean indexHugePages = false;
+    private boolean indexPrefault = false;
+    private boolean indexLocking = false;
+    private long indexMemoryBudget = DEFAULT_INDEX_MEMORY_BUDGET;
+    private ResidencyPolicy indexResidencyPolicy = null;
+
+    // Durability options
+    public static final Durability DEFAULT_DURABILITY = Durability.NONE;
+    public static final int DEFAULT_SYNC_INTERVAL_MILLIS = 1000;
+    public static final int DEFAULT_GROUP_COMMIT_DELAY_MICROS = 0;
+    private Durability durability = DEFAULT_DURABILITY;
+    private int syncIntervalMillis = DEFAULT_SYNC_INTERVAL_MILLIS;
+    private int groupCommitDelayMicros = DEFAULT_GROUP_COMMIT_DELAY_MICROS;
+
+    // Writeback options
+    public static final int DEFAULT_WRITEBACK_INTERVAL_MILLIS = 0; // Off by default!
+    public static final long DEFAULT_WRITEBACK_BYTES_PER_SECOND = 256L * 1024 * 1024;
+    private int writebackIntervalMillis = DEFAULT_WRITEBACK_INTERVAL_MILLIS;
+    private long writebackBytesPerSecond = DEFAULT_WRITEBACK_BYTES_PER_SECOND;
+    private WritebackScheduler writebackScheduler = null;
+
+    // Preallocation options
+    public static final long DEFAULT_PREALLOCATION_HEADROOM_BYTES = 0; // Off by default!
+    private long preallocationHeadroomBytes = DEFAULT_PREALLOCATION_HEADROOM_BYTES;
+
+    // Prefault options
+    public static final long DEFAULT_PREFAULT_AHEAD_BYTES = 0; // Off by default!
+    private long prefaultAheadBytes = DEFAULT_PREFAULT_AHEAD_BYTES;
+
+    private boolean lazyPositionPublishing = false;
+
     private String writeLockContentString = null;
 
     // Store Options
@@ -46,6 +83,7 @@ public class FileStoreBuilder<T extends FileStoreBuilder<T>> {
     private final LookupDataMetrics.Adders lookupDataMetricsAdders = new LookupDataMetrics.Adders();
     private final MutableBlobStoreMetrics.Adders mutableBlobStoreMetricsAdders = new MutableBlobStoreMetrics.Adders();
     private final LongBlobStoreMetrics.Adders longBlobStoreMetricsAdders = new LongBlobStoreMetrics.Adders();
+    private final SyncMetrics.Adders syncMetricsAdders = new SyncMetrics.Adders();
 
 
     // Long lookup Cache Options
@@ -95,6 +133,202 @@ public class FileStoreBuilder<T extends FileStoreBuilder<T>> {
         return (T) this;
     }
 
+    /**
+     * Set the I/O used for the pages of the lookup key files
+     *
+     * @param lookupPageBackend mapped, positional file channel or direct I/O pages
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public T withLookupPageBackend(PageBackend lookupPageBackend) {
+        this.lookupPageBackend = lookupPageBackend;
+        return (T) this;
+    }
+
+    /**
+     * Set the I/O used for the pages of the lookup metadata files
+     *
+     * @param metadataPageBackend mapped, positional file channel or direct I/O pages
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public T withMetadataPageBackend(PageBackend metadataPageBackend) {
+        this.metadataPageBackend = metadataPageBackend;
+        return (T) this;
+    }
+
+    /**
+     * Advise the mapped regions of the index files (lookup keys, lookup metadata, their page tables and the blocked
+     * longs of an append store) to use transparent huge pages to reduce TLB misses
+     *
+     * @param indexHugePages whether to advise huge pages
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public T withIndexHugePages(boolean indexHugePages) {
+        this.indexHugePages = indexHugePages;
+        return (T) this;
+    }
+
+    /**
+     * Fault in the mapped regions of the index files when they are mapped, within the index memory budget
+     *
+     * @param indexPrefault whether to pre-fault the index
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public T withIndexPrefault(boolean indexPrefault) {
+        this.indexPrefault = indexPrefault;
+        return (T) this;
+    }
+
+    /**
+     * Lock the mapped regions of the index files into memory, within the index memory budget, so that they are not
+     * evicted under memory pressure. The budget must fit in RLIMIT_MEMLOCK.
+     *
+     * @param indexLocking whether to mlock the index
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public T withIndexLocking(boolean indexLocking) {
+        this.indexLocking = indexLocking;
+        return (T) this;
+    }
+
+    /**
+     * Set the number of bytes of index which may be pre-faulted or locked for the store
+     *
+     * @param indexMemoryBudget the budget in bytes
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public T withIndexMemoryBudget(long indexMemoryBudget) {
+        if (indexMemoryBudget < 0) throw new IllegalArgumentException("Index memory budget must not be negative: " + indexMemoryBudget);
+        this.indexMemoryBudget = indexMemoryBudget;
+        return (T) this;
+    }
+
+    /**
+     * Set when writes are synced to disk. With periodic durability a background thread syncs the store at the sync
+     * interval. With group commit each write waits for a background thread which syncs all waiting writes in one
+     * batch, msyncing only the ranges written since the last sync. New keys are written to the lookups by each sync,
+     * so group commit is cheapest when most writes are to existing keys.
+     *
+     * @param durability none, periodic or group commit
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public T withDurability(Durability durability) {
+        if (durability == null) throw new NullPointerException("null durability");
+        this.durability = durability;
+        return (T) this;
+    }
+
+    /**
+     * Set the interval between syncs for periodic durability
+     *
+     * @param syncIntervalMillis the interval in milliseconds
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public T withSyncIntervalMillis(int syncIntervalMillis) {
+        if (syncIntervalMillis < 1) throw new IllegalArgumentException("Sync interval must be positive: " + syncIntervalMillis);
+        this.syncIntervalMillis = syncIntervalMillis;
+        return (T) this;
+    }
+
+    /**
+     * Set how long a group commit waits after the first write of a batch for other writers to join it. Waiting makes
+     * batches larger and syncs fewer at the cost of latency for each write.
+     *
+     * @param groupCommitDelayMicros the delay in microseconds, or 0 to sync as soon as the previous sync completes
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public T withGroupCommitDelayMicros(int groupCommitDelayMicros) {
+        if (groupCommitDelayMicros < 0) throw new IllegalArgumentException("Group commit delay must not be negative: " + groupCommitDelayMicros);
+        this.groupCommitDelayMicros = groupCommitDelayMicros;
+        return (T) this;
+    }
+
+    /**
+     * Start writeback of the pages written to the mapped files of the store in the background at a steady rate, so
+     * that dirty pages do not build up until the kernel writes them back in bursts which stall writers
+     *
+     * @param writebackIntervalMillis the time between rounds of writeback, or 0 to leave writeback to the kernel
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public T withWritebackIntervalMillis(int writebackIntervalMillis) {
+        if (writebackIntervalMillis < 0) throw new IllegalArgumentException("Writeback interval must not be negative: " + writebackIntervalMillis);
+        this.writebackIntervalMillis = writebackIntervalMillis;
+        return (T) this;
+    }
+
+    /**
+     * Set the rate of background writeback, shared by every file of the store
+     *
+     * @param writebackBytesPerSecond the rate in bytes per second
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public T withWritebackBytesPerSecond(long writebackBytesPerSecond) {
+        if (writebackBytesPerSecond < 1) throw new IllegalArgumentException("Writeback rate must be positive: " + writebackBytesPerSecond);
+        this.writebackBytesPerSecond = writebackBytesPerSecond;
+        return (T) this;
+    }
+
+    /**
+     * Keep disk blocks allocated with fallocate ahead of the end of each growing file of the store, so that files grow
+     * in large contiguous extents instead of allocating blocks as pages are first written. Unused blocks are freed
+     * when the store is closed.
+     *
+     * @param preallocationHeadroomBytes the number of bytes to keep allocated ahead of the end of each file, or 0 to
+     *                                   leave allocation to the file system
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public T withPreallocationHeadroomBytes(long preallocationHeadroomBytes) {
+        if (preallocationHeadroomBytes != 0 && preallocationHeadroomBytes < NativeIO.pageSize) {
+            throw new IllegalArgumentException("Preallocation headroom must be 0 or at least a page: " + preallocationHeadroomBytes);
+        }
+        this.preallocationHeadroomBytes = preallocationHeadroomBytes;
+        return (T) this;
+    }
+
+    /**
+     * Fault in the pages of mapped files ahead of the end of each growing file on a background thread, so that writers
+     * do not take a page fault when they first write to a newly allocated page
+     *
+     * @param prefaultAheadBytes the number of bytes to keep faulted in ahead of the end of each file, or 0 to fault
+     *                           pages in on first write
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public T withPrefaultAheadBytes(long prefaultAheadBytes) {
+        if (prefaultAheadBytes != 0 && prefaultAheadBytes < NativeIO.pageSize) {
+            throw new IllegalArgumentException("Prefault distance must be 0 or at least a page: " + prefaultAheadBytes);
+        }
+        this.prefaultAheadBytes = prefaultAheadBytes;
+        return (T) this;
+    }
+
+    /**
+     * Write the append position of each virtual file of the lookup keys to the file header only when an append crosses
+     * into a new page and when the lookups are flushed, rather than on every append. The positions are published before
+     * the lookup metadata which refers to the new keys, so no key is overwritten when the store is reopened after the
+     * process dies. Blob positions are always published on append, since the blocks refer to a blob as soon as it is
+     * written.
+     *
+     * @param lazyPositionPublishing whether to publish positions lazily
+     * @return the builder
+     */
+    @SuppressWarnings("unchecked")
+    public T withLazyPositionPublishing(boolean lazyPositionPublishing) {
+        this.lazyPositionPublishing = lazyPositionPublishing;
+        return (T) this;
+    }
+
     @SuppressWarnings("unchecked")
     public T withWriteLockContentString(String writeLockContentString) {
         this.writeLockContentString = writeLockContentString;
@@ -196,6 +430,88 @@ public class FileStoreBuilder<T extends FileStoreBuilder<T>> {
         return targetBufferSize;
     }
 
+    public PageBackend getLookupPageBackend() {
+        return lookupPageBackend;
+    }
+
+    public PageBackend getMetadataPageBackend() {
+        return metadataPageBackend;
+    }
+
+    public boolean getIndexHugePages() {
+        return indexHugePages;
+    }
+
+    public boolean getIndexPrefault() {
+        return indexPrefault;
+    }
+
+    public boolean getIndexLocking() {
+        return indexLocking;
+    }
+
+    public long getIndexMemoryBudget() {
+        return indexMemoryBudget;
+    }
+
+    /**
+     * The residency policy shared by the index files of every partition of the store, so that they share one budget
+     *
+     * @return the policy
+     */
+    public synchronized ResidencyPolicy getIndexResidencyPolicy() {
+        if (!(indexHugePages || indexPrefault || indexLocking)) return ResidencyPolicy.NONE;
+        if (indexResidencyPolicy == null) {
+            indexResidencyPolicy = new ResidencyPolicy(indexHugePages, indexPrefault, indexLocking, indexMemoryBudget);
+        }
+        return indexResidencyPolicy;
+    }
+
+    public Durability getDurability() {
+        return durability;
+    }
+
+    public int getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    public int getGroupCommitDelayMicros() {
+        return groupCommitDelayMicros;
+    }
+
+    public int getWritebackIntervalMillis() {
+        return writebackIntervalMillis;
+    }
+
+    public long getWritebackBytesPerSecond() {
+        return writebackBytesPerSecond;
+    }
+
+    /**
+     * The writeback scheduler shared by the files of every partition of the store, so that they share one rate
+     *
+     * @return the scheduler, or null if background writeback is off
+     */
+    public synchronized WritebackScheduler getWritebackScheduler() {
+        if (writebackIntervalMillis == 0) return null;
+        if (writebackScheduler == null) {
+            writebackScheduler = new WritebackScheduler(writebackIntervalMillis, writebackBytesPerSecond, syncMetricsAdders);
+        }
+        return writebackScheduler;
+    }
+
+    public long getPreallocationHeadroomBytes() {
+        return preallocationHeadroomBytes;
+    }
+
+    public long getPrefaultAheadBytes() {
+        return prefaultAheadBytes;
+    }
+
+    public boolean isLazyPositionPublishing() {
+        return lazyPositionPublishing;
+    }
+
     public String getStoreName() {
         return storeName.isEmpty() ? getDir().getFileName().toString() : storeName;
     }
@@ -212,6 +528,8 @@ public class FileStoreBuilder<T extends FileStoreBuilder<T>> {
 
     public LongBlobStoreMetrics.Adders getLongBlobStoreMetricsAdders() { return longBlobStoreMetricsAdders; }
 
+    public SyncMetrics.Adders getSyncMetricsAdders() { return syncMetricsAdders; }
+
     @Override
     public String toString() {
         return "FileStoreBuilder{" +
@@ -222,6 +540,20 @@ public class FileStoreBuilder<T extends FileStoreBuilder<T>> {
                 ", metadataTTL=" + metadataTTL +
                 ", metadataPageSize=" + metadataPageSize +
                 ", targetBufferSize=" + targetBufferSize +
+                ", lookupPageBackend=" + lookupPageBackend +
+                ", metadataPageBackend=" + metadataPageBackend +
+                ", indexHugePages=" + indexHugePages +
+                ", indexPrefault=" + indexPrefault +
+                ", indexLocking=" + indexLocking +
+                ", indexMemoryBudget=" + indexMemoryBudget +
+                ", durability=" + durability +
+                ", syncIntervalMillis=" + syncIntervalMillis +
+                ", groupCommitDelayMicros=" + groupCommitDelayMicros +
+                ", writebackIntervalMillis=" + writebackIntervalMillis +
+                ", writebackBytesPerSecond=" + writebackBytesPerSecond +
+                ", preallocationHeadroomBytes=" + preallocationHeadroomBytes +
+                ", prefaultAheadBytes=" + prefaultAheadBytes +
+                ", lazyPositionPublishing=" + lazyPositionPublishing +
                 ", flushDelaySeconds=" + flushDelaySeconds +
                 ", flushThreshold=" + flushThreshold +
                 ", dir=" + dir +
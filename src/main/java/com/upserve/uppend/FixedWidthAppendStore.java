@@ -0,0 +1,50 @@
+package com.upserve.uppend;
+
+/**
+ * Append values of a fixed width under a key and partition, and retrieve
+ * them. The values are stored directly in the blocks of the key, without a
+ * blob or length per value.
+ */
+public interface FixedWidthAppendStore extends ReadOnlyFixedWidthAppendStore, RegisteredFlushable {
+    /**
+     * Append a value under a given partition and key
+     *
+     * @param partitionEntropy the partition to store under
+     * @param key the key to store under
+     * @param value the value to append, exactly {@link #getValueWidth()} bytes
+     * @throws IllegalArgumentException if partition is invalid or the value is not the width of the store
+     */
+    void append(String partitionEntropy, String key, byte[] value);
+
+    /**
+     * Flush any pending appends to durable storage. Will not return until
+     * the flush is completed.
+     */
+    @Override
+    void flush();
+
+    /**
+     * Flush and then sync everything appended before the call to disk. Will
+     * not return until the sync is completed.
+     */
+    void sync();
+
+    /**
+     * Trim flushes any pending changes and then close cached resources to
+     * reduce heap consumption
+     */
+    @Override
+    void trim();
+
+    /**
+     * Remove all keys and values from the store.
+     */
+    void clear();
+
+    /**
+     * Get the name of this store - the last element in the path
+     *
+     * @return the name
+     */
+    String getName();
+}
@@ -0,0 +1,62 @@
+package com.upserve.uppend;
+
+import com.upserve.uppend.metrics.BlockedLongMetrics;
+
+public class FixedWidthAppendStoreBuilder extends FileStoreBuilder<FixedWidthAppendStoreBuilder> {
+    private int valueWidth = 0; // Must be set!
+
+    public static final int DEFAULT_VALUES_PER_BLOCK = 63;
+    private int valuesPerBlock = DEFAULT_VALUES_PER_BLOCK;
+
+    private BlockedLongMetrics.Adders blockedLongMetricsAdders = new BlockedLongMetrics.Adders();
+
+    /**
+     * Set the width of every value in the store. A store must always be opened with the width it was created with.
+     *
+     * @param valueWidth the width of a value in bytes
+     * @return the builder
+     */
+    public FixedWidthAppendStoreBuilder withValueWidth(int valueWidth) {
+        if (valueWidth < 1) throw new IllegalArgumentException("Value width must be positive: " + valueWidth);
+        this.valueWidth = valueWidth;
+        return this;
+    }
+
+    public FixedWidthAppendStoreBuilder withValuesPerBlock(int valuesPerBlock) {
+        if (valuesPerBlock < 1) throw new IllegalArgumentException("Values per block must be positive: " + valuesPerBlock);
+        this.valuesPerBlock = valuesPerBlock;
+        return this;
+    }
+
+    public FixedWidthAppendStore build() {
+        return build(false);
+    }
+
+    public FixedWidthAppendStore build(boolean readOnly) {
+        if (valueWidth == 0) throw new IllegalStateException("Value width must be set for a fixed width store");
+        return new FileFixedWidthAppendStore(readOnly, this);
+    }
+
+    public ReadOnlyFixedWidthAppendStore buildReadOnly() {
+        return build(true);
+    }
+
+    public int getValueWidth() {
+        return valueWidth;
+    }
+
+    public int getValuesPerBlock() {
+        return valuesPerBlock;
+    }
+
+    public BlockedLongMetrics.Adders getBlockedLongMetricsAdders() { return blockedLongMetricsAdders; }
+
+    @Override
+    public String toString() {
+        return "FixedWidthAppendStoreBuilder{" +
+                "valueWidth=" + valueWidth +
+                ", valuesPerBlock=" + valuesPerBlock +
+                ", blockedLongMetricsAdders=" + blockedLongMetricsAdders +
+                '}' + super.toString();
+    }
+}
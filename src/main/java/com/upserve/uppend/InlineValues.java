@@ -0,0 +1,84 @@
+package com.upserve.uppend;
+
+import java.util.Arrays;
+
+/**
+ * Tagged values for the slots of {@link BlockedLongs}, which hold either the position of a blob or a value of up to
+ * {@link #MAX_BYTES} bytes stored in the slot itself. Blob positions are never negative, so inline values set the sign
+ * bit, keep their length in the next seven bits and their bytes in the low seven bytes. The length is at most
+ * {@link #MAX_BYTES}, so the -1 returned for a missing last value is never mistaken for an inline value. A slot which
+ * refers to a packed chunk of several values (see {@link ValuePacker}) sets the sign bit and {@link #PACKED_TAG} in
+ * place of the length, and keeps the position of the chunk's blob in the low seven bytes.
+ */
+final class InlineValues {
+    static final int MAX_BYTES = 7;
+    static final int PACKED_TAG = 0x40;
+
+    private static final long POSITION_MASK = (1L << 56) - 1;
+
+    private InlineValues() {
+    }
+
+    static boolean fits(byte[] bytes) {
+        return bytes.length <= MAX_BYTES;
+    }
+
+    static long encode(byte[] bytes) {
+        if (!fits(bytes)) throw new IllegalArgumentException("Value of " + bytes.length + " bytes is too large to inline");
+        long value = Long.MIN_VALUE | ((long) bytes.length << 56);
+        for (int i = 0; i < bytes.length; i++) {
+            value |= (bytes[i] & 0xFFL) << (8 * i);
+        }
+        return value;
+    }
+
+    static boolean isInline(long value) {
+        return value < 0 && ((value >>> 56) & 0x7F) <= MAX_BYTES;
+    }
+
+    static byte[] decode(long value) {
+        final byte[] bytes = new byte[(int) ((value >>> 56) & 0x7F)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (value >>> (8 * i));
+        }
+        return bytes;
+    }
+
+    static long packed(long blobPosition) {
+        if (blobPosition < 0 || blobPosition > POSITION_MASK) throw new IllegalArgumentException("Blob position can not be tagged: " + blobPosition);
+        return Long.MIN_VALUE | ((long) PACKED_TAG << 56) | blobPosition;
+    }
+
+    static boolean isPacked(long value) {
+        return value < 0 && ((value >>> 56) & 0x7F) == PACKED_TAG;
+    }
+
+    static long packedPosition(long value) {
+        return value & POSITION_MASK;
+    }
+
+    /**
+     * @param value a slot value which is not inline
+     * @return the position of the blob the slot refers to, which is a packed chunk or a single value
+     */
+    static long blobPosition(long value) {
+        return isPacked(value) ? packedPosition(value) : value;
+    }
+
+    /**
+     * @param values the slot values of a key
+     * @return the positions of the blobs the values refer to, in the order of the values
+     */
+    static long[] blobPositions(long[] values) {
+        return blobPositions(values, values.length);
+    }
+
+    /**
+     * @param values an array starting with the slot values of a key
+     * @param length the number of slot values in the array
+     * @return the positions of the blobs the values refer to, in the order of the values
+     */
+    static long[] blobPositions(long[] values, int length) {
+        return Arrays.stream(values, 0, length).filter(value -> !isInline(value)).map(InlineValues::blobPosition).toArray();
+    }
+}
@@ -7,5 +7,6 @@ public interface KeyStoreMetrics {
     LookupDataMetrics getLookupDataMetrics();
     LongBlobStoreMetrics getLongBlobStoreMetrics();
     MutableBlobStoreMetrics getMutableBlobStoreMetrics();
+    SyncMetrics getSyncMetrics();
 
 }
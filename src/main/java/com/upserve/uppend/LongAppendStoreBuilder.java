@@ -0,0 +1,42 @@
+package com.upserve.uppend;
+
+import com.upserve.uppend.metrics.BlockedLongMetrics;
+
+public class LongAppendStoreBuilder extends FileStoreBuilder<LongAppendStoreBuilder> {
+    public static final int DEFAULT_VALUES_PER_BLOCK = 127;
+    private int valuesPerBlock = DEFAULT_VALUES_PER_BLOCK;
+
+    private BlockedLongMetrics.Adders blockedLongMetricsAdders = new BlockedLongMetrics.Adders();
+
+    public LongAppendStoreBuilder withValuesPerBlock(int valuesPerBlock) {
+        if (valuesPerBlock < 1) throw new IllegalArgumentException("Values per block must be positive: " + valuesPerBlock);
+        this.valuesPerBlock = valuesPerBlock;
+        return this;
+    }
+
+    public LongAppendStore build() {
+        return build(false);
+    }
+
+    public LongAppendStore build(boolean readOnly) {
+        return new FileLongAppendStore(readOnly, this);
+    }
+
+    public ReadOnlyLongAppendStore buildReadOnly() {
+        return build(true);
+    }
+
+    public int getValuesPerBlock() {
+        return valuesPerBlock;
+    }
+
+    public BlockedLongMetrics.Adders getBlockedLongMetricsAdders() { return blockedLongMetricsAdders; }
+
+    @Override
+    public String toString() {
+        return "LongAppendStoreBuilder{" +
+                "valuesPerBlock=" + valuesPerBlock +
+                ", blockedLongMetricsAdders=" + blockedLongMetricsAdders +
+                '}' + super.toString();
+    }
+}
@@ -0,0 +1,188 @@
+package com.upserve.uppend;
+
+import com.google.common.collect.Maps;
+import com.upserve.uppend.blobs.*;
+import com.upserve.uppend.lookup.*;
+import com.upserve.uppend.metrics.BlockedLongMetrics;
+import com.upserve.uppend.util.SafeDeleting;
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+/**
+ * A partition which keeps the values of each key directly in the chained blocks of a {@link BlockedLongs} file, with
+ * no blob file. Used by the long and fixed width append stores, which store a value as one or more longs.
+ */
+public class LongAppendStorePartition extends Partition {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final BlockedLongs blocks;
+
+    private static Path valuesFile(Path partitionDir) {
+        return partitionDir.resolve("values");
+    }
+
+    static LongAppendStorePartition createPartition(Path parentDir, String partition, FileStoreBuilder<?> builder, int longsPerBlock, BlockedLongMetrics.Adders blockedLongMetricsAdders) {
+        Path partitionDir = validatePartition(parentDir, partition);
+        return newPartition(partitionDir, false, builder, longsPerBlock, blockedLongMetricsAdders);
+    }
+
+    static LongAppendStorePartition openPartition(Path parentDir, String partition, boolean readOnly, FileStoreBuilder<?> builder, int longsPerBlock, BlockedLongMetrics.Adders blockedLongMetricsAdders) {
+        validatePartition(partition);
+        Path partitionDir = parentDir.resolve(partition);
+
+        if (!(Files.exists(valuesFile(partitionDir)) && Files.exists(metadataPath(partitionDir))
+                && Files.exists(keysPath(partitionDir)))) return null;
+
+        return newPartition(partitionDir, readOnly, builder, longsPerBlock, blockedLongMetricsAdders);
+    }
+
+    private static LongAppendStorePartition newPartition(Path partitionDir, boolean readOnly, FileStoreBuilder<?> builder, int longsPerBlock, BlockedLongMetrics.Adders blockedLongMetricsAdders) {
+        BlockedLongs blocks = new BlockedLongs(
+                valuesFile(partitionDir),
+                longsPerBlock,
+                readOnly,
+                blockedLongMetricsAdders,
+                builder.getIndexResidencyPolicy()
+        );
+        VirtualPageFile metadata = new VirtualPageFile(
+                metadataPath(partitionDir),
+                builder.getLookupHashCount(),
+                builder.getMetadataPageSize(),
+                adjustedTargetBufferSize(
+                        builder.getMetadataPageSize(),
+                        builder.getLookupHashCount(),
+                        builder.getTargetBufferSize()
+                ),
+                readOnly,
+                true,
+                builder.getMetadataPageBackend(),
+                builder.getIndexResidencyPolicy()
+        );
+        VirtualPageFile keys = new VirtualPageFile(
+                keysPath(partitionDir),
+                builder.getLookupHashCount(),
+                builder.getLookupPageSize(),
+                adjustedTargetBufferSize(
+                        builder.getLookupPageSize(),
+                        builder.getLookupHashCount(),
+                        builder.getTargetBufferSize()
+                ),
+                readOnly,
+                true,
+                builder.getLookupPageBackend(),
+                builder.getIndexResidencyPolicy()
+        );
+
+        return new LongAppendStorePartition(keys, metadata, blocks, readOnly, builder);
+    }
+
+    private LongAppendStorePartition(VirtualPageFile longKeyFile, VirtualPageFile metadataBlobFile, BlockedLongs blocks, boolean readOnly, FileStoreBuilder<?> builder) {
+        super(longKeyFile, metadataBlobFile, readOnly, builder);
+        this.blocks = blocks;
+
+        if (!readOnly && builder.getDurability() != Durability.NONE) {
+            blocks.setTrackWrites(true);
+        }
+        if (!readOnly && builder.getWritebackScheduler() != null) {
+            blocks.setWriteback(builder.getWritebackScheduler());
+        }
+        if (!readOnly && builder.getPreallocationHeadroomBytes() > 0) {
+            blocks.setPreallocation(builder.getPreallocationHeadroomBytes());
+        }
+        if (!readOnly && builder.getPrefaultAheadBytes() > 0) {
+            blocks.setPrefault(builder.getPrefaultAheadBytes());
+        }
+    }
+
+    void append(String key, long value) {
+        LookupKey lookupKey = new LookupKey(key);
+        final int hash = keyHash(lookupKey);
+
+        final long blockPos = lookups[hash].putIfNotExists(lookupKey, blocks::allocate);
+        blocks.append(blockPos, value);
+        log.trace("appending {} (block pos {}) for hash '{}', key '{}'", value, blockPos, hash, key);
+    }
+
+    /**
+     * Append the longs of one value together
+     */
+    void append(String key, long[] values) {
+        LookupKey lookupKey = new LookupKey(key);
+        final int hash = keyHash(lookupKey);
+
+        final long blockPos = lookups[hash].putIfNotExists(lookupKey, blocks::allocate);
+        blocks.append(blockPos, values);
+        log.trace("appending {} longs (block pos {}) for hash '{}', key '{}'", values.length, blockPos, hash, key);
+    }
+
+    long[] read(String key) {
+        LookupKey lookupKey = new LookupKey(key);
+        final int hash = keyHash(lookupKey);
+
+        return values(lookups[hash].getValue(lookupKey));
+    }
+
+    Map<String, long[]> readMany(Collection<String> keys) {
+        return lookupMany(keys, (hash, blockPos) -> blockPos == null ? null : values(blockPos));
+    }
+
+    private long[] values(Long blockPos) {
+        return blockPos == null ? new long[0] : blocks.valuesArray(blockPos);
+    }
+
+    Stream<Map.Entry<String, long[]>> scan() {
+        return IntStream.range(0, hashCount)
+                .parallel()
+                .boxed()
+                .flatMap(virtualFileNumber -> lookups[virtualFileNumber].scan().map(entry -> Maps.immutableEntry(
+                        entry.getKey().string(),
+                        values(entry.getValue())
+                )));
+    }
+
+    Stream<String> keys() {
+        return IntStream.range(0, hashCount)
+                .parallel()
+                .boxed()
+                .flatMap(virtualFileNumber -> lookups[virtualFileNumber].keys().map(LookupKey::string));
+    }
+
+    void clear() throws IOException {
+        getLongKeyFile().close();
+        getMetadataBlobFile().close();
+        blocks.close();
+
+        SafeDeleting.removeDirectory(longKeyFile.getFilePath().getParent());
+    }
+
+    @Override
+    public void flush() {
+        super.flush();
+        blocks.flush();
+    }
+
+    /**
+     * Sync the blocks before the lookups which refer to them
+     */
+    @Override
+    void sync() {
+        blocks.sync();
+        super.sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+
+        blocks.close();
+    }
+
+    BlockedLongs getBlocks() {
+        return blocks;
+    }
+}
@@ -1,12 +1,15 @@
 package com.upserve.uppend;
 
+import com.google.common.collect.Maps;
 import com.google.common.hash.*;
 import com.upserve.uppend.blobs.*;
 import com.upserve.uppend.lookup.*;
+import com.upserve.uppend.util.MergingIterator;
 
 import java.io.*;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.*;
 import java.util.stream.*;
 
@@ -26,6 +29,8 @@ public abstract class Partition implements Flushable, Closeable, Trimmable {
 
     final LookupData[] lookups;
 
+    final AtomicBoolean unsynced = new AtomicBoolean(); // removed 'private' to support unit testing
+
     Partition(VirtualPageFile longKeyFile, VirtualPageFile metadataBlobFile, boolean readOnly, FileStoreBuilder builder) {
 
         this.longKeyFile = longKeyFile;
@@ -52,6 +57,27 @@ public abstract class Partition implements Flushable, Closeable, Trimmable {
         lookups = IntStream.range(0, hashCount)
                 .mapToObj(constructorFunction)
                 .toArray(LookupData[]::new);
+
+        if (!readOnly && builder.getDurability() != Durability.NONE) {
+            longKeyFile.setTrackWrites(true);
+            metadataBlobFile.setTrackWrites(true);
+        }
+        if (!readOnly && builder.getWritebackScheduler() != null) {
+            longKeyFile.setWriteback(builder.getWritebackScheduler());
+            metadataBlobFile.setWriteback(builder.getWritebackScheduler());
+        }
+        if (!readOnly && builder.getPreallocationHeadroomBytes() > 0) {
+            longKeyFile.setPreallocation(builder.getPreallocationHeadroomBytes());
+            metadataBlobFile.setPreallocation(builder.getPreallocationHeadroomBytes());
+        }
+        if (!readOnly && builder.isLazyPositionPublishing()) {
+            longKeyFile.setLazyPositionPublishing(true);
+            metadataBlobFile.setLazyPositionPublishing(true);
+        }
+        if (!readOnly && builder.getPrefaultAheadBytes() > 0) {
+            longKeyFile.setPrefault(builder.getPrefaultAheadBytes());
+            metadataBlobFile.setPrefault(builder.getPrefaultAheadBytes());
+        }
     }
 
     static Path validatePartition(Path parentDir, String partition) {
@@ -103,6 +129,74 @@ public abstract class Partition implements Flushable, Closeable, Trimmable {
         }
     }
 
+    /**
+     * Look up many keys at once. Keys are grouped by hash so that each LookupData resolves its keys in a single
+     * sorted pass, and the hash buckets are resolved in parallel.
+     *
+     * @param keys the keys to look up
+     * @param valueFunction a function of the hash and the looked up value (null if not found) to the result value
+     * @param <T> the type of the result values
+     * @return a map of key to result value, omitting keys for which the value function returned null
+     */
+    <T> Map<String, T> lookupMany(Collection<String> keys, BiFunction<Integer, Long, T> valueFunction) {
+        Map<Integer, List<LookupKey>> keysByHash = keys.stream()
+                .distinct()
+                .map(LookupKey::new)
+                .collect(Collectors.groupingBy(this::keyHash));
+
+        return keysByHash.entrySet()
+                .parallelStream()
+                .flatMap(entry -> {
+                    final int hash = entry.getKey();
+                    final List<LookupKey> hashKeys = entry.getValue();
+                    final Long[] values = lookups[hash].getValues(hashKeys);
+                    return IntStream.range(0, values.length)
+                            .mapToObj(index -> Maps.immutableEntry(
+                                    hashKeys.get(index).string(),
+                                    valueFunction.apply(hash, values[index])
+                            ));
+                })
+                .filter(entry -> entry.getValue() != null)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    /**
+     * Iterate the keys in the range in sorted order, merging the sorted keys of each LookupData.
+     *
+     * @param fromKey the inclusive lower bound, or null for no lower bound
+     * @param toKey the exclusive upper bound, or null for no upper bound
+     * @return a sorted iterator of the keys
+     */
+    Iterator<LookupKey> sortedKeys(LookupKey fromKey, LookupKey toKey) {
+        return new MergingIterator<>(
+                LookupKey::compareTo,
+                Arrays.stream(lookups)
+                        .map(lookup -> lookup.keys(fromKey, toKey).iterator())
+                        .collect(Collectors.toList())
+        );
+    }
+
+    /**
+     * Iterate the entries in the range in key sorted order, merging the sorted entries of each LookupData.
+     *
+     * @param fromKey the inclusive lower bound, or null for no lower bound
+     * @param toKey the exclusive upper bound, or null for no upper bound
+     * @param valueFunction a function of the hash and the looked up value to the result value
+     * @param <T> the type of the result values
+     * @return a key sorted iterator of the entries
+     */
+    <T> Iterator<Map.Entry<LookupKey, T>> sortedEntries(LookupKey fromKey, LookupKey toKey, BiFunction<Integer, Long, T> valueFunction) {
+        return new MergingIterator<>(
+                Map.Entry.comparingByKey(),
+                IntStream.range(0, hashCount)
+                        .mapToObj(hash -> lookups[hash]
+                                .scan(fromKey, toKey)
+                                .map(entry -> Maps.immutableEntry(entry.getKey(), valueFunction.apply(hash, entry.getValue())))
+                                .iterator())
+                        .collect(Collectors.toList())
+        );
+    }
+
     static Path metadataPath(Path partitionDir) {
         return partitionDir.resolve("keyMetadata");
     }
@@ -133,6 +227,31 @@ public abstract class Partition implements Flushable, Closeable, Trimmable {
     @Override
     public void flush() {
         Arrays.stream(lookups).forEach(LookupData::flush);
+        longKeyFile.flush();
+        metadataBlobFile.flush();
+    }
+
+    /**
+     * Flush the lookups and sync the partition files, making every write before the call durable
+     */
+    void sync() {
+        flush();
+        longKeyFile.sync();
+        metadataBlobFile.sync();
+    }
+
+    /**
+     * Note a write to the partition, so that the next call to {@link #syncIfWritten()} syncs it
+     */
+    void written() {
+        unsynced.set(true);
+    }
+
+    /**
+     * Sync the partition if it was written since the last call. A write noted during the sync is left for the next one.
+     */
+    void syncIfWritten() {
+        if (unsynced.getAndSet(false)) sync();
     }
 
     @Override
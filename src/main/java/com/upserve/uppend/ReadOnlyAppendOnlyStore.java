@@ -2,7 +2,7 @@ package com.upserve.uppend;
 
 import com.upserve.uppend.metrics.*;
 
-import java.util.Map;
+import java.util.*;
 import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
@@ -33,6 +33,19 @@ public interface ReadOnlyAppendOnlyStore extends Trimmable, AutoCloseable, KeySt
     Stream<byte[]> readSequential(String partitionEntropy, String key);
 
 
+    /**
+     * Read byte arrays that have been stored under many keys in a given
+     * partition. The keys are grouped by hash bucket and resolved together,
+     * which is much faster than reading each key separately.
+     *
+     * @param partitionEntropy the partition under which to retrieve
+     * @param keys the keys under which to retrieve
+     * @return a map with an entry for each distinct key to a stream of the
+     * stored byte arrays, which is empty if the key is not present
+     * @throws IllegalArgumentException if partition is invalid
+     */
+    Map<String, Stream<byte[]>> readMany(String partitionEntropy, Collection<String> keys);
+
     /**
      * Read the last byte array that was stored under a given partition and key
      *
@@ -43,6 +56,26 @@ public interface ReadOnlyAppendOnlyStore extends Trimmable, AutoCloseable, KeySt
      */
     byte[] readLast(String partitionEntropy, String key);
 
+    /**
+     * Read a value by the handle returned when it was appended
+     *
+     * @param handle the handle of the value
+     * @return the stored byte array, or null if its partition does not exist
+     * @throws IllegalStateException if the store has no partition count
+     */
+    byte[] readHandle(long handle);
+
+    /**
+     * Read values by their handles. The handles of each partition hash are
+     * read together, so that neighbouring values are copied at once.
+     *
+     * @param handles the handles of the values
+     * @return the stored byte arrays in the order of the handles, with null
+     * for a handle whose partition does not exist
+     * @throws IllegalStateException if the store has no partition count
+     */
+    byte[][] readHandles(long[] handles);
+
     /**
      * Enumerate the keys in the append store
      *
@@ -51,6 +84,32 @@ public interface ReadOnlyAppendOnlyStore extends Trimmable, AutoCloseable, KeySt
      */
     Stream<String> keys();
 
+    /**
+     * Enumerate the keys in the append store in sorted order, merging the
+     * sorted keys of every partition
+     *
+     * @return a sorted stream of string keys
+     */
+    Stream<String> keysSorted();
+
+    /**
+     * Enumerate the keys in the given range in sorted order. Each hash bucket
+     * seeks to the start of the range rather than scanning all of its keys.
+     *
+     * @param fromKey the inclusive lower bound, or null for no lower bound
+     * @param toKey the exclusive upper bound, or null for no upper bound
+     * @return a sorted stream of string keys in the range
+     */
+    Stream<String> keys(String fromKey, String toKey);
+
+    /**
+     * Scan the keys starting with the given prefix in sorted order,
+     * returning a stream of entries for each key and stream of values
+     *
+     * @param prefix the prefix of the keys to scan
+     * @return a key sorted stream of entries of key to stream of byte array values
+     */
+    Stream<Map.Entry<String, Stream<byte[]>>> scanPrefix(String prefix);
 
     /**
      * Scan all the keys and values in the append store, returning a stream of
@@ -60,6 +119,28 @@ public interface ReadOnlyAppendOnlyStore extends Trimmable, AutoCloseable, KeySt
      */
     Stream<Map.Entry<String, Stream<byte[]>>> scan();
 
+    /**
+     * Scan all the values in the append store in the order they are stored
+     * in the blob files rather than key by key, so that a full scan of a store
+     * larger than memory reads sequentially. Values are not grouped by key;
+     * a pair is returned for each value of a key.
+     *
+     * @return a stream of entries of key to byte array value
+     */
+    Stream<Map.Entry<String, byte[]>> scanPhysical();
+
+    /**
+     * Create cursors which together visit every key and value in the append
+     * store while reusing their key and value buffers. Each cursor covers a
+     * disjoint share of the hash buckets and must only be used by one thread;
+     * run the cursors on separate threads to scan in parallel.
+     *
+     * @param count the number of cursors to create
+     * @return the cursors
+     * @throws IllegalArgumentException if count is not positive
+     */
+    List<ScanCursor> scanCursors(int count);
+
     /**
      * Scan the append store, calling the given function with each key and
      * stream of byte array values
@@ -1,6 +1,6 @@
 package com.upserve.uppend;
 
-import java.util.Map;
+import java.util.*;
 import java.util.function.ObjLongConsumer;
 import java.util.stream.Stream;
 
@@ -15,6 +15,18 @@ public interface ReadOnlyCounterStore extends Trimmable, AutoCloseable, KeyStore
      */
     Long get(String partitionEntropy, String key);
 
+    /**
+     * Get the values for many keys in a given partition. The keys are grouped
+     * by hash bucket and resolved together, which is much faster than getting
+     * each key separately.
+     *
+     * @param partitionEntropy the partition to get from
+     * @param keys the keys to get
+     * @return a map of key to value containing only the keys that were found
+     * @throws IllegalArgumentException if partition is invalid
+     */
+    Map<String, Long> getMany(String partitionEntropy, Collection<String> keys);
+
     /**
      * Enumerate the keys in the counterStore
      *
@@ -23,6 +35,32 @@ public interface ReadOnlyCounterStore extends Trimmable, AutoCloseable, KeyStore
      */
     Stream<String> keys();
 
+    /**
+     * Enumerate the keys in the counterStore in sorted order, merging the
+     * sorted keys of every partition
+     *
+     * @return a sorted stream of string keys
+     */
+    Stream<String> keysSorted();
+
+    /**
+     * Enumerate the keys in the given range in sorted order. Each hash bucket
+     * seeks to the start of the range rather than scanning all of its keys.
+     *
+     * @param fromKey the inclusive lower bound, or null for no lower bound
+     * @param toKey the exclusive upper bound, or null for no upper bound
+     * @return a sorted stream of string keys in the range
+     */
+    Stream<String> keys(String fromKey, String toKey);
+
+    /**
+     * Scan the keys starting with the given prefix in sorted order,
+     * returning a stream of entries
+     *
+     * @param prefix the prefix of the keys to scan
+     * @return a key sorted stream of entries of key to counter values
+     */
+    Stream<Map.Entry<String, Long>> scanPrefix(String prefix);
     /**
      * Scan all the keys and values, returning a stream of
      * entries
@@ -0,0 +1,57 @@
+package com.upserve.uppend;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Reader interface to an append-only store of values which all have the same width
+ */
+public interface ReadOnlyFixedWidthAppendStore extends Trimmable, AutoCloseable, KeyStoreMetrics {
+    /**
+     * The width in bytes of every value in the store
+     *
+     * @return the value width
+     */
+    int getValueWidth();
+
+    /**
+     * Read the values that have been stored under a given partition and key
+     * in the order they were stored
+     *
+     * @param partitionEntropy the partition under which to retrieve
+     * @param key the key under which to retrieve
+     * @return a buffer holding the values back to back, each {@link #getValueWidth()} bytes from the last; empty
+     * if the key is not present
+     * @throws IllegalArgumentException if partition is invalid
+     */
+    ByteBuffer read(String partitionEntropy, String key);
+
+    /**
+     * Read the values that have been stored under many keys in a given
+     * partition. The keys are grouped by hash bucket and resolved together.
+     *
+     * @param partitionEntropy the partition under which to retrieve
+     * @param keys the keys under which to retrieve
+     * @return a map of each distinct key which is present to a buffer of its values as returned by
+     * {@link #read(String, String)}
+     * @throws IllegalArgumentException if partition is invalid
+     */
+    Map<String, ByteBuffer> readMany(String partitionEntropy, Collection<String> keys);
+
+    /**
+     * Enumerate the keys in the store
+     *
+     * @return a stream of string keys
+     */
+    Stream<String> keys();
+
+    /**
+     * Scan all the keys and values, returning a stream of entries
+     *
+     * @return a stream of entries of key to a buffer of its values as returned by {@link #read(String, String)}
+     */
+    Stream<Map.Entry<String, ByteBuffer>> scan();
+
+    long keyCount();
+}
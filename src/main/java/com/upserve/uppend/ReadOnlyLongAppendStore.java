@@ -0,0 +1,48 @@
+package com.upserve.uppend;
+
+import java.util.*;
+import java.util.stream.*;
+
+/**
+ * Reader interface to an append-only store of long values
+ */
+public interface ReadOnlyLongAppendStore extends Trimmable, AutoCloseable, KeyStoreMetrics {
+    /**
+     * Read the longs that have been stored under a given partition and key in
+     * the order they were stored
+     *
+     * @param partitionEntropy the partition under which to retrieve
+     * @param key the key under which to retrieve
+     * @return a stream of the stored longs, which is empty if the key is not present
+     * @throws IllegalArgumentException if partition is invalid
+     */
+    LongStream read(String partitionEntropy, String key);
+
+    /**
+     * Read the longs that have been stored under many keys in a given
+     * partition. The keys are grouped by hash bucket and resolved together.
+     *
+     * @param partitionEntropy the partition under which to retrieve
+     * @param keys the keys under which to retrieve
+     * @return a map with an entry for each distinct key to a stream of the
+     * stored longs, which is empty if the key is not present
+     * @throws IllegalArgumentException if partition is invalid
+     */
+    Map<String, LongStream> readMany(String partitionEntropy, Collection<String> keys);
+
+    /**
+     * Enumerate the keys in the store
+     *
+     * @return a stream of string keys
+     */
+    Stream<String> keys();
+
+    /**
+     * Scan all the keys and values, returning a stream of entries
+     *
+     * @return a stream of entries of key to the stored longs in the order they were stored
+     */
+    Stream<Map.Entry<String, long[]>> scan();
+
+    long keyCount();
+}
@@ -0,0 +1,50 @@
+package com.upserve.uppend;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An allocation light cursor over the keys and values of a store. The buffers returned by {@link #keyBytes()} and
+ * {@link #valueBuffer()} are reused or are read only views of mapped pages, and are only valid until the next call to
+ * {@link #nextKey()} or {@link #nextValue()} respectively. A cursor must only be used by one thread; use one cursor
+ * per worker thread to scan in parallel. A view keeps its mapped page from being unmapped until the cursor moves on,
+ * runs out of keys or is closed, so close a cursor which is given up part way through a scan.
+ */
+public interface ScanCursor extends AutoCloseable {
+    /**
+     * Advance to the next key
+     *
+     * @return true if the cursor is positioned on a key, false once all keys have been visited
+     */
+    boolean nextKey();
+
+    /**
+     * The bytes of the current key between the position and limit of the buffer
+     *
+     * @return the key bytes
+     * @throws IllegalStateException if the cursor is not positioned on a key
+     */
+    ByteBuffer keyBytes();
+
+    /**
+     * Advance to the next value of the current key
+     *
+     * @return true if the cursor is positioned on a value, false once all values of the current key have been visited
+     * @throws IllegalStateException if the cursor is not positioned on a key
+     */
+    boolean nextValue();
+
+    /**
+     * The bytes of the current value between the position and limit of the buffer
+     *
+     * @return the value bytes
+     * @throws IllegalStateException if the cursor is not positioned on a value
+     */
+    ByteBuffer valueBuffer();
+
+    /**
+     * Release the mapped page behind the current value, after which the value buffer must not be used
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,154 @@
+package com.upserve.uppend;
+
+import com.upserve.uppend.metrics.SyncMetrics;
+import org.slf4j.Logger;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The background thread which syncs a store for {@link Durability#PERIODIC} and {@link Durability#GROUP_COMMIT}.
+ * Writers note each write and get the future of the sync which will make it durable. A sync swaps in the future for
+ * the next batch before it starts, so every write noted before the swap is covered by the sync and every write noted
+ * after it waits for the next one. For group commit the thread syncs as soon as a write is waiting, so writers which
+ * arrive while a sync is running share the next one.
+ */
+class StoreSyncer implements AutoCloseable {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final String name;
+    private final Durability durability;
+    private final long intervalNanos;
+    private final Runnable syncAction;
+    private final SyncMetrics.Adders syncMetricsAdders;
+
+    private final AtomicReference<CompletableFuture<Void>> nextSync = new AtomicReference<>(new CompletableFuture<>());
+    private final LongAdder unsyncedWrites = new LongAdder();
+    private final AtomicBoolean requested = new AtomicBoolean();
+    private volatile boolean closed = false;
+
+    private final Thread thread;
+
+    /**
+     * @param name the store name, used to name the thread
+     * @param durability periodic or group commit
+     * @param intervalNanos for periodic durability the interval between syncs; for group commit how long to wait after
+     *                      the first write of a batch for other writers to join it
+     * @param syncAction makes every write before it is called durable
+     * @param syncMetricsAdders the adders for sync metrics
+     */
+    StoreSyncer(String name, Durability durability, long intervalNanos, Runnable syncAction, SyncMetrics.Adders syncMetricsAdders) {
+        if (durability == Durability.NONE) throw new IllegalArgumentException("No syncer is needed without durability: " + name);
+        if (intervalNanos < 0) throw new IllegalArgumentException("Sync interval must not be negative: " + intervalNanos);
+        if (durability == Durability.PERIODIC && intervalNanos == 0) throw new IllegalArgumentException("Periodic sync interval must be positive: " + name);
+
+        this.name = name;
+        this.durability = durability;
+        this.intervalNanos = intervalNanos;
+        this.syncAction = syncAction;
+        this.syncMetricsAdders = syncMetricsAdders;
+
+        thread = new Thread(this::run, "uppend-sync-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Note a completed write
+     *
+     * @return a future which completes when the write is durable
+     */
+    CompletableFuture<Void> written() {
+        if (closed) throw new IllegalStateException("Store syncer is closed: " + name);
+        unsyncedWrites.increment();
+        final CompletableFuture<Void> future = nextSync.get();
+        if (durability == Durability.GROUP_COMMIT && requested.compareAndSet(false, true)) {
+            LockSupport.unpark(thread);
+        }
+        return future;
+    }
+
+    /**
+     * Note a completed write and wait until it is durable
+     */
+    void awaitWritten() {
+        final CompletableFuture<Void> future = written();
+        final long tic = System.nanoTime();
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new RuntimeException("Sync failed for store " + name, e.getCause());
+        } finally {
+            syncMetricsAdders.waitCounter.increment();
+            syncMetricsAdders.waitTimer.add(System.nanoTime() - tic);
+        }
+    }
+
+    private void run() {
+        while (!closed) {
+            if (durability == Durability.GROUP_COMMIT) {
+                while (!requested.get() && !closed) {
+                    LockSupport.park(this);
+                }
+                if (closed) break;
+                if (intervalNanos > 0) parkUntil(System.nanoTime() + intervalNanos);
+                requested.set(false);
+            } else {
+                parkUntil(System.nanoTime() + intervalNanos);
+                if (closed) break;
+            }
+            sync();
+        }
+    }
+
+    private void parkUntil(long deadline) {
+        long remaining;
+        while (!closed && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    private void sync() {
+        final CompletableFuture<Void> batch = nextSync.getAndSet(new CompletableFuture<>());
+        // A writer may hold the future of this batch before its write is counted, so never skip a sync
+        final long writes = unsyncedWrites.sumThenReset();
+
+        final long tic = System.nanoTime();
+        RuntimeException failure = null;
+        try {
+            syncAction.run();
+        } catch (RuntimeException e) {
+            log.error("Unable to sync store {}", name, e);
+            failure = e;
+        }
+        syncMetricsAdders.syncCounter.increment();
+        syncMetricsAdders.syncTimer.add(System.nanoTime() - tic);
+        syncMetricsAdders.syncedWriteCounter.add(writes);
+
+        if (failure == null) {
+            batch.complete(null);
+        } else {
+            batch.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Stop the thread and make every write noted before the call durable
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted waiting for the sync thread of store {}", name, e);
+        }
+        sync();
+    }
+}
@@ -36,6 +36,22 @@ public final class Uppend {
         return new CounterStoreBuilder().withDir(path);
     }
 
+    public static LongAppendStoreBuilder longStore(String path) {
+        return longStore(Paths.get(path));
+    }
+
+    public static LongAppendStoreBuilder longStore(Path path) {
+        return new LongAppendStoreBuilder().withDir(path);
+    }
+
+    public static FixedWidthAppendStoreBuilder fixedWidthStore(String path, int valueWidth) {
+        return fixedWidthStore(Paths.get(path), valueWidth);
+    }
+
+    public static FixedWidthAppendStoreBuilder fixedWidthStore(Path path, int valueWidth) {
+        return new FixedWidthAppendStoreBuilder().withDir(path).withValueWidth(valueWidth);
+    }
+
     public static void main(String... args) throws Exception {
         Cli.main(args);
     }
@@ -0,0 +1,53 @@
+package com.upserve.uppend;
+
+/**
+ * Opaque handles for single appended values, which locate a value's blob without a key lookup. A handle keeps the
+ * number of the partition in its top 14 bits, the virtual file of the key's hash in the next 14 bits and the position
+ * of the blob in the low 36 bits. Partitions are only numbered in a store with a partition count, where the partition
+ * directories are named by the number of the partition hash.
+ */
+final class ValueHandles {
+    static final int POSITION_BITS = 36;
+    static final int VIRTUAL_FILE_BITS = 14;
+
+    static final long POSITION_MASK = (1L << POSITION_BITS) - 1;
+    private static final int VIRTUAL_FILE_MASK = (1 << VIRTUAL_FILE_BITS) - 1;
+    private static final int MAX_PARTITION = (1 << (Long.SIZE - POSITION_BITS - VIRTUAL_FILE_BITS)) - 1;
+
+    private ValueHandles() {
+    }
+
+    /**
+     * Check that a partition and virtual file can be put in a handle, before anything is written for it
+     */
+    static void check(int partition, int virtualFileNumber) {
+        if (partition < 0 || partition > MAX_PARTITION) throw new IllegalArgumentException("Partition can not be put in a handle: " + partition);
+        if (virtualFileNumber < 0 || virtualFileNumber > VIRTUAL_FILE_MASK) throw new IllegalArgumentException("Virtual file can not be put in a handle: " + virtualFileNumber);
+    }
+
+    static long encode(int partition, int virtualFileNumber, long blobPosition) {
+        check(partition, virtualFileNumber);
+        if (blobPosition < 0 || blobPosition > POSITION_MASK) throw new IllegalStateException("Blob position can not be put in a handle: " + blobPosition);
+        return ((long) partition << (POSITION_BITS + VIRTUAL_FILE_BITS)) | ((long) virtualFileNumber << POSITION_BITS) | blobPosition;
+    }
+
+    static int partition(long handle) {
+        return (int) (handle >>> (POSITION_BITS + VIRTUAL_FILE_BITS));
+    }
+
+    static int virtualFileNumber(long handle) {
+        return (int) (handle >>> POSITION_BITS) & VIRTUAL_FILE_MASK;
+    }
+
+    static long blobPosition(long handle) {
+        return handle & POSITION_MASK;
+    }
+
+    static int partitionNumber(String partition) {
+        return Integer.parseInt(partition);
+    }
+
+    static String partitionName(int partition) {
+        return String.format("%04d", partition);
+    }
+}
@@ -0,0 +1,112 @@
+package com.upserve.uppend;
+
+import com.google.common.util.concurrent.Striped;
+import com.upserve.uppend.util.Varint;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.function.BiConsumer;
+
+/**
+ * Buffers the recent appends of each key of a partition so that they can be written out together. The buffered values
+ * of a key are handed to the writer once they reach the size limit, or when every key is flushed. A key's values are
+ * taken from the buffer and written under a lock for the key, so they are written in the order they were appended.
+ * Several values are stored as a packed chunk: each value prefixed with its length as a varint.
+ */
+class ValuePacker {
+    private static final int LOCK_SIZE = 64;
+
+    private final int maxBytes;
+    private final BiConsumer<String, List<byte[]>> writer;
+    private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+    private final Striped<Lock> stripedLocks = Striped.lock(LOCK_SIZE);
+
+    private static class Pending {
+        private final List<byte[]> values = new ArrayList<>();
+        private int bytes;
+    }
+
+    /**
+     * @param maxBytes the packed size at which the buffered values of a key are written
+     * @param writer writes the buffered values of a key, in the order they were appended
+     */
+    ValuePacker(int maxBytes, BiConsumer<String, List<byte[]>> writer) {
+        if (maxBytes <= 0) throw new IllegalArgumentException("Value packing bytes must be positive: " + maxBytes);
+        this.maxBytes = maxBytes;
+        this.writer = writer;
+    }
+
+    void add(String key, byte[] value) {
+        final boolean[] full = new boolean[1];
+        pending.compute(key, (k, buffered) -> {
+            if (buffered == null) buffered = new Pending();
+            buffered.values.add(value);
+            buffered.bytes += Varint.computeSize(value.length) + value.length;
+            full[0] = buffered.bytes >= maxBytes;
+            return buffered;
+        });
+        if (full[0]) flush(key);
+    }
+
+    /**
+     * Write the buffered values of a key
+     *
+     * @param key the key to write
+     */
+    void flush(String key) {
+        Lock lock = stripedLocks.get(key);
+        lock.lock();
+        try {
+            Pending buffered = pending.remove(key);
+            if (buffered != null) writer.accept(key, buffered.values);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the buffered values of every key
+     */
+    void flush() {
+        pending.keySet().forEach(this::flush);
+    }
+
+    /**
+     * Drop the buffered values without writing them
+     */
+    void discard() {
+        pending.clear();
+    }
+
+    int pendingKeys() {
+        return pending.size();
+    }
+
+    static byte[] pack(List<byte[]> values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(values.stream().mapToInt(value -> value.length + 1).sum());
+        try {
+            for (byte[] value : values) {
+                Varint.write(out, value.length);
+                out.write(value);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to pack values", e);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[][] unpack(byte[] chunk) {
+        List<byte[]> values = new ArrayList<>();
+        int offset = 0;
+        while (offset < chunk.length) {
+            final long length = Varint.readLong(chunk, offset);
+            offset += Varint.computeSize(length);
+            if (length > chunk.length - offset) throw new IllegalStateException("Packed value of " + length + " bytes overruns its chunk of " + chunk.length + " bytes");
+            values.add(Arrays.copyOfRange(chunk, offset, offset + (int) length));
+            offset += (int) length;
+        }
+        return values.toArray(new byte[0][]);
+    }
+}
@@ -0,0 +1,100 @@
+package com.upserve.uppend.blobs;
+
+import org.slf4j.Logger;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads blobs in the background and hands back a future for each blob or batch of blobs, so that a caller can keep many
+ * reads outstanding on the device rather than waiting for one page fault at a time in its own thread. Where the kernel
+ * supports io_uring, blobs are read through a ring driven by one thread, and the records are decoded on a pool of
+ * threads. Elsewhere, or if the ring fails, single blobs are read with pread on the pool, so a miss waits in the kernel
+ * rather than in a page fault, and batches are a single coalesced read of the store. Idle threads time out, so a reader
+ * which is not in use holds no threads.
+ */
+public class AsyncBlobReader {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+
+    private final int threads;
+    private final ThreadPoolExecutor executor;
+    private final IoUringBlobReader ringReader;
+
+    /**
+     * @param threads the maximum number of blob reads in flight
+     */
+    public AsyncBlobReader(int threads) {
+        this(threads, true);
+    }
+
+    /**
+     * @param threads the maximum number of blob reads in flight: the depth of the ring, or the number of threads which
+     * read with pread
+     * @param ioUring whether to read through an io_uring where the kernel supports it
+     */
+    public AsyncBlobReader(int threads, boolean ioUring) {
+        if (threads < 1) throw new IllegalArgumentException("Async read threads must be positive: " + threads);
+        this.threads = threads;
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "uppend-read-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        ringReader = ioUring ? IoUringBlobReader.open(threads, executor) : null;
+        log.debug("Reading blobs {} with {} in flight", ringReader != null ? "through an io_uring" : "with pread", threads);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @return whether single blobs are read through an io_uring rather than with pread on the pool
+     */
+    public boolean isUsingIoUring() {
+        return ringReader != null && !ringReader.isFailed();
+    }
+
+    /**
+     * Read the blob at a position in the background
+     *
+     * @param store the virtual blob store to read from
+     * @param pos the position of the blob
+     * @return a future for the blob
+     */
+    public CompletableFuture<byte[]> read(VirtualAppendOnlyBlobStore store, long pos) {
+        if (ringReader != null) {
+            final CompletableFuture<byte[]> future = ringReader.read(store, pos);
+            if (future != null) return future;
+        }
+        return CompletableFuture.supplyAsync(() -> NativeBlobRead.pread(store, pos), executor);
+    }
+
+    /**
+     * Read the blobs at these positions in the background as one batch. Through a ring, each blob of the batch is a
+     * read in flight. On the pool, the batch is one read of the store, which copies neighbouring records together.
+     *
+     * @param store the virtual blob store to read from
+     * @param positions the positions of the blobs
+     * @return a future for the blobs in the order of positions
+     */
+    public CompletableFuture<byte[][]> read(VirtualAppendOnlyBlobStore store, long[] positions) {
+        if (!isUsingIoUring()) return CompletableFuture.supplyAsync(() -> store.read(positions), executor);
+
+        @SuppressWarnings("unchecked")
+        final CompletableFuture<byte[]>[] futures = new CompletableFuture[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            futures[i] = read(store, positions[i]);
+        }
+        return CompletableFuture.allOf(futures).thenApply(done -> {
+            final byte[][] result = new byte[futures.length][];
+            for (int i = 0; i < futures.length; i++) {
+                result[i] = futures[i].join();
+            }
+            return result;
+        });
+    }
+}
@@ -0,0 +1,22 @@
+package com.upserve.uppend.blobs;
+
+/**
+ * Compresses the records of a blob store. Records are compressed one at a time, so that their positions do not change
+ * and each can still be read on its own.
+ */
+public interface BlobCodec {
+    /**
+     * @param bytes the bytes of a record
+     * @return the compressed bytes, which are stored only if they are smaller than the record
+     */
+    byte[] compress(byte[] bytes);
+
+    /**
+     * @param compressed an array holding compressed bytes
+     * @param offset the offset of the compressed bytes in the array
+     * @param length the number of compressed bytes
+     * @param decompressedLength the length of the record before it was compressed
+     * @return the bytes of the record
+     */
+    byte[] decompress(byte[] compressed, int offset, int length, int decompressedLength);
+}
@@ -0,0 +1,225 @@
+package com.upserve.uppend.blobs;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A cache of blob values shared by the blob stores of an Uppend store, kept in direct buffers outside the heap so that
+ * a large cache does not add to garbage collection. An evicted value is freed as it is evicted rather than when a
+ * collection finds its buffer, so the byte budget bounds the memory held. Values are immutable, so entries are never
+ * invalidated. The cache is split into shards, each an LRU list under a share of the byte budget. A full shard admits
+ * a new value only if it has been read more often than the least recently used value it would evict, as counted by a
+ * small frequency sketch (TinyLFU), so that a scan reading each value once does not flush the hot values out.
+ */
+public class BlobValueCache {
+    private static final int SHARDS = 64;
+
+    private final long maxBytes;
+    private final long shardBytes;
+    private final Shard[] shards;
+    private final AtomicInteger nextStoreId = new AtomicInteger();
+
+    private static class Key {
+        private final int storeId;
+        private final long position;
+
+        private Key(int storeId, long position) {
+            this.storeId = storeId;
+            this.position = position;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return storeId == key.storeId && position == key.position;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(position * 31 + storeId);
+        }
+    }
+
+    private static class Shard {
+        private final LinkedHashMap<Key, ByteBuffer> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final FrequencySketch sketch;
+        private long bytes;
+
+        private Shard(int sketchWidth) {
+            sketch = new FrequencySketch(sketchWidth);
+        }
+    }
+
+    /**
+     * @param maxBytes the number of bytes of values to keep
+     */
+    public BlobValueCache(long maxBytes) {
+        if (maxBytes <= 0) throw new IllegalArgumentException("Blob value cache bytes must be positive: " + maxBytes);
+        this.maxBytes = maxBytes;
+        shardBytes = Math.max(1, maxBytes / SHARDS);
+        // Size the sketches for a counter in each row per 64 bytes of values
+        final int sketchWidth = (int) Math.min(1 << 16, Math.max(64, Long.highestOneBit(shardBytes / 64) * 2));
+        shards = new Shard[SHARDS];
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(sketchWidth);
+        }
+    }
+
+    /**
+     * @return an id for a blob store which distinguishes its positions from those of the other blob stores
+     */
+    int register() {
+        return nextStoreId.getAndIncrement();
+    }
+
+    /**
+     * Get a value, counting the access towards its admission whether or not it is cached
+     *
+     * @param storeId the id of the blob store
+     * @param position the position of the value in the blob store
+     * @return a copy of the value, or null if it is not cached
+     */
+    byte[] get(int storeId, long position) {
+        final Key key = new Key(storeId, position);
+        final int hash = spread(key.hashCode());
+        final Shard shard = shards[hash & (SHARDS - 1)];
+        synchronized (shard) {
+            shard.sketch.increment(hash);
+            final ByteBuffer value = shard.entries.get(key);
+            if (value == null) return null;
+            // Copied under the lock, as an eviction frees the buffer
+            final byte[] copy = new byte[value.capacity()];
+            value.duplicate().get(copy);
+            return copy;
+        }
+    }
+
+    /**
+     * Offer a value which was read from a blob store. It is cached if there is room or it is read more often than the
+     * value it would evict.
+     *
+     * @param storeId the id of the blob store
+     * @param position the position of the value in the blob store
+     * @param value the value
+     */
+    void put(int storeId, long position, byte[] value) {
+        if (value.length > shardBytes) return;
+        final Key key = new Key(storeId, position);
+        final int hash = spread(key.hashCode());
+        final Shard shard = shards[hash & (SHARDS - 1)];
+        synchronized (shard) {
+            if (shard.entries.containsKey(key)) return;
+            final int frequency = shard.sketch.frequency(hash);
+            // Only evict if every value that has to make room is read less often
+            long freed = 0;
+            int victims = 0;
+            Iterator<Map.Entry<Key, ByteBuffer>> eldest = shard.entries.entrySet().iterator();
+            while (shard.bytes - freed + value.length > shardBytes) {
+                Map.Entry<Key, ByteBuffer> victim = eldest.next();
+                if (shard.sketch.frequency(spread(victim.getKey().hashCode())) >= frequency) return;
+                freed += victim.getValue().capacity();
+                victims++;
+            }
+            eldest = shard.entries.entrySet().iterator();
+            for (int i = 0; i < victims; i++) {
+                NativeIO.free(eldest.next().getValue());
+                eldest.remove();
+            }
+            shard.bytes -= freed;
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(value.length);
+            buffer.put(value).clear();
+            shard.entries.put(key, buffer);
+            shard.bytes += value.length;
+        }
+    }
+
+    /**
+     * Remove and free every cached value
+     */
+    public void clear() {
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                shard.entries.values().forEach(NativeIO::free);
+                shard.entries.clear();
+                shard.bytes = 0;
+            }
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the number of bytes of values cached
+     */
+    public long size() {
+        long bytes = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                bytes += shard.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * A count-min sketch of 4 bit counters which estimates how often a hash has been seen recently. Every counter is
+     * halved once the number of increments reaches ten times the width, so that old popularity fades.
+     */
+    static class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int[] SEEDS = {0x97CB3127, 0xB8A2C5D1, 0x4F1BBCDD, 0x2545F491};
+
+        private final byte[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int width) {
+            if (Integer.bitCount(width) != 1) throw new IllegalArgumentException("Sketch width must be a power of two: " + width);
+            counters = new byte[DEPTH][width];
+            mask = width - 1;
+            sampleSize = 10 * width;
+        }
+
+        void increment(int hash) {
+            for (int row = 0; row < DEPTH; row++) {
+                final int index = index(hash, row);
+                if (counters[row][index] < 15) counters[row][index]++;
+            }
+            if (++additions >= sampleSize) {
+                for (byte[] row : counters) {
+                    for (int i = 0; i < row.length; i++) row[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(int hash) {
+            int frequency = Integer.MAX_VALUE;
+            for (int row = 0; row < DEPTH; row++) {
+                frequency = Math.min(frequency, counters[row][index(hash, row)]);
+            }
+            return frequency;
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+            return (h ^ (h >>> 15)) & mask;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BlobValueCache{maxBytes=" + maxBytes + '}';
+    }
+}
@@ -0,0 +1,69 @@
+package com.upserve.uppend.blobs;
+
+import java.util.Arrays;
+import java.util.zip.*;
+
+/**
+ * A {@link BlobCodec} using the deflate compression of the JDK, at the fastest level by default. The deflaters and
+ * inflaters are kept per thread, since creating them allocates native memory.
+ */
+public class DeflateCodec implements BlobCodec {
+    private final int level;
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+    public DeflateCodec() {
+        this(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param level the deflate compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}
+     */
+    public DeflateCodec(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) throw new IllegalArgumentException("Bad deflate level: " + level);
+        this.level = level;
+        deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+    }
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        byte[] result = new byte[bytes.length + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == result.length) result = Arrays.copyOf(result, 2 * result.length);
+            length += deflater.deflate(result, length, result.length - length);
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    @Override
+    public byte[] decompress(byte[] compressed, int offset, int length, int decompressedLength) {
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        inflater.setInput(compressed, offset, length);
+        byte[] result = new byte[decompressedLength];
+        try {
+            int inflated = 0;
+            while (inflated < decompressedLength && !inflater.finished()) {
+                final int bytes = inflater.inflate(result, inflated, decompressedLength - inflated);
+                if (bytes == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                inflated += bytes;
+            }
+            if (inflated != decompressedLength) {
+                throw new IllegalStateException("Inflated " + inflated + " bytes of a record of " + decompressedLength);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Unable to inflate record", e);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "DeflateCodec{level=" + level + '}';
+    }
+}
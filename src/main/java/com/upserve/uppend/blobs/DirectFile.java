@@ -0,0 +1,124 @@
+package com.upserve.uppend.blobs;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.locks.*;
+
+/**
+ * A file descriptor opened with O_DIRECT for the pages of a {@link VirtualPageFile}. All reads and writes are whole
+ * blocks of {@link NativeIO#pageSize} at aligned offsets using aligned buffers.
+ */
+class DirectFile implements Closeable {
+    private static final int LOCK_STRIPES = 64;
+
+    private static final ThreadLocal<ByteBuffer> LOCAL_ALIGNED_BUFFER = ThreadLocal.withInitial(() -> alignedBuffer(NativeIO.pageSize));
+
+    private final Path filePath;
+    private final int fd;
+    private final int pageSize;
+    private final Lock[] pageLocks;
+
+    DirectFile(Path filePath, int pageSize, boolean readOnly) {
+        if (pageSize % NativeIO.pageSize != 0) {
+            throw new IllegalArgumentException("Direct page I/O requires a page size " + pageSize + " which is a multiple of the host system page size " + NativeIO.pageSize + " for file " + filePath);
+        }
+        this.filePath = filePath;
+        this.pageSize = pageSize;
+
+        try {
+            fd = NativeIO.openDirect(filePath, readOnly);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open file for direct I/O: " + filePath, e);
+        }
+
+        pageLocks = new Lock[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            pageLocks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Read length bytes at position into dst at offset
+     */
+    void read(long position, byte[] dst, int offset, int length) {
+        final long alignedStart = alignDown(position);
+        final int alignedLength = (int) (alignUp(position + length) - alignedStart);
+
+        ByteBuffer buffer = localBuffer(alignedLength);
+        readAligned(buffer, alignedStart, alignedLength);
+        buffer.position((int) (position - alignedStart));
+        buffer.get(dst, offset, length);
+    }
+
+    /**
+     * Write length bytes from src at offset to position. The blocks containing the range are read, modified and
+     * written back holding a lock for the page, so the range must not cross a page boundary.
+     */
+    void write(long position, byte[] src, int offset, int length) {
+        final long alignedStart = alignDown(position);
+        final int alignedLength = (int) (alignUp(position + length) - alignedStart);
+
+        Lock lock = pageLocks[(int) ((position / pageSize) % LOCK_STRIPES)];
+        lock.lock();
+        try {
+            ByteBuffer buffer = localBuffer(alignedLength);
+            readAligned(buffer, alignedStart, alignedLength);
+            buffer.position((int) (position - alignedStart));
+            buffer.put(src, offset, length);
+
+            buffer.clear().limit(alignedLength);
+            final long written;
+            try {
+                written = NativeIO.pwrite(fd, buffer, alignedLength, alignedStart);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to write " + alignedLength + " bytes at " + alignedStart + " in file " + filePath, e);
+            }
+            if (written != alignedLength) {
+                throw new IllegalStateException("Wrote " + written + " of " + alignedLength + " bytes at " + alignedStart + " in file " + filePath);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks past the end of the file have not been written yet and read as zeros, as they would if mapped
+    private void readAligned(ByteBuffer buffer, long alignedStart, int alignedLength) {
+        buffer.clear().limit(alignedLength);
+        final long read;
+        try {
+            read = NativeIO.pread(fd, buffer, alignedLength, alignedStart);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + alignedLength + " bytes at " + alignedStart + " in file " + filePath, e);
+        }
+        for (int i = (int) Math.max(read, 0); i < alignedLength; i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    private static ByteBuffer localBuffer(int size) {
+        ByteBuffer buffer = LOCAL_ALIGNED_BUFFER.get();
+        if (buffer.capacity() < size) {
+            buffer = alignedBuffer(size);
+            LOCAL_ALIGNED_BUFFER.set(buffer);
+        }
+        return buffer;
+    }
+
+    private static ByteBuffer alignedBuffer(int size) {
+        return ByteBuffer.allocateDirect(size + NativeIO.pageSize).alignedSlice(NativeIO.pageSize);
+    }
+
+    private static long alignDown(long position) {
+        return position & -NativeIO.pageSize;
+    }
+
+    private static long alignUp(long position) {
+        return (position + NativeIO.pageSize - 1) & -NativeIO.pageSize;
+    }
+
+    @Override
+    public void close() throws IOException {
+        NativeIO.close(fd);
+    }
+}
@@ -0,0 +1,36 @@
+package com.upserve.uppend.blobs;
+
+/**
+ * O_DIRECT backed implementation of Page
+ */
+public class DirectPage implements Page {
+    private final DirectFile file;
+    private final int pageSize;
+    private final long pageStart;
+
+    /**
+     * Constructor for a direct I/O page
+     * @param file the file opened for direct I/O
+     * @param pageStart the start of the page
+     * @param pageSize the page size
+     */
+    DirectPage(DirectFile file, long pageStart, int pageSize) {
+        this.file = file;
+        this.pageStart = pageStart;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public int get(int pagePosition, byte[] dst, int bufferOffset, int bufferLength) {
+        final int actualRead = actualOperationSize(pagePosition, pageSize, bufferOffset, bufferLength);
+        file.read(pageStart + pagePosition, dst, bufferOffset, actualRead);
+        return actualRead;
+    }
+
+    @Override
+    public int put(int pagePosition, byte[] src, int bufferOffset) {
+        final int actualWrite = actualOperationSize(pagePosition, pageSize, bufferOffset, src.length);
+        file.write(pageStart + pagePosition, src, bufferOffset, actualWrite);
+        return actualWrite;
+    }
+}
@@ -25,8 +25,8 @@ public class FilePage implements Page {
     }
 
     @Override
-    public int get(int pagePosition, byte[] dst, int bufferOffset) {
-        final int actualRead = actualOperationSize(pagePosition, pageSize, bufferOffset, dst.length);
+    public int get(int pagePosition, byte[] dst, int bufferOffset, int bufferLength) {
+        final int actualRead = actualOperationSize(pagePosition, pageSize, bufferOffset, bufferLength);
 
         // Make a local buffer with local position
         ByteBuffer byteBuffer = ByteBuffer.wrap(dst, bufferOffset, actualRead);
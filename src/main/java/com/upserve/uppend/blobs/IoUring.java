@@ -0,0 +1,185 @@
+package com.upserve.uppend.blobs;
+
+import java.io.*;
+import java.lang.invoke.VarHandle;
+import java.nio.*;
+
+/**
+ * A Linux io_uring used to submit file reads and reap their completions without a thread per read. The submission and
+ * completion rings are shared with the kernel through mapped memory. A ring must only be used by one thread.
+ */
+class IoUring implements Closeable {
+    // Sizes and layout of struct io_uring_params, struct io_uring_sqe and struct io_uring_cqe
+    private static final int PARAMS_SIZE = 120;
+    private static final int SQ_OFFSETS = 40;
+    private static final int CQ_OFFSETS = 80;
+    private static final int SQE_SIZE = 64;
+    private static final int CQE_SIZE = 16;
+
+    private static final int IORING_FEAT_SINGLE_MMAP = 1;
+    private static final long IORING_OFF_SQ_RING = 0L;
+    private static final long IORING_OFF_CQ_RING = 0x8000000L;
+    private static final long IORING_OFF_SQES = 0x10000000L;
+    private static final byte IORING_OP_READ = 22;
+
+    private final int fd;
+    private final ByteBuffer sqRing;
+    private final ByteBuffer cqRing;
+    private final ByteBuffer sqes;
+
+    private final int entries;
+    private final int sqTail;
+    private final int sqMask;
+    private final int sqArray;
+    private final int cqHead;
+    private final int cqTail;
+    private final int cqMask;
+    private final int cqes;
+
+    private int localTail;
+    private int toSubmit;
+
+    /**
+     * Set up a ring
+     *
+     * @param entries the number of reads the ring can hold, rounded up to a power of two by the kernel
+     * @return the ring
+     * @throws IOException if io_uring is not available
+     */
+    static IoUring open(int entries) throws IOException {
+        ByteBuffer params = ByteBuffer.allocateDirect(PARAMS_SIZE).order(ByteOrder.nativeOrder());
+        int fd = NativeIO.ioUringSetup(entries, params);
+        if (fd <= 0) {
+            throw new IOException("io_uring_setup returned an invalid file descriptor: " + fd);
+        }
+        try {
+            return new IoUring(fd, params);
+        } catch (IOException | RuntimeException e) {
+            NativeIO.close(fd);
+            throw e;
+        }
+    }
+
+    private IoUring(int fd, ByteBuffer params) throws IOException {
+        this.fd = fd;
+        entries = params.getInt(0);
+        int cqEntries = params.getInt(4);
+        if (entries <= 0 || cqEntries < entries) {
+            throw new IOException("io_uring_setup returned an unusable ring with " + entries + " entries");
+        }
+
+        // The offsets of the fields of the rings in their mappings
+        sqTail = params.getInt(SQ_OFFSETS + 4);
+        sqArray = params.getInt(SQ_OFFSETS + 24);
+        cqHead = params.getInt(CQ_OFFSETS);
+        cqTail = params.getInt(CQ_OFFSETS + 4);
+        cqes = params.getInt(CQ_OFFSETS + 20);
+
+        int sqRingSize = sqArray + entries * 4;
+        int cqRingSize = cqes + cqEntries * CQE_SIZE;
+        if ((params.getInt(20) & IORING_FEAT_SINGLE_MMAP) != 0) {
+            sqRing = NativeIO.mmap(fd, IORING_OFF_SQ_RING, Math.max(sqRingSize, cqRingSize));
+            cqRing = sqRing;
+        } else {
+            sqRing = NativeIO.mmap(fd, IORING_OFF_SQ_RING, sqRingSize);
+            cqRing = NativeIO.mmap(fd, IORING_OFF_CQ_RING, cqRingSize);
+        }
+        sqes = NativeIO.mmap(fd, IORING_OFF_SQES, entries * SQE_SIZE);
+        sqMask = sqRing.getInt(params.getInt(SQ_OFFSETS + 8));
+        cqMask = cqRing.getInt(params.getInt(CQ_OFFSETS + 8));
+        localTail = sqRing.getInt(sqTail);
+    }
+
+    /**
+     * @return the number of reads the ring can hold in flight
+     */
+    int getEntries() {
+        return entries;
+    }
+
+    /**
+     * Queue a read to be submitted by the next call to {@link #submitAndWait(int)}. The caller must not have more
+     * reads queued or in flight than the ring holds.
+     *
+     * @param fileDescriptor the file to read
+     * @param address the native address to read into
+     * @param length the number of bytes to read
+     * @param offset the position in the file to read from
+     * @param userData returned with the completion of the read
+     */
+    void prepareRead(int fileDescriptor, long address, int length, long offset, long userData) {
+        int index = localTail & sqMask;
+        int sqe = index * SQE_SIZE;
+        for (int i = 0; i < SQE_SIZE; i += 8) {
+            sqes.putLong(sqe + i, 0L);
+        }
+        sqes.put(sqe, IORING_OP_READ);
+        sqes.putInt(sqe + 4, fileDescriptor);
+        sqes.putLong(sqe + 8, offset);
+        sqes.putLong(sqe + 16, address);
+        sqes.putInt(sqe + 24, length);
+        sqes.putLong(sqe + 32, userData);
+        sqRing.putInt(sqArray + index * 4, index);
+        localTail++;
+        toSubmit++;
+    }
+
+    /**
+     * Submit the queued reads and wait for completions
+     *
+     * @param minComplete the number of completions to wait for
+     * @throws IOException if the kernel rejects the submission
+     */
+    void submitAndWait(int minComplete) throws IOException {
+        VarHandle.releaseFence();
+        sqRing.putInt(sqTail, localTail);
+        while (toSubmit > 0 || minComplete > 0) {
+            int submitted = NativeIO.ioUringEnter(fd, toSubmit, minComplete);
+            toSubmit -= submitted;
+            if (submitted == 0 && toSubmit > 0) {
+                throw new IOException("io_uring_enter submitted none of " + toSubmit + " reads");
+            }
+            minComplete = 0;
+        }
+    }
+
+    /**
+     * Hand the reaped completions to a consumer
+     *
+     * @param consumer takes the user data and result of each completed read: the number of bytes read, or the
+     * negated errno of a failed read
+     * @return the number of completions reaped
+     */
+    int reap(CompletionConsumer consumer) {
+        int head = cqRing.getInt(cqHead);
+        int tail = cqRing.getInt(cqTail);
+        VarHandle.acquireFence();
+        int reaped = 0;
+        while (head != tail) {
+            int cqe = cqes + (head & cqMask) * CQE_SIZE;
+            long userData = cqRing.getLong(cqe);
+            int result = cqRing.getInt(cqe + 8);
+            head++;
+            reaped++;
+            consumer.accept(userData, result);
+        }
+        VarHandle.releaseFence();
+        cqRing.putInt(cqHead, head);
+        return reaped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        NativeIO.munmap(sqes);
+        NativeIO.munmap(sqRing);
+        if (cqRing != sqRing) {
+            NativeIO.munmap(cqRing);
+        }
+        NativeIO.close(fd);
+    }
+
+    @FunctionalInterface
+    interface CompletionConsumer {
+        void accept(long userData, int result);
+    }
+}
@@ -0,0 +1,270 @@
+package com.upserve.uppend.blobs;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads blobs through an io_uring driven by a single thread. The thread submits the reads of every blob requested
+ * since its last wait with one system call and waits for any of them to complete, so that as many reads as the ring
+ * holds are in flight on the device without a thread blocked on each. Completed records are decoded on an executor.
+ * The thread exits when idle and is started again by the next read. If the ring fails, the reads in progress and all
+ * later reads fall back to the page backend.
+ */
+class IoUringBlobReader {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+    private static final long IDLE_SECONDS = 60;
+
+    private final IoUring ring;
+    private final Executor executor;
+    private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    private Thread thread; // guarded by this
+    private boolean failed; // guarded by this
+
+    // Only used by the ring thread
+    private final Slot[] slots;
+    private final int[] freeSlots;
+    private int freeCount;
+    private final Deque<Request> submitting = new ArrayDeque<>();
+
+    private IoUringBlobReader(IoUring ring, Executor executor) {
+        this.ring = ring;
+        this.executor = executor;
+        slots = new Slot[ring.getEntries()];
+        freeSlots = new int[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot();
+            freeSlots[freeCount++] = i;
+        }
+    }
+
+    /**
+     * Set up a reader
+     *
+     * @param entries the number of reads to keep in flight
+     * @param executor decodes completed records and reads through the page backend when a native read fails
+     * @return the reader, or null if io_uring is not available
+     */
+    static IoUringBlobReader open(int entries, Executor executor) {
+        try {
+            return new IoUringBlobReader(IoUring.open(entries), executor);
+        } catch (IOException | RuntimeException | LinkageError e) {
+            log.info("Unable to set up an io_uring, reading blobs with pread instead: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Read the blob at a position through the ring
+     *
+     * @param store the virtual blob store to read from
+     * @param pos the position of the blob
+     * @return a future for the blob, or null if the blob can not be read through the ring
+     */
+    CompletableFuture<byte[]> read(VirtualAppendOnlyBlobStore store, long pos) {
+        final byte[] cached = store.readCached(pos);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        final int fd = store.readDescriptor();
+        if (fd < 0) return null;
+
+        final Request request = new Request(new NativeBlobRead(store, pos), fd);
+        synchronized (this) {
+            if (failed) return null;
+            requests.add(request);
+            if (thread == null) {
+                thread = new Thread(this::run, "uppend-ring-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+        return request.future;
+    }
+
+    synchronized boolean isFailed() {
+        return failed;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                while (freeCount > 0) {
+                    if (submitting.isEmpty()) {
+                        final Request request = isIdle() ? requests.poll(IDLE_SECONDS, TimeUnit.SECONDS) : requests.poll();
+                        if (request == null) break;
+                        nextStep(request);
+                    } else {
+                        submit(submitting.peek());
+                    }
+                }
+
+                if (isIdle()) {
+                    if (!submitting.isEmpty()) continue;
+                    synchronized (this) {
+                        if (requests.isEmpty()) {
+                            thread = null;
+                            return;
+                        }
+                    }
+                    continue;
+                }
+
+                ring.submitAndWait(1);
+                ring.reap(this::completed);
+            }
+        } catch (IOException | RuntimeException | InterruptedException e) {
+            log.error("Reading blobs through the io_uring failed, reading with pread instead", e);
+            fail();
+        }
+    }
+
+    private boolean isIdle() {
+        return freeCount == slots.length;
+    }
+
+    /**
+     * Start the next step of a request, or finish it
+     */
+    private void nextStep(Request request) {
+        try {
+            if (!request.failed && request.read.nextStep()) {
+                request.submitting = true;
+                submitting.add(request);
+                return;
+            }
+        } catch (RuntimeException e) {
+            request.failed = true;
+        }
+        finish(request);
+    }
+
+    /**
+     * Add the next segment of a request to the ring
+     */
+    private void submit(Request request) {
+        int length = 0;
+        if (!request.failed) {
+            try {
+                length = request.read.nextSegment(NativeBlobRead.CHUNK_BYTES);
+            } catch (RuntimeException e) {
+                // Such as a page which is not allocated; the read through the page backend gives the same exception
+                request.failed = true;
+            }
+        }
+        if (request.failed || !request.read.hasSegment()) {
+            request.submitting = false;
+            submitting.poll();
+        }
+        if (request.failed) {
+            if (request.outstanding == 0) finish(request);
+            return;
+        }
+
+        final int index = freeSlots[--freeCount];
+        final Slot slot = slots[index];
+        slot.request = request;
+        slot.offset = request.read.segmentOffset();
+        slot.filePosition = request.read.segmentFilePosition();
+        slot.length = length;
+        slot.done = 0;
+        if (slot.buffer == null || slot.buffer.capacity() < length) {
+            if (slot.buffer != null) NativeIO.free(slot.buffer);
+            slot.buffer = ByteBuffer.allocateDirect(Math.max(length, NativeBlobRead.INITIAL_READ_BYTES));
+        }
+        request.outstanding++;
+        prepare(index, slot);
+    }
+
+    private void prepare(int index, Slot slot) {
+        ring.prepareRead(slot.request.fd, NativeIO.address(slot.buffer) + slot.done, slot.length - slot.done, slot.filePosition + slot.done, index);
+    }
+
+    private void completed(long userData, int result) {
+        final int index = (int) userData;
+        final Slot slot = slots[index];
+        final Request request = slot.request;
+        if (result > 0 && slot.done + result < slot.length) {
+            // A short read takes another read for the rest of the segment, which stays in flight in the same slot
+            slot.done += result;
+            prepare(index, slot);
+            return;
+        }
+        if (result <= 0) {
+            request.failed = true;
+        } else {
+            request.read.segmentRead(slot.offset, slot.buffer, 0, slot.length);
+        }
+        slot.request = null;
+        freeSlots[freeCount++] = index;
+        request.outstanding--;
+
+        if (request.outstanding > 0 || request.submitting) return;
+        if (request.failed) {
+            finish(request);
+        } else {
+            request.read.stepRead();
+            nextStep(request);
+        }
+    }
+
+    private void finish(Request request) {
+        executor.execute(() -> {
+            try {
+                request.future.complete(request.failed ? request.read.fallback() : request.read.complete());
+            } catch (Throwable t) {
+                request.future.completeExceptionally(t);
+            }
+        });
+    }
+
+    /**
+     * Hand the requests in progress to the page backend. The slot buffers are not freed since the kernel may still hold
+     * reads into them.
+     */
+    private void fail() {
+        final List<Request> pending = new ArrayList<>();
+        for (Slot slot : slots) {
+            if (slot.request != null && !pending.contains(slot.request)) pending.add(slot.request);
+        }
+        for (Request request : submitting) {
+            if (!pending.contains(request)) pending.add(request);
+        }
+        synchronized (this) {
+            failed = true;
+            thread = null;
+            requests.drainTo(pending);
+        }
+        for (Request request : pending) {
+            request.failed = true;
+            finish(request);
+        }
+    }
+
+    private static class Request {
+        final NativeBlobRead read;
+        final int fd;
+        final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        int outstanding; // the reads of this step in the ring
+        boolean submitting; // whether this step has segments left to submit
+        boolean failed;
+
+        Request(NativeBlobRead read, int fd) {
+            this.read = read;
+            this.fd = fd;
+        }
+    }
+
+    private static class Slot {
+        Request request;
+        ByteBuffer buffer;
+        int offset; // the offset of the segment in the record
+        long filePosition;
+        int length;
+        int done;
+    }
+}
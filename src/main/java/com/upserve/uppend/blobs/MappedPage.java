@@ -1,12 +1,21 @@
 package com.upserve.uppend.blobs;
 
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
 import java.nio.*;
 
 /**
- * Mapped Byte Buffer backed implementation of Page
+ * Mapped Byte Buffer backed implementation of Page. A page in a pooled window acquires the window for each operation
+ * so that the window can not be unmapped underneath it.
  */
 public class MappedPage implements Page {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
     private final MappedByteBuffer buffer;
+    private final MappedWindows windows;
+    private final int windowIndex;
     private final int pageSize;
     private final int startingPosition;
 
@@ -20,6 +29,24 @@ public class MappedPage implements Page {
     public MappedPage(MappedByteBuffer buffer, int startingPosition, int pageSize) {
         this.pageSize = pageSize;
         this.buffer = buffer;
+        this.windows = null;
+        this.windowIndex = -1;
+        this.startingPosition = startingPosition;
+    }
+
+    /**
+     * Constructor for a MappedPage in a pooled window
+     *
+     * @param windows the mapped windows of a file
+     * @param windowIndex the index of the window containing the page
+     * @param startingPosition the starting offset in the window
+     * @param pageSize the size of the page to create
+     */
+    public MappedPage(MappedWindows windows, int windowIndex, int startingPosition, int pageSize) {
+        this.pageSize = pageSize;
+        this.buffer = null;
+        this.windows = windows;
+        this.windowIndex = windowIndex;
         this.startingPosition = startingPosition;
     }
 
@@ -33,26 +60,106 @@ public class MappedPage implements Page {
     }
 
     @Override
-    public int get(int pagePosition, byte[] dst, int bufferOffset) {
-        final int actualRead = actualOperationSize(pagePosition, pageSize, bufferOffset, dst.length);
+    public int get(int pagePosition, byte[] dst, int bufferOffset, int bufferLength) {
+        final int actualRead = actualOperationSize(pagePosition, pageSize, bufferOffset, bufferLength);
 
+        if (windows == null) {
+            get(buffer, pagePosition, dst, bufferOffset, actualRead);
+        } else {
+            MappedWindow window = windows.acquire(windowIndex);
+            try {
+                get(window.buffer(), pagePosition, dst, bufferOffset, actualRead);
+            } finally {
+                window.release();
+            }
+        }
+        return actualRead;
+    }
+
+    private void get(MappedByteBuffer buffer, int pagePosition, byte[] dst, int bufferOffset, int length) {
         // Make a local buffer with local position
         ByteBuffer localBuffer = buffer.duplicate();
         localBuffer.position(pagePosition + startingPosition);
-        localBuffer.get(dst, bufferOffset, actualRead);
+        localBuffer.get(dst, bufferOffset, length);
+    }
 
-        return actualRead;
+    /**
+     * An unpinned view is only handed out for a page of a buffer owned by the caller. A pooled window can be unmapped
+     * as soon as it is released, by eviction, trim or close of its file, and a view outliving it would read unmapped
+     * memory, so a page in a window only hands out views which pin it.
+     */
+    @Override
+    public ByteBuffer view(int pagePosition, int length) {
+        if (windows != null || pagePosition + length > pageSize) return null;
+        return view(buffer, pagePosition, length);
+    }
+
+    /**
+     * A page in a pooled window keeps the window acquired in the pin, so it stays mapped until the pin moves on
+     */
+    @Override
+    public ByteBuffer view(int pagePosition, int length, ViewPin pin) {
+        if (windows == null) return view(pagePosition, length);
+        if (pagePosition + length > pageSize) return null;
+
+        MappedWindow window = windows.acquire(windowIndex);
+        pin.pin(window);
+        return view(window.buffer(), pagePosition, length);
+    }
+
+    private ByteBuffer view(MappedByteBuffer buffer, int pagePosition, int length) {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        view.limit(startingPosition + pagePosition + length).position(startingPosition + pagePosition);
+        return view;
+    }
+
+    @Override
+    public void advise(int pagePosition, int length, NativeIO.Advice advice) {
+        final int actualLength = Math.min(length, pageSize - pagePosition);
+        if (actualLength <= 0) return;
+
+        if (windows == null) {
+            advise(buffer, pagePosition, actualLength, advice);
+        } else {
+            MappedWindow window = windows.acquire(windowIndex);
+            try {
+                advise(window.buffer(), pagePosition, actualLength, advice);
+            } finally {
+                window.release();
+            }
+        }
+    }
+
+    private void advise(MappedByteBuffer buffer, int pagePosition, int length, NativeIO.Advice advice) {
+        try {
+            NativeIO.madvise(buffer, startingPosition + pagePosition, length, advice);
+        } catch (IOException e) {
+            log.debug("Unable to advise {} for {} bytes at {}", advice, length, pagePosition, e);
+        }
     }
 
     @Override
     public int put(int pagePosition, byte[] src, int bufferOffset) {
         final int actualWrite = actualOperationSize(pagePosition, pageSize, bufferOffset, src.length);
 
+        if (windows == null) {
+            put(buffer, pagePosition, src, bufferOffset, actualWrite);
+        } else {
+            MappedWindow window = windows.acquire(windowIndex);
+            try {
+                put(window.buffer(), pagePosition, src, bufferOffset, actualWrite);
+                window.written(startingPosition + pagePosition, actualWrite);
+            } finally {
+                window.release();
+            }
+        }
+        return actualWrite;
+    }
+
+    private void put(MappedByteBuffer buffer, int pagePosition, byte[] src, int bufferOffset, int length) {
         // Make a local buffer with local position
         ByteBuffer localBuffer = buffer.duplicate();
         localBuffer.position(pagePosition + startingPosition);
-        localBuffer.put(src, bufferOffset, actualWrite);
-
-        return actualWrite;
+        localBuffer.put(src, bufferOffset, length);
     }
 }
@@ -0,0 +1,154 @@
+package com.upserve.uppend.blobs;
+
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A reference counted region of a file mapped by {@link MappedWindows}. The mapping holds one reference of its own
+ * which is given up when the window is evicted or its file is closed; the buffer is unmapped once the last in-flight
+ * user releases it. When its owner tracks writes, the window also records the range written since it was last synced.
+ */
+public class MappedWindow {
+    private final MappedWindows owner;
+    private final int index;
+    private final MappedByteBuffer buffer;
+    private final ResidencyPolicy residency;
+    private final long residentBytes;
+
+    // The dirty range packed as start in the high int and end in the low int
+    private static final long CLEAN = (long) Integer.MAX_VALUE << 32;
+
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final AtomicLong dirtyRange = new AtomicLong(CLEAN);
+    private final AtomicLong writebackRange = new AtomicLong(CLEAN);
+    private volatile long lastUse;
+
+    MappedWindow(MappedWindows owner, int index, MappedByteBuffer buffer, ResidencyPolicy residency, long residentBytes) {
+        this.owner = owner;
+        this.index = index;
+        this.buffer = buffer;
+        this.residency = residency;
+        this.residentBytes = residentBytes;
+    }
+
+    /**
+     * The mapped buffer, which must only be used between a successful acquire and the matching release
+     *
+     * @return the buffer
+     */
+    public MappedByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * Take a reference without counting as a use of the window
+     *
+     * @return false if the window has already been unmapped
+     */
+    boolean retain() {
+        int count;
+        do {
+            count = references.get();
+            if (count == 0) return false;
+        } while (!references.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    /**
+     * Record bytes written to the buffer so that the next sync and writeback of the owner write them back. Must be
+     * called after the write while the window is still acquired.
+     *
+     * @param position the position of the write in the buffer
+     * @param length the number of bytes written
+     */
+    public void written(int position, int length) {
+        if (owner.isTrackingWrites() && extend(dirtyRange, position, position + length)) owner.dirtied(this);
+        if (owner.isWritingBack()) writebackLater(position, position + length);
+    }
+
+    /**
+     * Add a range to the pending writeback of the window
+     *
+     * @param start the start of the range in the buffer
+     * @param end the end of the range in the buffer
+     */
+    void writebackLater(int start, int end) {
+        if (extend(writebackRange, start, end)) owner.writebackPending(this);
+    }
+
+    /**
+     * Take the range written since the last sync, leaving the window clean
+     *
+     * @return the start of the range in the high int and the end in the low int, or -1 if the window is clean
+     */
+    long takeDirtyRange() {
+        return take(dirtyRange);
+    }
+
+    /**
+     * Take the range written since the last writeback
+     *
+     * @return the start of the range in the high int and the end in the low int, or -1 if there is none
+     */
+    long takeWritebackRange() {
+        return take(writebackRange);
+    }
+
+    /**
+     * Extend a packed range to cover start to end
+     *
+     * @return true if the range was clean, in which case the caller must queue the window
+     */
+    private static boolean extend(AtomicLong range, int start, int end) {
+        long current;
+        long updated;
+        do {
+            current = range.get();
+            final int currentStart = (int) (current >>> 32);
+            final int currentEnd = (int) current;
+            if (currentStart <= start && currentEnd >= end) return false;
+            updated = ((long) Math.min(currentStart, start) << 32) | Math.max(currentEnd, end);
+        } while (!range.compareAndSet(current, updated));
+        return current == CLEAN;
+    }
+
+    private static long take(AtomicLong range) {
+        final long taken = range.getAndSet(CLEAN);
+        return taken == CLEAN ? -1 : taken;
+    }
+
+    /**
+     * Release a reference taken by {@link MappedWindows#acquire(int)}
+     */
+    public void release() {
+        if (references.decrementAndGet() == 0) {
+            residency.unmapped(buffer, residentBytes);
+            NativeIO.unmap(buffer);
+        }
+    }
+
+    void touch(long clock) {
+        lastUse = clock;
+    }
+
+    long lastUse() {
+        return lastUse;
+    }
+
+    int size() {
+        return buffer.capacity();
+    }
+
+    int index() {
+        return index;
+    }
+
+    void evict() {
+        owner.evicted(this);
+    }
+
+    @Override
+    public String toString() {
+        return "MappedWindow{" + owner + " index=" + index + ", size=" + size() + ", references=" + references.get() + '}';
+    }
+}
@@ -0,0 +1,163 @@
+package com.upserve.uppend.blobs;
+
+import org.slf4j.Logger;
+
+import java.lang.invoke.MethodHandles;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Process wide accounting of the windows mapped by every {@link MappedWindows}. When a new window would take the
+ * number of mapped bytes or mappings over the limits, the least recently used windows are evicted and unmapped as soon
+ * as no reads or writes are in flight on them. Evicted windows are mapped again on their next use.
+ * <p>
+ * Eviction is a clock sweep. Windows queue in the order they were mapped, and using a window stamps it with the pool
+ * clock, which advances on every map and on every use of a window other than the most recently used one, so repeated
+ * use of the same window only costs a volatile read. The window at the head of the queue is evicted unless it has been
+ * used since it was queued, in which case it is queued again at the tail and the next one is considered. Each eviction
+ * takes constant time on average rather than a search of every mapped window.
+ * <p>
+ * The default limits are read from the system properties {@code uppend.mapped.maxBytes} and
+ * {@code uppend.mapped.maxMappings}; a limit of zero or less is unbounded. Stay well below {@code vm.max_map_count},
+ * which also has to cover the small header and page table mappings that are not pooled.
+ */
+public class MappedWindowPool {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    public static final String MAX_BYTES_PROPERTY = "uppend.mapped.maxBytes";
+    public static final String MAX_MAPPINGS_PROPERTY = "uppend.mapped.maxMappings";
+
+    private static final MappedWindowPool INSTANCE = new MappedWindowPool(
+            Long.getLong(MAX_BYTES_PROPERTY, 0L),
+            Integer.getInteger(MAX_MAPPINGS_PROPERTY, 0)
+    );
+
+    // Mapped windows in clock order, with the clock when each was queued
+    private final LinkedHashMap<MappedWindow, Long> windows = new LinkedHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+
+    private long maxMappedBytes;
+    private int maxMappings;
+
+    private long mappedBytes;
+
+    private final LongAdder mapCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    MappedWindowPool(long maxMappedBytes, int maxMappings) {
+        this.maxMappedBytes = maxMappedBytes;
+        this.maxMappings = maxMappings;
+    }
+
+    /**
+     * The pool shared by every mapped file in this process
+     *
+     * @return the pool
+     */
+    public static MappedWindowPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Change the limits of the pool, evicting windows immediately if they are exceeded
+     *
+     * @param maxMappedBytes the maximum number of bytes to keep mapped, zero or less for no limit
+     * @param maxMappings the maximum number of windows to keep mapped, zero or less for no limit
+     */
+    public synchronized void setLimits(long maxMappedBytes, int maxMappings) {
+        log.info("Setting mapped window limits to {} bytes and {} mappings", maxMappedBytes, maxMappings);
+        this.maxMappedBytes = maxMappedBytes;
+        this.maxMappings = maxMappings;
+        evict(null);
+    }
+
+    public synchronized long getMaxMappedBytes() {
+        return maxMappedBytes;
+    }
+
+    public synchronized int getMaxMappings() {
+        return maxMappings;
+    }
+
+    /**
+     * Whether mapped windows may be evicted to satisfy a limit
+     *
+     * @return true if either limit is set
+     */
+    public synchronized boolean isBounded() {
+        return maxMappedBytes > 0 || maxMappings > 0;
+    }
+
+    public synchronized long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    public synchronized int getMappingCount() {
+        return windows.size();
+    }
+
+    public long getMapCount() {
+        return mapCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Note a use of an acquired window
+     *
+     * @param window the window
+     */
+    void used(MappedWindow window) {
+        if (window.lastUse() != clock.get()) window.touch(clock.incrementAndGet());
+    }
+
+    synchronized void add(MappedWindow window) {
+        mapCount.increment();
+        window.touch(clock.incrementAndGet());
+        windows.put(window, window.lastUse());
+        mappedBytes += window.size();
+        evict(window);
+    }
+
+    synchronized void remove(MappedWindow window) {
+        if (windows.remove(window) != null) {
+            mappedBytes -= window.size();
+        }
+    }
+
+    private void evict(MappedWindow keep) {
+        while (overLimit()) {
+            final MappedWindow victim = sweep(keep);
+            if (victim == null) return;
+
+            log.debug("Evicting mapped window {}", victim);
+            windows.remove(victim);
+            mappedBytes -= victim.size();
+            evictionCount.increment();
+            victim.evict();
+        }
+    }
+
+    /**
+     * Advance the clock hand to the first window not used since it was queued, queueing the windows it passes again
+     *
+     * @return the window to evict, or null if there is none but the window to keep
+     */
+    private MappedWindow sweep(MappedWindow keep) {
+        // Each window is passed over at most twice unless it is in use concurrently
+        for (int passed = 2 * windows.size(); passed > 0; passed--) {
+            final Map.Entry<MappedWindow, Long> head = windows.entrySet().iterator().next();
+            final MappedWindow window = head.getKey();
+            if (window != keep && window.lastUse() <= head.getValue()) return window;
+            windows.remove(window);
+            windows.put(window, clock.get());
+        }
+        return windows.keySet().stream().filter(window -> window != keep).findFirst().orElse(null);
+    }
+
+    private boolean overLimit() {
+        return (maxMappings > 0 && windows.size() > maxMappings) || (maxMappedBytes > 0 && mappedBytes > maxMappedBytes);
+    }
+}
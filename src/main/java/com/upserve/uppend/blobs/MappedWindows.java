@@ -0,0 +1,332 @@
+package com.upserve.uppend.blobs;
+
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Fixed size windows mapped lazily over a file channel, starting at an offset. Windows are registered with the
+ * process wide {@link MappedWindowPool} which may evict them; an evicted window is mapped again when it is next
+ * acquired. Every use of a window's buffer must be bracketed by {@link #acquire(int)} and
+ * {@link MappedWindow#release()} so that the buffer is never unmapped while it is being read or written.
+ * <p>
+ * When write tracking is enabled, writers report what they wrote with {@link MappedWindow#written(int, int)} and
+ * {@link #sync()} msyncs only the dirty range of each dirty window. When registered with a
+ * {@link WritebackScheduler}, the ranges written are also handed to the kernel for writeback in the background.
+ */
+public class MappedWindows implements Closeable {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final Path filePath;
+    private final FileChannel channel;
+    private final FileChannel.MapMode mapMode;
+    private final long offset;
+    private final int windowSize;
+    private final Consumer<MappedByteBuffer> onMap;
+    private final ResidencyPolicy residency;
+    private final MappedWindowPool pool;
+
+    private final AtomicReferenceArray<MappedWindow> windows;
+
+    private volatile boolean trackWrites = false;
+    private final Queue<MappedWindow> dirtyWindows = new ConcurrentLinkedQueue<>();
+    private final Object syncLock = new Object();
+
+    private volatile WritebackScheduler writeback = null;
+    private int writebackFd = -1;
+    private final Queue<MappedWindow> writebackWindows = new ConcurrentLinkedQueue<>();
+    private final Object writebackLock = new Object();
+
+    public MappedWindows(Path filePath, FileChannel channel, FileChannel.MapMode mapMode, long offset, int windowSize, int maxWindows, Consumer<MappedByteBuffer> onMap) {
+        this(filePath, channel, mapMode, offset, windowSize, maxWindows, onMap, ResidencyPolicy.NONE);
+    }
+
+    public MappedWindows(Path filePath, FileChannel channel, FileChannel.MapMode mapMode, long offset, int windowSize, int maxWindows, Consumer<MappedByteBuffer> onMap, ResidencyPolicy residency) {
+        this(filePath, channel, mapMode, offset, windowSize, maxWindows, onMap, residency, MappedWindowPool.getInstance());
+    }
+
+    MappedWindows(Path filePath, FileChannel channel, FileChannel.MapMode mapMode, long offset, int windowSize, int maxWindows, Consumer<MappedByteBuffer> onMap, ResidencyPolicy residency, MappedWindowPool pool) {
+        this.filePath = filePath;
+        this.channel = channel;
+        this.mapMode = mapMode;
+        this.offset = offset;
+        this.windowSize = windowSize;
+        this.onMap = onMap;
+        this.residency = residency;
+        this.pool = pool;
+
+        windows = new AtomicReferenceArray<>(maxWindows);
+    }
+
+    /**
+     * Acquire a reference to a window, mapping it if it is not already mapped
+     *
+     * @param index the index of the window
+     * @return the window, which must be released when the caller is done with its buffer
+     */
+    public MappedWindow acquire(int index) {
+        while (true) {
+            MappedWindow window = windows.get(index);
+            if (window == null) window = map(index);
+            if (window.retain()) {
+                pool.used(window);
+                return window;
+            }
+            // The window was evicted after we read it - the slot is already cleared so map it again
+        }
+    }
+
+    /**
+     * Map a window ahead of its first use if it is not already mapped
+     *
+     * @param index the index of the window
+     */
+    public void preload(int index) {
+        if (windows.get(index) == null) map(index);
+    }
+
+    /**
+     * Fault in the pages of a range of the file ahead of their first write, mapping the windows it covers
+     *
+     * @param start the start of the range in the file
+     * @param end the end of the range in the file
+     */
+    public void prefault(long start, long end) {
+        if (mapMode != FileChannel.MapMode.READ_WRITE) return;
+        long position = Math.max(start, offset);
+        while (position < end) {
+            final long index = (position - offset) / windowSize;
+            if (index >= windows.length()) return;
+            final int windowPosition = (int) ((position - offset) % windowSize);
+            final int length = (int) Math.min(windowSize - windowPosition, end - position);
+
+            MappedWindow window = acquire((int) index);
+            try {
+                NativeIO.prefaultWrite(window.buffer(), windowPosition, length);
+            } finally {
+                window.release();
+            }
+            position += length;
+        }
+    }
+
+    public boolean isMapped(int index) {
+        return windows.get(index) != null;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getMaxWindows() {
+        return windows.length();
+    }
+
+    /**
+     * Track the ranges written to each window so that a sync only writes back what changed. Without tracking a sync
+     * must fsync the whole file.
+     *
+     * @param trackWrites whether to track writes
+     */
+    public void setTrackWrites(boolean trackWrites) {
+        this.trackWrites = trackWrites;
+    }
+
+    public boolean isTrackingWrites() {
+        return trackWrites;
+    }
+
+    void dirtied(MappedWindow window) {
+        dirtyWindows.add(window);
+    }
+
+    /**
+     * Hand the ranges written to the windows to a scheduler which starts their writeback at a steady rate, so that
+     * dirty pages do not build up until the kernel writes them back in a burst. Writeback is skipped with a warning
+     * where it is not supported.
+     *
+     * @param scheduler the writeback scheduler
+     */
+    public void setWriteback(WritebackScheduler scheduler) {
+        synchronized (writebackLock) {
+            if (writeback != null) throw new IllegalStateException("Writeback is already scheduled for " + filePath);
+            try {
+                writebackFd = NativeIO.openReadOnly(filePath);
+            } catch (IOException e) {
+                log.warn("Unable to schedule writeback for {}", filePath, e);
+                return;
+            }
+            writeback = scheduler;
+        }
+        scheduler.register(this);
+    }
+
+    public boolean isWritingBack() {
+        return writeback != null;
+    }
+
+    void writebackPending(MappedWindow window) {
+        writebackWindows.add(window);
+    }
+
+    /**
+     * Start writeback of the ranges written since the last call, widened to whole system pages, up to a budget. Ranges
+     * over the budget are left for the next call.
+     *
+     * @param budget the maximum number of bytes to write back
+     * @return the number of bytes handed to the kernel for writeback
+     */
+    long writeback(long budget) {
+        synchronized (writebackLock) {
+            if (writebackFd < 0) return 0;
+
+            List<MappedWindow> pending = new ArrayList<>();
+            MappedWindow window;
+            while ((window = writebackWindows.poll()) != null) {
+                pending.add(window);
+            }
+
+            long issued = 0;
+            for (MappedWindow pendingWindow : pending) {
+                final long remaining = NativeIO.alignedAddress(budget - issued);
+                if (remaining <= 0) {
+                    writebackWindows.add(pendingWindow);
+                    continue;
+                }
+                final long range = pendingWindow.takeWritebackRange();
+                if (range == -1) continue;
+
+                final int start = (int) NativeIO.alignedAddress(range >>> 32);
+                final int end = (int) Math.min(windowSize, NativeIO.alignedAddress((long) (int) range + NativeIO.pageSize - 1));
+                final int length = (int) Math.min(end - start, remaining);
+                if (length < end - start) pendingWindow.writebackLater(start + length, end);
+
+                try {
+                    NativeIO.syncFileRange(writebackFd, offset + (long) pendingWindow.index() * windowSize + start, length);
+                } catch (IOException e) {
+                    log.warn("Unable to start writeback of window {} of {}", pendingWindow.index(), filePath, e);
+                }
+                issued += length;
+            }
+            return issued;
+        }
+    }
+
+    private void closeWriteback() {
+        final WritebackScheduler scheduler = writeback;
+        if (scheduler == null) return;
+        scheduler.deregister(this);
+        synchronized (writebackLock) {
+            writeback = null;
+            writebackWindows.clear();
+            try {
+                NativeIO.close(writebackFd);
+            } catch (IOException e) {
+                log.warn("Unable to close writeback descriptor for {}", filePath, e);
+            }
+            writebackFd = -1;
+        }
+    }
+
+    /**
+     * Synchronously write back everything written to the windows before the call. Windows which were unmapped while
+     * dirty can no longer be msynced, so the file is fsynced instead.
+     */
+    public void sync() {
+        synchronized (syncLock) {
+            boolean forceChannel = !trackWrites;
+
+            // Writers only queue a window when it goes from clean to dirty, so draining the queue terminates
+            List<MappedWindow> dirty = new ArrayList<>();
+            MappedWindow window;
+            while ((window = dirtyWindows.poll()) != null) {
+                dirty.add(window);
+            }
+
+            for (MappedWindow dirtyWindow : dirty) {
+                final long range = dirtyWindow.takeDirtyRange();
+                if (range == -1) continue;
+                if (!dirtyWindow.retain()) {
+                    forceChannel = true;
+                    continue;
+                }
+                try {
+                    final int start = (int) (range >>> 32);
+                    NativeIO.msync(dirtyWindow.buffer(), start, (int) range - start);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Unable to sync window " + dirtyWindow.index() + " of file " + filePath, e);
+                } finally {
+                    dirtyWindow.release();
+                }
+            }
+
+            if (forceChannel) {
+                try {
+                    channel.force(false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Unable to sync file " + filePath, e);
+                }
+            }
+        }
+    }
+
+    private synchronized MappedWindow map(int index) {
+        MappedWindow window = windows.get(index);
+        if (window != null) return window;
+
+        long windowStart = offset + (long) index * windowSize;
+        MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(mapMode, windowStart, windowSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to map window " + index + " at (" + windowStart + " start position) in file " + filePath, e);
+        }
+        if (onMap != null) onMap.accept(buffer);
+        long residentBytes = residency.mapped(buffer);
+
+        window = new MappedWindow(this, index, buffer, residency, residentBytes);
+        windows.set(index, window);
+        pool.add(window);
+        return window;
+    }
+
+    void evicted(MappedWindow window) {
+        if (windows.compareAndSet(window.index(), window, null)) {
+            window.release();
+        }
+    }
+
+    /**
+     * Give up every mapped window. Each buffer is unmapped as soon as in-flight users release it; windows acquired
+     * afterwards are mapped again, so callers must not use this while the channel is being truncated underneath
+     * active readers.
+     */
+    public synchronized void unmapAll() {
+        for (int index = 0; index < windows.length(); index++) {
+            MappedWindow window = windows.getAndSet(index, null);
+            if (window != null) {
+                pool.remove(window);
+                window.release();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closeWriteback();
+        unmapAll();
+    }
+
+    @Override
+    public String toString() {
+        return filePath.toString();
+    }
+}
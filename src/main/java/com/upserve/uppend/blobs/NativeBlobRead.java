@@ -0,0 +1,168 @@
+package com.upserve.uppend.blobs;
+
+import com.upserve.uppend.util.ThreadLocalByteBuffers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * A read of one blob record which bypasses the page backend, made with pread or through an io_uring. The record is
+ * read in steps: first up to {@link #INITIAL_READ_BYTES} within the page of its position, which holds its header and
+ * usually the whole record, then the rest once the header gives its size. Each step is split into segments, which are
+ * contiguous ranges of the file no longer than a chunk, since the pages of a virtual file are not contiguous.
+ */
+class NativeBlobRead {
+    static final int INITIAL_READ_BYTES = 4096;
+    static final int CHUNK_BYTES = 64 * 1024;
+
+    private static final Supplier<ByteBuffer> LOCAL_CHUNK_BUFFER = ThreadLocalByteBuffers.threadLocalByteBufferSupplier(() -> ByteBuffer.allocateDirect(CHUNK_BYTES));
+
+    final VirtualAppendOnlyBlobStore store;
+    final long pos;
+    private final long tic = System.nanoTime();
+    private final long available;
+
+    private byte[] record;
+    private int filled; // the bytes of the record read in the steps before this one
+    private int target; // the bytes of the record read once this step is done
+    private int next; // the offset in the record of the next segment of this step
+    private int recordSize = -1;
+    private int segmentOffset;
+    private long segmentFilePosition;
+
+    NativeBlobRead(VirtualAppendOnlyBlobStore store, long pos) {
+        this.store = store;
+        this.pos = pos;
+        available = store.getPosition() - pos;
+    }
+
+    /**
+     * Read the blob at a position with pread, falling back to the page backend where native file descriptors are not
+     * supported
+     *
+     * @param store the virtual blob store to read from
+     * @param pos the position of the blob
+     * @return the blob
+     */
+    static byte[] pread(VirtualAppendOnlyBlobStore store, long pos) {
+        final byte[] cached = store.readCached(pos);
+        if (cached != null) return cached;
+        final int fd = store.readDescriptor();
+        if (fd < 0) return store.readStored(pos);
+
+        final NativeBlobRead read = new NativeBlobRead(store, pos);
+        final ByteBuffer buffer = LOCAL_CHUNK_BUFFER.get();
+        try {
+            while (read.nextStep()) {
+                while (read.hasSegment()) {
+                    final int length = read.nextSegment(CHUNK_BYTES);
+                    final long filePosition = read.segmentFilePosition();
+                    int done = 0;
+                    while (done < length) {
+                        final long result = NativeIO.pread(fd, buffer, done, length - done, filePosition + done);
+                        if (result <= 0) return read.fallback();
+                        done += result;
+                    }
+                    read.segmentRead(read.segmentOffset(), buffer, 0, length);
+                }
+                read.stepRead();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to pread the blob at " + pos + " in file " + store.virtualFileNumber, e);
+        }
+        return read.complete();
+    }
+
+    /**
+     * Start the next step of the read
+     *
+     * @return false once the record has been read, or if it can not be read without the page backend because the
+     * position is not in the virtual file
+     */
+    boolean nextStep() {
+        if (filled == 0) {
+            if (pos < 0 || available <= 0) return false;
+            target = (int) Math.min(Math.min(INITIAL_READ_BYTES, available), store.pageRemaining(pos));
+        } else {
+            if (recordSize < 0) recordSize = store.recordSize(record, filled);
+            // A header which crosses into the next page takes another step to read
+            target = recordSize < 0 ? (int) Math.min(filled + VirtualAppendOnlyBlobStore.MAX_HEADER_BYTES, available) : recordSize;
+            if (target <= filled) return false;
+        }
+        record = record == null ? new byte[target] : Arrays.copyOf(record, Math.max(record.length, target));
+        next = filled;
+        return true;
+    }
+
+    boolean hasSegment() {
+        return next < target;
+    }
+
+    /**
+     * Move on to the next segment of this step
+     *
+     * @param maxLength the longest segment the caller can read at once
+     * @return the length of the segment
+     */
+    int nextSegment(int maxLength) {
+        segmentOffset = next;
+        segmentFilePosition = store.filePosition(pos + next);
+        final int length = Math.min(Math.min(target - next, maxLength), store.pageRemaining(pos + next));
+        next += length;
+        return length;
+    }
+
+    /**
+     * @return the offset in the record of the segment
+     */
+    int segmentOffset() {
+        return segmentOffset;
+    }
+
+    /**
+     * @return the position in the file of the segment
+     */
+    long segmentFilePosition() {
+        return segmentFilePosition;
+    }
+
+    /**
+     * Copy bytes read into a buffer into the record
+     *
+     * @param offset the offset in the record
+     * @param buffer the buffer read into
+     * @param bufferOffset the offset of the bytes in the buffer
+     * @param length the number of bytes
+     */
+    void segmentRead(int offset, ByteBuffer buffer, int bufferOffset, int length) {
+        final ByteBuffer source = buffer.duplicate();
+        source.position(bufferOffset);
+        source.get(record, offset, length);
+    }
+
+    void stepRead() {
+        filled = target;
+    }
+
+    /**
+     * Finish the read once {@link #nextStep()} returns false
+     *
+     * @return the blob
+     */
+    byte[] complete() {
+        if (recordSize < 0 || filled < recordSize) return fallback();
+        return store.completeRead(pos, record, tic);
+    }
+
+    /**
+     * Read the blob through the page backend instead, when a native read comes up short or the position is not in the
+     * virtual file, so that the result or exception is the same as for {@link VirtualAppendOnlyBlobStore#read(long)}
+     *
+     * @return the blob
+     */
+    byte[] fallback() {
+        return store.readStored(pos);
+    }
+}
@@ -1,13 +1,15 @@
 package com.upserve.uppend.blobs;
 
 import jnr.ffi.*;
-import jnr.ffi.types.size_t;
+import jnr.ffi.types.*;
 import org.slf4j.Logger;
 import com.kenai.jffi.MemoryIO;
 
 import java.io.IOException;
-import java.lang.invoke.MethodHandles;
+import java.lang.invoke.*;
+import java.lang.reflect.Field;
 import java.nio.*;
+import java.nio.file.Path;
 
 public class NativeIO {
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
@@ -15,19 +17,66 @@ public class NativeIO {
     private static final NativeC nativeC = LibraryLoader.create(NativeC.class).load("c");
     public static final int pageSize = nativeC.getpagesize(); // 4096 on most Linux
 
+    private static final MethodHandle invokeCleaner = invokeCleaner();
+    private static volatile int prefaultSink;
+    private static volatile boolean populateWrite = true;
+
     public enum Advice {
         // These seem to be fairly stable https://github.com/torvalds/linux
         // TODO add to https://github.com/jnr/jnr-constants
-        Normal(0), Random(1), Sequential(2), WillNeed(3), DontNeed(4);
+        Normal(0), Random(1), Sequential(2), WillNeed(3), DontNeed(4),
+        HugePage(14), NoHugePage(15), PopulateRead(22), PopulateWrite(23); // Populate requires Linux 5.14
         private final int value;
         Advice(int val) {
             this.value = val;
         }
+
+        int value() {
+            return value;
+        }
     }
 
+    // Linux open flags
+    private static final int O_RDONLY = 0;
+    private static final int O_RDWR = 2;
+    private static final int O_CREAT = 0100;
+    private static final int O_DIRECT = System.getProperty("os.arch", "").startsWith("aarch64") ? 0200000 : 040000;
+
+    // Linux msync flags
+    private static final int MS_SYNC = 4;
+
+    // Linux sync_file_range flags
+    private static final int SYNC_FILE_RANGE_WRITE = 2;
+
+    // Linux fallocate modes
+    private static final int FALLOC_FL_KEEP_SIZE = 1;
+    private static final int FALLOC_FL_PUNCH_HOLE = 2;
+
+    // Linux mmap protections and flags
+    private static final int PROT_READ_WRITE = 3;
+    private static final int MAP_SHARED = 1;
+    private static final int MAP_POPULATE = 0x8000;
+
+    // Linux io_uring system calls, numbered the same on every architecture
+    private static final long SYS_IO_URING_SETUP = 425;
+    private static final long SYS_IO_URING_ENTER = 426;
+    private static final int IORING_ENTER_GETEVENTS = 1;
+
     public interface NativeC {
         int madvise(@size_t long address, @size_t long size, int advice);
         int getpagesize();
+        int mlock(@size_t long address, @size_t long size);
+        int munlock(@size_t long address, @size_t long size);
+        int msync(@size_t long address, @size_t long size, int flags);
+        int open(String path, int flags, int mode);
+        int close(int fd);
+        int sync_file_range(int fd, @off_t long offset, @off_t long nbytes, int flags);
+        int fallocate(int fd, int mode, @off_t long offset, @off_t long len);
+        @ssize_t long pread(int fd, @size_t long address, @size_t long count, @off_t long offset);
+        @ssize_t long pwrite(int fd, @size_t long address, @size_t long count, @off_t long offset);
+        @size_t long mmap(@size_t long address, @size_t long length, int prot, int flags, int fd, @off_t long offset);
+        int munmap(@size_t long address, @size_t long length);
+        long syscall(long number, long arg1, long arg2, long arg3, long arg4, long arg5, long arg6);
     }
 
     static long alignedAddress(long address) {
@@ -58,4 +107,372 @@ public class NativeIO {
             throw new IOException(String.format("System call madvise failed with code: %d", val));
         }
     }
+
+    /**
+     * Advise the kernel of the expected access pattern for a range of a mapped buffer. The range is widened to whole
+     * system pages.
+     *
+     * @param buffer the mapped buffer
+     * @param offset the offset of the range in the buffer
+     * @param length the length of the range
+     * @param advice the expected access pattern
+     * @throws IOException if the system call fails
+     */
+    public static void madvise(MappedByteBuffer buffer, int offset, int length, Advice advice) throws IOException {
+        final long address = MemoryIO.getInstance().getDirectBufferAddress(buffer) + offset;
+
+        long alignedAddress = alignedAddress(address);
+        long alignedSize = alignedSize(alignedAddress, (int) (address - alignedAddress) + length);
+
+        int val = nativeC.madvise(alignedAddress, alignedSize, advice.value);
+
+        if (val != 0) {
+            throw new IOException(String.format("System call madvise failed with code: %d", val));
+        }
+    }
+
+    /**
+     * Lock the pages of a mapped buffer into memory, faulting them in first. Locking is limited by RLIMIT_MEMLOCK.
+     *
+     * @param buffer the mapped buffer
+     * @throws IOException if the system call fails
+     */
+    public static void mlock(MappedByteBuffer buffer) throws IOException {
+        final long address = MemoryIO.getInstance().getDirectBufferAddress(buffer);
+        long alignedAddress = alignedAddress(address);
+        int val = nativeC.mlock(alignedAddress, alignedSize(alignedAddress, buffer.capacity()));
+
+        if (val != 0) {
+            throw new IOException(String.format("System call mlock failed with code: %d", val));
+        }
+    }
+
+    public static void munlock(MappedByteBuffer buffer) throws IOException {
+        final long address = MemoryIO.getInstance().getDirectBufferAddress(buffer);
+        long alignedAddress = alignedAddress(address);
+        int val = nativeC.munlock(alignedAddress, alignedSize(alignedAddress, buffer.capacity()));
+
+        if (val != 0) {
+            throw new IOException(String.format("System call munlock failed with code: %d", val));
+        }
+    }
+
+    /**
+     * Synchronously write back the dirty pages in a range of a mapped buffer, unlike {@link MappedByteBuffer#force()}
+     * which writes back the whole buffer. The range is widened to whole system pages.
+     *
+     * @param buffer the mapped buffer
+     * @param offset the offset of the range in the buffer
+     * @param length the length of the range
+     * @throws IOException if the system call fails
+     */
+    public static void msync(MappedByteBuffer buffer, int offset, int length) throws IOException {
+        final long address = MemoryIO.getInstance().getDirectBufferAddress(buffer) + offset;
+
+        long alignedAddress = alignedAddress(address);
+        long alignedSize = alignedSize(alignedAddress, (int) (address - alignedAddress) + length);
+
+        int val = nativeC.msync(alignedAddress, alignedSize, MS_SYNC);
+
+        if (val != 0) {
+            throw new IOException(String.format("System call msync failed with code: %d", val));
+        }
+    }
+
+    /**
+     * Fault in every page of a mapped buffer, like mapping it with MAP_POPULATE. Uses MADV_POPULATE_READ where the
+     * kernel supports it and otherwise reads a byte from each page.
+     *
+     * @param buffer the mapped buffer
+     */
+    public static void prefault(MappedByteBuffer buffer) {
+        try {
+            madvise(buffer, Advice.PopulateRead);
+        } catch (IOException e) {
+            log.debug("MADV_POPULATE_READ is not supported, touching each page instead", e);
+            final int capacity = buffer.capacity();
+            int sum = 0;
+            for (int position = 0; position < capacity; position += pageSize) {
+                sum += buffer.get(position);
+            }
+            prefaultSink = sum; // Keep the reads from being optimized away
+        }
+    }
+
+    /**
+     * Fault in the pages of a range of a writable mapped buffer ahead of their first write, so that the writer does
+     * not take the fault. Uses MADV_POPULATE_WRITE where the kernel supports it and otherwise reads a byte from each
+     * page, which still saves the writer reading the page in but leaves it a minor fault to make the page writable.
+     *
+     * @param buffer the mapped buffer
+     * @param offset the offset of the range in the buffer
+     * @param length the length of the range
+     */
+    public static void prefaultWrite(MappedByteBuffer buffer, int offset, int length) {
+        if (populateWrite) {
+            try {
+                madvise(buffer, offset, length, Advice.PopulateWrite);
+                return;
+            } catch (IOException e) {
+                log.debug("MADV_POPULATE_WRITE is not supported, touching each page instead", e);
+                populateWrite = false;
+            }
+        }
+        final int end = offset + length;
+        int sum = 0;
+        for (int position = offset; position < end; position += pageSize) {
+            sum += buffer.get(position);
+        }
+        prefaultSink = sum; // Keep the reads from being optimized away
+    }
+
+    /**
+     * Unmap a mapped buffer immediately rather than waiting for it to be garbage collected. The buffer and any
+     * duplicates or slices of it must not be used afterwards - doing so will crash the JVM.
+     *
+     * @param buffer the mapped buffer to unmap
+     * @return true if the buffer was unmapped, false if explicit unmapping is not supported on this JVM
+     */
+    public static boolean unmap(MappedByteBuffer buffer) {
+        return free(buffer);
+    }
+
+    /**
+     * Free the memory of a direct buffer immediately rather than waiting for it to be garbage collected. The buffer
+     * and any duplicates or slices of it must not be used afterwards - doing so will crash the JVM.
+     *
+     * @param buffer the direct buffer to free, which must not be a duplicate or slice
+     * @return true if the buffer was freed, false if explicit freeing is not supported on this JVM
+     */
+    public static boolean free(ByteBuffer buffer) {
+        if (invokeCleaner == null) return false;
+        try {
+            invokeCleaner.invokeExact(buffer);
+            return true;
+        } catch (Throwable t) {
+            log.warn("Unable to free buffer", t);
+            return false;
+        }
+    }
+
+    private static MethodHandle invokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Explicit unmapping is not available, mapped buffers will be unmapped by the garbage collector", e);
+            return null;
+        }
+    }
+
+    /**
+     * Open a file for direct I/O which bypasses the page cache
+     *
+     * @param path the file to open, created if it does not exist unless readOnly
+     * @param readOnly open the file read only
+     * @return the file descriptor
+     * @throws IOException if the platform does not support O_DIRECT or the open fails
+     */
+    static int openDirect(Path path, boolean readOnly) throws IOException {
+        if (!System.getProperty("os.name", "").startsWith("Linux")) {
+            throw new IOException("O_DIRECT is only supported on Linux");
+        }
+        int flags = (readOnly ? O_RDONLY : O_RDWR | O_CREAT) | O_DIRECT;
+        int fd = nativeC.open(path.toAbsolutePath().toString(), flags, 0644);
+        if (fd < 0) {
+            throw new IOException(String.format("System call open failed with code: %d", fd));
+        }
+        return fd;
+    }
+
+    /**
+     * Open a file read only, for system calls which act on the file rather than the descriptor
+     *
+     * @param path the file to open
+     * @return the file descriptor
+     * @throws IOException if the platform is not Linux or the open fails
+     */
+    static int openReadOnly(Path path) throws IOException {
+        return open(path, O_RDONLY);
+    }
+
+    /**
+     * Open an existing file for reading and writing, for system calls which act on the file rather than the descriptor
+     *
+     * @param path the file to open
+     * @return the file descriptor
+     * @throws IOException if the platform is not Linux or the open fails
+     */
+    static int openReadWrite(Path path) throws IOException {
+        return open(path, O_RDWR);
+    }
+
+    private static int open(Path path, int flags) throws IOException {
+        if (!System.getProperty("os.name", "").startsWith("Linux")) {
+            throw new IOException("Native file descriptors are only supported on Linux");
+        }
+        int fd = nativeC.open(path.toAbsolutePath().toString(), flags, 0);
+        if (fd < 0) {
+            throw new IOException(String.format("System call open failed with code: %d", fd));
+        }
+        return fd;
+    }
+
+    /**
+     * Allocate the disk blocks for a range of a file without changing its size, so that later writes to the range do
+     * not allocate blocks one page at a time. Blocks past the end of the file stay allocated until they are trimmed.
+     *
+     * @param fd a writable file descriptor for the file
+     * @param offset the start of the range in the file
+     * @param length the length of the range
+     * @throws IOException if the system call fails, for example because the file system does not support it
+     */
+    static void fallocate(int fd, long offset, long length) throws IOException {
+        int val = nativeC.fallocate(fd, FALLOC_FL_KEEP_SIZE, offset, length);
+        if (val != 0) {
+            throw new IOException(String.format("System call fallocate failed with code: %d", val));
+        }
+    }
+
+    /**
+     * Free the disk blocks of a range of a file without changing its size, including blocks allocated past its end
+     *
+     * @param fd a writable file descriptor for the file
+     * @param offset the start of the range in the file
+     * @param length the length of the range
+     * @throws IOException if the system call fails
+     */
+    static void punchHole(int fd, long offset, long length) throws IOException {
+        int val = nativeC.fallocate(fd, FALLOC_FL_PUNCH_HOLE | FALLOC_FL_KEEP_SIZE, offset, length);
+        if (val != 0) {
+            throw new IOException(String.format("System call fallocate failed with code: %d", val));
+        }
+    }
+
+    /**
+     * Start writeback of the dirty pages of a range of a file without waiting for it to complete. Pages dirtied
+     * through a mapping are included.
+     *
+     * @param fd a file descriptor for the file
+     * @param offset the start of the range in the file
+     * @param length the length of the range
+     * @throws IOException if the system call fails
+     */
+    static void syncFileRange(int fd, long offset, long length) throws IOException {
+        int val = nativeC.sync_file_range(fd, offset, length, SYNC_FILE_RANGE_WRITE);
+        if (val != 0) {
+            throw new IOException(String.format("System call sync_file_range failed with code: %d", val));
+        }
+    }
+
+    static void close(int fd) throws IOException {
+        int val = nativeC.close(fd);
+        if (val != 0) {
+            throw new IOException(String.format("System call close failed with code: %d", val));
+        }
+    }
+
+    static long pread(int fd, ByteBuffer buffer, int count, long offset) throws IOException {
+        long val = nativeC.pread(fd, MemoryIO.getInstance().getDirectBufferAddress(buffer), count, offset);
+        if (val < 0) {
+            throw new IOException(String.format("System call pread failed with code: %d", val));
+        }
+        return val;
+    }
+
+    /**
+     * Read from a file into part of a direct buffer
+     *
+     * @param fd a readable file descriptor for the file
+     * @param buffer the direct buffer to read into
+     * @param bufferOffset the offset in the buffer to read into
+     * @param count the number of bytes to read
+     * @param offset the position in the file to read from
+     * @return the number of bytes read, which is less than count at the end of the file
+     * @throws IOException if the system call fails
+     */
+    static long pread(int fd, ByteBuffer buffer, int bufferOffset, int count, long offset) throws IOException {
+        long val = nativeC.pread(fd, MemoryIO.getInstance().getDirectBufferAddress(buffer) + bufferOffset, count, offset);
+        if (val < 0) {
+            throw new IOException(String.format("System call pread failed with code: %d", val));
+        }
+        return val;
+    }
+
+    static long pwrite(int fd, ByteBuffer buffer, int count, long offset) throws IOException {
+        long val = nativeC.pwrite(fd, MemoryIO.getInstance().getDirectBufferAddress(buffer), count, offset);
+        if (val < 0) {
+            throw new IOException(String.format("System call pwrite failed with code: %d", val));
+        }
+        return val;
+    }
+
+    static long address(ByteBuffer buffer) {
+        return MemoryIO.getInstance().getDirectBufferAddress(buffer);
+    }
+
+    /**
+     * Map a shared, writable region of a file such as the rings of an io_uring, faulting its pages in
+     *
+     * @param fd the file descriptor
+     * @param offset the offset of the region
+     * @param length the length of the region
+     * @return a buffer over the mapped region, which must be given back with {@link #munmap(ByteBuffer)}
+     * @throws IOException if the system call fails
+     */
+    static ByteBuffer mmap(int fd, long offset, int length) throws IOException {
+        long address = nativeC.mmap(0, length, PROT_READ_WRITE, MAP_SHARED | MAP_POPULATE, fd, offset);
+        if (address == -1 || address == 0) {
+            throw new IOException(String.format("System call mmap failed with code: %d", address));
+        }
+        return MemoryIO.getInstance().newDirectByteBuffer(address, length).order(ByteOrder.nativeOrder());
+    }
+
+    static void munmap(ByteBuffer buffer) throws IOException {
+        int val = nativeC.munmap(address(buffer), buffer.capacity());
+        if (val != 0) {
+            throw new IOException(String.format("System call munmap failed with code: %d", val));
+        }
+    }
+
+    /**
+     * Set up an io_uring. The kernel fills in the sizes of the rings and the offsets of their fields in params.
+     *
+     * @param entries the number of submission queue entries, rounded up to a power of two by the kernel
+     * @param params a zeroed direct buffer of the 120 bytes of struct io_uring_params
+     * @return the file descriptor of the ring
+     * @throws IOException if the platform is not Linux or the system call fails, for example on kernels before 5.1
+     * or where a seccomp profile blocks io_uring
+     */
+    static int ioUringSetup(int entries, ByteBuffer params) throws IOException {
+        if (!System.getProperty("os.name", "").startsWith("Linux")) {
+            throw new IOException("io_uring is only supported on Linux");
+        }
+        long fd = nativeC.syscall(SYS_IO_URING_SETUP, entries, address(params), 0, 0, 0, 0);
+        if (fd < 0) {
+            throw new IOException(String.format("System call io_uring_setup failed with code: %d", fd));
+        }
+        return (int) fd;
+    }
+
+    /**
+     * Submit entries from the submission queue of an io_uring and wait for completions
+     *
+     * @param fd the file descriptor of the ring
+     * @param toSubmit the number of entries to submit
+     * @param minComplete the number of completions to wait for
+     * @return the number of entries submitted
+     * @throws IOException if the system call fails
+     */
+    static int ioUringEnter(int fd, int toSubmit, int minComplete) throws IOException {
+        long val = nativeC.syscall(SYS_IO_URING_ENTER, fd, toSubmit, minComplete, minComplete > 0 ? IORING_ENTER_GETEVENTS : 0, 0, 0);
+        if (val < 0) {
+            throw new IOException(String.format("System call io_uring_enter failed with code: %d", val));
+        }
+        return (int) val;
+    }
 }
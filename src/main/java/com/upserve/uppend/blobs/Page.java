@@ -1,5 +1,7 @@
 package com.upserve.uppend.blobs;
 
+import java.nio.ByteBuffer;
+
 import static java.lang.Integer.min;
 
 /**
@@ -7,10 +9,58 @@ import static java.lang.Integer.min;
  * read once byte[]!
  */
 public interface Page {
-    int get(int pagePosition, byte[] dst, int bufferOffset);
+    default int get(int pagePosition, byte[] dst, int bufferOffset) {
+        return get(pagePosition, dst, bufferOffset, dst.length);
+    }
+
+    /**
+     * Read bytes from the page into dst between bufferOffset and bufferLength
+     *
+     * @param pagePosition the position in the page to read from
+     * @param dst the array to read into
+     * @param bufferOffset the offset in dst to start at
+     * @param bufferLength the offset in dst to stop at
+     * @return the number of bytes read, which is less than requested if the end of the page is reached
+     */
+    int get(int pagePosition, byte[] dst, int bufferOffset, int bufferLength);
+
+    /**
+     * A read only view of bytes in the page without copying them, for pages which support it
+     *
+     * @param pagePosition the position in the page
+     * @param length the number of bytes
+     * @return a buffer with the bytes between its position and limit, or null if the bytes are not in a single view
+     */
+    default ByteBuffer view(int pagePosition, int length) {
+        return null;
+    }
+
+    /**
+     * A read only view of bytes in the page without copying them, which stays valid until the pin is released or
+     * pins another view. Pages whose views do not need pinning ignore the pin.
+     *
+     * @param pagePosition the position in the page
+     * @param length the number of bytes
+     * @param pin holds what the view needs to stay valid
+     * @return a buffer with the bytes between its position and limit, or null if the bytes are not in a single view
+     */
+    default ByteBuffer view(int pagePosition, int length, ViewPin pin) {
+        return view(pagePosition, length);
+    }
 
     int put(int pagePosition, byte[] src, int bufferOffset);
 
+    /**
+     * Hint the expected access pattern for bytes in the page, for pages which support it. Hints are best effort and
+     * never fail the caller.
+     *
+     * @param pagePosition the position in the page
+     * @param length the number of bytes, clipped to the end of the page
+     * @param advice the expected access pattern
+     */
+    default void advise(int pagePosition, int length, NativeIO.Advice advice) {
+    }
+
     default int actualOperationSize(int pagePosition, int pagesize, int bufferOffset, int bufferLength) {
         final int desiredRead = bufferLength - bufferOffset;
         final int availableToRead = pagesize - pagePosition;
@@ -0,0 +1,27 @@
+package com.upserve.uppend.blobs;
+
+/**
+ * The I/O used to read and write the pages of a {@link VirtualPageFile}. The page tables and headers are always
+ * memory mapped.
+ */
+public enum PageBackend {
+    /**
+     * Memory mapped pages - reads and writes go through the page cache with no system calls
+     */
+    MAPPED,
+    /**
+     * Positional reads and writes through a FileChannel (pread/pwrite)
+     */
+    FILE_CHANNEL,
+    /**
+     * Positional reads and writes of aligned blocks on a file opened with O_DIRECT, bypassing the page cache. Linux
+     * only; requires a page size which is a multiple of the host system page size.
+     */
+    DIRECT,
+    /**
+     * The whole file mapped as a single memory segment with the Foreign Function and Memory API, addressed by long
+     * positions without mapped windows. Requires Java 21 run with --enable-preview; falls back to {@link #MAPPED} with
+     * a warning on other runtimes.
+     */
+    SEGMENT
+}
@@ -0,0 +1,121 @@
+package com.upserve.uppend.blobs;
+
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the disk blocks ahead of the append position of a file allocated with fallocate, so that the file grows in
+ * large contiguous extents rather than by the file system allocating blocks one page at a time as pages are first
+ * written. Writers report the append position with {@link #advanced(long)}; once less than half of the headroom is
+ * left a background thread allocates up to the headroom ahead of it again. Blocks are allocated without changing the
+ * size of the file and whatever was not used is freed again on close.
+ */
+public class Preallocator implements Closeable {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final ExecutorService executor;
+
+    static {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "uppend-preallocate-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private final Path filePath;
+    private final long headroom;
+    private final LongSupplier position;
+    private final int fd;
+
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private volatile long allocatedEnd = 0;
+    private boolean disabled = false;
+    private boolean closed = false;
+
+    /**
+     * @param filePath the file to preallocate
+     * @param headroom the number of bytes to keep allocated ahead of the append position
+     * @param position supplies the current append position of the file
+     * @throws IOException if the file can not be opened for preallocation on this platform
+     */
+    public Preallocator(Path filePath, long headroom, LongSupplier position) throws IOException {
+        if (headroom < NativeIO.pageSize) throw new IllegalArgumentException("Preallocation headroom must be at least a page: " + headroom);
+        this.filePath = filePath;
+        this.headroom = headroom;
+        this.position = position;
+        fd = NativeIO.openReadWrite(filePath);
+    }
+
+    /**
+     * Note that the append position of the file has moved, scheduling more allocation if the headroom is running out
+     *
+     * @param position the new append position
+     */
+    public void advanced(long position) {
+        if (position + headroom / 2 > allocatedEnd && pending.compareAndSet(false, true)) {
+            executor.execute(this::allocate);
+        }
+    }
+
+    public long getAllocatedEnd() {
+        return allocatedEnd;
+    }
+
+    private synchronized void allocate() {
+        pending.set(false);
+        if (closed || disabled) return;
+
+        final long current = position.getAsLong();
+        final long target = current + headroom;
+        if (target <= allocatedEnd) return;
+
+        final long start = Math.max(allocatedEnd, NativeIO.alignedAddress(current));
+        try {
+            NativeIO.fallocate(fd, start, target - start);
+            allocatedEnd = target;
+            log.debug("Preallocated {} bytes at {} in {}", target - start, start, filePath);
+        } catch (IOException e) {
+            log.warn("Unable to preallocate {}, leaving it to grow on write", filePath, e);
+            disabled = true;
+        }
+    }
+
+    /**
+     * Forget the blocks allocated so far, after the file was truncated underneath the append position
+     */
+    public synchronized void reset() {
+        allocatedEnd = 0;
+    }
+
+    /**
+     * Free the blocks allocated past the end of the data and stop preallocating
+     *
+     * @param end the end of the data in the file
+     * @throws IOException if the blocks can not be freed
+     */
+    public synchronized void close(long end) throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            final long trimStart = NativeIO.alignedAddress(end + NativeIO.pageSize - 1);
+            if (allocatedEnd > trimStart) {
+                NativeIO.punchHole(fd, trimStart, allocatedEnd - trimStart);
+            }
+        } finally {
+            NativeIO.close(fd);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(position.getAsLong());
+    }
+}
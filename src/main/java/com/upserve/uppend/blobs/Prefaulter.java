@@ -0,0 +1,109 @@
+package com.upserve.uppend.blobs;
+
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Faults in the pages ahead of the append position of a mapped file on a background thread, so that the writer which
+ * first writes to a newly allocated page does not take the page fault. Writers report the append position with
+ * {@link #advanced(long)}; once less than half of the distance ahead is faulted in, a background thread faults in up
+ * to the full distance ahead again.
+ */
+public class Prefaulter implements Closeable {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final ExecutorService executor;
+
+    static {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "uppend-prefault-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private final MappedWindows windows;
+    private final long ahead;
+    private final LongSupplier position;
+
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private volatile long prefaultedEnd = 0;
+    private boolean paused = false;
+    private boolean closed = false;
+
+    /**
+     * @param windows the mapped windows of the file
+     * @param ahead the number of bytes to keep faulted in ahead of the append position
+     * @param position supplies the current append position of the file
+     */
+    public Prefaulter(MappedWindows windows, long ahead, LongSupplier position) {
+        if (ahead < NativeIO.pageSize) throw new IllegalArgumentException("Prefault distance must be at least a page: " + ahead);
+        this.windows = windows;
+        this.ahead = ahead;
+        this.position = position;
+    }
+
+    /**
+     * Note that the append position of the file has moved, scheduling more prefaulting if it is getting close to the
+     * end of the pages faulted in
+     *
+     * @param position the new append position
+     */
+    public void advanced(long position) {
+        if (position + ahead / 2 > prefaultedEnd && pending.compareAndSet(false, true)) {
+            executor.execute(this::prefault);
+        }
+    }
+
+    public long getPrefaultedEnd() {
+        return prefaultedEnd;
+    }
+
+    private synchronized void prefault() {
+        pending.set(false);
+        if (closed || paused) return;
+
+        final long current = position.getAsLong();
+        final long target = current + ahead;
+        if (target <= prefaultedEnd) return;
+
+        final long start = Math.max(prefaultedEnd, NativeIO.alignedAddress(current));
+        try {
+            windows.prefault(start, target);
+            prefaultedEnd = target;
+        } catch (RuntimeException e) {
+            log.warn("Unable to prefault {} bytes at {}", target - start, start, e);
+        }
+    }
+
+    /**
+     * Wait for a running round of prefaulting and stop new ones, so that the file can be truncated underneath the
+     * append position without faulting in pages past its end
+     */
+    public synchronized void pause() {
+        paused = true;
+    }
+
+    /**
+     * Start prefaulting again from the current append position after {@link #pause()}
+     */
+    public synchronized void resume() {
+        paused = false;
+        prefaultedEnd = 0;
+        advanced(position.getAsLong());
+    }
+
+    /**
+     * Wait for a running round of prefaulting and stop, so that the windows can be unmapped
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+    }
+}
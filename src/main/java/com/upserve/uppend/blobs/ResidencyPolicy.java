@@ -0,0 +1,135 @@
+package com.upserve.uppend.blobs;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps mapped index regions resident and TLB friendly. Each region is advised to use transparent huge pages, and
+ * pre-faulted or locked into memory while the memory budget shared by every region under the policy allows. Regions
+ * which do not fit in the budget are left to the page cache.
+ */
+public class ResidencyPolicy {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    public static final ResidencyPolicy NONE = new ResidencyPolicy(false, false, false, 0);
+
+    private final boolean hugePages;
+    private final boolean prefault;
+    private final boolean lock;
+    private final long memoryBudget;
+
+    private final AtomicLong residentBytes = new AtomicLong();
+
+    /**
+     * @param hugePages advise regions to use transparent huge pages
+     * @param prefault fault regions in when they are mapped
+     * @param lock lock regions into memory when they are mapped
+     * @param memoryBudget the maximum number of bytes to pre-fault or lock
+     */
+    public ResidencyPolicy(boolean hugePages, boolean prefault, boolean lock, long memoryBudget) {
+        if (memoryBudget < 0) throw new IllegalArgumentException("Memory budget must not be negative: " + memoryBudget);
+        this.hugePages = hugePages;
+        this.prefault = prefault;
+        this.lock = lock;
+        this.memoryBudget = memoryBudget;
+    }
+
+    public boolean isEnabled() {
+        return hugePages || prefault || lock;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * The number of bytes currently pre-faulted or locked under this policy
+     *
+     * @return resident bytes
+     */
+    public long getResidentBytes() {
+        return residentBytes.get();
+    }
+
+    /**
+     * Apply the policy to a newly mapped region
+     *
+     * @param buffer the mapped region
+     * @return the number of bytes reserved from the budget, which must be passed to {@link #unmapped}
+     */
+    long mapped(MappedByteBuffer buffer) {
+        if (hugePages) {
+            try {
+                NativeIO.madvise(buffer, NativeIO.Advice.HugePage);
+            } catch (IOException e) {
+                log.debug("Unable to advise huge pages", e);
+            }
+        }
+
+        if (!(prefault || lock)) return 0;
+
+        final long size = buffer.capacity();
+        if (!reserve(size)) {
+            log.debug("Index memory budget {} is exhausted, leaving {} bytes to the page cache", memoryBudget, size);
+            return 0;
+        }
+
+        if (lock) {
+            try {
+                NativeIO.mlock(buffer);
+                return size;
+            } catch (IOException e) {
+                log.warn("Unable to lock {} bytes of index in memory, check RLIMIT_MEMLOCK", size, e);
+            }
+        }
+        if (prefault) {
+            NativeIO.prefault(buffer);
+            return size;
+        }
+
+        residentBytes.addAndGet(-size);
+        return 0;
+    }
+
+    /**
+     * Return the reservation of a region which is being unmapped
+     *
+     * @param buffer the mapped region
+     * @param reservedBytes the value returned by {@link #mapped} for the region
+     */
+    void unmapped(MappedByteBuffer buffer, long reservedBytes) {
+        if (reservedBytes == 0) return;
+
+        if (lock) {
+            try {
+                NativeIO.munlock(buffer);
+            } catch (IOException e) {
+                log.debug("Unable to unlock index region", e);
+            }
+        }
+        residentBytes.addAndGet(-reservedBytes);
+    }
+
+    private boolean reserve(long size) {
+        long current;
+        do {
+            current = residentBytes.get();
+            if (current + size > memoryBudget) return false;
+        } while (!residentBytes.compareAndSet(current, current + size));
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "ResidencyPolicy{" +
+                "hugePages=" + hugePages +
+                ", prefault=" + prefault +
+                ", lock=" + lock +
+                ", memoryBudget=" + memoryBudget +
+                '}';
+    }
+}
@@ -0,0 +1,50 @@
+package com.upserve.uppend.blobs;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+/**
+ * A whole file mapped as a single memory segment for the pages of a {@link VirtualPageFile}, addressed by long file
+ * positions with no mapped window arithmetic. The memory segment implementation uses the preview of the Foreign
+ * Function and Memory API in Java 21 and is packed in the versioned classes of the multi-release jar; on older runtimes
+ * this class is used instead and {@link #isSupported()} is false.
+ */
+class SegmentFile implements Closeable {
+
+    /**
+     * @return true if files can be mapped as memory segments on this runtime
+     */
+    static boolean isSupported() {
+        return false;
+    }
+
+    SegmentFile(Path filePath, FileChannel channel, FileChannel.MapMode mapMode, long growSize, NativeIO.Advice advice) {
+        throw new UnsupportedOperationException("Memory segment pages require Java 21 with --enable-preview: " + filePath);
+    }
+
+    void read(long position, byte[] dst, int bufferOffset, int length) {
+        throw new UnsupportedOperationException();
+    }
+
+    void write(long position, byte[] src, int bufferOffset, int length) {
+        throw new UnsupportedOperationException();
+    }
+
+    ByteBuffer view(long position, int length) {
+        throw new UnsupportedOperationException();
+    }
+
+    void advise(long position, long length, NativeIO.Advice advice) {
+        throw new UnsupportedOperationException();
+    }
+
+    void sync() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+    }
+}
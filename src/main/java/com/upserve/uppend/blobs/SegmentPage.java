@@ -0,0 +1,49 @@
+package com.upserve.uppend.blobs;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Memory segment backed implementation of Page
+ */
+public class SegmentPage implements Page {
+    private final SegmentFile file;
+    private final int pageSize;
+    private final long pageStart;
+
+    /**
+     * Constructor for a memory segment page
+     * @param file the file mapped as a memory segment
+     * @param pageStart the start of the page
+     * @param pageSize the page size
+     */
+    SegmentPage(SegmentFile file, long pageStart, int pageSize) {
+        this.file = file;
+        this.pageStart = pageStart;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public int get(int pagePosition, byte[] dst, int bufferOffset, int bufferLength) {
+        final int actualRead = actualOperationSize(pagePosition, pageSize, bufferOffset, bufferLength);
+        file.read(pageStart + pagePosition, dst, bufferOffset, actualRead);
+        return actualRead;
+    }
+
+    @Override
+    public ByteBuffer view(int pagePosition, int length) {
+        if (pagePosition + length > pageSize) return null;
+        return file.view(pageStart + pagePosition, length);
+    }
+
+    @Override
+    public int put(int pagePosition, byte[] src, int bufferOffset) {
+        final int actualWrite = actualOperationSize(pagePosition, pageSize, bufferOffset, src.length);
+        file.write(pageStart + pagePosition, src, bufferOffset, actualWrite);
+        return actualWrite;
+    }
+
+    @Override
+    public void advise(int pagePosition, int length, NativeIO.Advice advice) {
+        file.advise(pageStart + pagePosition, Math.min(length, pageSize - pagePosition), advice);
+    }
+}
@@ -0,0 +1,49 @@
+package com.upserve.uppend.blobs;
+
+/**
+ * Issues access pattern hints for a reader moving forward through a virtual file. The page being read is advised
+ * sequential, a rolling window of pages ahead of it is prefetched, and each page is released once the reader has
+ * moved past it so that a scan does not crowd out the pages used by live reads. An advisor must only be used by one
+ * thread and must be closed to release the last page.
+ */
+public class SequentialReadAdvisor implements AutoCloseable {
+    private final VirtualPageFileIO virtualFile;
+    private final int readAheadPages;
+
+    private int currentPage = -1;
+    private int prefetchedPage = -1;
+
+    /**
+     * @param virtualFile the virtual file being read
+     * @param readAheadPages the number of pages to prefetch ahead of the page being read
+     */
+    public SequentialReadAdvisor(VirtualPageFileIO virtualFile, int readAheadPages) {
+        this.virtualFile = virtualFile;
+        this.readAheadPages = readAheadPages;
+    }
+
+    /**
+     * Note the position the reader is about to read. Positions must not decrease.
+     *
+     * @param pos the position in the virtual file
+     */
+    public void advance(long pos) {
+        final int pageNumber = virtualFile.pageNumber(pos);
+        if (pageNumber == currentPage) return;
+
+        if (currentPage >= 0) virtualFile.releasePage(currentPage);
+        currentPage = pageNumber;
+
+        virtualFile.advisePage(pageNumber, NativeIO.Advice.Sequential);
+        for (int page = Math.max(prefetchedPage + 1, pageNumber + 1); page <= pageNumber + readAheadPages; page++) {
+            virtualFile.advisePage(page, NativeIO.Advice.WillNeed);
+        }
+        prefetchedPage = Math.max(prefetchedPage, pageNumber + readAheadPages);
+    }
+
+    @Override
+    public void close() {
+        if (currentPage >= 0) virtualFile.releasePage(currentPage);
+        currentPage = -1;
+    }
+}
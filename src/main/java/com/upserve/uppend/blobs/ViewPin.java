@@ -0,0 +1,30 @@
+package com.upserve.uppend.blobs;
+
+/**
+ * Holds a reference to the mapped window behind a view handed out by a read, so that the window stays mapped while the
+ * view is in use even if it is evicted from its pool. A pin holds at most one window: pinning another, or releasing
+ * the pin, gives up the window held before. A pin must only be used by one thread.
+ */
+public class ViewPin implements AutoCloseable {
+    private MappedWindow window;
+
+    void pin(MappedWindow window) {
+        release();
+        this.window = window;
+    }
+
+    /**
+     * Give up the window behind the last view, which must not be used afterwards
+     */
+    public void release() {
+        if (window != null) {
+            window.release();
+            window = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+}
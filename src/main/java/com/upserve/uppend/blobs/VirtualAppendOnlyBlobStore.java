@@ -1,32 +1,95 @@
 package com.upserve.uppend.blobs;
 
+import com.google.common.primitives.Ints;
 import com.upserve.uppend.metrics.BlobStoreMetrics;
+import com.upserve.uppend.util.Varint;
+import it.unimi.dsi.fastutil.longs.LongArrays;
 import org.slf4j.Logger;
 
 import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.IntFunction;
 
 public class VirtualAppendOnlyBlobStore extends VirtualPageFileIO {
     private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+    // Records which start within this many bytes of the first record of a run are read with one bulk copy
+    static final int COALESCE_BYTES = 64 * 1024;
+
+    // A header is at most a 5 byte varint, since stored lengths are ints
+    static final int MAX_HEADER_BYTES = 5;
+
     private final BlobStoreMetrics.Adders blobStoreMetricsAdders;
+    private final boolean compactLengths;
+    private final BlobCodec codec;
+    private final int compressionThreshold;
+    private BlobValueCache valueCache;
+    private int cacheStoreId;
 
     public VirtualAppendOnlyBlobStore(int virtualFileNumber, VirtualPageFile virtualPageFile) {
         this(virtualFileNumber, virtualPageFile, new BlobStoreMetrics.Adders());
     }
 
     public VirtualAppendOnlyBlobStore(int virtualFileNumber, VirtualPageFile virtualPageFile, BlobStoreMetrics.Adders blobStoreMetricsAdders) {
+        this(virtualFileNumber, virtualPageFile, blobStoreMetricsAdders, false);
+    }
+
+    /**
+     * @param virtualFileNumber the virtual file of the blobs
+     * @param virtualPageFile the file holding the virtual file
+     * @param blobStoreMetricsAdders the metrics to record to
+     * @param compactLengths whether records start with their length as a varint rather than a 4 byte int; the format
+     *                       is not recorded in the file, so it must be the same each time the file is opened
+     */
+    public VirtualAppendOnlyBlobStore(int virtualFileNumber, VirtualPageFile virtualPageFile, BlobStoreMetrics.Adders blobStoreMetricsAdders, boolean compactLengths) {
+        this(virtualFileNumber, virtualPageFile, blobStoreMetricsAdders, compactLengths, null, 0);
+    }
+
+    /**
+     * Records are compressed one at a time, so compressed records keep a position like any other and neighbouring
+     * records are still read together. A flag in the length of a record marks it as compressed, so a store can start
+     * or stop compressing at any time; compressed records can only be read with the codec which wrote them.
+     *
+     * @param virtualFileNumber the virtual file of the blobs
+     * @param virtualPageFile the file holding the virtual file
+     * @param blobStoreMetricsAdders the metrics to record to
+     * @param compactLengths whether records start with their length as a varint rather than a 4 byte int; the format
+     *                       is not recorded in the file, so it must be the same each time the file is opened
+     * @param codec compresses the records of at least the threshold size, or null to store every record as it is
+     * @param compressionThreshold the size of the smallest record to compress
+     */
+    public VirtualAppendOnlyBlobStore(int virtualFileNumber, VirtualPageFile virtualPageFile, BlobStoreMetrics.Adders blobStoreMetricsAdders, boolean compactLengths, BlobCodec codec, int compressionThreshold) {
         super(virtualFileNumber, virtualPageFile);
         this.blobStoreMetricsAdders = blobStoreMetricsAdders;
+        this.compactLengths = compactLengths;
+        this.codec = codec;
+        this.compressionThreshold = compressionThreshold;
     }
 
     public long append(byte[] bytes) {
+        return append(bytes, Long.MAX_VALUE);
+    }
+
+    /**
+     * Append a blob only if it starts at or before a position. The position is reserved before the check, so a blob
+     * which would start past it leaves its space unused and is not written.
+     *
+     * @param bytes the blob
+     * @param maxPosition the last position the blob may start at
+     * @return the position of the blob
+     * @throws IllegalStateException if the blob would start past maxPosition
+     */
+    public long append(byte[] bytes, long maxPosition) {
+        if (getPosition() > maxPosition) throw new IllegalStateException("Blob store " + virtualFileNumber + " is past position " + maxPosition);
         final long tic = System.nanoTime();
-        final int size = recordSize(bytes);
-        final long pos = appendPosition(size);
-        write(pos, byteRecord(bytes));
+        final byte[] record = byteRecord(bytes);
+        final long pos = appendPosition(record.length);
+        if (pos > maxPosition) throw new IllegalStateException("Blob at " + pos + " in store " + virtualFileNumber + " would start past position " + maxPosition);
+        write(pos, record);
         if (log.isTraceEnabled()) log.trace("appended {} bytes to {} at pos {}", bytes.length, virtualFileNumber, pos);
         blobStoreMetricsAdders.appendCounter.increment();
-        blobStoreMetricsAdders.bytesAppended.add(size);
+        blobStoreMetricsAdders.bytesAppended.add(record.length);
         blobStoreMetricsAdders.appendTimer.add(System.nanoTime() - tic);
         return pos;
     }
@@ -35,6 +98,17 @@ public class VirtualAppendOnlyBlobStore extends VirtualPageFileIO {
         return super.getPosition();
     }
 
+    /**
+     * Keep the values read from this store in a cache shared with other blob stores. Must be set before the store is
+     * read.
+     *
+     * @param valueCache the cache
+     */
+    public void setValueCache(BlobValueCache valueCache) {
+        cacheStoreId = valueCache.register();
+        this.valueCache = valueCache;
+    }
+
     /**
      * Read a byte array at this position from the virtual blob store
      * Results are unpredictable for bad position requests. It may lead to a negative size and a NegativeArraySizeException
@@ -44,27 +118,316 @@ public class VirtualAppendOnlyBlobStore extends VirtualPageFileIO {
      * @return the byte array blob
      */
     public byte[] read(long pos) {
+        final byte[] cached = readCached(pos);
+        return cached != null ? cached : readStored(pos);
+    }
+
+    /**
+     * Look up the blob at this position in the value cache, counting the hit or miss
+     *
+     * @param pos the position in the virtual file
+     * @return the cached blob, or null if it is not cached or there is no cache
+     */
+    byte[] readCached(long pos) {
+        if (valueCache == null) return null;
+        final byte[] cached = valueCache.get(cacheStoreId, pos);
+        if (cached != null) {
+            blobStoreMetricsAdders.cacheHitCounter.increment();
+        } else {
+            blobStoreMetricsAdders.cacheMissCounter.increment();
+        }
+        return cached;
+    }
+
+    /**
+     * Read the blob at this position through the page backend, skipping the cache lookup
+     *
+     * @param pos the position in the virtual file
+     * @return the blob
+     */
+    byte[] readStored(long pos) {
+        final long tic = System.nanoTime();
+        final long header = readHeader(pos);
+        byte[] buf = readRecord(pos, header);
+
+        blobStoreMetricsAdders.readCounter.increment();
+        blobStoreMetricsAdders.bytesRead.add(recordSize(header));
+        blobStoreMetricsAdders.readTimer.add(System.nanoTime() - tic);
+        if (valueCache != null) valueCache.put(cacheStoreId, pos, buf);
+        return buf;
+    }
+
+    /**
+     * Read the blobs at these positions. The positions are sorted so that records which lie close together in the
+     * virtual file, such as the values of a key appended in a burst, are copied with one bulk read and sliced apart
+     * rather than read with two small reads each.
+     *
+     * @param positions the positions to read from in the virtual file
+     * @return the blobs in the order of the positions
+     */
+    public byte[][] read(long[] positions) {
+        if (valueCache == null) return readStored(positions);
+
+        final byte[][] result = new byte[positions.length][];
+        final long[] misses = new long[positions.length];
+        int missCount = 0;
+        for (int i = 0; i < positions.length; i++) {
+            result[i] = valueCache.get(cacheStoreId, positions[i]);
+            if (result[i] == null) misses[missCount++] = positions[i];
+        }
+        blobStoreMetricsAdders.cacheHitCounter.add(positions.length - missCount);
+        blobStoreMetricsAdders.cacheMissCounter.add(missCount);
+        if (missCount == 0) return result;
+
+        final byte[][] stored = readStored(Arrays.copyOf(misses, missCount));
+        int storedIndex = 0;
+        for (int i = 0; i < positions.length; i++) {
+            if (result[i] == null) {
+                result[i] = stored[storedIndex++];
+                valueCache.put(cacheStoreId, positions[i], result[i]);
+            }
+        }
+        return result;
+    }
+
+    private byte[][] readStored(long[] positions) {
         final long tic = System.nanoTime();
+        final byte[][] result = new byte[positions.length][];
+
+        final long[] sorted = positions.clone();
+        final long[] indexes = new long[positions.length];
+        for (int i = 0; i < indexes.length; i++) indexes[i] = i;
+        LongArrays.quickSort(sorted, indexes);
+
+        long bytesRead = 0;
+        int first = 0;
+        while (first < sorted.length) {
+            final long start = sorted[first];
+            int last = first;
+            while (last + 1 < sorted.length && sorted[last + 1] - start < COALESCE_BYTES) last++;
+
+            if (last == first) {
+                final long header = readHeader(start);
+                result[(int) indexes[first]] = readRecord(start, header);
+                bytesRead += recordSize(header);
+                first++;
+                continue;
+            }
+
+            long end = sorted[last] + recordSize(readHeader(sorted[last]));
+            if (end - start > 2 * COALESCE_BYTES) {
+                // Leave a large last record to a read of its own
+                end = sorted[last];
+                last--;
+            }
+
+            final byte[] run = new byte[(int) (end - start)];
+            super.read(start, run);
+            final ByteBuffer runBuffer = ByteBuffer.wrap(run);
+            for (int i = first; i <= last; i++) {
+                final int offset = (int) (sorted[i] - start);
+                final long header = compactLengths ? Varint.readLong(run, offset) : fixedHeader(runBuffer.getInt(offset));
+                result[(int) indexes[i]] = decode(run, offset + headerSize(header), header);
+                bytesRead += recordSize(header);
+            }
+            if (log.isTraceEnabled()) log.trace("read {} records in {} bytes from {} @ {}", last - first + 1, run.length, virtualFileNumber, start);
+            first = last + 1;
+        }
+
+        blobStoreMetricsAdders.readCounter.add(positions.length);
+        blobStoreMetricsAdders.bytesRead.add(bytesRead);
+        blobStoreMetricsAdders.readTimer.add(System.nanoTime() - tic);
+        return result;
+    }
+
+    private byte[] readRecord(long pos, long header) {
         if (log.isTraceEnabled()) log.trace("read mapped from  {} @ {}", virtualFileNumber, pos);
-        int size = readInt(pos);
+        int size = storedLength(header);
         byte[] buf = new byte[size];
-        super.read(pos + 4, buf);
+        super.read(pos + headerSize(header), buf);
         if (log.isTraceEnabled()) log.trace("read mapped {} bytes from {} @ {}", size, virtualFileNumber, pos);
+        return decode(buf, 0, header);
+    }
+
+    /**
+     * @param buf an array holding the stored bytes of a record
+     * @param offset the offset of the stored bytes in the array
+     * @param header the header of the record
+     * @return the bytes of the blob
+     */
+    private byte[] decode(byte[] buf, int offset, long header) {
+        final int size = storedLength(header);
+        if (!isCompressed(header)) {
+            return offset == 0 && size == buf.length ? buf : Arrays.copyOfRange(buf, offset, offset + size);
+        }
+        if (codec == null) {
+            throw new IllegalStateException("Can not read a compressed record without a codec in file " + virtualFileNumber);
+        }
+        final long decompressedLength = Varint.readLong(buf, offset);
+        final int lengthSize = Varint.computeSize(decompressedLength);
+        return codec.decompress(buf, offset + lengthSize, size - lengthSize, (int) decompressedLength);
+    }
+
+    /**
+     * Get the size of a record from its first bytes, for reads which bypass the page backend
+     *
+     * @param record the first bytes of the record
+     * @param length the number of bytes of the record in the array
+     * @return the size of the record, or -1 if its header is longer than the bytes
+     */
+    int recordSize(byte[] record, int length) {
+        if (!compactLengths) {
+            return length < 4 ? -1 : recordSize(fixedHeader(Ints.fromBytes(record[0], record[1], record[2], record[3])));
+        }
+        for (int i = 0; i < Math.min(length, MAX_HEADER_BYTES); i++) {
+            if (record[i] >= 0) return recordSize(Varint.readLong(record, 0));
+        }
+        if (length < MAX_HEADER_BYTES) return -1;
+        throw new IllegalStateException("Malformed record header in file " + virtualFileNumber);
+    }
+
+    /**
+     * Decode a record read without the page backend and count it as a read like {@link #read(long)} does, caching the
+     * blob
+     *
+     * @param pos the position of the record in the virtual file
+     * @param record the bytes of the record
+     * @param tic the nano time when the read started
+     * @return the blob
+     */
+    byte[] completeRead(long pos, byte[] record, long tic) {
+        final long header = compactLengths ? Varint.readLong(record, 0) : fixedHeader(Ints.fromBytes(record[0], record[1], record[2], record[3]));
+        final byte[] buf = decode(record, headerSize(header), header);
 
         blobStoreMetricsAdders.readCounter.increment();
-        blobStoreMetricsAdders.bytesRead.add(recordSize(buf));
+        blobStoreMetricsAdders.bytesRead.add(recordSize(header));
         blobStoreMetricsAdders.readTimer.add(System.nanoTime() - tic);
+        if (valueCache != null) valueCache.put(cacheStoreId, pos, buf);
         return buf;
     }
 
-    private static int recordSize(byte[] inputBytes) {
-        return inputBytes.length + 4;
+    /**
+     * Read the blob at this position without allocating a byte array for it
+     *
+     * @param pos the position to read from in the virtual file
+     * @param buffer a reusable heap buffer to copy into when the blob can not be returned as a view of a mapped page
+     * @param bufferSupplier supplies a larger heap buffer when the blob does not fit in buffer
+     * @return a buffer with the blob between its position and limit, only valid until buffer is reused
+     */
+    public ByteBuffer read(long pos, ByteBuffer buffer, IntFunction<ByteBuffer> bufferSupplier) {
+        return read(pos, buffer, bufferSupplier, null);
+    }
+
+    /**
+     * Read the blob at this position without allocating a byte array for it, returning a view of a pooled mapped page
+     * when the blob lies within one
+     *
+     * @param pos the position to read from in the virtual file
+     * @param buffer a reusable heap buffer to copy into when the blob can not be returned as a view of a mapped page
+     * @param bufferSupplier supplies a larger heap buffer when the blob does not fit in buffer
+     * @param pin holds the mapped window behind a view, or null to copy blobs in pooled pages
+     * @return a buffer with the blob between its position and limit, only valid until buffer is reused and the pin
+     * is released or pins another view
+     */
+    public ByteBuffer read(long pos, ByteBuffer buffer, IntFunction<ByteBuffer> bufferSupplier, ViewPin pin) {
+        final long tic = System.nanoTime();
+        final long header = readHeader(pos);
+        final int size = storedLength(header);
+        final ByteBuffer result;
+        if (isCompressed(header)) {
+            result = ByteBuffer.wrap(readRecord(pos, header));
+        } else {
+            result = readView(pos + headerSize(header), size, buffer.capacity() < size ? bufferSupplier.apply(size) : buffer, pin);
+        }
+
+        blobStoreMetricsAdders.readCounter.increment();
+        blobStoreMetricsAdders.bytesRead.add(recordSize(header));
+        blobStoreMetricsAdders.readTimer.add(System.nanoTime() - tic);
+        return result;
+    }
+
+    /**
+     * Ask the kernel to start reading the blobs at these positions into the page cache, without waiting for them, so
+     * that the reads which follow overlap their I/O. Only the start of each blob is prefetched. The positions are sorted
+     * and runs of adjacent pages are advised together, so each run costs one madvise call per page it touches.
+     *
+     * @param positions the positions of the blobs which are about to be read, in any order
+     */
+    public void prefetch(long[] positions) {
+        if (positions.length == 0) return;
+        final long[] sorted = positions.clone();
+        Arrays.sort(sorted);
+
+        long runStart = sorted[0] / NativeIO.pageSize;
+        long runEnd = runStart + 1;
+        for (int i = 1; i < sorted.length; i++) {
+            final long page = sorted[i] / NativeIO.pageSize;
+            if (page <= runEnd) {
+                runEnd = page + 1;
+            } else {
+                advisePages(runStart, runEnd);
+                runStart = page;
+                runEnd = page + 1;
+            }
+        }
+        advisePages(runStart, runEnd);
+    }
+
+    private void advisePages(long startPage, long endPage) {
+        final long length = (endPage - startPage) * NativeIO.pageSize;
+        advise(startPage * NativeIO.pageSize, (int) Math.min(length, Integer.MAX_VALUE), NativeIO.Advice.WillNeed);
+    }
+
+    // The header of a record is read as its stored length shifted left by one, with the low bit set if the stored
+    // bytes are compressed. Compact records store it as a varint and fixed ones as an int, complemented if compressed.
+
+    private long readHeader(long pos) {
+        return compactLengths ? readVarint(pos) : fixedHeader(readInt(pos));
+    }
+
+    private static long fixedHeader(int value) {
+        return value < 0 ? ((long) ~value << 1) | 1 : (long) value << 1;
+    }
+
+    private static int storedLength(long header) {
+        return (int) (header >>> 1);
+    }
+
+    private static boolean isCompressed(long header) {
+        return (header & 1) != 0;
+    }
+
+    private int headerSize(long header) {
+        return compactLengths ? Varint.computeSize(header) : 4;
     }
 
-    private static byte[] byteRecord(byte[] inputBytes) {
-        byte[] result = new byte[recordSize(inputBytes)];
-        System.arraycopy(int2bytes(inputBytes.length), 0, result, 0, 4);
-        System.arraycopy(inputBytes, 0, result, 4, inputBytes.length);
+    private int recordSize(long header) {
+        return headerSize(header) + storedLength(header);
+    }
+
+    private byte[] byteRecord(byte[] inputBytes) {
+        byte[] stored = inputBytes;
+        boolean compressed = false;
+        if (codec != null && inputBytes.length >= compressionThreshold) {
+            // Compressed bytes are prefixed with the length of the blob
+            final byte[] compressedBytes = codec.compress(inputBytes);
+            final int lengthSize = Varint.computeSize(inputBytes.length);
+            if (lengthSize + compressedBytes.length < inputBytes.length) {
+                stored = new byte[lengthSize + compressedBytes.length];
+                Varint.write(stored, 0, inputBytes.length);
+                System.arraycopy(compressedBytes, 0, stored, lengthSize, compressedBytes.length);
+                compressed = true;
+            }
+        }
+
+        final long header = ((long) stored.length << 1) | (compressed ? 1 : 0);
+        byte[] result = new byte[recordSize(header)];
+        if (compactLengths) {
+            Varint.write(result, 0, header);
+        } else {
+            System.arraycopy(int2bytes(compressed ? ~stored.length : stored.length), 0, result, 0, 4);
+        }
+        System.arraycopy(stored, 0, result, headerSize(header), stored.length);
 
         return result;
     }
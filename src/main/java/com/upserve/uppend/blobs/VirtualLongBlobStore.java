@@ -5,7 +5,9 @@ import com.upserve.uppend.metrics.LongBlobStoreMetrics;
 import org.slf4j.Logger;
 
 import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.function.IntFunction;
 import java.util.stream.*;
 
 /**
@@ -70,6 +72,25 @@ public class VirtualLongBlobStore extends VirtualPageFileIO {
         return buf;
     }
 
+    /**
+     * Read the blob at this position without allocating a byte array for it
+     *
+     * @param pos the position of the record in the virtual file
+     * @param buffer a reusable heap buffer to copy into when the blob can not be returned as a view of a mapped page
+     * @param bufferSupplier supplies a larger heap buffer when the blob does not fit in buffer
+     * @return a buffer with the blob between its position and limit, only valid until buffer is reused
+     */
+    public ByteBuffer readBlob(long pos, ByteBuffer buffer, IntFunction<ByteBuffer> bufferSupplier) {
+        final long tic = System.nanoTime();
+        int size = readInt(pos);
+        ByteBuffer result = readView(pos + 12, size, buffer.capacity() < size ? bufferSupplier.apply(size) : buffer, null);
+
+        longBlobStoreMetricsAdders.readCounter.increment();
+        longBlobStoreMetricsAdders.bytesRead.add(size + 12);
+        longBlobStoreMetricsAdders.readTimer.add(System.nanoTime() - tic);
+        return result;
+    }
+
     public Stream<Map.Entry<Long, byte[]>> positionBlobStream() {
         Iterator<Map.Entry<Long, byte[]>> positionBlobIterator = positionBlobIterator();
         Spliterator<Map.Entry<Long, byte[]>> spliter = Spliterators.spliteratorUnknownSize(
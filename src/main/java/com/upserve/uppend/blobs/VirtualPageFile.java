@@ -18,7 +18,7 @@ import java.util.stream.IntStream;
  * Pages are double linked with head and tail pointers for each virtual file
  * The header maintains a table of pages for each virtual file.
  * <p>
- * Self Describing Header: virtualFiles (int), pageSize (int)
+ * Self Describing Header: virtualFiles (int), pageSize (int) - negative when pages grow through size classes
  * <p>
  * Page Table Locations (tables are interspersed with pages after the first block)
  * <p>
@@ -38,7 +38,8 @@ import java.util.stream.IntStream;
  * ...      .......            ..................
  * PAGES_PER_VIRUAL_FILE
  * <p>
- * Pages - a collection of bytes of size pageSize
+ * Pages - a collection of bytes of size pageSize. With size classes the first pages of each virtual file are smaller,
+ * starting at pageSize / 2^steps and doubling up to pageSize, and each page is aligned to its size.
  * <p>
  * Pages are interspersed with additional Page Tables as needed
  */
@@ -55,11 +56,20 @@ public class VirtualPageFile implements Closeable {
     private static final int HEADER_RECORD_SIZE = 8 + 4;
     /* currentPosition, pageCount */
 
+    // Slots between the position counters of adjacent virtual files, so that writers to different virtual files do not
+    // share a cache line - 128 bytes covers the adjacent line prefetch too
+    private static final int POSITION_STRIDE = 16;
+
+    // The most times the first page of a virtual file is halved from pageSize with size classes
+    private static final int MAX_SIZE_CLASS_STEPS = 6;
+
     // Maximum number of pages per record block
     private static final int PAGE_TABLE_SIZE = 1000;
 
+    private static final int UNOPENED_DESCRIPTOR = -2;
+
     private static final int MAX_BUFFERS = 1024 * 64; // 128 TB per partition for 2Gb Bufffers
-    private final MappedByteBuffer[] mappedByteBuffers;
+    private final MappedWindows mappedWindows;
     private final int bufferSize;
 
     final Path filePath;
@@ -70,8 +80,19 @@ public class VirtualPageFile implements Closeable {
     private final AtomicLong nextPagePosition;
     private final boolean readOnly;
     private final boolean cacheBuffers;
-
-    private final AtomicLong[] virtualFilePositions; // the current position in the virtual file for each virtual file
+    private final PageBackend pageBackend;
+    private final DirectFile directFile;
+    private final SegmentFile segmentFile;
+    private volatile Preallocator preallocator;
+    private volatile Prefaulter prefaulter;
+    private volatile int readDescriptor = UNOPENED_DESCRIPTOR;
+
+    private final ResidencyPolicy residency;
+    private final long headerResidentBytes;
+    private final long[] pageTableResidentBytes;
+
+    private final AtomicLongArray virtualFilePositions; // the current position in the virtual file for each virtual file, POSITION_STRIDE apart
+    private volatile boolean lazyPositionPublishing = false;
     private final AtomicInteger[] virtualFilePageCounts; // the number of pages currently allocated for each virtual file
 
     private final LongAdder pageAllocationCount;
@@ -80,6 +101,9 @@ public class VirtualPageFile implements Closeable {
 
     private final int virtualFiles;
     private final int pageSize;
+    private final int sizeClassSteps; // the number of pages of each virtual file smaller than pageSize
+    private final int firstPageSize;
+    private final long smallPagesSize; // the size of the pages smaller than pageSize in each virtual file
 
     private final int headerSize;
     private final int tableSize;
@@ -95,16 +119,101 @@ public class VirtualPageFile implements Closeable {
     @Override
     public void close() throws IOException {
         if (!channel.isOpen()) return;
+        flush();
 
-        Arrays.fill(mappedByteBuffers, null);
+        if (prefaulter != null) prefaulter.close();
+        if (mappedWindows != null) mappedWindows.close();
+        residency.unmapped(headerBuffer, headerResidentBytes);
+        for (int i = 0; i < MAX_PAGE_TABLE_BLOCKS; i++) {
+            if (pageTables[i] != null) residency.unmapped(pageTables[i], pageTableResidentBytes[i]);
+        }
         Arrays.fill(pageTables, null);
+        if (directFile != null) directFile.close();
+        if (segmentFile != null) segmentFile.close();
+        if (readDescriptor >= 0) NativeIO.close(readDescriptor);
 
         if (!readOnly) {
             channel.truncate(nextPagePosition.get());
         }
+        if (preallocator != null) preallocator.close(nextPagePosition.get());
         channel.close();
     }
 
+    /**
+     * Track the pages written so that {@link #sync()} only writes back the dirty ranges of mapped pages
+     *
+     * @param trackWrites whether to track writes
+     */
+    public void setTrackWrites(boolean trackWrites) {
+        if (mappedWindows != null) mappedWindows.setTrackWrites(trackWrites);
+    }
+
+    /**
+     * Start writeback of the mapped pages written at the rate of a scheduler, rather than leaving them to the kernel's
+     * bursty dirty page writeback
+     *
+     * @param scheduler the writeback scheduler
+     */
+    public void setWriteback(WritebackScheduler scheduler) {
+        if (mappedWindows != null && !readOnly) mappedWindows.setWriteback(scheduler);
+    }
+
+    /**
+     * Keep disk blocks allocated ahead of the pages allocated in the file, so that it grows in large extents. Skipped
+     * with a warning where fallocate is not supported.
+     *
+     * @param headroomBytes the number of bytes to keep allocated ahead of the next page
+     */
+    public void setPreallocation(long headroomBytes) {
+        if (readOnly) return;
+        try {
+            preallocator = new Preallocator(filePath, headroomBytes, nextPagePosition::get);
+        } catch (IOException e) {
+            log.warn("Unable to preallocate {}", filePath, e);
+            return;
+        }
+        preallocator.advanced(nextPagePosition.get());
+    }
+
+    /**
+     * Fault in the mapped pages ahead of the next page on a background thread, so that writers do not take the fault
+     * when they first write to a newly allocated page
+     *
+     * @param aheadBytes the number of bytes to keep faulted in ahead of the next page
+     */
+    public void setPrefault(long aheadBytes) {
+        if (mappedWindows == null || readOnly) return;
+        prefaulter = new Prefaulter(mappedWindows, aheadBytes, nextPagePosition::get);
+        prefaulter.advanced(nextPagePosition.get());
+    }
+
+    /**
+     * Synchronously write the pages, page tables and header to disk, making every write before the call durable. The
+     * pages are written first so that the header never refers to data which is not on disk.
+     */
+    public void sync() {
+        if (readOnly) return;
+        flush();
+
+        if (mappedWindows != null) {
+            mappedWindows.sync();
+        } else if (segmentFile != null) {
+            segmentFile.sync();
+        } else {
+            try {
+                channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to sync file " + filePath, e);
+            }
+        }
+
+        for (MappedByteBuffer pageTable : pageTables) {
+            if (pageTable != null) pageTable.force();
+        }
+        headerBlockLocations.force();
+        headerBuffer.force();
+    }
+
     int getVirtualFiles() {
         return virtualFiles;
     }
@@ -128,9 +237,9 @@ public class VirtualPageFile implements Closeable {
 
     long appendPosition(int virtualFileNumber, int size) {
         // return the position to write at
-        final long result = getAtomicVirtualFilePosition(virtualFileNumber).getAndAdd(size);
+        final long result = virtualFilePositions.getAndAdd(virtualFileNumber * POSITION_STRIDE, size);
         // record the position written too
-        putHeaderVirtualFilePosition(virtualFileNumber, result + size);
+        publishPosition(virtualFileNumber, result, result + size);
         // It is possible to have a race here which could result in loosing an appended value if the writer process dies
         // before it writes again...
         return result;
@@ -139,10 +248,10 @@ public class VirtualPageFile implements Closeable {
     long appendPageAlignedPosition(int virtualFileNumber, int size, int lowBound, int highBound) {
 
         long[] effectivelyFinal = new long[1];
-        getAtomicVirtualFilePosition(virtualFileNumber).getAndUpdate(val -> {
+        virtualFilePositions.getAndUpdate(virtualFileNumber * POSITION_STRIDE, val -> {
 
             int naturalPageStartPosition = pagePosition(val);
-            int availableSpace = pageSize - naturalPageStartPosition;
+            int availableSpace = getPageSize(pageIndex(val)) - naturalPageStartPosition;
 
             if (availableSpace >= highBound) {
                 effectivelyFinal[0] = val;
@@ -157,13 +266,59 @@ public class VirtualPageFile implements Closeable {
         });
 
         final long result = effectivelyFinal[0];
-        putHeaderVirtualFilePosition(virtualFileNumber, result + size);
+        publishPosition(virtualFileNumber, result, result + size);
         return result;
     }
 
+    /**
+     * Record the position of a virtual file in the header after an append. With lazy publishing only an append which
+     * crosses into a new page writes the header, so that writers to neighbouring virtual files do not share its cache
+     * lines on every append; {@link #flush()} publishes the rest.
+     */
+    private void publishPosition(int virtualFileNumber, long start, long end) {
+        if (!lazyPositionPublishing || pageIndex(start) != pageIndex(end)) {
+            putHeaderVirtualFilePosition(virtualFileNumber, end);
+        }
+    }
+
+    /**
+     * Publish the current position of a virtual file to the header. With lazy publishing this must be called after
+     * appends and before anything which refers to them is written, so that the appends are never overwritten once the
+     * file is reopened after the process dies.
+     *
+     * @param virtualFileNumber the virtual file
+     */
+    void publishPosition(int virtualFileNumber) {
+        if (readOnly || !lazyPositionPublishing) return;
+        putHeaderVirtualFilePosition(virtualFileNumber, virtualFilePositions.get(virtualFileNumber * POSITION_STRIDE));
+    }
+
+    /**
+     * Write the position of each virtual file to the header on every append, or lazily - only when an append crosses
+     * into a new page, on {@link #publishPosition(int)} and on {@link #flush()}. Lazy publishing lets writers to
+     * different virtual files scale, but if the process dies the appends since the last publish are not recorded in
+     * the header and are overwritten once the file is reopened. It is only safe for a file whose appends are referred
+     * to by writes which publish the position first.
+     *
+     * @param lazyPositionPublishing whether to publish positions lazily
+     */
+    public void setLazyPositionPublishing(boolean lazyPositionPublishing) {
+        this.lazyPositionPublishing = lazyPositionPublishing;
+    }
+
+    /**
+     * Publish the current position of every virtual file to the header
+     */
+    public void flush() {
+        if (readOnly || !lazyPositionPublishing) return;
+        for (int virtualFileNumber = 0; virtualFileNumber < virtualFiles; virtualFileNumber++) {
+            publishPosition(virtualFileNumber);
+        }
+    }
+
     long nextAlignedPosition(long position, int lowBound, int highBound) {
         int naturalPageStartPosition = pagePosition(position);
-        int availableSpace = pageSize - naturalPageStartPosition;
+        int availableSpace = getPageSize(pageIndex(position)) - naturalPageStartPosition;
 
         if (availableSpace >= highBound) {
             return position;
@@ -182,7 +337,7 @@ public class VirtualPageFile implements Closeable {
         if (readOnly) {
             return getHeaderVirtualFilePosition(virtualFileNumber);
         } else {
-            return virtualFilePositions[virtualFileNumber].get();
+            return virtualFilePositions.get(virtualFileNumber * POSITION_STRIDE);
         }
     }
 
@@ -193,7 +348,8 @@ public class VirtualPageFile implements Closeable {
      * @return the position in the page
      */
     int pagePosition(long pos) {
-        return (int) (pos % (long) pageSize);
+        if (sizeClassSteps == 0) return (int) (pos % (long) pageSize);
+        return (int) (pos - pageStart((int) pageIndex(pos)));
     }
 
     /**
@@ -203,12 +359,88 @@ public class VirtualPageFile implements Closeable {
      * @return the page this position occurs in
      */
     int pageNumber(long pos) {
-        long result = (pos / (long) pageSize);
+        long result = pageIndex(pos);
         if (result >= PAGE_TABLE_SIZE * MAX_PAGE_TABLE_BLOCKS)
             throw new IllegalStateException("The position " + pos + " exceeds the page limit " + PAGE_TABLE_SIZE * MAX_PAGE_TABLE_BLOCKS + ", for file" + getFilePath() + "with page size " + pageSize );
         return (int) result;
     }
 
+    private long pageIndex(long pos) {
+        if (pos >= smallPagesSize) return sizeClassSteps + (pos - smallPagesSize) / pageSize;
+        // Page k of the size classes starts at firstPageSize * (2^k - 1)
+        return 63 - Long.numberOfLeadingZeros(pos / firstPageSize + 1);
+    }
+
+    /**
+     * Get the position in the virtual file where a page starts
+     *
+     * @param pageNumber the page number
+     * @return the position in the virtual file
+     */
+    long pageStart(int pageNumber) {
+        if (pageNumber <= sizeClassSteps) return firstPageSize * ((1L << pageNumber) - 1);
+        return smallPagesSize + (long) (pageNumber - sizeClassSteps) * pageSize;
+    }
+
+    /**
+     * Get the size of a page, which is smaller than the page size for the first pages with size classes
+     *
+     * @param pageNumber the page number
+     * @return the size of the page
+     */
+    int getPageSize(long pageNumber) {
+        return pageNumber < sizeClassSteps ? firstPageSize << pageNumber : pageSize;
+    }
+
+    /**
+     * Get the number of bytes from a position in the virtual file to the end of its page
+     *
+     * @param pos the position in the virtual file
+     * @return the number of bytes
+     */
+    int pageRemaining(long pos) {
+        return getPageSize(pageNumber(pos)) - pagePosition(pos);
+    }
+
+    /**
+     * Get the position in the file of a position in a virtual file, for reads which bypass the page backend
+     *
+     * @param virtualFileNumber the virtual file number
+     * @param pos the position in the virtual file
+     * @return the position in the file
+     * @throws IllegalStateException if the page of the position has not been allocated
+     */
+    long filePosition(int virtualFileNumber, long pos) {
+        return getValidPageStart(virtualFileNumber, pageNumber(pos)) + pagePosition(pos);
+    }
+
+    /**
+     * Get a read only file descriptor for reads which bypass the page backend, such as pread or io_uring. It is opened
+     * on first use and closed with the file.
+     *
+     * @return the file descriptor, or -1 where native file descriptors are not supported
+     */
+    int readDescriptor() {
+        int fd = readDescriptor;
+        if (fd != UNOPENED_DESCRIPTOR) return fd;
+        synchronized (this) {
+            if (readDescriptor == UNOPENED_DESCRIPTOR) {
+                try {
+                    fd = NativeIO.openReadOnly(filePath);
+                } catch (IOException | RuntimeException | LinkageError e) {
+                    log.warn("Unable to open a native file descriptor for {}", filePath, e);
+                    fd = -1;
+                }
+                readDescriptor = fd < 0 ? -1 : fd;
+            }
+            return readDescriptor;
+        }
+    }
+
+    public boolean hasSizeClasses() {
+        return sizeClassSteps > 0;
+    }
+
     /**
      * Get or create (allocate) the page if it does not exist.
      *
@@ -225,7 +457,7 @@ public class VirtualPageFile implements Closeable {
         }
 
         // Laptop benchmark 2019-11-09 shows using mapped pages for writing is faster. Confirm in production env.
-        return mappedPage(startPosition);
+        return page(startPosition, getPageSize(pageNumber));
     }
 
     /**
@@ -237,21 +469,72 @@ public class VirtualPageFile implements Closeable {
      */
     Page getExistingPage(int virtualFileNumber, int pageNumber) {
         long startPosition = getValidPageStart(virtualFileNumber, pageNumber);
-        return mappedPage(startPosition);
+        return page(startPosition, getPageSize(pageNumber));
+    }
+
+    private Page page(long startPosition, int size) {
+        switch (pageBackend) {
+            case FILE_CHANNEL:
+                return filePage(startPosition, size);
+            case DIRECT:
+                return directPage(startPosition, size);
+            case SEGMENT:
+                return segmentPage(startPosition, size);
+            default:
+                return mappedPage(startPosition, size);
+        }
     }
 
-    private MappedPage mappedPage(long startPosition) {
+    private MappedPage mappedPage(long startPosition, int size) {
         final long postHeaderPosition = startPosition - (totalHeaderSize);
         final int mapIndex = (int) (postHeaderPosition / bufferSize);
         final int mapPosition = (int) (postHeaderPosition % bufferSize);
 
-        MappedByteBuffer bigbuffer = ensureBuffered(mapIndex);
+        return new MappedPage(mappedWindows, mapIndex, mapPosition, size);
+    }
+
+    private FilePage filePage(long startPosition, int size) {
+        return new FilePage(channel, startPosition, size);
+    }
+
+    private DirectPage directPage(long startPosition, int size) {
+        return new DirectPage(directFile, startPosition, size);
+    }
+
+    private SegmentPage segmentPage(long startPosition, int size) {
+        return new SegmentPage(segmentFile, startPosition, size);
+    }
+
+    /**
+     * The memory segment classes are compiled for the preview of the Foreign Function and Memory API in Java 21, so
+     * any other runtime, or Java 21 without --enable-preview, fails to load them
+     *
+     * @return true if files can be mapped as memory segments on this runtime
+     */
+    static boolean isSegmentSupported() {
+        try {
+            return SegmentFile.isSupported();
+        } catch (LinkageError e) {
+            log.debug("Unable to load the memory segment classes", e);
+            return false;
+        }
+    }
+
+    public PageBackend getPageBackend() {
+        return pageBackend;
+    }
 
-        return new MappedPage(bigbuffer, mapPosition, pageSize);
+    int getPageSize() {
+        return pageSize;
     }
 
-    private FilePage filePage(long startPosition) {
-        return new FilePage(channel, startPosition, pageSize);
+    /**
+     * The access pattern advised for the mapped windows of this file when they are mapped
+     *
+     * @return random if the buffers should not be cached, otherwise normal
+     */
+    NativeIO.Advice getDefaultAdvice() {
+        return cacheBuffers ? NativeIO.Advice.Normal : NativeIO.Advice.Random;
     }
 
     long getFileSize(){
@@ -267,13 +550,39 @@ public class VirtualPageFile implements Closeable {
     }
 
     public VirtualPageFile(Path filePath, int virtualFiles, int pageSize, int targetBufferSize, boolean readOnly, boolean cacheBuffers) {
+        this(filePath, virtualFiles, pageSize, targetBufferSize, readOnly, cacheBuffers, PageBackend.MAPPED);
+    }
+
+    public VirtualPageFile(Path filePath, int virtualFiles, int pageSize, int targetBufferSize, boolean readOnly, boolean cacheBuffers, PageBackend pageBackend) {
+        this(filePath, virtualFiles, pageSize, targetBufferSize, readOnly, cacheBuffers, pageBackend, ResidencyPolicy.NONE);
+    }
+
+    /**
+     * Open a virtual page file whose header, page tables and mapped windows are kept resident under a policy, which
+     * is used for the index files
+     */
+    public VirtualPageFile(Path filePath, int virtualFiles, int pageSize, int targetBufferSize, boolean readOnly, boolean cacheBuffers, PageBackend pageBackend, ResidencyPolicy residency) {
+        this(filePath, virtualFiles, pageSize, targetBufferSize, readOnly, cacheBuffers, pageBackend, residency, false);
+    }
+
+    /**
+     * Open a virtual page file, creating it with size classes if it does not exist. The first pages of each virtual
+     * file of a file with size classes start small and double up to the page size, so that a virtual file which holds
+     * little data does not take up a whole page. An existing file keeps the layout it was created with.
+     */
+    public VirtualPageFile(Path filePath, int virtualFiles, int pageSize, int targetBufferSize, boolean readOnly, boolean cacheBuffers, PageBackend pageBackend, ResidencyPolicy residency, boolean sizeClasses) {
         this.filePath = filePath;
+        this.residency = residency;
         this.readOnly = readOnly;
         this.virtualFiles = virtualFiles;
         this.pageSize = pageSize;
         this.cacheBuffers = cacheBuffers;
-
-        this.mappedByteBuffers = new MappedByteBuffer[MAX_BUFFERS];
+        if (pageBackend == PageBackend.SEGMENT && !isSegmentSupported()) {
+            log.warn("Memory segment pages require Java 21 with --enable-preview, using mapped pages for {}", filePath);
+            this.pageBackend = PageBackend.MAPPED;
+        } else {
+            this.pageBackend = pageBackend;
+        }
 
         if (targetBufferSize < (pageSize)) throw new IllegalArgumentException("Target buffer size " + targetBufferSize + " must be larger than a page " + pageSize);
 
@@ -302,6 +611,7 @@ public class VirtualPageFile implements Closeable {
         }
 
         final long initialSize;
+        final boolean fileSizeClasses;
         try {
             initialSize = channel.size();
             headerBlockLocations = channel.map(mapMode, SELF_DESCRIBING_HEADER_SIZE, PAGE_TABLE_BLOCK_LOCATION_HEADER_SIZE);
@@ -313,8 +623,9 @@ public class VirtualPageFile implements Closeable {
                 intBuffer.putInt(virtualFiles);
                 channel.write(intBuffer.flip(), 0);
 
-                intBuffer.flip().putInt(pageSize);
+                intBuffer.flip().putInt(sizeClasses ? -pageSize : pageSize);
                 channel.write(intBuffer.flip(), 4);
+                fileSizeClasses = sizeClasses;
 
                 longHeaderBlockLocations.put(0, SELF_DESCRIBING_HEADER_SIZE + PAGE_TABLE_BLOCK_LOCATION_HEADER_SIZE + headerSize);
             } else {
@@ -323,10 +634,11 @@ public class VirtualPageFile implements Closeable {
                 if (val != virtualFiles)
                     throw new IllegalArgumentException("The specfied number of virtual files " + virtualFiles + " does not match the value in the datastore " + val + " in file " + getFilePath());
 
-                channel.read(intBuffer, 4);
+                channel.read(intBuffer.clear(), 4);
                 val = intBuffer.flip().getInt();
-                if (val != virtualFiles)
-                    throw new IllegalArgumentException("The specfied page size " + pageSize + " does not match the value in the datastore " + val + " in file " + getFilePath());
+                if (Math.abs(val) != pageSize)
+                    throw new IllegalArgumentException("The specfied page size " + pageSize + " does not match the value in the datastore " + Math.abs(val) + " in file " + getFilePath());
+                fileSizeClasses = val < 0;
 
                 long longVal = longHeaderBlockLocations.get(0);
                 if (longVal != SELF_DESCRIBING_HEADER_SIZE + PAGE_TABLE_BLOCK_LOCATION_HEADER_SIZE + headerSize)
@@ -336,6 +648,17 @@ public class VirtualPageFile implements Closeable {
             throw new UncheckedIOException("Unable to read, write, map or get the size of " + getFilePath(), e);
         }
 
+        int steps = 0;
+        if (fileSizeClasses) {
+            // Every size must divide the page size, so that aligned pages never straddle a mapped window
+            while (steps < MAX_SIZE_CLASS_STEPS && (pageSize >> (steps + 1)) >= NativeIO.pageSize && (pageSize >> (steps + 1)) << (steps + 1) == pageSize) {
+                steps++;
+            }
+        }
+        sizeClassSteps = steps;
+        firstPageSize = pageSize >> steps;
+        smallPagesSize = pageSize - firstPageSize;
+
         totalHeaderSize = roundUpto(
                 headerSize + tableSize + SELF_DESCRIBING_HEADER_SIZE + PAGE_TABLE_BLOCK_LOCATION_HEADER_SIZE,
                 NativeIO.pageSize
@@ -347,12 +670,12 @@ public class VirtualPageFile implements Closeable {
         } catch (IOException e) {
             throw new UncheckedIOException("unable to map header for path: " + filePath, e);
         }
+        headerResidentBytes = residency.mapped(headerBuffer);
 
-        virtualFilePositions = IntStream
-                .range(0, virtualFiles)
-                .mapToLong(this::getHeaderVirtualFilePosition)
-                .mapToObj(AtomicLong::new)
-                .toArray(AtomicLong[]::new);
+        virtualFilePositions = new AtomicLongArray(virtualFiles * POSITION_STRIDE);
+        for (int virtualFileNumber = 0; virtualFileNumber < virtualFiles; virtualFileNumber++) {
+            virtualFilePositions.set(virtualFileNumber * POSITION_STRIDE, getHeaderVirtualFilePosition(virtualFileNumber));
+        }
 
         virtualFilePageCounts = IntStream
                 .range(0, virtualFiles)
@@ -365,12 +688,14 @@ public class VirtualPageFile implements Closeable {
         pageAllocationCount.add(Arrays.stream(virtualFilePageCounts).mapToLong(AtomicInteger::get).sum());
 
         pageTables = new MappedByteBuffer[MAX_PAGE_TABLE_BLOCKS];
+        pageTableResidentBytes = new long[MAX_PAGE_TABLE_BLOCKS];
         try {
             pageTables[0] = channel.map(mapMode, headerSize + SELF_DESCRIBING_HEADER_SIZE + PAGE_TABLE_BLOCK_LOCATION_HEADER_SIZE, tableSize);
             NativeIO.madvise(pageTables[0], NativeIO.Advice.WillNeed);
         } catch (IOException e) {
             throw new UncheckedIOException("unable to map page locations for path: " + filePath, e);
         }
+        pageTableResidentBytes[0] = residency.mapped(pageTables[0]);
 
         long lastTableStart = 0;
         for(int i=0; i< MAX_PAGE_TABLE_BLOCKS; i++) {
@@ -384,23 +709,36 @@ public class VirtualPageFile implements Closeable {
             throw new IllegalStateException("Bad value for last table start in header");
         }
 
-        long lastStartPosition = IntStream
-                .range(0, virtualFiles)
-                .mapToLong(index -> {
-                    int pageCount = virtualFilePageCounts[index].get();
-                    int pageIndex = pageCount > 0 ? pageCount - 1 : 0;
-                    return getRawPageStart(index,  pageIndex);
-                })
-                .max().orElse(0L);
+        long lastStartPosition = 0;
+        long lastPageEnd = 0;
+        for (int index = 0; index < virtualFiles; index++) {
+            int pageCount = virtualFilePageCounts[index].get();
+            int pageIndex = pageCount > 0 ? pageCount - 1 : 0;
+            long start = getRawPageStart(index, pageIndex);
+            if (start > lastStartPosition) {
+                lastStartPosition = start;
+                lastPageEnd = start + getPageSize(pageIndex);
+            }
+        }
 
         if (lastStartPosition == 0) {
             nextPagePosition = new AtomicLong(totalHeaderSize);
         } else if (lastStartPosition < totalHeaderSize) {
             throw new IllegalStateException("file position " + lastStartPosition + " is less than header size: " + headerSize + " in file " + filePath);
         } else {
-            nextPagePosition = new AtomicLong(Math.max(lastStartPosition + pageSize,  lastTableStart + tableSize));
-            preloadBuffers(nextPagePosition.get());
+            nextPagePosition = new AtomicLong(Math.max(lastPageEnd,  lastTableStart + tableSize));
         }
+
+        if (this.pageBackend == PageBackend.MAPPED) {
+            mappedWindows = new MappedWindows(filePath, channel, mapMode, totalHeaderSize, bufferSize, MAX_BUFFERS, this::adviseBuffer, residency);
+            // Only map every window up front when the pool will not evict them again
+            if (!MappedWindowPool.getInstance().isBounded()) preloadBuffers(nextPagePosition.get());
+        } else {
+            mappedWindows = null;
+        }
+
+        directFile = this.pageBackend == PageBackend.DIRECT ? new DirectFile(filePath, pageSize, readOnly) : null;
+        segmentFile = this.pageBackend == PageBackend.SEGMENT ? new SegmentFile(filePath, channel, mapMode, bufferSize, getDefaultAdvice()) : null;
     }
 
     private long getRawPageStart(int virtualFileNumber, int pageNumber) {
@@ -437,10 +775,6 @@ public class VirtualPageFile implements Closeable {
         headerBuffer.putLong(virtualFileNumber * HEADER_RECORD_SIZE, position);
     }
 
-    private AtomicLong getAtomicVirtualFilePosition(int virtualFileNumber) {
-        return virtualFilePositions[virtualFileNumber];
-    }
-
     private int getHeaderVirtualFilePageCount(int virtualFileNumber) {
         return headerBuffer.getInt(virtualFileNumber * HEADER_RECORD_SIZE + 8);
     }
@@ -463,14 +797,22 @@ public class VirtualPageFile implements Closeable {
     private void allocatePage(int virtualFileNumber, int currentPageCount, int pageNumber) {
 
         int pagesToAllocate = pageNumber - currentPageCount + 1;
-        // Do the atomic stuff
-        long firstPageStart = nextPagePosition.getAndAdd(pageSize * pagesToAllocate);
-
-        for (int i=0; i < pagesToAllocate; i++) {
-            // Update the persistent table of pages
-            putPageStart(virtualFileNumber, currentPageCount + i, firstPageStart + i * pageSize);
-            // Now that the page is allocated and persistent - update the counter which is the lock controlling access
+        if (sizeClassSteps == 0) {
+            // Do the atomic stuff
+            long firstPageStart = nextPagePosition.getAndAdd(pageSize * pagesToAllocate);
+
+            for (int i = 0; i < pagesToAllocate; i++) {
+                // Update the persistent table of pages
+                putPageStart(virtualFileNumber, currentPageCount + i, firstPageStart + i * pageSize);
+                // Now that the page is allocated and persistent - update the counter which is the lock controlling access
+            }
+        } else {
+            for (int i = 0; i < pagesToAllocate; i++) {
+                putPageStart(virtualFileNumber, currentPageCount + i, allocateAlignedPage(getPageSize(currentPageCount + i)));
+            }
         }
+        if (preallocator != null) preallocator.advanced(nextPagePosition.get());
+        if (prefaulter != null) prefaulter.advanced(nextPagePosition.get());
 
         putHeaderVirtualFilePageCount(virtualFileNumber, currentPageCount + pagesToAllocate);
         virtualFilePageCounts[virtualFileNumber].set(currentPageCount + pagesToAllocate);
@@ -479,24 +821,27 @@ public class VirtualPageFile implements Closeable {
         pageAllocationCount.add(pagesToAllocate);
     }
 
-    private MappedByteBuffer ensureBuffered(int bufferIndex) {
-        MappedByteBuffer buffer = mappedByteBuffers[bufferIndex];
-        if (buffer == null) {
-            synchronized (mappedByteBuffers) {
-                buffer = mappedByteBuffers[bufferIndex];
-                if (buffer == null) {
-                    long bufferStart = ((long) bufferIndex * bufferSize) + totalHeaderSize;
-                    try {
-                        buffer = channel.map(mapMode, bufferStart, bufferSize);
-                        if (!cacheBuffers) NativeIO.madvise(buffer, NativeIO.Advice.Random);
-                    } catch (IOException e) {
-                        throw new UncheckedIOException("Unable to map buffer for index " + bufferIndex + " at (" + bufferStart +  " start position) in file " + filePath, e);
-                    }
-                    mappedByteBuffers[bufferIndex] = buffer;
-                }
-            }
+    /**
+     * Allocate a page aligned to its size after the header, so that it never straddles a mapped window. The padding
+     * before it is never written, so it does not take up disk space.
+     */
+    private long allocateAlignedPage(int size) {
+        long current;
+        long start;
+        do {
+            current = nextPagePosition.get();
+            start = totalHeaderSize + (current - totalHeaderSize + size - 1) / size * size;
+        } while (!nextPagePosition.compareAndSet(current, start + size));
+        return start;
+    }
+
+    private void adviseBuffer(MappedByteBuffer buffer) {
+        if (cacheBuffers) return;
+        try {
+            NativeIO.madvise(buffer, NativeIO.Advice.Random);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to advise mapped buffer in file " + filePath, e);
         }
-        return buffer;
     }
 
     private LongBuffer ensurePageTable(int pageNumber) {
@@ -518,6 +863,8 @@ public class VirtualPageFile implements Closeable {
 
                     if (!readOnly && bufferStart == 0) {
                       bufferStart = nextPagePosition.getAndAdd(apparentSize);
+                      if (preallocator != null) preallocator.advanced(bufferStart + apparentSize);
+                      if (prefaulter != null) prefaulter.advanced(bufferStart + apparentSize);
                       headerBlockLocations.asLongBuffer().put(pageNumber, bufferStart);
                     }
                     try {
@@ -526,6 +873,7 @@ public class VirtualPageFile implements Closeable {
                     } catch (IOException e) {
                         throw new UncheckedIOException("Unable to map buffer for page table " + pageNumber + " at (" + bufferStart +  " start position) in file " + filePath, e);
                     }
+                    pageTableResidentBytes[pageNumber] = residency.mapped(buffer);
                     pageTables[pageNumber] = buffer;
                 }
             }
@@ -533,20 +881,13 @@ public class VirtualPageFile implements Closeable {
         return buffer.asLongBuffer();
     }
 
-    // Called during initialize only - no need to synchronize
     private void preloadBuffers(long nextPagePosition){
         for (int bufferIndex=0; bufferIndex<MAX_BUFFERS; bufferIndex++){
             long bufferStart = ((long) bufferIndex * bufferSize) + totalHeaderSize;
 
             if (bufferStart >= nextPagePosition) break;
 
-            try {
-                MappedByteBuffer buffer = channel.map(mapMode, bufferStart, bufferSize);
-                if (!cacheBuffers) NativeIO.madvise(buffer, NativeIO.Advice.Random);
-                mappedByteBuffers[bufferIndex] = buffer;
-            } catch (IOException e) {
-                throw new UncheckedIOException("Unable to preload mapped buffer for index " + bufferIndex + " at (" + bufferStart + " start position) in file "  + filePath, e);
-            }
+            mappedWindows.preload(bufferIndex);
         }
     }
 }
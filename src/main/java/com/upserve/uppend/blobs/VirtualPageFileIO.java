@@ -51,6 +51,14 @@ public class VirtualPageFileIO {
         return virtualPageFile.getPosition(virtualFileNumber);
     }
 
+    /**
+     * Publish the position of the virtual file to the header of a file with lazy position publishing, so that the
+     * appends before the call survive the process dying
+     */
+    public void publishPosition() {
+        virtualPageFile.publishPosition(virtualFileNumber);
+    }
+
     void writeInt(long pos, int val) {
         write(pos, int2bytes(val));
     }
@@ -95,6 +103,64 @@ public class VirtualPageFileIO {
         return bytesWritten;
     }
 
+    int pageNumber(long pos) {
+        return virtualPageFile.pageNumber(pos);
+    }
+
+    int pageRemaining(long pos) {
+        return virtualPageFile.pageRemaining(pos);
+    }
+
+    long filePosition(long pos) {
+        return virtualPageFile.filePosition(virtualFileNumber, pos);
+    }
+
+    int readDescriptor() {
+        return virtualPageFile.readDescriptor();
+    }
+
+    /**
+     * Hint the expected access pattern for a range of the virtual file. Pages which are not allocated are skipped.
+     *
+     * @param pos the position in the virtual file
+     * @param length the number of bytes
+     * @param advice the expected access pattern
+     */
+    void advise(long pos, int length, NativeIO.Advice advice) {
+        if (length <= 0) return;
+        final long end = pos + length;
+        while (pos < end) {
+            int pageNumber = virtualPageFile.pageNumber(pos);
+            if (!virtualPageFile.isPageAvailable(virtualFileNumber, pageNumber)) return;
+            int pagePosition = virtualPageFile.pagePosition(pos);
+            int pageLength = (int) Math.min(end - pos, virtualPageFile.getPageSize(pageNumber) - pagePosition);
+            virtualPageFile.getExistingPage(virtualFileNumber, pageNumber).advise(pagePosition, pageLength, advice);
+            pos += pageLength;
+        }
+    }
+
+    /**
+     * Hint the expected access pattern for a whole page of the virtual file, if it is allocated
+     *
+     * @param pageNumber the page in the virtual file
+     * @param advice the expected access pattern
+     */
+    void advisePage(int pageNumber, NativeIO.Advice advice) {
+        if (!virtualPageFile.isPageAvailable(virtualFileNumber, pageNumber)) return;
+        virtualPageFile.getExistingPage(virtualFileNumber, pageNumber).advise(0, virtualPageFile.getPageSize(pageNumber), advice);
+    }
+
+    /**
+     * Release a page which has been consumed by a scan and restore the usual access pattern for it, so that a scan
+     * does not leave the process holding pages that live reads do not need
+     *
+     * @param pageNumber the page in the virtual file
+     */
+    void releasePage(int pageNumber) {
+        advisePage(pageNumber, NativeIO.Advice.DontNeed);
+        advisePage(pageNumber, virtualPageFile.getDefaultAdvice());
+    }
+
     int readInt(long pos) {
         // TODO make thread local byte array?
         byte[] buf = new byte[4];
@@ -109,25 +175,77 @@ public class VirtualPageFileIO {
         return Longs.fromByteArray(buf);
     }
 
+    /**
+     * Read a varint of at most five bytes, such as a record length. The bytes up to the end of the page are read
+     * together, so a length which does not cross into the next page takes a single read.
+     *
+     * @param pos the position of the varint in the virtual file
+     * @return the value of the varint
+     */
+    long readVarint(long pos) {
+        final int pageRemaining = virtualPageFile.pageRemaining(pos);
+        final byte[] buf = new byte[5];
+        read(pos, buf, Math.min(buf.length, pageRemaining));
+        long value = 0;
+        for (int i = 0; i < buf.length; i++) {
+            if (i == pageRemaining) read(pos + i, buf, i, buf.length - i);
+            value |= (long) (buf[i] & 127) << (7 * i);
+            if (buf[i] >= 0) return value;
+        }
+        throw new IllegalStateException("Malformed varint at " + pos + " in file " + virtualFileNumber + " of " + virtualPageFile.filePath);
+    }
+
     void read(long pos, byte[] buf) {
+        read(pos, buf, buf.length);
+    }
+
+    void read(long pos, byte[] buf, int length) {
         // Short circuit read of empty value here
-        if (buf.length == 0) return;
-        final int result = readPagedOffset(pos, buf, 0);
-        if (result != buf.length) {
+        if (length == 0) return;
+        final int result = readPagedOffset(pos, buf, 0, length);
+        if (result != length) {
+            throw new IllegalStateException("Unable to read requested bytes");
+        }
+    }
+
+    private void read(long pos, byte[] buf, int offset, int length) {
+        final int result = readPagedOffset(pos, buf, offset, offset + length);
+        if (result != length) {
             throw new IllegalStateException("Unable to read requested bytes");
         }
     }
 
-    private int readPagedOffset(long pos, byte[] buf, int offset) {
+    /**
+     * Read bytes without allocating. When the bytes lie within a single page that supports it, the result is a read
+     * only view of the page, otherwise the bytes are copied into the given heap buffer.
+     *
+     * @param pos the position in the virtual file
+     * @param length the number of bytes to read
+     * @param buffer a heap buffer with a capacity of at least length to copy into
+     * @param pin holds the mapped window behind a view of a pooled page, or null to copy from pooled pages
+     * @return a buffer with the bytes between its position and limit
+     */
+    ByteBuffer readView(long pos, int length, ByteBuffer buffer, ViewPin pin) {
+        Page page = virtualPageFile.getExistingPage(virtualFileNumber, virtualPageFile.pageNumber(pos));
+        final int pagePosition = virtualPageFile.pagePosition(pos);
+        ByteBuffer view = pin == null ? page.view(pagePosition, length) : page.view(pagePosition, length, pin);
+        if (view != null) return view;
+
+        read(pos, buffer.array(), length);
+        buffer.clear().limit(length);
+        return buffer;
+    }
+
+    private int readPagedOffset(long pos, byte[] buf, int offset, int length) {
         int pageNumber = virtualPageFile.pageNumber(pos);
 
         Page page = virtualPageFile.getExistingPage(virtualFileNumber, pageNumber);
 
         int bytesRead;
-        bytesRead = page.get(virtualPageFile.pagePosition(pos), buf, offset);
+        bytesRead = page.get(virtualPageFile.pagePosition(pos), buf, offset, length);
 
-        if (bytesRead < (buf.length - offset)) {
-            bytesRead += readPagedOffset(pos + bytesRead, buf, offset + bytesRead);
+        if (bytesRead < (length - offset)) {
+            bytesRead += readPagedOffset(pos + bytesRead, buf, offset + bytesRead, length);
         }
         return bytesRead;
     }
@@ -0,0 +1,111 @@
+package com.upserve.uppend.blobs;
+
+import com.upserve.uppend.metrics.SyncMetrics;
+import org.slf4j.Logger;
+
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Starts writeback of recently written ranges of mapped files at a steady rate with sync_file_range, instead of
+ * leaving dirty pages to build up until the kernel's writeback arrives in a burst and stalls writers on page faults.
+ * Each round hands the kernel at most the bytes allowed by the rate; files take turns at the front of the round so that
+ * none is starved when the budget runs out. Writeback is started but not waited for, so it does not make writes
+ * durable - see the store durability options for that.
+ */
+public class WritebackScheduler {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final ScheduledExecutorService executor;
+
+    static {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "uppend-writeback-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private final int intervalMillis;
+    private final long bytesPerRound;
+    private final SyncMetrics.Adders syncMetricsAdders;
+
+    private final List<MappedWindows> files = new CopyOnWriteArrayList<>();
+    private ScheduledFuture<?> task;
+    private int nextFile = 0;
+
+    /**
+     * @param intervalMillis the time between rounds of writeback
+     * @param bytesPerSecond the rate at which to write back
+     * @param syncMetricsAdders the adders for writeback metrics
+     */
+    public WritebackScheduler(int intervalMillis, long bytesPerSecond, SyncMetrics.Adders syncMetricsAdders) {
+        if (intervalMillis < 1) throw new IllegalArgumentException("Writeback interval must be positive: " + intervalMillis);
+        if (bytesPerSecond < 1) throw new IllegalArgumentException("Writeback rate must be positive: " + bytesPerSecond);
+        this.intervalMillis = intervalMillis;
+        this.bytesPerRound = Math.max(NativeIO.pageSize, bytesPerSecond * intervalMillis / 1000);
+        this.syncMetricsAdders = syncMetricsAdders;
+    }
+
+    public long getBytesPerRound() {
+        return bytesPerRound;
+    }
+
+    synchronized void register(MappedWindows file) {
+        files.add(file);
+        if (task == null) {
+            task = executor.scheduleWithFixedDelay(this::writeback, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void deregister(MappedWindows file) {
+        files.remove(file);
+        if (files.isEmpty() && task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Run one round of writeback
+     *
+     * @return the number of bytes handed to the kernel
+     */
+    long writeback() {
+        final long tic = System.nanoTime();
+        long issued = 0;
+        try {
+            final int fileCount = files.size();
+            for (int i = 0; i < fileCount && issued < bytesPerRound; i++) {
+                final int fileIndex = (nextFile + i) % fileCount;
+                try {
+                    issued += files.get(fileIndex).writeback(bytesPerRound - issued);
+                } catch (IndexOutOfBoundsException e) {
+                    break; // A file was deregistered during the round
+                }
+                if (issued >= bytesPerRound) nextFile = fileIndex + 1;
+            }
+        } catch (RuntimeException e) {
+            log.warn("Writeback round failed", e);
+        }
+
+        if (issued > 0) {
+            syncMetricsAdders.writebackCounter.increment();
+            syncMetricsAdders.writebackBytesCounter.add(issued);
+            syncMetricsAdders.writebackTimer.add(System.nanoTime() - tic);
+        }
+        return issued;
+    }
+
+    @Override
+    public String toString() {
+        return "WritebackScheduler{" +
+                "intervalMillis=" + intervalMillis +
+                ", bytesPerRound=" + bytesPerRound +
+                ", files=" + files.size() +
+                '}';
+    }
+}
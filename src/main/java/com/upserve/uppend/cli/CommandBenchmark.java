@@ -2,6 +2,7 @@ package com.upserve.uppend.cli;
 
 import com.codahale.metrics.MetricRegistry;
 import com.upserve.uppend.*;
+import com.upserve.uppend.blobs.PageBackend;
 import com.upserve.uppend.cli.benchmark.*;
 import org.slf4j.Logger;
 import picocli.CommandLine.*;
@@ -47,6 +48,15 @@ public class CommandBenchmark implements Callable<Void> {
     @Option(names = {"-k", "--keep-buffer-cache"}, description = "Keep page cache buffers for blobs")
     boolean keepBufferCache = false; // Default is use madvise random! Use True for madvise normal (LRU like behavior).
 
+    @Option(names = {"--blob-backend"}, description = "Page I/O for blobs (MAPPED|FILE_CHANNEL|DIRECT)")
+    PageBackend blobPageBackend = PageBackend.MAPPED;
+
+    @Option(names = {"--key-backend"}, description = "Page I/O for lookup keys (MAPPED|FILE_CHANNEL|DIRECT)")
+    PageBackend keyPageBackend = PageBackend.MAPPED;
+
+    @Option(names = {"--metadata-backend"}, description = "Page I/O for lookup metadata (MAPPED|FILE_CHANNEL|DIRECT)")
+    PageBackend metadataPageBackend = PageBackend.MAPPED;
+
     @SuppressWarnings("unused")
     @Option(names = "--help", usageHelp = true, description = "Print usage")
     boolean help;
@@ -139,7 +149,10 @@ public class CommandBenchmark implements Callable<Void> {
                 .withFlushThreshold(flushThreshold)
                 .withFlushDelaySeconds(flushDelay)
                 .withStoreMetrics(metrics)
-                .withCacheBuffers(keepBufferCache);
+                .withCacheBuffers(keepBufferCache)
+                .withBlobPageBackend(blobPageBackend)
+                .withLookupPageBackend(keyPageBackend)
+                .withMetadataPageBackend(metadataPageBackend);
 
         return new Benchmark(mode, builder, keys, count);
     }
@@ -42,6 +42,9 @@ public class CommandFileStoreBenchmark implements Callable<Void> {
     @CommandLine.Option(names = {"-p", "--page-size"}, description = "Page Size (small|medium|large)")
     PageSize pageSize = PageSize.medium;
 
+    @CommandLine.Option(names = {"--backend"}, description = "Page I/O (MAPPED|FILE_CHANNEL|DIRECT)")
+    PageBackend pageBackend = PageBackend.MAPPED;
+
     @SuppressWarnings("unused")
     @CommandLine.Option(names = "--help", usageHelp = true, description = "Print usage")
     boolean help;
@@ -59,7 +62,7 @@ public class CommandFileStoreBenchmark implements Callable<Void> {
 
         Files.createDirectories(path.getParent());
 
-        VirtualPageFile file = new VirtualPageFile(path, nfiles, pageSize.getSize(), bufferSize.getSize(), false);
+        VirtualPageFile file = new VirtualPageFile(path, nfiles, pageSize.getSize(), bufferSize.getSize(), false, true, pageBackend);
         VirtualAppendOnlyBlobStore[] stores = IntStream.range(0, nfiles)
                 .mapToObj(val -> new VirtualAppendOnlyBlobStore(val, file))
                 .toArray(VirtualAppendOnlyBlobStore[]::new);
@@ -44,6 +44,7 @@ public class Benchmark {
     AtomicReference<BlobStoreMetrics> blobStoreMetricsReference;
     AtomicReference<LongBlobStoreMetrics> longBlobStoreMetricsReference;
     AtomicReference<MutableBlobStoreMetrics> mutableBlobStoreMetricsReference;
+    AtomicReference<SyncMetrics> syncMetricsReference;
 
     public LongSummaryStatistics writerStats() {
         return writer.getStats();
@@ -103,6 +104,7 @@ public class Benchmark {
         blobStoreMetricsReference = new AtomicReference<>(testInstance.getBlobStoreMetrics());
         longBlobStoreMetricsReference = new AtomicReference<>(testInstance.getLongBlobStoreMetrics());
         mutableBlobStoreMetricsReference = new AtomicReference<>(testInstance.getMutableBlobStoreMetrics());
+        syncMetricsReference = new AtomicReference<>(testInstance.getSyncMetrics());
     }
 
     private BenchmarkWriter simpleWriter() {
@@ -225,6 +227,9 @@ public class Benchmark {
                     MutableBlobStoreMetrics mutableBlobStoreMetrics = testInstance.getMutableBlobStoreMetrics();
                     log.info(mutableBlobStoreMetrics.present(mutableBlobStoreMetricsReference.getAndSet(mutableBlobStoreMetrics)));
 
+                    SyncMetrics syncMetrics = testInstance.getSyncMetrics();
+                    log.info(syncMetrics.present(syncMetricsReference.getAndSet(syncMetrics)));
+
                 } catch (Exception e) {
                     log.info("logTimer failed with ", e);
                 }
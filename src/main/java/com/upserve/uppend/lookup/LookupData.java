@@ -4,6 +4,7 @@ import com.google.common.collect.Maps;
 import com.upserve.uppend.*;
 import com.upserve.uppend.blobs.*;
 import com.upserve.uppend.metrics.LookupDataMetrics;
+import com.upserve.uppend.util.MergingIterator;
 import org.slf4j.Logger;
 
 import java.io.*;
@@ -156,6 +157,44 @@ public class LookupData implements Flushable, Trimmable {
         }
     }
 
+    /**
+     * Return the values associated with many keys. Keys which are not in the write cache are sorted and resolved
+     * together in one descent of the metadata bisect tree rather than one search per key.
+     *
+     * @param keys the keys to look up
+     * @return the values associated with the keys in the same order, null for each key that was not found
+     */
+    public Long[] getValues(List<LookupKey> keys) {
+        final Long[] results = new Long[keys.size()];
+        final List<Integer> unresolved = new ArrayList<>(keys.size());
+
+        for (int index = 0; index < results.length; index++) {
+            LookupKey key = keys.get(index);
+            Long result = null;
+            if (!readOnly) {
+                result = writeCache.get(key);
+                if (result == null) result = flushCache.get(key);
+            }
+
+            if (result == null) {
+                unresolved.add(index);
+            } else {
+                results[index] = result;
+            }
+        }
+
+        if (unresolved.isEmpty()) return results;
+
+        unresolved.sort(Comparator.comparing(keys::get));
+        LookupKey[] sortedKeys = unresolved.stream().map(keys::get).toArray(LookupKey[]::new);
+        Long[] sortedResults = getMetadata().findKeys(keyLongBlobs, sortedKeys);
+
+        for (int index = 0; index < sortedResults.length; index++) {
+            results[unresolved.get(index)] = sortedResults[index];
+        }
+        return results;
+    }
+
     VirtualMutableBlobStore getMetadataBlobs() {
         return metadataBlobs;
     }
@@ -549,6 +588,9 @@ public class LookupData implements Flushable, Trimmable {
 
         log.debug("Finished creating sortOrder");
 
+        // The new metadata refers to the keys appended by the flush, so their positions must be published first
+        keyLongBlobs.publishPosition();
+
         atomicMetadataRef.set(
                 LookupMetadata
                         .generateMetadata(
@@ -632,52 +674,51 @@ public class LookupData implements Flushable, Trimmable {
     }
 
     public Stream<LookupKey> keys() {
-        LookupDataIterator<LookupKey> iter;
+        LookupDataSpliterator<LookupKey> spliterator;
         try {
-            consistentWriteCacheReadLock.lock(); // Read lock the WriteCache while initializing the KeyIterator
-            Set<LookupKey> keySet = writeCacheKeySetCopy();
-            iter = new LookupDataIterator<>(
+            consistentWriteCacheReadLock.lock(); // Read lock the WriteCache while initializing the KeySpliterator
+            spliterator = new LookupDataSpliterator<>(
                     getKeyPosition(),
-                    keySet.size(),
-                    keySet.iterator(),
-                    position -> {
-                        LookupKey key = readKey(position);
-                        return key;
-                    }
+                    new ArrayList<>(writeCacheKeySetCopy()),
+                    this::readKey
             );
         } finally {
             consistentWriteCacheReadLock.unlock();
         }
-        Spliterator<LookupKey> spliter = Spliterators.spliterator(
-                iter,
-                iter.getNumKeys(),
-                Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.SIZED
-        );
-        return StreamSupport.stream(spliter, true);
+        return StreamSupport.stream(spliterator, true);
     }
 
     public Stream<Map.Entry<LookupKey, Long>> scan() {
-
-        LookupDataIterator<Map.Entry<LookupKey, Long>> iter;
+        LookupDataSpliterator<Map.Entry<LookupKey, Long>> spliterator;
         try {
-            consistentWriteCacheReadLock.lock(); // Read lock the WriteCache while initializing the KeyIterator
-            Map<LookupKey, Long> map = writeCacheCopy();
-            iter = new LookupDataIterator<>(
+            consistentWriteCacheReadLock.lock(); // Read lock the WriteCache while initializing the KeySpliterator
+            spliterator = new LookupDataSpliterator<>(
                     getKeyPosition(),
-                    map.size(),
-                    map.entrySet().stream().map(entry -> Maps.immutableEntry(entry.getKey(), entry.getValue())).iterator(),
+                    writeCacheCopy().entrySet().stream().map(entry -> Maps.immutableEntry(entry.getKey(), entry.getValue())).collect(Collectors.toList()),
                     this::readEntry
             );
         } finally {
             consistentWriteCacheReadLock.unlock();
         }
+        return StreamSupport.stream(spliterator, true);
+    }
 
-        Spliterator<Map.Entry<LookupKey, Long>> spliter = Spliterators.spliterator(
-                iter,
-                iter.getNumKeys(),
-                Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.SIZED
-        );
-        return StreamSupport.stream(spliter, true);
+    /**
+     * Create a cursor over a snapshot of the keys and values which reads keys into a reused buffer
+     *
+     * @return the cursor
+     */
+    public LookupDataCursor cursor() {
+        try {
+            consistentWriteCacheReadLock.lock(); // Read lock the WriteCache while initializing the cursor
+            return new LookupDataCursor(
+                    keyLongBlobs,
+                    getKeyPosition(),
+                    writeCacheCopy().entrySet().stream().map(entry -> Maps.immutableEntry(entry.getKey(), entry.getValue())).collect(Collectors.toList())
+            );
+        } finally {
+            consistentWriteCacheReadLock.unlock();
+        }
     }
 
     public void scan(BiConsumer<LookupKey, Long> keyValueFunction) {
@@ -702,4 +743,80 @@ public class LookupData implements Flushable, Trimmable {
                 .forEach(entry -> keyValueFunction
                         .accept(entry.getKey(), entry.getValue()));
     }
+
+    /**
+     * Stream the keys in the range in sorted order. The start of the range is found by bisecting the sorted keys in
+     * the metadata rather than scanning all keys.
+     *
+     * @param fromKey the inclusive lower bound, or null for no lower bound
+     * @param toKey the exclusive upper bound, or null for no upper bound
+     * @return a sequential sorted stream of the keys
+     */
+    public Stream<LookupKey> keys(LookupKey fromKey, LookupKey toKey) {
+        return sortedRange(fromKey, toKey, this::readKey, Map.Entry::getKey, Function.identity());
+    }
+
+    /**
+     * Stream the keys and values in the range in key sorted order.
+     *
+     * @param fromKey the inclusive lower bound, or null for no lower bound
+     * @param toKey the exclusive upper bound, or null for no upper bound
+     * @return a sequential sorted stream of the entries
+     */
+    public Stream<Map.Entry<LookupKey, Long>> scan(LookupKey fromKey, LookupKey toKey) {
+        return sortedRange(fromKey, toKey, this::readEntry, entry -> entry, Map.Entry::getKey);
+    }
+
+    private <T> Stream<T> sortedRange(LookupKey fromKey, LookupKey toKey, LongFunction<T> positionFunction,
+                                      Function<Map.Entry<LookupKey, Long>, T> writeCacheFunction,
+                                      Function<T, LookupKey> keyFunction) {
+        final List<Map.Entry<LookupKey, Long>> writeCacheEntries;
+        final int[] flushCachePositions;
+        final LookupMetadata metadata;
+        try {
+            consistentWriteCacheReadLock.lock(); // Read lock the WriteCache while initializing the data to scan
+            writeCacheEntries = writeCacheCopy()
+                    .entrySet()
+                    .stream()
+                    .filter(entry -> inRange(entry.getKey(), fromKey, toKey))
+                    .sorted(Map.Entry.comparingByKey())
+                    .map(entry -> Maps.immutableEntry(entry.getKey(), entry.getValue()))
+                    .collect(Collectors.toList());
+            flushCachePositions = readOnly ? new int[0] : flushCache
+                    .keySet()
+                    .stream()
+                    .filter(key -> inRange(key, fromKey, toKey))
+                    .sorted()
+                    .mapToInt(LookupKey::getPosition)
+                    .toArray();
+            metadata = getMetadata();
+        } finally {
+            consistentWriteCacheReadLock.unlock();
+        }
+
+        int start = fromKey == null ? 0 : metadata.findSortIndex(keyLongBlobs, fromKey);
+        int end = toKey == null ? metadata.getNumKeys() : metadata.findSortIndex(keyLongBlobs, toKey);
+        int[] keyStorageOrder = metadata.getKeyStorageOrder();
+
+        Iterator<T> iterator = new MergingIterator<>(
+                Comparator.comparing(keyFunction),
+                IntStream.range(start, Math.max(start, end)).mapToObj(index -> positionFunction.apply(keyStorageOrder[index])).iterator(),
+                Arrays.stream(flushCachePositions).mapToObj(positionFunction::apply).iterator(),
+                writeCacheEntries.stream().map(writeCacheFunction).iterator()
+        );
+
+        // A key may be in both the flush cache and the metadata while a flush completes - drop the repeat
+        LookupKey[] previousKey = new LookupKey[1];
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .filter(value -> {
+                    LookupKey key = keyFunction.apply(value);
+                    boolean repeated = previousKey[0] != null && previousKey[0].compareTo(key) == 0;
+                    previousKey[0] = key;
+                    return !repeated;
+                });
+    }
+
+    private static boolean inRange(LookupKey key, LookupKey fromKey, LookupKey toKey) {
+        return (fromKey == null || key.compareTo(fromKey) >= 0) && (toKey == null || key.compareTo(toKey) < 0);
+    }
 }
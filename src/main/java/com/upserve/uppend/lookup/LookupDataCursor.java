@@ -0,0 +1,108 @@
+package com.upserve.uppend.lookup;
+
+import com.upserve.uppend.blobs.VirtualLongBlobStore;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * A cursor over a snapshot of the keys and values of a LookupData which reads each key into a reused buffer rather
+ * than allocating a LookupKey for it. A cursor must only be used by one thread at a time.
+ */
+public class LookupDataCursor {
+    private static final int INITIAL_KEY_BUFFER_SIZE = 256;
+
+    private final VirtualLongBlobStore keyLongBlobs;
+    private final int[] positions;
+    private final List<Map.Entry<LookupKey, Long>> writeCacheSnapshot;
+    private final int numKeys;
+
+    private int index = -1;
+    private ByteBuffer keyBuffer = ByteBuffer.allocate(INITIAL_KEY_BUFFER_SIZE);
+    private ByteBuffer key;
+    private boolean positioned;
+    private long value;
+
+    LookupDataCursor(VirtualLongBlobStore keyLongBlobs, int[] positions, List<Map.Entry<LookupKey, Long>> writeCacheSnapshot) {
+        this.keyLongBlobs = keyLongBlobs;
+        this.positions = positions;
+        this.writeCacheSnapshot = writeCacheSnapshot;
+        numKeys = positions.length + writeCacheSnapshot.size();
+    }
+
+    /**
+     * Advance to the next key
+     *
+     * @return true if there is a current key, false once all keys have been visited
+     */
+    public boolean next() {
+        return moveTo(index + 1);
+    }
+
+    /**
+     * Move to the key at an index of the snapshot, so that keys can be revisited. The key itself is only read when
+     * its bytes are asked for.
+     *
+     * @param keyIndex the index of the key, from 0 to {@link #size()}
+     * @return true if there is a key at the index, false once past the last key
+     */
+    public boolean moveTo(int keyIndex) {
+        if (keyIndex < 0) throw new IllegalArgumentException("Negative key index: " + keyIndex);
+        key = null;
+        if (keyIndex >= numKeys) {
+            index = numKeys;
+            positioned = false;
+            return false;
+        }
+
+        index = keyIndex;
+        positioned = true;
+        if (index < positions.length) {
+            value = keyLongBlobs.readLong(positions[index]);
+        } else {
+            value = writeCacheSnapshot.get(index - positions.length).getValue();
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of keys in the snapshot
+     */
+    public int size() {
+        return numKeys;
+    }
+
+    /**
+     * The bytes of the current key between the position and limit of the buffer. The buffer is only valid until the
+     * next call to next.
+     *
+     * @return the key bytes
+     */
+    public ByteBuffer keyBytes() {
+        if (!positioned) throw new IllegalStateException("Cursor is not positioned on a key");
+        if (key == null) readKey();
+        return key;
+    }
+
+    private void readKey() {
+        if (index < positions.length) {
+            key = keyLongBlobs.readBlob(positions[index], keyBuffer, size -> keyBuffer = ByteBuffer.allocate(size));
+        } else {
+            byte[] bytes = writeCacheSnapshot.get(index - positions.length).getKey().bytes();
+            if (keyBuffer.capacity() < bytes.length) keyBuffer = ByteBuffer.allocate(bytes.length);
+            keyBuffer.clear();
+            keyBuffer.put(bytes).flip();
+            key = keyBuffer;
+        }
+    }
+
+    /**
+     * The value of the current key
+     *
+     * @return the value
+     */
+    public long value() {
+        if (!positioned) throw new IllegalStateException("Cursor is not positioned on a key");
+        return value;
+    }
+}
@@ -0,0 +1,89 @@
+package com.upserve.uppend.lookup;
+
+import java.util.*;
+import java.util.function.*;
+
+/**
+ * An array backed Spliterator over a snapshot of the key positions of a LookupData and its write cache. The positions
+ * range is split evenly and the write cache snapshot is handed out as a chunk of its own on the first split.
+ *
+ * @param <T> the type of the values read from each key position
+ */
+public class LookupDataSpliterator<T> implements Spliterator<T> {
+    private static final int CHARACTERISTICS = Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.SIZED | Spliterator.SUBSIZED;
+
+    private final int[] positions;
+    private final LongFunction<T> reader;
+    private int index;
+    private final int fence;
+    private List<T> writeCacheSnapshot;
+    private int writeCacheIndex;
+
+    LookupDataSpliterator(int[] positions, List<T> writeCacheSnapshot, LongFunction<T> reader) {
+        this(positions, 0, positions.length, writeCacheSnapshot.isEmpty() ? null : writeCacheSnapshot, reader);
+    }
+
+    private LookupDataSpliterator(int[] positions, int origin, int fence, List<T> writeCacheSnapshot, LongFunction<T> reader) {
+        this.positions = positions;
+        this.index = origin;
+        this.fence = fence;
+        this.writeCacheSnapshot = writeCacheSnapshot;
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (index < fence) {
+            action.accept(reader.apply(positions[index++])); // Read but do not cache these keys - easy to add but is it helpful?
+            return true;
+        }
+        if (writeCacheSnapshot != null && writeCacheIndex < writeCacheSnapshot.size()) {
+            action.accept(writeCacheSnapshot.get(writeCacheIndex++));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        for (int i = index; i < fence; i++) {
+            action.accept(reader.apply(positions[i]));
+        }
+        index = fence;
+        if (writeCacheSnapshot != null) {
+            List<T> snapshot = remainingWriteCache();
+            writeCacheSnapshot = null;
+            snapshot.forEach(action);
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (writeCacheSnapshot != null) {
+            Spliterator<T> writeCacheSpliterator = remainingWriteCache().spliterator();
+            writeCacheSnapshot = null;
+            return writeCacheSpliterator;
+        }
+
+        int mid = (index + fence) >>> 1;
+        if (mid <= index) return null;
+
+        Spliterator<T> prefix = new LookupDataSpliterator<>(positions, index, mid, null, reader);
+        index = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return (fence - index) + (writeCacheSnapshot == null ? 0 : writeCacheSnapshot.size() - writeCacheIndex);
+    }
+
+    private List<T> remainingWriteCache() {
+        return writeCacheSnapshot.subList(writeCacheIndex, writeCacheSnapshot.size());
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+}
@@ -64,6 +64,23 @@ public class LookupKey implements Comparable<LookupKey> {
         this.position = position;
     }
 
+    /**
+     * The smallest key which is greater than every key that starts with this key, for use as the exclusive upper
+     * bound of a prefix range.
+     *
+     * @return the upper bound key, or null if the range of keys starting with this key is unbounded
+     */
+    public LookupKey prefixUpperBound() {
+        for (int index = bytes.length - 1; index >= 0; index--) {
+            if (bytes[index] != Byte.MAX_VALUE) {
+                byte[] upperBound = Arrays.copyOf(bytes, index + 1);
+                upperBound[index]++;
+                return new LookupKey(upperBound);
+            }
+        }
+        return null;
+    }
+
     public byte[] bytes() {
         return bytes;
     }
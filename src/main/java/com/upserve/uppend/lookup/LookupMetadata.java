@@ -199,18 +199,7 @@ public class LookupMetadata {
                     log.trace("reading {}: [{}, {}], [{}, {}], {}", key, keyIndexLower, keyIndexUpper, lowerKey, upperKey, midpointKeyIndex);
 
                 keyPosition = keyStorageOrder[midpointKeyIndex];
-                // Cache only the most frequently used midpoint keys
-                if (bisectCount < MAX_BISECT_KEY_CACHE_DEPTH) {
-                    if (bisectKeys[bisectKeyTreeArrayIndex] == null) {
-                        lookupDataMetricsAdders.cacheMissCount.increment();
-                        midpointKey = bisectKeys[bisectKeyTreeArrayIndex] = new LookupKey(longBlobStore.readBlob(keyPosition));
-                    } else {
-                        lookupDataMetricsAdders.cacheHitCount.increment();
-                        midpointKey = bisectKeys[bisectKeyTreeArrayIndex];
-                    }
-                } else {
-                    midpointKey = new LookupKey(longBlobStore.readBlob(keyPosition));
-                }
+                midpointKey = midpointKey(longBlobStore, keyPosition, bisectKeyTreeArrayIndex, bisectCount);
 
                 comparison = key.compareTo(midpointKey);
 
@@ -243,6 +232,164 @@ public class LookupMetadata {
         }
     }
 
+    /**
+     * Finds the values associated with many keys in a single merged descent of the bisect tree. Each midpoint key is
+     * compared against the whole sorted batch once, so the upper levels of the tree are shared by all the keys and the
+     * key pages are visited from left to right rather than once per key from the root.
+     * The keys are marked exactly as they would be by {@link #findKey(VirtualLongBlobStore, LookupKey)}.
+     *
+     * @param longBlobStore The longBlobStore to read keys and values
+     * @param sortedKeys the keys to find and mark, sorted in ascending order
+     * @return the values for each key in the same order as sortedKeys, null where the key is not present
+     */
+    Long[] findKeys(VirtualLongBlobStore longBlobStore, LookupKey[] sortedKeys) {
+        final long tic = System.nanoTime();
+        try {
+            final Long[] results = new Long[sortedKeys.length];
+            for (LookupKey key : sortedKeys) {
+                key.setMetaDataGeneration(metadataGeneration);
+            }
+
+            if (numKeys == 0) {
+                markMissing(sortedKeys, 0, sortedKeys.length, -1);
+                return results;
+            }
+
+            int from = 0;
+            int to = sortedKeys.length;
+
+            int lowerBound = firstIndexNotLessThan(sortedKeys, from, to, minKey);
+            markMissing(sortedKeys, from, lowerBound, -1);
+            from = markFound(longBlobStore, sortedKeys, results, lowerBound, to, minKey, 0);
+
+            int upperBound = firstIndexNotLessThan(sortedKeys, from, to, maxKey);
+            int pastUpper = markFound(longBlobStore, sortedKeys, results, upperBound, to, maxKey, numKeys - 1);
+            markMissing(sortedKeys, pastUpper, to, numKeys - 1);
+            to = upperBound;
+
+            bisectMany(longBlobStore, sortedKeys, results, from, to, 0, numKeys - 1, 1, 0);
+
+            return results;
+        } finally {
+            lookupDataMetricsAdders.findKeyTimer.add(System.nanoTime() - tic);
+        }
+    }
+
+    /**
+     * Finds the index in the sorted storage order of the first key which is greater than or equal to the given key
+     * using the same bisect (and cached midpoint keys) as {@link #findKey(VirtualLongBlobStore, LookupKey)}.
+     *
+     * @param longBlobStore The longBlobStore to read keys
+     * @param key the key to seek
+     * @return the sort index of the first key not less than key, or the number of keys if all keys are less than key
+     */
+    int findSortIndex(VirtualLongBlobStore longBlobStore, LookupKey key) {
+        if (numKeys == 0 || minKey.compareTo(key) >= 0) return 0;
+
+        int comparison = maxKey.compareTo(key);
+        if (comparison < 0) return numKeys;
+        if (comparison == 0) return numKeys - 1;
+
+        int keyIndexLower = 0;
+        int keyIndexUpper = numKeys - 1;
+        int bisectKeyTreeArrayIndex = 1;
+        int bisectCount = 0;
+
+        // keys at keyIndexLower are less than key, keys at keyIndexUpper are greater than or equal to key
+        while ((keyIndexLower + 1) < keyIndexUpper) {
+            int midpointKeyIndex = keyIndexLower + ((keyIndexUpper - keyIndexLower) / 2);
+            LookupKey midpointKey = midpointKey(longBlobStore, keyStorageOrder[midpointKeyIndex], bisectKeyTreeArrayIndex, bisectCount);
+
+            comparison = key.compareTo(midpointKey);
+            if (comparison == 0) return midpointKeyIndex;
+
+            if (comparison < 0) {
+                keyIndexUpper = midpointKeyIndex;
+                bisectKeyTreeArrayIndex = bisectKeyTreeArrayIndex * 2;
+            } else {
+                keyIndexLower = midpointKeyIndex;
+                bisectKeyTreeArrayIndex = bisectKeyTreeArrayIndex * 2 + 1;
+            }
+            bisectCount++;
+        }
+        return keyIndexUpper;
+    }
+
+    private void bisectMany(VirtualLongBlobStore longBlobStore, LookupKey[] sortedKeys, Long[] results, int from, int to,
+                            int keyIndexLower, int keyIndexUpper, int bisectKeyTreeArrayIndex, int bisectCount) {
+        if (from >= to) return;
+
+        if ((keyIndexLower + 1) >= keyIndexUpper) {
+            markMissing(sortedKeys, from, to, keyIndexLower);
+            return;
+        }
+
+        int midpointKeyIndex = keyIndexLower + ((keyIndexUpper - keyIndexLower) / 2);
+        int keyPosition = keyStorageOrder[midpointKeyIndex];
+        LookupKey midpointKey = midpointKey(longBlobStore, keyPosition, bisectKeyTreeArrayIndex, bisectCount);
+
+        int split = firstIndexNotLessThan(sortedKeys, from, to, midpointKey);
+        int pastMatches = markFound(longBlobStore, sortedKeys, results, split, to, midpointKey, midpointKeyIndex);
+
+        bisectMany(longBlobStore, sortedKeys, results, from, split, keyIndexLower, midpointKeyIndex,
+                bisectKeyTreeArrayIndex * 2, bisectCount + 1);
+        bisectMany(longBlobStore, sortedKeys, results, pastMatches, to, midpointKeyIndex, keyIndexUpper,
+                bisectKeyTreeArrayIndex * 2 + 1, bisectCount + 1);
+    }
+
+    private int markFound(VirtualLongBlobStore longBlobStore, LookupKey[] sortedKeys, Long[] results, int from, int to,
+                          LookupKey foundKey, int keyIndex) {
+        int index = from;
+        if (index < to && sortedKeys[index].compareTo(foundKey) == 0) {
+            final int keyPosition = keyStorageOrder[keyIndex];
+            final long value = longBlobStore.readLong(keyPosition);
+            do {
+                sortedKeys[index].setPosition(keyPosition);
+                results[index] = value;
+                lookupDataMetricsAdders.lookupHitCount.increment();
+                index++;
+            } while (index < to && sortedKeys[index].compareTo(foundKey) == 0);
+        }
+        return index;
+    }
+
+    private void markMissing(LookupKey[] sortedKeys, int from, int to, int insertAfterSortIndex) {
+        for (int index = from; index < to; index++) {
+            sortedKeys[index].setInsertAfterSortIndex(insertAfterSortIndex);
+            lookupDataMetricsAdders.lookupMissCount.increment();
+        }
+    }
+
+    private static int firstIndexNotLessThan(LookupKey[] sortedKeys, int from, int to, LookupKey key) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sortedKeys[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private LookupKey midpointKey(VirtualLongBlobStore longBlobStore, int keyPosition, int bisectKeyTreeArrayIndex, int bisectCount) {
+        // Cache only the most frequently used midpoint keys
+        if (bisectCount < MAX_BISECT_KEY_CACHE_DEPTH) {
+            LookupKey midpointKey = bisectKeys[bisectKeyTreeArrayIndex];
+            if (midpointKey == null) {
+                lookupDataMetricsAdders.cacheMissCount.increment();
+                midpointKey = bisectKeys[bisectKeyTreeArrayIndex] = new LookupKey(longBlobStore.readBlob(keyPosition));
+            } else {
+                lookupDataMetricsAdders.cacheHitCount.increment();
+            }
+            return midpointKey;
+        } else {
+            return new LookupKey(longBlobStore.readBlob(keyPosition));
+        }
+    }
+
     private static int treeSize(int depth) {
         return 1 << (depth +1);
     }
@@ -4,13 +4,19 @@ import com.codahale.metrics.*;
 import com.google.common.collect.Maps;
 import com.upserve.uppend.*;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.BiConsumer;
-import java.util.stream.Stream;
+import java.util.stream.*;
 
 public class AppendOnlyStoreWithMetrics implements AppendOnlyStore {
     public static final String WRITE_TIMER_METRIC_NAME = "writeTimer";
     public static final String FLUSH_TIMER_METRIC_NAME = "flushTimer";
+    public static final String SYNC_TIMER_METRIC_NAME = "syncTimer";
     public static final String READ_TIMER_METRIC_NAME = "readTimer";
     public static final String KEYS_TIMER_METRIC_NAME = "keysTimer";
     public static final String SCAN_TIMER_METRIC_NAME = "scanTimer";
@@ -30,6 +36,7 @@ public class AppendOnlyStoreWithMetrics implements AppendOnlyStore {
 
     private final Timer writeTimer;
     private final Timer flushTimer;
+    private final Timer syncTimer;
     private final Timer readTimer;
     private final Timer keysTimer;
     private final Timer scanTimer;
@@ -55,6 +62,7 @@ public class AppendOnlyStoreWithMetrics implements AppendOnlyStore {
 
         writeTimer = metrics.timer(MetricRegistry.name(rootName, UPPEND_APPEND_STORE, store.getName(), WRITE_TIMER_METRIC_NAME));
         flushTimer = metrics.timer(MetricRegistry.name(rootName, UPPEND_APPEND_STORE, store.getName(), FLUSH_TIMER_METRIC_NAME));
+        syncTimer = metrics.timer(MetricRegistry.name(rootName, UPPEND_APPEND_STORE, store.getName(), SYNC_TIMER_METRIC_NAME));
         readTimer = metrics.timer(MetricRegistry.name(rootName, UPPEND_APPEND_STORE, store.getName(), READ_TIMER_METRIC_NAME));
         keysTimer = metrics.timer(MetricRegistry.name(rootName, UPPEND_APPEND_STORE, store.getName(), KEYS_TIMER_METRIC_NAME));
         scanTimer = metrics.timer(MetricRegistry.name(rootName, UPPEND_APPEND_STORE, store.getName(), SCAN_TIMER_METRIC_NAME));
@@ -79,6 +87,28 @@ public class AppendOnlyStoreWithMetrics implements AppendOnlyStore {
         }
     }
 
+    @Override
+    public CompletableFuture<Void> appendDurable(String partitionEntropy, String key, byte[] value) {
+        final Timer.Context context = writeTimer.time();
+        try {
+            writeBytesMeter.mark(value.length);
+            return store.appendDurable(partitionEntropy, key, value);
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public long appendWithHandle(String partitionEntropy, String key, byte[] value) {
+        final Timer.Context context = writeTimer.time();
+        try {
+            writeBytesMeter.mark(value.length);
+            return store.appendWithHandle(partitionEntropy, key, value);
+        } finally {
+            context.stop();
+        }
+    }
+
     @Override
     public void register(int seconds) {
         store.register(seconds);
@@ -99,6 +129,16 @@ public class AppendOnlyStoreWithMetrics implements AppendOnlyStore {
         }
     }
 
+    @Override
+    public void sync() {
+        final Timer.Context context = syncTimer.time();
+        try {
+            store.sync();
+        } finally {
+            context.stop();
+        }
+    }
+
     @Override
     public Stream<byte[]> read(String partitionEntropy, String key) {
         final Timer.Context context = readTimer.time();
@@ -121,6 +161,22 @@ public class AppendOnlyStoreWithMetrics implements AppendOnlyStore {
         }
     }
 
+    @Override
+    public Map<String, Stream<byte[]>> readMany(String partitionEntropy, Collection<String> keys) {
+        final Timer.Context context = readTimer.time();
+        try {
+            return store.readMany(partitionEntropy, keys)
+                    .entrySet()
+                    .stream()
+                    .collect(Collectors.toMap(
+                            Map.Entry::getKey,
+                            entry -> entry.getValue().peek(bytes -> readBytesMeter.mark(bytes.length))
+                    ));
+        } finally {
+            context.stop();
+        }
+    }
+
     @Override
     public byte[] readLast(String partitionEntropy, String key) {
         final Timer.Context context = readTimer.time();
@@ -133,6 +189,30 @@ public class AppendOnlyStoreWithMetrics implements AppendOnlyStore {
         }
     }
 
+    @Override
+    public byte[] readHandle(long handle) {
+        final Timer.Context context = readTimer.time();
+        try {
+            byte[] bytes = store.readHandle(handle);
+            if (bytes != null) readBytesMeter.mark(bytes.length);
+            return bytes;
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public byte[][] readHandles(long[] handles) {
+        final Timer.Context context = readTimer.time();
+        try {
+            byte[][] values = store.readHandles(handles);
+            readBytesMeter.mark(Arrays.stream(values).filter(Objects::nonNull).mapToLong(bytes -> bytes.length).sum());
+            return values;
+        } finally {
+            context.stop();
+        }
+    }
+
     @Override
     public Stream<String> keys() {
         final Timer.Context context = keysTimer.time();
@@ -143,6 +223,38 @@ public class AppendOnlyStoreWithMetrics implements AppendOnlyStore {
         }
     }
 
+    @Override
+    public Stream<String> keysSorted() {
+        final Timer.Context context = keysTimer.time();
+        try {
+            return store.keysSorted();
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public Stream<String> keys(String fromKey, String toKey) {
+        final Timer.Context context = keysTimer.time();
+        try {
+            return store.keys(fromKey, toKey);
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public Stream<Map.Entry<String, Stream<byte[]>>> scanPrefix(String prefix) {
+        final Timer.Context context = scanTimer.time();
+        try {
+            return store.scanPrefix(prefix)
+                    .peek(entry -> scanKeysMeter.mark(1))
+                    .map(entry -> Maps.immutableEntry(entry.getKey(), entry.getValue().peek(bytes -> scanBytesMeter.mark(bytes.length))));
+        } finally {
+            context.stop();
+        }
+    }
+
     @Override
     public Stream<Map.Entry<String, Stream<byte[]>>> scan() {
         final Timer.Context context = scanTimer.time();
@@ -155,6 +267,27 @@ public class AppendOnlyStoreWithMetrics implements AppendOnlyStore {
         }
     }
 
+    @Override
+    public Stream<Map.Entry<String, byte[]>> scanPhysical() {
+        final Timer.Context context = scanTimer.time();
+        try {
+            return store.scanPhysical()
+                    .peek(entry -> scanBytesMeter.mark(entry.getValue().length));
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public List<ScanCursor> scanCursors(int count) {
+        final Timer.Context context = scanTimer.time();
+        try {
+            return store.scanCursors(count);
+        } finally {
+            context.stop();
+        }
+    }
+
     @Override
     public void scan(BiConsumer<String, Stream<byte[]>> callback) {
         final Timer.Context context = scanTimer.time();
@@ -208,6 +341,11 @@ public class AppendOnlyStoreWithMetrics implements AppendOnlyStore {
         return store.getMutableBlobStoreMetrics();
     }
 
+    @Override
+    public SyncMetrics getSyncMetrics() {
+        return store.getSyncMetrics();
+    }
+
     @Override
     public long keyCount() {
         return store.keyCount();
@@ -11,6 +11,8 @@ public class BlobStoreMetrics implements InternalMetrics<BlobStoreMetrics>{
     private final long bytesRead;
     private final long readCounter;
     private final long readTimer;
+    private final long cacheHitCounter;
+    private final long cacheMissCounter;
 
     // Partition level stats for the life of the Blob store (Consistent across  reopen)
     private final double avgBlobStoreAllocatedPages;
@@ -24,6 +26,8 @@ public class BlobStoreMetrics implements InternalMetrics<BlobStoreMetrics>{
         public final LongAdder bytesRead = new LongAdder();
         public final LongAdder readCounter = new LongAdder();
         public final LongAdder readTimer = new LongAdder();
+        public final LongAdder cacheHitCounter = new LongAdder();
+        public final LongAdder cacheMissCounter = new LongAdder();
     }
 
     public BlobStoreMetrics(Adders blobStoreMetricsAdders, LongSummaryStatistics blobStoreAllocatedPagesStatistics) {
@@ -34,6 +38,8 @@ public class BlobStoreMetrics implements InternalMetrics<BlobStoreMetrics>{
                 blobStoreMetricsAdders.bytesRead.sum(),
                 blobStoreMetricsAdders.readCounter.sum(),
                 blobStoreMetricsAdders.readTimer.sum(),
+                blobStoreMetricsAdders.cacheHitCounter.sum(),
+                blobStoreMetricsAdders.cacheMissCounter.sum(),
                 blobStoreAllocatedPagesStatistics.getAverage(),
                 Math.max(blobStoreAllocatedPagesStatistics.getMax(), 0),
                 blobStoreAllocatedPagesStatistics.getSum()
@@ -47,6 +53,8 @@ public class BlobStoreMetrics implements InternalMetrics<BlobStoreMetrics>{
             long bytesRead,
             long readCounter,
             long readTimer,
+            long cacheHitCounter,
+            long cacheMissCounter,
             double avgBlobStoreAllocatedPages,
             long maxBlobStoreAllocatedPages,
             long sumBlobStoreAllocatedPages
@@ -58,11 +66,21 @@ public class BlobStoreMetrics implements InternalMetrics<BlobStoreMetrics>{
        this.bytesRead = bytesRead;
        this.readCounter = readCounter;
        this.readTimer = readTimer;
+       this.cacheHitCounter = cacheHitCounter;
+       this.cacheMissCounter = cacheMissCounter;
        this.avgBlobStoreAllocatedPages = avgBlobStoreAllocatedPages;
        this.maxBlobStoreAllocatedPages = maxBlobStoreAllocatedPages;
        this.sumBlobStoreAllocatedPages = sumBlobStoreAllocatedPages;
     }
 
+    public long getCacheHitCount() {
+        return cacheHitCounter;
+    }
+
+    public long getCacheMissCount() {
+        return cacheMissCounter;
+    }
+
     @Override
     public String toString() {
         return "BlobStoreMetrics{" +
@@ -72,6 +90,8 @@ public class BlobStoreMetrics implements InternalMetrics<BlobStoreMetrics>{
                 ", bytesRead=" + bytesRead +
                 ", readCounter=" + readCounter +
                 ", readTimer=" + readTimer +
+                ", cacheHitCounter=" + cacheHitCounter +
+                ", cacheMissCounter=" + cacheMissCounter +
                 ", avgBlobStoreAllocatedPages=" + avgBlobStoreAllocatedPages +
                 ", maxBlobStoreAllocatedPages=" + maxBlobStoreAllocatedPages +
                 ", sumBlobStoreAllocatedPages=" + sumBlobStoreAllocatedPages +
@@ -96,6 +116,11 @@ public class BlobStoreMetrics implements InternalMetrics<BlobStoreMetrics>{
                         (double) delta.bytesRead / Math.max(1, delta.readCounter),
                         delta.readCounter
                 ) +
+                String.format(
+                        ", cache(%6.2f%% hits, %6d #)",
+                        100.0 * delta.cacheHitCounter / Math.max(1, delta.cacheHitCounter + delta.cacheMissCounter),
+                        delta.cacheHitCounter + delta.cacheMissCounter
+                ) +
                 "}; Absolute{" +
                 String.format(
                         "pageCount(%7.2f avg/, %5d max/, %9d #)",
@@ -114,6 +139,8 @@ public class BlobStoreMetrics implements InternalMetrics<BlobStoreMetrics>{
                 bytesRead - other.bytesRead,
                 readCounter - other.readCounter,
                 readTimer - other.readTimer,
+                cacheHitCounter - other.cacheHitCounter,
+                cacheMissCounter - other.cacheMissCounter,
                 avgBlobStoreAllocatedPages - other.avgBlobStoreAllocatedPages,
                 maxBlobStoreAllocatedPages - other.maxBlobStoreAllocatedPages,
                 sumBlobStoreAllocatedPages - other.sumBlobStoreAllocatedPages
@@ -3,6 +3,7 @@ package com.upserve.uppend.metrics;
 import com.codahale.metrics.*;
 import com.upserve.uppend.CounterStore;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.function.ObjLongConsumer;
 import java.util.stream.Stream;
@@ -14,6 +15,7 @@ public class CounterStoreWithMetrics implements CounterStore {
     public static final String SET_TIMER_METRIC_NAME = "setTimer";
     public static final String INCREMENT_TIMER_METRIC_NAME = "incrementTimer";
     public static final String FLUSH_TIMER_METRIC_NAME = "flushTimer";
+    public static final String SYNC_TIMER_METRIC_NAME = "syncTimer";
     public static final String GET_TIMER_METRIC_NAME = "getTimer";
     public static final String KEYS_TIMER_METRIC_NAME = "keysTimer";
     public static final String SCAN_TIMER_METRIC_NAME = "scanTimer";
@@ -26,6 +28,7 @@ public class CounterStoreWithMetrics implements CounterStore {
     private final Timer metricsSetTimer;
     private final Timer metricsIncrementTimer;
     private final Timer metricsFlushTimer;
+    private final Timer metricsSyncTimer;
     private final Timer metricsGetTimer;
     private final Timer metricsKeysTimer;
     private final Timer metricsScanTimer;
@@ -40,6 +43,7 @@ public class CounterStoreWithMetrics implements CounterStore {
         metricsSetTimer = metrics.timer(MetricRegistry.name(rootName, UPPEND_COUNTER_STORE, store.getName(), SET_TIMER_METRIC_NAME));
         metricsIncrementTimer = metrics.timer(MetricRegistry.name(rootName, UPPEND_COUNTER_STORE, store.getName(), INCREMENT_TIMER_METRIC_NAME));
         metricsFlushTimer = metrics.timer(MetricRegistry.name(rootName, UPPEND_COUNTER_STORE, store.getName(), FLUSH_TIMER_METRIC_NAME));
+        metricsSyncTimer = metrics.timer(MetricRegistry.name(rootName, UPPEND_COUNTER_STORE, store.getName(), SYNC_TIMER_METRIC_NAME));
         metricsGetTimer = metrics.timer(MetricRegistry.name(rootName, UPPEND_COUNTER_STORE, store.getName(), GET_TIMER_METRIC_NAME));
         metricsKeysTimer = metrics.timer(MetricRegistry.name(rootName, UPPEND_COUNTER_STORE, store.getName(), KEYS_TIMER_METRIC_NAME));
         metricsScanTimer = metrics.timer(MetricRegistry.name(rootName, UPPEND_COUNTER_STORE, store.getName(), SCAN_TIMER_METRIC_NAME));
@@ -88,6 +92,16 @@ public class CounterStoreWithMetrics implements CounterStore {
         }
     }
 
+    @Override
+    public void sync() {
+        final Timer.Context context = metricsSyncTimer.time();
+        try {
+            store.sync();
+        } finally {
+            context.stop();
+        }
+    }
+
     @Override
     public Long get(String partitionEntropy, String key) {
         final Timer.Context context = metricsGetTimer.time();
@@ -98,6 +112,16 @@ public class CounterStoreWithMetrics implements CounterStore {
         }
     }
 
+    @Override
+    public Map<String, Long> getMany(String partitionEntropy, Collection<String> keys) {
+        final Timer.Context context = metricsGetTimer.time();
+        try {
+            return store.getMany(partitionEntropy, keys);
+        } finally {
+            context.stop();
+        }
+    }
+
     @Override
     public Stream<String> keys() {
         final Timer.Context context = metricsKeysTimer.time();
@@ -108,6 +132,36 @@ public class CounterStoreWithMetrics implements CounterStore {
         }
     }
 
+    @Override
+    public Stream<String> keysSorted() {
+        final Timer.Context context = metricsKeysTimer.time();
+        try {
+            return store.keysSorted();
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public Stream<String> keys(String fromKey, String toKey) {
+        final Timer.Context context = metricsKeysTimer.time();
+        try {
+            return store.keys(fromKey, toKey);
+        } finally {
+            context.stop();
+        }
+    }
+
+    @Override
+    public Stream<Map.Entry<String, Long>> scanPrefix(String prefix) {
+        final Timer.Context context = metricsScanTimer.time();
+        try {
+            return store.scanPrefix(prefix);
+        } finally {
+            context.stop();
+        }
+    }
+
     @Override
     public Stream<Map.Entry<String, Long>> scan() {
         final Timer.Context context = metricsScanTimer.time();
@@ -182,4 +236,9 @@ public class CounterStoreWithMetrics implements CounterStore {
     public MutableBlobStoreMetrics getMutableBlobStoreMetrics() {
         return store.getMutableBlobStoreMetrics();
     }
+
+    @Override
+    public SyncMetrics getSyncMetrics() {
+        return store.getSyncMetrics();
+    }
 }
@@ -0,0 +1,128 @@
+package com.upserve.uppend.metrics;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+public class SyncMetrics implements InternalMetrics<SyncMetrics> {
+    // Stats summed over all syncs since the Uppend store was opened
+    private final long syncCounter;
+    private final long syncTimer;
+    private final long syncedWriteCounter;
+    private final long waitCounter;
+    private final long waitTimer;
+    private final long writebackCounter;
+    private final long writebackBytesCounter;
+    private final long writebackTimer;
+
+    public static class Adders {
+        public final LongAdder syncCounter = new LongAdder();
+        public final LongAdder syncTimer = new LongAdder();
+        public final LongAdder syncedWriteCounter = new LongAdder();
+        public final LongAdder waitCounter = new LongAdder();
+        public final LongAdder waitTimer = new LongAdder();
+        public final LongAdder writebackCounter = new LongAdder();
+        public final LongAdder writebackBytesCounter = new LongAdder();
+        public final LongAdder writebackTimer = new LongAdder();
+    }
+
+    public SyncMetrics(Adders syncMetricsAdders) {
+        this(
+                syncMetricsAdders.syncCounter.sum(),
+                syncMetricsAdders.syncTimer.sum(),
+                syncMetricsAdders.syncedWriteCounter.sum(),
+                syncMetricsAdders.waitCounter.sum(),
+                syncMetricsAdders.waitTimer.sum(),
+                syncMetricsAdders.writebackCounter.sum(),
+                syncMetricsAdders.writebackBytesCounter.sum(),
+                syncMetricsAdders.writebackTimer.sum()
+        );
+    }
+
+    private SyncMetrics(
+            long syncCounter,
+            long syncTimer,
+            long syncedWriteCounter,
+            long waitCounter,
+            long waitTimer,
+            long writebackCounter,
+            long writebackBytesCounter,
+            long writebackTimer
+    ) {
+        this.syncCounter = syncCounter;
+        this.syncTimer = syncTimer;
+        this.syncedWriteCounter = syncedWriteCounter;
+        this.waitCounter = waitCounter;
+        this.waitTimer = waitTimer;
+        this.writebackCounter = writebackCounter;
+        this.writebackBytesCounter = writebackBytesCounter;
+        this.writebackTimer = writebackTimer;
+    }
+
+    public long getSyncCount() {
+        return syncCounter;
+    }
+
+    public long getSyncedWriteCount() {
+        return syncedWriteCounter;
+    }
+
+    public long getWaitCount() {
+        return waitCounter;
+    }
+
+    public long getWritebackBytes() {
+        return writebackBytesCounter;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncMetrics{" +
+                "syncCounter=" + syncCounter +
+                ", syncTimer=" + syncTimer +
+                ", syncedWriteCounter=" + syncedWriteCounter +
+                ", waitCounter=" + waitCounter +
+                ", waitTimer=" + waitTimer +
+                ", writebackCounter=" + writebackCounter +
+                ", writebackBytesCounter=" + writebackBytesCounter +
+                ", writebackTimer=" + writebackTimer +
+                '}';
+    }
+
+    public String present(SyncMetrics previous) {
+        SyncMetrics delta = this.minus(previous);
+
+        return "SyncMetrics: Deltas{" +
+                String.format(
+                        "syncs(%7.2f ms/, %6.2f writes/, %5d #), ",
+                        Prefix.NANO.toMilli(delta.syncTimer) / Math.max(1, delta.syncCounter),
+                        (double) delta.syncedWriteCounter / Math.max(1, delta.syncCounter),
+                        delta.syncCounter
+                ) +
+                String.format(
+                        "waits(%7.2f ms/, %6d #), ",
+                        Prefix.NANO.toMilli(delta.waitTimer) / Math.max(1, delta.waitCounter),
+                        delta.waitCounter
+                ) +
+                String.format(
+                        "writeback(%7.2f ms/, %7.2f mb, %5d #)",
+                        Prefix.NANO.toMilli(delta.writebackTimer) / Math.max(1, delta.writebackCounter),
+                        delta.writebackBytesCounter / (1024.0 * 1024.0),
+                        delta.writebackCounter
+                ) +
+                "};";
+    }
+
+    public SyncMetrics minus(SyncMetrics other) {
+        if (Objects.isNull(other)) throw new NullPointerException("SyncMetrics minus method argument is null");
+        return new SyncMetrics(
+                syncCounter - other.syncCounter,
+                syncTimer - other.syncTimer,
+                syncedWriteCounter - other.syncedWriteCounter,
+                waitCounter - other.waitCounter,
+                waitTimer - other.waitTimer,
+                writebackCounter - other.writebackCounter,
+                writebackBytesCounter - other.writebackBytesCounter,
+                writebackTimer - other.writebackTimer
+        );
+    }
+}
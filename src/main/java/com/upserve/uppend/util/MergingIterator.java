@@ -7,7 +7,11 @@ public class MergingIterator<T> implements Iterator<T> {
 
     @SafeVarargs
     public MergingIterator(Comparator<T> comparator, Iterator<T>... iterators) {
-        this.iterators = new PriorityQueue<>((o1, o2) -> comparator.compare(o1.peek(), o2.peek()));
+        this(comparator, Arrays.asList(iterators));
+    }
+
+    public MergingIterator(Comparator<T> comparator, Collection<? extends Iterator<T>> iterators) {
+        this.iterators = new PriorityQueue<>(Math.max(1, iterators.size()), (o1, o2) -> comparator.compare(o1.peek(), o2.peek()));
         for (Iterator<T> iterator : iterators) {
             if (iterator != null && iterator.hasNext()) {
                 this.iterators.add(new PeekingIterator<>(iterator));
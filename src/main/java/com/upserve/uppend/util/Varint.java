@@ -1,17 +1,23 @@
 package com.upserve.uppend.util;
 
 import java.io.*;
+import java.lang.invoke.*;
+import java.nio.ByteOrder;
 
 /**
  * Support for varint encoding, as defined by Protocol Buffers. Note: currently
  * supports only long (int64), and does not use ZigZag encoding, so negative
- * numbers are always encoded as 10 bytes.
+ * numbers are always encoded as 10 bytes. Signed values such as deltas can be
+ * mapped to small positive numbers with {@link #zigZag(long)} first.
  *
  * @see <a href="https://developers.google.com/protocol-buffers/docs/encoding#varints">https://developers.google.com/protocol-buffers/docs/encoding#varints</a>
  */
 public class Varint {
     private static final long[] MAX_VARINT_AT_SIZE = new long[9];
 
+    private static final VarHandle LONG_VIEW = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long CONTINUATION_BITS = 0x8080808080808080L;
+
     static {
         for (int size = 1; size < 9; size++) {
             // every byte contains 7 bits of value plus one bit for continuation
@@ -55,6 +61,100 @@ public class Varint {
         throw new IOException("malformed varint in stream");
     }
 
+    /**
+     * Encode a long value as a varint into a byte array.
+     *
+     * @param buf the array to write to, with room for {@link #computeSize(long)} bytes at offset
+     * @param offset the offset in the array to write at
+     * @param value the value to encode as a varint
+     * @return the offset after the varint
+     */
+    public static int write(byte[] buf, int offset, long value) {
+        while (value < 0 || value > 127) {
+            buf[offset++] = (byte) (128 | value & 127);
+            value >>>= 7;
+        }
+        buf[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Decode a varint from a byte array.
+     *
+     * @param buf the array to read from
+     * @param offset the offset of the varint in the array
+     * @return the value of the varint
+     * @throws IllegalArgumentException if the varint is malformed
+     */
+    public static long readLong(byte[] buf, int offset) {
+        long value = 0;
+        for (int shift = 0; shift < 64 && offset < buf.length; shift += 7) {
+            int b = buf[offset++] & 0xFF;
+            value |= (long) (b & 127) << shift;
+            if (b < 128) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint in array at " + offset);
+    }
+
+    /**
+     * Decode consecutive varints from a byte array. Small values such as the
+     * deltas between neighbouring positions mostly encode as a single byte, so
+     * whenever none of the next eight bytes has its continuation bit set they
+     * are decoded together without a branch per byte.
+     *
+     * @param buf the array to read from
+     * @param offset the offset of the first varint in the array
+     * @param values the array to decode into
+     * @param valuesOffset the index in values of the first decoded value
+     * @param count the number of varints to decode
+     * @return the offset after the last varint
+     * @throws IllegalArgumentException if a varint is malformed
+     */
+    public static int readLongs(byte[] buf, int offset, long[] values, int valuesOffset, int count) {
+        final int end = valuesOffset + count;
+        int index = valuesOffset;
+        while (index < end) {
+            if (end - index >= 8 && buf.length - offset >= 8) {
+                final long word = (long) LONG_VIEW.get(buf, offset);
+                if ((word & CONTINUATION_BITS) == 0) {
+                    for (int i = 0; i < 8; i++) {
+                        values[index + i] = (word >>> (8 * i)) & 127;
+                    }
+                    index += 8;
+                    offset += 8;
+                    continue;
+                }
+            }
+            final long value = readLong(buf, offset);
+            values[index++] = value;
+            offset += computeSize(value);
+        }
+        return offset;
+    }
+
+    /**
+     * Map a signed value to an unsigned one so that values of small magnitude
+     * have short varint encodings: 0, -1, 1, -2, 2 map to 0, 1, 2, 3, 4.
+     *
+     * @param value the signed value
+     * @return the zig-zag encoded value
+     */
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Reverse {@link #zigZag(long)}.
+     *
+     * @param value the zig-zag encoded value
+     * @return the signed value
+     */
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
     /**
      * Computes the size of varint encoding for a given value.
      *
@@ -0,0 +1,140 @@
+package com.upserve.uppend.blobs;
+
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.lang.foreign.*;
+import java.lang.invoke.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.lang.foreign.ValueLayout.*;
+
+/**
+ * A whole file mapped as a single memory segment for the pages of a {@link VirtualPageFile}, addressed by long file
+ * positions with no mapped window arithmetic. The segment is mapped in a shared arena and grown by mapping the file
+ * again at a larger size; segments which were grown out of stay mapped until the file is closed, when the arena
+ * unmaps all of them at once. Closing fails rather than unmapping memory while another thread is accessing it.
+ */
+@SuppressWarnings("restricted") // linking madvise
+class SegmentFile implements Closeable {
+    private static final Logger log = org.slf4j.LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private static final MethodHandle MADVISE;
+
+    static {
+        MethodHandle madvise = null;
+        try {
+            Linker linker = Linker.nativeLinker();
+            madvise = linker.defaultLookup().find("madvise")
+                    .map(address -> linker.downcallHandle(address, FunctionDescriptor.of(JAVA_INT, ADDRESS, JAVA_LONG, JAVA_INT)))
+                    .orElse(null);
+        } catch (RuntimeException e) {
+            log.warn("Unable to link madvise, memory segments will not be advised", e);
+        }
+        MADVISE = madvise;
+    }
+
+    /**
+     * @return true if files can be mapped as memory segments on this runtime
+     */
+    static boolean isSupported() {
+        return true;
+    }
+
+    private final Path filePath;
+    private final FileChannel channel;
+    private final FileChannel.MapMode mapMode;
+    private final long growSize;
+    private final NativeIO.Advice advice;
+    private final Arena arena;
+
+    private volatile MemorySegment segment;
+
+    SegmentFile(Path filePath, FileChannel channel, FileChannel.MapMode mapMode, long growSize, NativeIO.Advice advice) {
+        this.filePath = filePath;
+        this.channel = channel;
+        this.mapMode = mapMode;
+        this.growSize = growSize;
+        this.advice = advice;
+        arena = Arena.ofShared();
+        segment = MemorySegment.NULL;
+    }
+
+    void read(long position, byte[] dst, int bufferOffset, int length) {
+        MemorySegment.copy(segment(position + length), JAVA_BYTE, position, dst, bufferOffset, length);
+    }
+
+    void write(long position, byte[] src, int bufferOffset, int length) {
+        MemorySegment.copy(src, bufferOffset, segment(position + length), JAVA_BYTE, position, length);
+    }
+
+    ByteBuffer view(long position, int length) {
+        return segment(position + length).asSlice(position, length).asByteBuffer().asReadOnlyBuffer();
+    }
+
+    void advise(long position, long length, NativeIO.Advice advice) {
+        if (MADVISE == null || length <= 0) return;
+        try {
+            advise(segment(position + length), position, length, advice);
+        } catch (RuntimeException e) {
+            log.debug("Unable to advise {} for {} bytes at {} in {}", advice, length, position, filePath, e);
+        }
+    }
+
+    void sync() {
+        MemorySegment current = segment;
+        if (current.isMapped()) current.force();
+    }
+
+    private MemorySegment segment(long end) {
+        MemorySegment current = segment;
+        if (end <= current.byteSize()) return current;
+        return grow(end);
+    }
+
+    private synchronized MemorySegment grow(long end) {
+        MemorySegment current = segment;
+        if (end <= current.byteSize()) return current;
+
+        final long size;
+        try {
+            if (mapMode == FileChannel.MapMode.READ_ONLY) {
+                // Mapping past the end of a read only file would fault on access, so map what is there now
+                size = channel.size();
+                if (end > size) {
+                    throw new IllegalStateException("Position " + end + " is past the end " + size + " of read only file " + filePath);
+                }
+            } else {
+                size = Math.max(end, current.byteSize() + growSize);
+            }
+            current = channel.map(mapMode, 0, size, arena);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to map " + end + " bytes of " + filePath, e);
+        }
+        if (MADVISE != null && advice != NativeIO.Advice.Normal) advise(current, 0, size, advice);
+        segment = current;
+        return current;
+    }
+
+    private void advise(MemorySegment segment, long position, long length, NativeIO.Advice advice) {
+        final long address = segment.address() + position;
+        final long alignedAddress = NativeIO.alignedAddress(address);
+        final int result;
+        try {
+            result = (int) MADVISE.invokeExact(MemorySegment.ofAddress(alignedAddress), length + address - alignedAddress, advice.value());
+        } catch (Throwable t) {
+            throw new IllegalStateException("Unable to call madvise for " + filePath, t);
+        }
+        if (result != 0) {
+            log.debug("Unable to advise {} for {} bytes at {} in {}: {}", advice, length, position, filePath, result);
+        }
+    }
+
+    @Override
+    public void close() {
+        segment = MemorySegment.NULL;
+        arena.close();
+    }
+}
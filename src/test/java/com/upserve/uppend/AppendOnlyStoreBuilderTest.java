@@ -1,6 +1,7 @@
 package com.upserve.uppend;
 
 import com.codahale.metrics.MetricRegistry;
+import com.upserve.uppend.blobs.*;
 import com.upserve.uppend.util.SafeDeleting;
 import org.junit.Test;
 
@@ -8,8 +9,7 @@ import java.nio.file.*;
 
 import static com.upserve.uppend.metrics.AppendOnlyStoreWithMetrics.FLUSH_TIMER_METRIC_NAME;
 import static com.upserve.uppend.metrics.AppendOnlyStoreWithMetrics.UPPEND_APPEND_STORE;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 
 public class AppendOnlyStoreBuilderTest {
     @Test
@@ -20,6 +20,59 @@ public class AppendOnlyStoreBuilderTest {
         assertTrue(Files.exists(path));
     }
 
+    @Test
+    public void testBuildWithIndexResidency() throws Exception {
+        Path path = Paths.get("build/tmp/test/append-only-store-builder-residency");
+        SafeDeleting.removeDirectory(path);
+
+        AppendOnlyStoreBuilder builder = Uppend.store(path)
+                .withIndexHugePages(true)
+                .withIndexPrefault(true)
+                .withIndexMemoryBudget(64L * 1024 * 1024);
+
+        ResidencyPolicy policy = builder.getIndexResidencyPolicy();
+        assertSame(policy, builder.getIndexResidencyPolicy());
+        assertEquals(64L * 1024 * 1024, policy.getMemoryBudget());
+        assertTrue(builder.toString().contains("indexPrefault=true"));
+
+        try (AppendOnlyStore store = builder.build()) {
+            store.append("partition", "key", "value".getBytes());
+            store.flush();
+            assertEquals("value", new String(store.readLast("partition", "key")));
+            assertTrue(policy.getResidentBytes() > 0);
+            assertTrue(policy.getResidentBytes() <= policy.getMemoryBudget());
+        }
+        assertEquals(0, policy.getResidentBytes());
+
+        assertSame(ResidencyPolicy.NONE, Uppend.store(path).getIndexResidencyPolicy());
+    }
+
+    @Test
+    public void testBuildWithPageBackends() throws Exception {
+        Path path = Paths.get("build/tmp/test/append-only-store-builder");
+        SafeDeleting.removeDirectory(path);
+
+        AppendOnlyStoreBuilder builder = Uppend.store(path)
+                .withBlobPageBackend(PageBackend.FILE_CHANNEL)
+                .withLookupPageBackend(PageBackend.FILE_CHANNEL)
+                .withMetadataPageBackend(PageBackend.FILE_CHANNEL);
+
+        assertEquals(PageBackend.FILE_CHANNEL, builder.getBlobPageBackend());
+        assertEquals(PageBackend.FILE_CHANNEL, builder.getLookupPageBackend());
+        assertEquals(PageBackend.FILE_CHANNEL, builder.getMetadataPageBackend());
+        assertTrue(builder.toString().contains("blobPageBackend=FILE_CHANNEL"));
+
+        try (AppendOnlyStore store = builder.build()) {
+            store.append("partition", "key", "value".getBytes());
+            store.flush();
+            assertEquals("value", new String(store.readLast("partition", "key")));
+        }
+
+        try (ReadOnlyAppendOnlyStore store = Uppend.store(path).buildReadOnly()) {
+            assertEquals("value", new String(store.readLast("partition", "key")));
+        }
+    }
+
     @Test
     public void testBuildWithMetrics() throws Exception {
         Path path = Paths.get("build/tmp/test/append-only-store-builder");
@@ -2,16 +2,19 @@ package com.upserve.uppend;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.primitives.Longs;
+import com.upserve.uppend.blobs.DeflateCodec;
+import com.upserve.uppend.metrics.SyncMetrics;
 import com.upserve.uppend.util.SafeDeleting;
 import org.junit.*;
 import org.junit.rules.ExpectedException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
+import java.util.stream.*;
 
 import static com.upserve.uppend.TestHelper.genBytes;
 import static org.junit.Assert.*;
@@ -304,6 +307,216 @@ public class AppendOnlyStoreTest {
         assertArrayEquals(new String[]{"one", "three", "two", "two"}, store.keys().sorted().toArray(String[]::new));
     }
 
+    @Test
+    public void testReadMany() throws Exception {
+        store.append("partition", "one", "bar".getBytes());
+        store.append("partition", "two", "baz".getBytes());
+        store.append("partition", "one", "bap".getBytes());
+        store.flush();
+        store.append("partition", "three", "bop".getBytes());
+
+        Map<String, List<String>> result = store
+                .readMany("partition", Arrays.asList("one", "two", "three", "four", "one"))
+                .entrySet()
+                .stream()
+                .collect(Collectors.toMap(
+                        Map.Entry::getKey,
+                        entry -> entry.getValue().map(String::new).sorted().collect(Collectors.toList())
+                ));
+
+        Map<String, List<String>> expected = ImmutableMap.of(
+                "one", Arrays.asList("bap", "bar"),
+                "two", Collections.singletonList("baz"),
+                "three", Collections.singletonList("bop"),
+                "four", Collections.emptyList()
+        );
+
+        assertEquals(expected, result);
+        assertEquals(Collections.singleton("one"), store.readMany("other", Collections.singletonList("one")).keySet());
+    }
+
+    @Test
+    public void testKeysSorted() throws Exception {
+        store.append("partition_one", "one", "bar".getBytes());
+        store.append("partition_one", "two", "baz".getBytes());
+        store.append("partition_two", "three", "bop".getBytes());
+        store.flush();
+        store.append("partition_one", "four", "bap".getBytes());
+        store.append("partition_two", "two", "bip".getBytes());
+
+        assertEquals(Arrays.asList("four", "one", "three", "two", "two"), store.keysSorted().collect(Collectors.toList()));
+        assertEquals(Arrays.asList("one", "three"), store.keys("o", "tw").collect(Collectors.toList()));
+        assertEquals(Arrays.asList("four", "one"), store.keys(null, "t").collect(Collectors.toList()));
+        assertEquals(Arrays.asList("two", "two"), store.keys("two", null).collect(Collectors.toList()));
+        assertEquals(Collections.emptyList(), store.keys("z", null).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testScanPrefix() throws Exception {
+        store.append("partition_one", "one", "bar".getBytes());
+        store.append("partition_one", "two", "baz".getBytes());
+        store.append("partition_one", "three", "bop".getBytes());
+        store.flush();
+        store.append("partition_one", "two", "bap".getBytes());
+        store.append("partition_two", "tw", "bip".getBytes());
+
+        List<String> result = store
+                .scanPrefix("tw")
+                .map(entry -> entry.getKey() + ":" + entry.getValue().map(String::new).sorted().collect(Collectors.joining(",")))
+                .collect(Collectors.toList());
+
+        assertEquals(Arrays.asList("tw:bip", "two:bap,baz"), result);
+        assertEquals(0, store.scanPrefix("x").count());
+    }
+
+    @Test
+    public void testScanPhysical() throws Exception {
+        store.append("partition_one", "one", "bar".getBytes());
+        store.append("partition_one", "two", "baz".getBytes());
+        store.append("partition_one", "three", "bop".getBytes());
+        store.append("partition_one", "one", "bap".getBytes());
+        store.flush();
+        store.append("partition_two", "five", "bip".getBytes());
+        store.append("partition_one", "one", "bup".getBytes());
+
+        Map<String, List<String>> result = store
+                .scanPhysical()
+                .collect(Collectors.groupingBy(
+                        Map.Entry::getKey,
+                        Collectors.mapping(entry -> new String(entry.getValue()), Collectors.toList())
+                ));
+
+        Map<String, List<String>> expected = ImmutableMap.of(
+                "one", Arrays.asList("bar", "bap", "bup"),
+                "two", Collections.singletonList("baz"),
+                "three", Collections.singletonList("bop"),
+                "five", Collections.singletonList("bip")
+        );
+
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void testScanPhysicalInChunks() throws Exception {
+        AppendOnlyStore chunkedStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("chunked-store"))
+                .withInlineSmallValues(true)
+                .withPhysicalScanChunkValues(16)
+                .build();
+
+        Map<String, List<String>> expected = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            final String key = "key" + i % 37;
+            final byte[] value = genBytes(i % 100 == 0 ? 3 : 8 + i % 20);
+            chunkedStore.append("partition", key, value);
+            expected.computeIfAbsent(key, k -> new ArrayList<>()).add(Arrays.toString(value));
+        }
+
+        // Blobs are appended in order, so the values of a key come back in append order after its inline values
+        Map<String, List<String>> physical = chunkedStore.scanPhysical().collect(Collectors.groupingBy(
+                Map.Entry::getKey,
+                Collectors.mapping(entry -> Arrays.toString(entry.getValue()), Collectors.toList())
+        ));
+        assertEquals(expected.keySet(), physical.keySet());
+        for (Map.Entry<String, List<String>> entry : expected.entrySet()) {
+            List<String> inline = entry.getValue().stream().filter(value -> value.split(",").length == 3).collect(Collectors.toList());
+            List<String> blobs = entry.getValue().stream().filter(value -> value.split(",").length != 3).collect(Collectors.toList());
+            List<String> ordered = new ArrayList<>(inline);
+            ordered.addAll(blobs);
+            assertEquals(ordered, physical.get(entry.getKey()));
+        }
+        chunkedStore.close();
+    }
+
+    @Test
+    public void testScanPhysicalInChunksSkipsKeysOutsideRange() throws Exception {
+        AppendOnlyStore chunkedStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("clustered-store"))
+                .withLongLookupHashCount(1)
+                .withPhysicalScanChunkValues(16)
+                .build();
+
+        // Each key's values are appended together, so most keys only have values in one or two ranges
+        Map<String, List<String>> expected = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            final String key = "key" + i / 25;
+            final byte[] value = genBytes(8 + i % 20);
+            chunkedStore.append("partition", key, value);
+            expected.computeIfAbsent(key, k -> new ArrayList<>()).add(Arrays.toString(value));
+        }
+
+        Map<String, List<String>> physical = chunkedStore.scanPhysical().collect(Collectors.groupingBy(
+                Map.Entry::getKey,
+                Collectors.mapping(entry -> Arrays.toString(entry.getValue()), Collectors.toList())
+        ));
+        assertEquals(expected, physical);
+        chunkedStore.close();
+    }
+
+    @Test
+    public void testScanCursors() throws Exception {
+        store.append("partition_one", "one", "bar".getBytes());
+        store.append("partition_one", "two", "baz".getBytes());
+        store.append("partition_one", "three", "bop".getBytes());
+        store.flush();
+        store.append("partition_one", "one", "bap".getBytes());
+        store.append("partition_two", "five", "bip".getBytes());
+        store.append("partition_two", "six", new byte[8192]);
+
+        List<ScanCursor> cursors = store.scanCursors(3);
+        assertEquals(3, cursors.size());
+
+        ConcurrentMap<String, List<String>> result = new ConcurrentHashMap<>();
+        cursors.parallelStream().forEach(cursor -> {
+            while (cursor.nextKey()) {
+                String key = StandardCharsets.UTF_8.decode(cursor.keyBytes()).toString();
+                List<String> values = new ArrayList<>();
+                while (cursor.nextValue()) {
+                    ByteBuffer value = cursor.valueBuffer();
+                    values.add(value.remaining() > 100 ? String.valueOf(value.remaining()) : StandardCharsets.UTF_8.decode(value).toString());
+                }
+                result.put(key, values);
+            }
+        });
+
+        Map<String, List<String>> expected = ImmutableMap.of(
+                "one", Arrays.asList("bar", "bap"),
+                "two", Collections.singletonList("baz"),
+                "three", Collections.singletonList("bop"),
+                "five", Collections.singletonList("bip"),
+                "six", Collections.singletonList("8192")
+        );
+
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void testScanCursorViewsMappedPages() {
+        store.append("partition_one", "one", "bar".getBytes());
+        store.append("partition_one", "one", "baz".getBytes());
+        store.flush();
+
+        try (ScanCursor cursor = store.scanCursors(1).get(0)) {
+            assertTrue(cursor.nextKey());
+            assertTrue(cursor.nextValue());
+            // The value is a view of the mapped page rather than a copy
+            assertTrue(cursor.valueBuffer().isDirect());
+            assertEquals("bar", StandardCharsets.UTF_8.decode(cursor.valueBuffer()).toString());
+            assertTrue(cursor.nextValue());
+            assertEquals("baz", StandardCharsets.UTF_8.decode(cursor.valueBuffer()).toString());
+            assertFalse(cursor.nextValue());
+        }
+    }
+
+    @Test
+    public void testScanCursorNotPositioned() {
+        store.append("partition_one", "one", "bar".getBytes());
+        ScanCursor cursor = store.scanCursors(1).get(0);
+
+        thrown.expect(IllegalStateException.class);
+        cursor.keyBytes();
+    }
+
     @Test
     public void testScan() throws Exception {
         store.append("partition_one", "one", "bar".getBytes());
@@ -359,6 +572,434 @@ public class AppendOnlyStoreTest {
         tester(0, 17);
     }
 
+    @Test
+    public void testGroupCommit() throws Exception {
+        AppendOnlyStore durableStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("group-commit-store"))
+                .withDurability(Durability.GROUP_COMMIT)
+                .build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            final String key = "key" + (i % 20);
+            final byte[] value = genBytes(32);
+            futures.add(executor.submit(() -> durableStore.append("partition", key, value)));
+        }
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        SyncMetrics syncMetrics = durableStore.getSyncMetrics();
+        assertEquals(200, syncMetrics.getWaitCount());
+        assertEquals(200, syncMetrics.getSyncedWriteCount());
+        assertTrue(syncMetrics.getSyncCount() >= 1);
+        assertTrue(syncMetrics.getSyncCount() <= 200);
+
+        durableStore.appendDurable("partition", "key0", genBytes(32)).get(10, TimeUnit.SECONDS);
+        assertEquals(11, durableStore.read("partition", "key0").count());
+        durableStore.close();
+    }
+
+    @Test
+    public void testSyncOnlyWrittenPartitions() throws Exception {
+        FileAppendOnlyStore durableStore = (FileAppendOnlyStore) TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("written-partitions-store"))
+                .withDurability(Durability.GROUP_COMMIT)
+                .build();
+
+        durableStore.append("partition-a", "key", genBytes(32));
+        durableStore.append("partition-b", "key", genBytes(32));
+        AppendStorePartition partitionA = durableStore.getIfPresent("partition-a").get();
+        AppendStorePartition partitionB = durableStore.getIfPresent("partition-b").get();
+        assertFalse(partitionA.unsynced.get());
+        assertFalse(partitionB.unsynced.get());
+
+        partitionB.written();
+        durableStore.appendDurable("partition-a", "key", genBytes(32)).get(10, TimeUnit.SECONDS);
+        assertFalse(partitionA.unsynced.get());
+        // Another partition noted as written is synced by the same batch
+        assertFalse(partitionB.unsynced.get());
+
+        partitionA.written();
+        partitionA.syncIfWritten();
+        assertFalse(partitionA.unsynced.get());
+        assertEquals(2, durableStore.read("partition-a", "key").count());
+        durableStore.close();
+    }
+
+    @Test
+    public void testPeriodicDurability() throws Exception {
+        AppendOnlyStore durableStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("periodic-store"))
+                .withDurability(Durability.PERIODIC)
+                .withSyncIntervalMillis(10)
+                .build();
+
+        CompletableFuture<Void> future = durableStore.appendDurable("partition", "key", genBytes(32));
+        durableStore.append("partition", "key", genBytes(32));
+        future.get(10, TimeUnit.SECONDS);
+
+        assertEquals(0, durableStore.getSyncMetrics().getWaitCount());
+        assertTrue(durableStore.getSyncMetrics().getSyncCount() >= 1);
+        durableStore.close();
+
+        assertTrue(store.appendDurable("partition", "key", genBytes(32)).isDone());
+    }
+
+    @Test
+    public void testBackgroundWriteback() throws Exception {
+        AppendOnlyStore writebackStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("writeback-store"))
+                .withWritebackIntervalMillis(10)
+                .build();
+
+        writebackStore.append("partition", "key", genBytes(32));
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (writebackStore.getSyncMetrics().getWritebackBytes() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(writebackStore.getSyncMetrics().getWritebackBytes() > 0);
+        writebackStore.close();
+    }
+
+    @Test
+    public void testPreallocation() throws Exception {
+        AppendOnlyStore preallocatedStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("preallocated-store"))
+                .withPreallocationHeadroomBytes(1024 * 1024)
+                .build();
+
+        byte[] bytes = genBytes(32);
+        preallocatedStore.append("partition", "key", bytes);
+        preallocatedStore.close();
+
+        AppendOnlyStore reopened = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("preallocated-store"))
+                .build();
+        assertArrayEquals(bytes, reopened.readLast("partition", "key"));
+        reopened.close();
+    }
+
+    @Test
+    public void testPrefault() throws Exception {
+        AppendOnlyStore prefaultedStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("prefaulted-store"))
+                .withPrefaultAheadBytes(1024 * 1024)
+                .build();
+
+        byte[] bytes = genBytes(32);
+        prefaultedStore.append("partition", "key", bytes);
+        assertArrayEquals(bytes, prefaultedStore.readLast("partition", "key"));
+        prefaultedStore.clear();
+        prefaultedStore.append("partition", "key", bytes);
+        assertArrayEquals(bytes, prefaultedStore.readLast("partition", "key"));
+        prefaultedStore.close();
+    }
+
+    @Test
+    public void testAsyncReads() throws Exception {
+        AppendOnlyStore asyncStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("async-store"))
+                .withAsyncReadThreads(4)
+                .build();
+
+        // More batches than read threads
+        byte[][] values = new byte[2000][];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = genBytes(32);
+            asyncStore.append("partition", "key", values[i]);
+        }
+        asyncStore.append("partition", "single", values[0]);
+
+        assertArrayEquals(values, asyncStore.read("partition", "key").toArray(byte[][]::new));
+        assertArrayEquals(values, asyncStore.readMany("partition", Collections.singletonList("key")).get("key").toArray(byte[][]::new));
+        assertArrayEquals(new byte[][]{values[0]}, asyncStore.read("partition", "single").toArray(byte[][]::new));
+        asyncStore.close();
+    }
+
+    @Test
+    public void testAsyncReadsAcrossKeys() throws Exception {
+        AppendOnlyStore asyncStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("async-keys-store"))
+                .withAsyncReadThreads(4)
+                .build();
+
+        // Many more keys than reads in flight, with one to three values each
+        Map<String, List<byte[]>> expected = new TreeMap<>();
+        for (int i = 0; i < 300; i++) {
+            String key = String.format("key-%03d", i);
+            for (int j = 0; j <= i % 3; j++) {
+                byte[] value = genBytes(1 + i % 200);
+                asyncStore.append("partition", key, value);
+                expected.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+            }
+        }
+
+        assertValuesEqual(expected, asyncStore.readMany("partition", expected.keySet()));
+        assertValuesEqual(expected, asyncStore.scan().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+        assertValuesEqual(expected, asyncStore.scanPrefix("key-").collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+        Map<String, Stream<byte[]>> scanned = new ConcurrentHashMap<>();
+        asyncStore.scan((key, values) -> scanned.put(key, values.collect(Collectors.toList()).stream()));
+        assertValuesEqual(expected, scanned);
+        asyncStore.close();
+    }
+
+    private void assertValuesEqual(Map<String, List<byte[]>> expected, Map<String, Stream<byte[]>> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((key, values) -> assertArrayEquals(key, values.toArray(new byte[0][]), actual.get(key).toArray(byte[][]::new)));
+    }
+
+    @Test
+    public void testBlobValueCache() throws Exception {
+        AppendOnlyStore cachedStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("cached-store"))
+                .withBlobValueCacheBytes(1024 * 1024)
+                .build();
+
+        cachedStore.append("partition", "key", new byte[]{1, 2, 3});
+        cachedStore.append("partition", "key", new byte[]{4, 5});
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(new byte[][]{{1, 2, 3}, {4, 5}}, cachedStore.read("partition", "key").toArray(byte[][]::new));
+        }
+        assertArrayEquals(new byte[]{4, 5}, cachedStore.readLast("partition", "key"));
+        assertEquals(5, cachedStore.getBlobStoreMetrics().getCacheHitCount());
+        assertEquals(2, cachedStore.getBlobStoreMetrics().getCacheMissCount());
+        cachedStore.close();
+    }
+
+    @Test
+    public void testBlobCompression() throws Exception {
+        AppendOnlyStore compressedStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("compressed-store"))
+                .withBlobCodec(new DeflateCodec())
+                .withBlobCompressionThreshold(64)
+                .build();
+
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            byte[] value = new byte[i * 20];
+            Arrays.fill(value, (byte) i);
+            values.add(value);
+            compressedStore.append("partition", "key", value);
+        }
+        assertArrayEquals(values.toArray(new byte[0][]), compressedStore.read("partition", "key").toArray(byte[][]::new));
+        assertArrayEquals(values.get(49), compressedStore.readLast("partition", "key"));
+        compressedStore.close();
+
+        compressedStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("compressed-store"))
+                .withBlobCodec(new DeflateCodec())
+                .build(true);
+        assertArrayEquals(values.toArray(new byte[0][]), compressedStore.read("partition", "key").toArray(byte[][]::new));
+        compressedStore.close();
+    }
+
+    @Test
+    public void testCompactFormat() throws Exception {
+        AppendOnlyStore compactStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("compact-store"))
+                .withCompactFormat(true)
+                .withInlineSmallValues(true)
+                .build();
+
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            values.add(genBytes(i % 300));
+            compactStore.append("partition", "key", values.get(i));
+            compactStore.append("partition", "other", genBytes(20));
+        }
+        assertArrayEquals(values.toArray(new byte[0][]), compactStore.read("partition", "key").toArray(byte[][]::new));
+        assertArrayEquals(values.get(499), compactStore.readLast("partition", "key"));
+        compactStore.close();
+
+        // A store opened without the option keeps the format of the existing partition and creates new ones fixed
+        compactStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("compact-store"))
+                .build();
+        assertArrayEquals(values.toArray(new byte[0][]), compactStore.read("partition", "key").toArray(byte[][]::new));
+        compactStore.append("partition", "key", new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, compactStore.readLast("partition", "key"));
+        assertEquals(501, compactStore.read("partition", "key").count());
+        compactStore.append("fixed", "key", new byte[]{1});
+        assertArrayEquals(new byte[]{1}, compactStore.readLast("fixed", "key"));
+        compactStore.close();
+    }
+
+    @Test
+    public void testValuePacking() throws Exception {
+        AppendOnlyStore packingStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("packing-store"))
+                .withValuePackingBytes(100)
+                .build();
+
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            values.add(genBytes(i % 10));
+            packingStore.append("partition", "packed", values.get(i));
+        }
+        packingStore.append("partition", "single", new byte[]{1, 2, 3});
+
+        // Only the values which filled a chunk are visible before a flush
+        assertEquals(0, packingStore.read("partition", "single").count());
+        assertTrue(packingStore.read("partition", "packed").count() < 30);
+
+        packingStore.flush();
+        assertArrayEquals(values.toArray(new byte[0][]), packingStore.read("partition", "packed").toArray(byte[][]::new));
+        assertArrayEquals(values.get(29), packingStore.readLast("partition", "packed"));
+        assertArrayEquals(new byte[]{1, 2, 3}, packingStore.readLast("partition", "single"));
+
+        Map<String, List<String>> physical = packingStore.scanPhysical().collect(Collectors.groupingBy(
+                Map.Entry::getKey,
+                Collectors.mapping(entry -> Arrays.toString(entry.getValue()), Collectors.toList())
+        ));
+        assertEquals(values.stream().map(Arrays::toString).collect(Collectors.toList()), physical.get("packed"));
+
+        ScanCursor cursor = packingStore.scanCursors(1).get(0);
+        int cursorValues = 0;
+        while (cursor.nextKey()) {
+            while (cursor.nextValue()) cursorValues++;
+        }
+        assertEquals(31, cursorValues);
+
+        packingStore.append("partition", "single", new byte[]{4});
+        packingStore.append("partition", "single", new byte[]{5});
+        packingStore.close();
+
+        // Values buffered at close are written, and a store opened without packing reads the packed chunks
+        packingStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("packing-store"))
+                .withAsyncReadThreads(2)
+                .build();
+        assertArrayEquals(values.toArray(new byte[0][]), packingStore.read("partition", "packed").toArray(byte[][]::new));
+        assertArrayEquals(new byte[][]{{1, 2, 3}, {4}, {5}}, packingStore.read("partition", "single").toArray(byte[][]::new));
+        assertArrayEquals(new byte[]{5}, packingStore.readLast("partition", "single"));
+        packingStore.close();
+    }
+
+    @Test
+    public void testInlineSmallValues() throws Exception {
+        AppendOnlyStore inlineStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("inline-store"))
+                .withInlineSmallValues(true)
+                .build();
+
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            values.add(genBytes(i % 10));
+            inlineStore.append("partition", "mixed", values.get(i));
+        }
+        inlineStore.append("partition", "small", new byte[]{1, 2, 3});
+
+        assertArrayEquals(values.toArray(new byte[0][]), inlineStore.read("partition", "mixed").toArray(byte[][]::new));
+        assertArrayEquals(values.get(19), inlineStore.readLast("partition", "mixed"));
+        assertArrayEquals(new byte[]{1, 2, 3}, inlineStore.readLast("partition", "small"));
+
+        // Physical order puts the inline values first
+        Map<String, List<String>> physical = inlineStore.scanPhysical().collect(Collectors.groupingBy(
+                Map.Entry::getKey,
+                Collectors.mapping(entry -> Arrays.toString(entry.getValue()), Collectors.toList())
+        ));
+        assertEquals(
+                values.stream().map(Arrays::toString).sorted().collect(Collectors.toList()),
+                physical.get("mixed").stream().sorted().collect(Collectors.toList())
+        );
+
+        ScanCursor cursor = inlineStore.scanCursors(1).get(0);
+        int cursorValues = 0;
+        while (cursor.nextKey()) {
+            while (cursor.nextValue()) cursorValues++;
+        }
+        assertEquals(21, cursorValues);
+        inlineStore.close();
+
+        // A store opened without inlining still reads the inline values
+        inlineStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("inline-store"))
+                .build();
+        assertArrayEquals(values.toArray(new byte[0][]), inlineStore.read("partition", "mixed").toArray(byte[][]::new));
+        inlineStore.append("partition", "small", new byte[]{4});
+        assertArrayEquals(new byte[]{4}, inlineStore.readLast("partition", "small"));
+        inlineStore.close();
+    }
+
+    @Test
+    public void testLazyPositionPublishing() throws Exception {
+        AppendOnlyStore lazyStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("lazy-store"))
+                .withLazyPositionPublishing(true)
+                .build();
+
+        byte[] first = genBytes(32);
+        byte[] second = genBytes(32);
+        lazyStore.append("partition", "key", first);
+        lazyStore.close();
+
+        lazyStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("lazy-store"))
+                .withLazyPositionPublishing(true)
+                .build();
+        lazyStore.append("partition", "key", second);
+        assertArrayEquals(new byte[][]{first, second}, lazyStore.read("partition", "key").toArray(byte[][]::new));
+        lazyStore.close();
+    }
+
+    @Test
+    public void testBlobPageSizeClasses() throws Exception {
+        AppendOnlyStore sizeClassStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("size-class-store"))
+                .withBlobPageSizeClasses(true)
+                .build();
+
+        List<byte[]> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            byte[] bytes = genBytes(i * 997);
+            values.add(bytes);
+            sizeClassStore.append("partition", "key", bytes);
+        }
+        assertArrayEquals(values.toArray(new byte[0][]), sizeClassStore.read("partition", "key").toArray(byte[][]::new));
+        sizeClassStore.close();
+    }
+
+    @Test
+    public void testValueHandles() throws Exception {
+        AppendOnlyStore handleStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("handle-store"))
+                .withPartitionCount(8)
+                .withInlineSmallValues(true)
+                .withValuePackingBytes(100)
+                .build();
+
+        handleStore.append("partition-a", "key0", new byte[]{9});
+        final byte[][] values = new byte[20][];
+        final long[] handles = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 3 == 0 ? new byte[]{(byte) i} : genBytes(20 + i);
+            handles[i] = handleStore.appendWithHandle("partition-" + (char) ('a' + i % 5), "key" + i % 4, values[i]);
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            assertArrayEquals(values[i], handleStore.readHandle(handles[i]));
+        }
+        assertArrayEquals(values, handleStore.readHandles(handles));
+        // The buffered value of the key is written ahead of the value with a handle
+        assertArrayEquals(new byte[][]{{9}, values[0]}, handleStore.read("partition-a", "key0").toArray(byte[][]::new));
+        handleStore.close();
+
+        handleStore = TestHelper.getDefaultAppendStoreTestBuilder()
+                .withDir(path.resolve("handle-store"))
+                .withPartitionCount(8)
+                .build(true);
+        assertArrayEquals(values, handleStore.readHandles(handles));
+        handleStore.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testValueHandlesNeedPartitionCount() {
+        store.appendWithHandle("partition", "key", new byte[]{1});
+    }
+
     @Test
     public void testReadWriteEmpty() {
         tester(1, 0);
@@ -1,6 +1,9 @@
 package com.upserve.uppend;
 
+import com.upserve.uppend.blobs.ResidencyPolicy;
+import com.upserve.uppend.metrics.BlockedLongMetrics;
 import com.upserve.uppend.util.*;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import org.junit.*;
 
 import java.io.UncheckedIOException;
@@ -77,6 +80,88 @@ public class BlockedLongsTest {
         }, v.values(pos2).toArray());
     }
 
+    @Test
+    public void testAppendMany() throws Exception {
+        BlockedLongs v = new BlockedLongs(path, 4, readOnly);
+        long pos = v.allocate();
+        v.append(pos, new long[]{1, 2, 3});
+        v.append(pos, new long[]{4, 5, 6});
+        v.append(pos, new long[]{});
+        v.append(pos, 7);
+        assertArrayEquals(new long[]{1, 2, 3, 4, 5, 6, 7}, v.values(pos).toArray());
+        assertEquals(7, v.lastValue(pos));
+        assertEquals(7, v.getCount());
+    }
+
+    @Test
+    public void testCompactBlocks() throws Exception {
+        BlockedLongs v = new BlockedLongs(path, 4, readOnly, new BlockedLongMetrics.Adders(), ResidencyPolicy.NONE, true);
+        assertTrue(v.isCompact());
+        long pos1 = v.allocate();
+        long pos2 = v.allocate();
+        Random random = new Random(7);
+        List<Long> values1 = new ArrayList<>();
+        List<Long> values2 = new ArrayList<>();
+        long position = 0;
+        for (int i = 0; i < 500; i++) {
+            position += random.nextInt(5000);
+            long value = i % 50 == 0 ? InlineValues.encode(new byte[]{(byte) i}) : position;
+            v.append(pos1, value);
+            values1.add(value);
+            v.append(pos2, -i);
+            values2.add((long) -i);
+        }
+        assertEquals(values1, Arrays.stream(v.valuesArray(pos1)).boxed().collect(Collectors.toList()));
+        assertEquals(values2, v.values(pos2).boxed().collect(Collectors.toList()));
+        assertEquals(position, v.lastValue(pos1));
+        assertEquals(-499, v.lastValue(pos2));
+
+        // Far fewer blocks than the fixed format would need for 1000 values at 4 per block
+        assertTrue(v.getBlockCount() < 1000 / 4 / 2);
+        v.close();
+
+        // The format is kept by the file
+        v = new BlockedLongs(path, 4, readOnly);
+        assertTrue(v.isCompact());
+        assertEquals(values1, Arrays.stream(v.valuesArray(pos1)).boxed().collect(Collectors.toList()));
+        v.clear();
+        assertTrue(v.isCompact());
+        long pos3 = v.allocate();
+        assertEquals(-1, v.lastValue(pos3));
+        assertEquals(0, v.valuesArray(pos3).length);
+        v.append(pos3, 42);
+        assertArrayEquals(new long[]{42}, v.valuesArray(pos3));
+        v.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCompactBlocksTooSmall() {
+        new BlockedLongs(path, 3, readOnly, new BlockedLongMetrics.Adders(), ResidencyPolicy.NONE, true);
+    }
+
+    @Test
+    public void testValuesInto() throws Exception {
+        for (boolean compact : new boolean[]{false, true}) {
+            SafeDeleting.removeTempPath(path);
+            BlockedLongs v = new BlockedLongs(path, 4, readOnly, new BlockedLongMetrics.Adders(), ResidencyPolicy.NONE, compact);
+            long pos1 = v.allocate();
+            long pos2 = v.allocate();
+            for (long i = 0; i < 11; i++) {
+                v.append(pos1, i * 1000);
+            }
+            v.append(pos2, 7);
+
+            LongArrayList values = new LongArrayList();
+            v.valuesInto(pos1, values);
+            assertArrayEquals(v.valuesArray(pos1), values.toLongArray());
+            // The list is added to rather than replaced
+            v.valuesInto(pos2, values);
+            assertEquals(12, values.size());
+            assertEquals(7, values.getLong(11));
+            v.close();
+        }
+    }
+
     @Test(expected = IllegalStateException.class)
     public void testAppendAtNonStartingBlock() throws Exception {
         BlockedLongs v = new BlockedLongs(path, 10, readOnly);
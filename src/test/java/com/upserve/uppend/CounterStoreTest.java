@@ -1,6 +1,6 @@
 package com.upserve.uppend;
 
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.*;
 import com.upserve.uppend.util.SafeDeleting;
 import org.junit.*;
 import org.junit.rules.ExpectedException;
@@ -180,6 +180,49 @@ public class CounterStoreTest {
         assertEquals(expected, result);
     }
 
+    @Test
+    public void testGetMany() throws Exception {
+        store.set("partition", "one", 1);
+        store.set("partition", "two", 2);
+        store.flush();
+        store.increment("partition", "three", 3);
+        store.increment("partition", "two", 5);
+
+        assertEquals(
+                ImmutableMap.of("one", 1L, "two", 7L, "three", 3L),
+                store.getMany("partition", Arrays.asList("one", "two", "three", "four"))
+        );
+        assertEquals(Collections.emptyMap(), store.getMany("other", Collections.singletonList("one")));
+
+        tearDown();
+        store = newStore(true);
+        assertEquals(
+                ImmutableMap.of("one", 1L, "two", 7L, "three", 3L),
+                store.getMany("partition", Arrays.asList("four", "three", "two", "one"))
+        );
+    }
+
+    @Test
+    public void testKeysSorted() throws Exception {
+        store.set("partition_one", "one", 1);
+        store.set("partition_two", "two", 2);
+        store.flush();
+        store.increment("partition_one", "three", 3);
+        store.increment("partition_two", "four", 4);
+
+        assertEquals(Arrays.asList("four", "one", "three", "two"), store.keysSorted().collect(Collectors.toList()));
+        assertEquals(Arrays.asList("one", "three"), store.keys("one", "two").collect(Collectors.toList()));
+
+        assertEquals(
+                Arrays.asList(Maps.immutableEntry("three", 3L), Maps.immutableEntry("two", 2L)),
+                store.scanPrefix("t").collect(Collectors.toList())
+        );
+
+        tearDown();
+        store = newStore(true);
+        assertEquals(Arrays.asList("four", "one", "three", "two"), store.keysSorted().collect(Collectors.toList()));
+    }
+
     @Test
     public void testScanCallback() {
         store.increment("partition_one", "one", 1);
@@ -0,0 +1,94 @@
+package com.upserve.uppend;
+
+import com.upserve.uppend.blobs.NativeIO;
+import com.upserve.uppend.util.SafeDeleting;
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class FixedWidthAppendStoreTest {
+    private final Path path = Paths.get("build/test/fixed-width-append-store");
+
+    private FixedWidthAppendStoreBuilder builder(int valueWidth) {
+        return new FixedWidthAppendStoreBuilder()
+                .withDir(path.resolve("store-path-" + valueWidth))
+                .withStoreName("test")
+                .withValueWidth(valueWidth)
+                .withValuesPerBlock(3)
+                .withTargetBufferSize(16 * 1024 * 1024)
+                .withMetadataPageSize(NativeIO.pageSize)
+                .withLongLookupHashCount(16)
+                .withLookupPageSize(16 * 1024);
+    }
+
+    @Before
+    public void initialize() throws IOException {
+        SafeDeleting.removeDirectory(path);
+    }
+
+    @Test
+    public void testSixteenByteValues() throws Exception {
+        appendReadHelper(16);
+    }
+
+    @Test
+    public void testOddWidthValues() throws Exception {
+        appendReadHelper(5);
+        appendReadHelper(13);
+    }
+
+    private void appendReadHelper(int valueWidth) throws Exception {
+        Random random = new Random(valueWidth);
+        List<byte[]> values = new ArrayList<>();
+        try (FixedWidthAppendStore store = builder(valueWidth).build()) {
+            assertEquals(valueWidth, store.getValueWidth());
+            for (int i = 0; i < 10; i++) {
+                byte[] value = new byte[valueWidth];
+                random.nextBytes(value);
+                values.add(value);
+                store.append("partition", "key", value);
+            }
+            assertValues(values, valueWidth, store.read("partition", "key"));
+            assertEquals(0, store.read("partition", "missing").remaining());
+        }
+
+        try (ReadOnlyFixedWidthAppendStore reader = builder(valueWidth).buildReadOnly()) {
+            assertValues(values, valueWidth, reader.read("partition", "key"));
+            Map<String, ByteBuffer> many = reader.readMany("partition", Arrays.asList("key", "missing"));
+            assertEquals(Collections.singleton("key"), many.keySet());
+            assertValues(values, valueWidth, many.get("key"));
+            Map<String, ByteBuffer> scanned = reader.scan().collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+            assertValues(values, valueWidth, scanned.get("key"));
+        }
+    }
+
+    private void assertValues(List<byte[]> expected, int valueWidth, ByteBuffer buffer) {
+        assertEquals(expected.size() * valueWidth, buffer.remaining());
+        for (byte[] value : expected) {
+            byte[] actual = new byte[valueWidth];
+            buffer.get(actual);
+            assertArrayEquals(value, actual);
+        }
+    }
+
+    @Test
+    public void testWrongWidth() throws Exception {
+        try (FixedWidthAppendStore store = builder(16).build()) {
+            store.append("partition", "key", new byte[8]);
+            fail("Expected the append of a value of the wrong width to fail");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("value width 16"));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWidthRequired() {
+        new FixedWidthAppendStoreBuilder().withDir(path.resolve("no-width")).build();
+    }
+}
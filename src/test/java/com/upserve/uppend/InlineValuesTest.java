@@ -0,0 +1,47 @@
+package com.upserve.uppend;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class InlineValuesTest {
+    @Test
+    public void testRoundTrip() {
+        Random random = new Random(42);
+        for (int length = 0; length <= InlineValues.MAX_BYTES; length++) {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            long value = InlineValues.encode(bytes);
+            assertTrue(InlineValues.isInline(value));
+            assertArrayEquals(bytes, InlineValues.decode(value));
+        }
+        assertTrue(InlineValues.isInline(InlineValues.encode(new byte[]{-1, -1, -1, -1, -1, -1, -1})));
+    }
+
+    @Test
+    public void testBlobPositionsAreNotInline() {
+        assertFalse(InlineValues.isInline(0));
+        assertFalse(InlineValues.isInline(Long.MAX_VALUE));
+        assertFalse(InlineValues.isInline(-1));
+        assertArrayEquals(new long[]{0, 12}, InlineValues.blobPositions(new long[]{0, InlineValues.encode(new byte[]{1}), 12}));
+    }
+
+    @Test
+    public void testPacked() {
+        long value = InlineValues.packed(1234);
+        assertTrue(InlineValues.isPacked(value));
+        assertFalse(InlineValues.isInline(value));
+        assertEquals(1234, InlineValues.packedPosition(value));
+        assertFalse(InlineValues.isPacked(-1));
+        assertFalse(InlineValues.isPacked(1234));
+        assertFalse(InlineValues.isPacked(InlineValues.encode(new byte[]{1, 2})));
+        assertArrayEquals(new long[]{5, 1234}, InlineValues.blobPositions(new long[]{5, InlineValues.encode(new byte[]{1}), value}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooLarge() {
+        InlineValues.encode(new byte[8]);
+    }
+}
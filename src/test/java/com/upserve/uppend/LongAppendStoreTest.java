@@ -0,0 +1,101 @@
+package com.upserve.uppend;
+
+import com.upserve.uppend.blobs.NativeIO;
+import com.upserve.uppend.util.SafeDeleting;
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.*;
+
+import static org.junit.Assert.*;
+
+public class LongAppendStoreTest {
+    private final Path path = Paths.get("build/test/long-append-store");
+
+    private LongAppendStoreBuilder builder() {
+        return new LongAppendStoreBuilder()
+                .withDir(path.resolve("store-path"))
+                .withStoreName("test")
+                .withValuesPerBlock(4)
+                .withTargetBufferSize(16 * 1024 * 1024)
+                .withMetadataPageSize(NativeIO.pageSize)
+                .withLongLookupHashCount(16)
+                .withLookupPageSize(16 * 1024);
+    }
+
+    private LongAppendStore store;
+
+    @Before
+    public void initialize() throws IOException {
+        SafeDeleting.removeDirectory(path);
+        store = builder().build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    public void testAppendRead() {
+        for (long i = 0; i < 10; i++) {
+            store.append("partition", "ids", i * 1000);
+        }
+        store.append("partition", "negative", -1);
+        store.append("other", "ids", 42);
+
+        assertArrayEquals(LongStream.range(0, 10).map(i -> i * 1000).toArray(), store.read("partition", "ids").toArray());
+        assertArrayEquals(new long[]{-1}, store.read("partition", "negative").toArray());
+        assertArrayEquals(new long[]{42}, store.read("other", "ids").toArray());
+        assertEquals(0, store.read("partition", "missing").count());
+        assertEquals(0, store.read("missing", "ids").count());
+        store.flush();
+        assertEquals(3, store.keyCount());
+    }
+
+    @Test
+    public void testReadMany() {
+        store.append("partition", "a", 1);
+        store.append("partition", "a", 2);
+        store.append("partition", "b", 3);
+
+        Map<String, LongStream> result = store.readMany("partition", Arrays.asList("a", "b", "c"));
+        assertEquals(3, result.size());
+        assertArrayEquals(new long[]{1, 2}, result.get("a").toArray());
+        assertArrayEquals(new long[]{3}, result.get("b").toArray());
+        assertEquals(0, result.get("c").count());
+    }
+
+    @Test
+    public void testScanAndReopen() throws Exception {
+        store.append("partition", "a", 1);
+        store.append("partition", "a", 2);
+        store.append("partition", "b", 3);
+        store.close();
+
+        ReadOnlyLongAppendStore reader = builder().buildReadOnly();
+        Map<String, List<Long>> scanned = reader.scan().collect(Collectors.toMap(
+                Map.Entry::getKey,
+                entry -> Arrays.stream(entry.getValue()).boxed().collect(Collectors.toList())
+        ));
+        assertEquals(Arrays.asList(1L, 2L), scanned.get("a"));
+        assertEquals(Collections.singletonList(3L), scanned.get("b"));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), reader.keys().collect(Collectors.toSet()));
+        reader.close();
+
+        store = builder().build();
+        store.append("partition", "a", 4);
+        assertArrayEquals(new long[]{1, 2, 4}, store.read("partition", "a").toArray());
+    }
+
+    @Test
+    public void testClear() {
+        store.append("partition", "a", 1);
+        store.clear();
+        assertEquals(0, store.keyCount());
+        store.append("partition", "a", 2);
+        assertArrayEquals(new long[]{2}, store.read("partition", "a").toArray());
+    }
+}
@@ -47,4 +47,34 @@ public class UppendTest {
         store2.close();
         SafeDeleting.removeTempPath(path);
     }
+
+    @Test
+    public void testLongStore() throws Exception {
+        final String pathStr = "build/tmp/test/uppend-test-long-store/";
+        final Path path = Paths.get(pathStr);
+        SafeDeleting.removeTempPath(path);
+        LongAppendStore store = Uppend.longStore(pathStr).build();
+        store.append("partition", "foo", 5);
+        store.flush();
+        ReadOnlyLongAppendStore store2 = Uppend.longStore(path).buildReadOnly();
+        assertArrayEquals(new long[]{5}, store2.read("partition", "foo").toArray());
+        store.close();
+        store2.close();
+        SafeDeleting.removeTempPath(path);
+    }
+
+    @Test
+    public void testFixedWidthStore() throws Exception {
+        final String pathStr = "build/tmp/test/uppend-test-fixed-width-store/";
+        final Path path = Paths.get(pathStr);
+        SafeDeleting.removeTempPath(path);
+        FixedWidthAppendStore store = Uppend.fixedWidthStore(pathStr, 3).build();
+        store.append("partition", "foo", "bar".getBytes());
+        store.flush();
+        ReadOnlyFixedWidthAppendStore store2 = Uppend.fixedWidthStore(path, 3).buildReadOnly();
+        assertEquals("bar", new String(store2.read("partition", "foo").array()));
+        store.close();
+        store2.close();
+        SafeDeleting.removeTempPath(path);
+    }
 }
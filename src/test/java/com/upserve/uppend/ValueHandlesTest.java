@@ -0,0 +1,36 @@
+package com.upserve.uppend;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ValueHandlesTest {
+    @Test
+    public void testRoundTrip() {
+        long handle = ValueHandles.encode(9999, 16383, (1L << 36) - 1);
+        assertEquals(9999, ValueHandles.partition(handle));
+        assertEquals(16383, ValueHandles.virtualFileNumber(handle));
+        assertEquals((1L << 36) - 1, ValueHandles.blobPosition(handle));
+
+        handle = ValueHandles.encode(3, 0, 42);
+        assertEquals(3, ValueHandles.partition(handle));
+        assertEquals(0, ValueHandles.virtualFileNumber(handle));
+        assertEquals(42, ValueHandles.blobPosition(handle));
+    }
+
+    @Test
+    public void testPartitionName() {
+        assertEquals("0042", ValueHandles.partitionName(42));
+        assertEquals(42, ValueHandles.partitionNumber("0042"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPositionTooLarge() {
+        ValueHandles.encode(0, 0, 1L << 36);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testVirtualFileTooLarge() {
+        ValueHandles.encode(0, 1 << 14, 0);
+    }
+}
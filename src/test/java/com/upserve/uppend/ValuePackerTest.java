@@ -0,0 +1,52 @@
+package com.upserve.uppend;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ValuePackerTest {
+    private final Map<String, List<List<byte[]>>> written = new HashMap<>();
+    private final ValuePacker packer = new ValuePacker(10, (key, values) -> written.computeIfAbsent(key, k -> new ArrayList<>()).add(values));
+
+    @Test
+    public void testPackRoundTrip() {
+        List<byte[]> values = Arrays.asList(new byte[0], new byte[]{1}, new byte[200], new byte[]{2, 3});
+        byte[] chunk = ValuePacker.pack(values);
+        assertEquals(1 + 2 + 202 + 3, chunk.length);
+        assertArrayEquals(values.toArray(new byte[0][]), ValuePacker.unpack(chunk));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnpackTruncated() {
+        ValuePacker.unpack(new byte[]{5, 1, 2});
+    }
+
+    @Test
+    public void testWritesFullKeys() {
+        packer.add("a", new byte[]{1, 2, 3});
+        packer.add("b", new byte[]{1});
+        packer.add("a", new byte[]{4, 5, 6});
+        assertTrue(written.isEmpty());
+        assertEquals(2, packer.pendingKeys());
+
+        packer.add("a", new byte[]{7});
+        assertEquals(1, written.get("a").size());
+        assertEquals(3, written.get("a").get(0).size());
+        assertEquals(1, packer.pendingKeys());
+
+        packer.flush();
+        assertEquals(0, packer.pendingKeys());
+        assertEquals(1, written.get("b").size());
+        assertArrayEquals(new byte[]{1}, written.get("b").get(0).get(0));
+    }
+
+    @Test
+    public void testDiscard() {
+        packer.add("a", new byte[]{1});
+        packer.discard();
+        packer.flush();
+        assertTrue(written.isEmpty());
+    }
+}
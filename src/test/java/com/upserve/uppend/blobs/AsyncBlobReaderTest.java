@@ -0,0 +1,102 @@
+package com.upserve.uppend.blobs;
+
+import com.upserve.uppend.util.SafeDeleting;
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class AsyncBlobReaderTest {
+    private final Path rootPath = Paths.get("build/test/blobs/async_reader");
+    private final Path blobsPath = rootPath.resolve("blobs");
+
+    private VirtualPageFile virtualPageFile;
+    private VirtualAppendOnlyBlobStore store;
+
+    @Before
+    public void before() throws IOException {
+        SafeDeleting.removeDirectory(rootPath);
+        Files.createDirectories(rootPath);
+        virtualPageFile = new VirtualPageFile(blobsPath, 4, 1024, 16384, false);
+        store = new VirtualAppendOnlyBlobStore(1, virtualPageFile);
+    }
+
+    @After
+    public void after() throws IOException {
+        virtualPageFile.close();
+    }
+
+    @Test
+    public void testReadBatch() throws Exception {
+        long[] positions = new long[200];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = store.append(value(i));
+        }
+
+        AsyncBlobReader reader = new AsyncBlobReader(8);
+        byte[][] blobs = reader.read(store, positions).get(10, TimeUnit.SECONDS);
+        assertEquals(positions.length, blobs.length);
+        for (int i = 0; i < positions.length; i++) {
+            assertArrayEquals(value(i), blobs[i]);
+        }
+    }
+
+    @Test
+    public void testReadSingle() throws Exception {
+        assertReadsSingly(new AsyncBlobReader(8));
+    }
+
+    @Test
+    public void testReadSingleWithPread() throws Exception {
+        AsyncBlobReader reader = new AsyncBlobReader(8, false);
+        assertFalse(reader.isUsingIoUring());
+        assertReadsSingly(reader);
+    }
+
+    private void assertReadsSingly(AsyncBlobReader reader) throws Exception {
+        long[] positions = new long[200];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = store.append(value(i));
+        }
+        // A blob across many pages and longer than a native read chunk
+        byte[] large = new byte[100_000];
+        for (int i = 0; i < large.length; i++) large[i] = (byte) (i * 31);
+        long largePosition = store.append(large);
+
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+        for (long position : positions) {
+            futures.add(reader.read(store, position));
+        }
+        CompletableFuture<byte[]> largeFuture = reader.read(store, largePosition);
+
+        for (int i = 0; i < positions.length; i++) {
+            assertArrayEquals(value(i), futures.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertArrayEquals(large, largeFuture.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReadFailure() throws Exception {
+        AsyncBlobReader reader = new AsyncBlobReader(1);
+        CompletableFuture<byte[]> future = reader.read(store, 1L << 40);
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail("Expected the read of an unallocated page to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoThreads() {
+        new AsyncBlobReader(0);
+    }
+
+    private byte[] value(int i) {
+        return String.format("value %0" + (1 + i * 7 % 900) + "d", i).getBytes();
+    }
+}
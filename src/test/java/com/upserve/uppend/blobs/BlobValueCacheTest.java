@@ -0,0 +1,109 @@
+package com.upserve.uppend.blobs;
+
+import org.junit.Test;
+
+import java.lang.management.*;
+
+import static org.junit.Assert.*;
+
+public class BlobValueCacheTest {
+    @Test
+    public void testGetPut() {
+        BlobValueCache cache = new BlobValueCache(1024 * 1024);
+        int store = cache.register();
+        int other = cache.register();
+        assertNotEquals(store, other);
+
+        assertNull(cache.get(store, 10));
+        cache.put(store, 10, new byte[]{1, 2, 3});
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get(store, 10));
+        assertNull(cache.get(other, 10));
+        assertEquals(3, cache.size());
+
+        // The cached value is a copy
+        cache.get(store, 10)[0] = 9;
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.get(store, 10));
+    }
+
+    @Test
+    public void testBudget() {
+        BlobValueCache cache = new BlobValueCache(64 * 1024);
+        int store = cache.register();
+        // Larger than the share of a shard
+        cache.put(store, 0, new byte[2048]);
+        assertNull(cache.get(store, 0));
+
+        for (long pos = 0; pos < 10_000; pos++) {
+            cache.get(store, pos);
+            cache.put(store, pos, new byte[100]);
+        }
+        assertTrue(cache.size() <= cache.getMaxBytes());
+        assertTrue(cache.size() > cache.getMaxBytes() / 2);
+    }
+
+    @Test
+    public void testEvictionFreesDirectMemory() {
+        BufferPoolMXBean direct = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .findFirst()
+                .orElseThrow(IllegalStateException::new);
+        final long before = direct.getMemoryUsed();
+
+        BlobValueCache cache = new BlobValueCache(64 * 1024);
+        int store = cache.register();
+        for (long pos = 0; pos < 100_000; pos++) {
+            cache.get(store, pos);
+            cache.put(store, pos, new byte[100]);
+        }
+        // Ten times the budget would have been allocated if evicted values waited for a collection
+        assertTrue(direct.getMemoryUsed() - before <= 2 * cache.getMaxBytes());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(store, 99_999));
+        assertTrue(direct.getMemoryUsed() - before < cache.getMaxBytes());
+    }
+
+    @Test
+    public void testScanResistance() {
+        // Room for the hot values in every shard
+        BlobValueCache cache = new BlobValueCache(640 * 1024);
+        int store = cache.register();
+        for (int round = 0; round < 5; round++) {
+            for (long pos = 0; pos < 100; pos++) {
+                if (cache.get(store, pos) == null) cache.put(store, pos, new byte[100]);
+            }
+        }
+
+        // A scan reads each of many other values once
+        for (long pos = 1000; pos < 20_000; pos++) {
+            if (cache.get(store, pos) == null) cache.put(store, pos, new byte[100]);
+        }
+
+        int hot = 0;
+        for (long pos = 0; pos < 100; pos++) {
+            if (cache.get(store, pos) != null) hot++;
+        }
+        assertTrue("Only " + hot + " hot values survived the scan", hot > 90);
+    }
+
+    @Test
+    public void testFrequencySketch() {
+        BlobValueCache.FrequencySketch sketch = new BlobValueCache.FrequencySketch(256);
+        for (int i = 0; i < 10; i++) sketch.increment(42);
+        sketch.increment(7);
+        assertEquals(10, sketch.frequency(42));
+        assertTrue(sketch.frequency(7) >= 1);
+        for (int i = 0; i < 20; i++) sketch.increment(42);
+        assertTrue(sketch.frequency(42) <= 15);
+
+        // Counts are halved once the sample is full
+        for (int i = 0; i < 2560; i++) sketch.increment(1000 + i);
+        assertTrue(sketch.frequency(42) < 15);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadSize() {
+        new BlobValueCache(0);
+    }
+}
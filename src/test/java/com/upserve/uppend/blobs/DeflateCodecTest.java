@@ -0,0 +1,48 @@
+package com.upserve.uppend.blobs;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DeflateCodecTest {
+    private final DeflateCodec codec = new DeflateCodec();
+
+    @Test
+    public void testRoundTrip() {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            json.append("{\"id\":").append(i).append(",\"name\":\"item\",\"tags\":[\"a\",\"b\"]}");
+        }
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = codec.compress(bytes);
+        assertTrue(compressed.length * 4 < bytes.length);
+
+        byte[] padded = new byte[compressed.length + 3];
+        System.arraycopy(compressed, 0, padded, 2, compressed.length);
+        assertArrayEquals(bytes, codec.decompress(padded, 2, compressed.length, bytes.length));
+    }
+
+    @Test
+    public void testIncompressible() {
+        byte[] bytes = new byte[1000];
+        new Random(5).nextBytes(bytes);
+        byte[] compressed = codec.compress(bytes);
+        assertArrayEquals(bytes, codec.decompress(compressed, 0, compressed.length, bytes.length));
+        assertArrayEquals(new byte[0], codec.decompress(codec.compress(new byte[0]), 0, codec.compress(new byte[0]).length, 0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCorrupt() {
+        byte[] compressed = codec.compress(new byte[500]);
+        compressed[compressed.length / 2] ^= 0x55;
+        codec.decompress(compressed, 0, compressed.length, 500);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadLevel() {
+        new DeflateCodec(12);
+    }
+}
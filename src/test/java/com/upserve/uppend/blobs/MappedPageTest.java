@@ -5,14 +5,14 @@ import org.junit.*;
 import org.junit.rules.ExpectedException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.util.Random;
 
 import static java.lang.Integer.min;
 import static java.lang.Math.max;
-import static org.junit.Assert.assertArrayEquals;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class MappedPageTest {
     Path rootPath = Paths.get("build/test/blobs/mapped_page");
@@ -49,6 +49,20 @@ public class MappedPageTest {
         }
     }
 
+    @Test
+    public void testView() {
+        byte[] bytes = "hello world".getBytes();
+        rwPage.put(1000, bytes, 0);
+
+        ByteBuffer view = roPage.view(1000, bytes.length);
+        assertTrue(view.isReadOnly());
+        byte[] result = new byte[view.remaining()];
+        view.get(result);
+        assertArrayEquals(bytes, result);
+
+        assertNull(roPage.view(1020, 5));
+    }
+
     @Test
     public void testZeroOffsetZeroPositionLessThanPageSize() {
         putGetHelper(281, 0, 0);
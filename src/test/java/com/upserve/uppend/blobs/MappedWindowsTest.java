@@ -0,0 +1,219 @@
+package com.upserve.uppend.blobs;
+
+import com.upserve.uppend.metrics.SyncMetrics;
+import com.upserve.uppend.util.SafeDeleting;
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+import static org.junit.Assert.*;
+
+public class MappedWindowsTest {
+    private final Path rootPath = Paths.get("build/test/blobs/mapped_windows");
+    private final Path filePath = rootPath.resolve("testfile");
+
+    private static final int WINDOW_SIZE = 4096;
+
+    private FileChannel channel;
+    private MappedWindowPool pool;
+    private MappedWindows windows;
+
+    @Before
+    public void before() throws IOException {
+        SafeDeleting.removeDirectory(rootPath);
+        Files.createDirectories(rootPath);
+        channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        pool = new MappedWindowPool(0, 2);
+        windows = new MappedWindows(filePath, channel, FileChannel.MapMode.READ_WRITE, 16, WINDOW_SIZE, 8, null, ResidencyPolicy.NONE, pool);
+    }
+
+    @After
+    public void after() throws IOException {
+        windows.close();
+        channel.close();
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        write(0, 10L);
+        write(1, 11L);
+        assertEquals(2, pool.getMappingCount());
+
+        // Use window 0 after window 1 was mapped so that window 1 is the least recently used
+        assertEquals(10L, read(0));
+        write(2, 12L);
+
+        assertEquals(2, pool.getMappingCount());
+        assertEquals(1, pool.getEvictionCount());
+        assertTrue(windows.isMapped(0));
+        assertFalse(windows.isMapped(1));
+        assertTrue(windows.isMapped(2));
+
+        // The evicted window is mapped again on its next use
+        assertEquals(11L, read(1));
+        assertEquals(4, pool.getMapCount());
+        assertEquals(2 * WINDOW_SIZE, pool.getMappedBytes());
+    }
+
+    @Test
+    public void testClockKeepsWindowsInUse() {
+        pool.setLimits(0, 3);
+        write(0, 10L);
+        for (int index = 1; index < 8; index++) {
+            write(index, index);
+            // Using window 0 between maps keeps it ahead of the clock hand
+            assertEquals(10L, read(0));
+        }
+        assertTrue(windows.isMapped(0));
+        assertEquals(5, pool.getEvictionCount());
+        assertEquals(3, pool.getMappingCount());
+    }
+
+    @Test
+    public void testWindowedPageHasNoView() {
+        write(0, 42L);
+        MappedPage page = new MappedPage(windows, 0, 0, WINDOW_SIZE);
+        // A view could outlive the window, so the bytes are copied instead
+        assertNull(page.view(0, 8));
+        byte[] bytes = new byte[8];
+        assertEquals(8, page.get(0, bytes, 0, 8));
+    }
+
+    @Test
+    public void testPinnedViewSurvivesEviction() {
+        write(0, 42L);
+        MappedPage page = new MappedPage(windows, 0, 0, WINDOW_SIZE);
+        try (ViewPin pin = new ViewPin()) {
+            ByteBuffer view = page.view(0, 8, pin);
+            assertNotNull(view);
+            assertTrue(view.isReadOnly());
+            write(1, 1L);
+            write(2, 2L);
+            assertFalse(windows.isMapped(0));
+            // The pin keeps the evicted window mapped until it is released
+            assertEquals(42L, view.getLong());
+            assertNull(page.view(WINDOW_SIZE - 4, 8, pin));
+        }
+        assertEquals(42L, read(0));
+    }
+
+    @Test
+    public void testAcquiredWindowSurvivesEviction() {
+        MappedWindow window = windows.acquire(0);
+        try {
+            window.buffer().putLong(0, 42L);
+            write(1, 1L);
+            assertEquals(1L, read(1));
+            write(2, 2L);
+            assertFalse(windows.isMapped(0));
+            // Still mapped until it is released
+            assertEquals(42L, window.buffer().getLong(0));
+        } finally {
+            window.release();
+        }
+        assertEquals(42L, read(0));
+    }
+
+    @Test
+    public void testSetLimits() {
+        write(0, 1L);
+        write(1, 2L);
+        pool.setLimits(WINDOW_SIZE, 0);
+        assertEquals(1, pool.getMappingCount());
+        assertEquals(WINDOW_SIZE, pool.getMappedBytes());
+        assertTrue(pool.isBounded());
+
+        pool.setLimits(0, 0);
+        assertFalse(pool.isBounded());
+        write(2, 3L);
+        write(3, 4L);
+        assertEquals(3, pool.getMappingCount());
+    }
+
+    @Test
+    public void testSyncDirtyRanges() {
+        windows.setTrackWrites(true);
+        write(0, 1L);
+        write(1, 2L);
+        write(1, 3L);
+
+        MappedWindow window = windows.acquire(1);
+        try {
+            window.written(100, 8);
+            // Start 0 in the high int and end 108 in the low int
+            assertEquals(108L, window.takeDirtyRange());
+            assertEquals(-1L, window.takeDirtyRange());
+        } finally {
+            window.release();
+        }
+
+        windows.sync();
+        window = windows.acquire(0);
+        try {
+            assertEquals(-1, window.takeDirtyRange());
+        } finally {
+            window.release();
+        }
+
+        // A window evicted while dirty is synced by forcing the file. Window 0 was used since it was queued, so map
+        // enough windows that the clock comes back round to it.
+        write(0, 4L);
+        write(2, 5L);
+        write(3, 6L);
+        write(4, 7L);
+        assertFalse(windows.isMapped(0));
+        windows.sync();
+    }
+
+    @Test
+    public void testWriteback() {
+        WritebackScheduler scheduler = new WritebackScheduler(60_000, NativeIO.pageSize, new SyncMetrics.Adders());
+        windows.setWriteback(scheduler);
+        assertEquals(0, windows.writeback(NativeIO.pageSize));
+
+        write(0, 1L);
+        write(1, 2L);
+        write(1, 3L);
+
+        // The budget covers one window per round, the other waits for the next
+        assertEquals(NativeIO.pageSize, windows.writeback(NativeIO.pageSize));
+        assertEquals(NativeIO.pageSize, windows.writeback(NativeIO.pageSize));
+        assertEquals(0, windows.writeback(NativeIO.pageSize));
+
+        write(2, 4L);
+        assertEquals(NativeIO.pageSize, scheduler.writeback());
+        assertEquals(0, scheduler.writeback());
+    }
+
+    @Test
+    public void testClose() {
+        write(0, 1L);
+        write(1, 2L);
+        windows.close();
+        assertEquals(0, pool.getMappingCount());
+        assertEquals(0, pool.getMappedBytes());
+        assertFalse(windows.isMapped(0));
+    }
+
+    private void write(int index, long value) {
+        MappedWindow window = windows.acquire(index);
+        try {
+            window.buffer().putLong(0, value);
+            window.written(0, 8);
+        } finally {
+            window.release();
+        }
+    }
+
+    private long read(int index) {
+        MappedWindow window = windows.acquire(index);
+        try {
+            return window.buffer().getLong(0);
+        } finally {
+            window.release();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.upserve.uppend.blobs;
+
+import com.upserve.uppend.util.SafeDeleting;
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class PreallocatorTest {
+    private final Path rootPath = Paths.get("build/test/blobs/preallocator");
+    private final Path filePath = rootPath.resolve("testfile");
+
+    private final AtomicLong position = new AtomicLong();
+
+    @Before
+    public void before() throws IOException {
+        SafeDeleting.removeDirectory(rootPath);
+        Files.createDirectories(rootPath);
+        Files.createFile(filePath);
+    }
+
+    @Test
+    public void testKeepsHeadroom() throws Exception {
+        final long headroom = 16 * NativeIO.pageSize;
+        Preallocator preallocator = new Preallocator(filePath, headroom, position::get);
+
+        preallocator.advanced(position.get());
+        awaitAllocatedEnd(preallocator, headroom);
+        Assume.assumeTrue("fallocate is not supported here", preallocator.getAllocatedEnd() == headroom);
+
+        // Within half of the headroom nothing more is allocated
+        position.set(headroom / 4);
+        preallocator.advanced(position.get());
+        Thread.sleep(50);
+        assertEquals(headroom, preallocator.getAllocatedEnd());
+
+        position.set(headroom - 1);
+        preallocator.advanced(position.get());
+        awaitAllocatedEnd(preallocator, 2 * headroom - 1);
+        assertEquals(2 * headroom - 1, preallocator.getAllocatedEnd());
+
+        // The file keeps its size
+        assertEquals(0, Files.size(filePath));
+        preallocator.close();
+        assertEquals(0, Files.size(filePath));
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        final long headroom = 4 * NativeIO.pageSize;
+        Preallocator preallocator = new Preallocator(filePath, headroom, position::get);
+
+        preallocator.advanced(position.get());
+        awaitAllocatedEnd(preallocator, headroom);
+        preallocator.reset();
+        assertEquals(0, preallocator.getAllocatedEnd());
+        preallocator.close(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHeadroomTooSmall() throws IOException {
+        new Preallocator(filePath, 1, position::get);
+    }
+
+    private void awaitAllocatedEnd(Preallocator preallocator, long expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (preallocator.getAllocatedEnd() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.upserve.uppend.blobs;
+
+import com.upserve.uppend.util.SafeDeleting;
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class PrefaulterTest {
+    private final Path rootPath = Paths.get("build/test/blobs/prefaulter");
+    private final Path filePath = rootPath.resolve("testfile");
+
+    private static final int WINDOW_SIZE = 4 * 4096;
+
+    private final AtomicLong position = new AtomicLong(16);
+
+    private FileChannel channel;
+    private MappedWindows windows;
+
+    @Before
+    public void before() throws IOException {
+        SafeDeleting.removeDirectory(rootPath);
+        Files.createDirectories(rootPath);
+        channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        windows = new MappedWindows(filePath, channel, FileChannel.MapMode.READ_WRITE, 16, WINDOW_SIZE, 8, null, ResidencyPolicy.NONE, new MappedWindowPool(0, 0));
+    }
+
+    @After
+    public void after() throws IOException {
+        windows.close();
+        channel.close();
+    }
+
+    @Test
+    public void testPrefaultsAhead() throws Exception {
+        Prefaulter prefaulter = new Prefaulter(windows, WINDOW_SIZE, position::get);
+        prefaulter.advanced(position.get());
+        awaitPrefaultedEnd(prefaulter, 16 + WINDOW_SIZE);
+        assertEquals(16 + WINDOW_SIZE, prefaulter.getPrefaultedEnd());
+        assertTrue(windows.isMapped(0));
+        assertFalse(windows.isMapped(1));
+
+        // Within half of the distance nothing more is prefaulted
+        position.set(16 + WINDOW_SIZE / 4);
+        prefaulter.advanced(position.get());
+        Thread.sleep(50);
+        assertEquals(16 + WINDOW_SIZE, prefaulter.getPrefaultedEnd());
+
+        position.set(16 + 2 * WINDOW_SIZE);
+        prefaulter.advanced(position.get());
+        awaitPrefaultedEnd(prefaulter, 16 + 3 * WINDOW_SIZE);
+        assertEquals(16 + 3 * WINDOW_SIZE, prefaulter.getPrefaultedEnd());
+        assertTrue(windows.isMapped(2));
+        assertFalse(windows.isMapped(3));
+        prefaulter.close();
+    }
+
+    @Test
+    public void testPause() throws Exception {
+        Prefaulter prefaulter = new Prefaulter(windows, WINDOW_SIZE, position::get);
+        prefaulter.pause();
+        prefaulter.advanced(position.get());
+        Thread.sleep(50);
+        assertEquals(0, prefaulter.getPrefaultedEnd());
+        assertFalse(windows.isMapped(0));
+
+        prefaulter.resume();
+        awaitPrefaultedEnd(prefaulter, 16 + WINDOW_SIZE);
+        assertEquals(16 + WINDOW_SIZE, prefaulter.getPrefaultedEnd());
+        prefaulter.close();
+    }
+
+    @Test
+    public void testPrefaultKeepsContent() {
+        MappedWindow window = windows.acquire(0);
+        try {
+            window.buffer().putLong(8, 42L);
+        } finally {
+            window.release();
+        }
+        windows.prefault(0, 2 * WINDOW_SIZE);
+
+        window = windows.acquire(0);
+        try {
+            assertEquals(42L, window.buffer().getLong(8));
+        } finally {
+            window.release();
+        }
+    }
+
+    private void awaitPrefaultedEnd(Prefaulter prefaulter, long expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10_000;
+        while (prefaulter.getPrefaultedEnd() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.upserve.uppend.blobs;
+
+import com.upserve.uppend.util.SafeDeleting;
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+import static org.junit.Assert.*;
+
+public class ResidencyPolicyTest {
+    private final Path rootPath = Paths.get("build/test/blobs/residency_policy");
+    private final Path filePath = rootPath.resolve("testfile");
+
+    private FileChannel channel;
+
+    @Before
+    public void before() throws IOException {
+        SafeDeleting.removeDirectory(rootPath);
+        Files.createDirectories(rootPath);
+        channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+    }
+
+    @After
+    public void after() throws IOException {
+        channel.close();
+    }
+
+    @Test
+    public void testBudget() throws IOException {
+        ResidencyPolicy policy = new ResidencyPolicy(true, true, false, 2 * NativeIO.pageSize);
+        assertTrue(policy.isEnabled());
+
+        MappedByteBuffer first = map(0);
+        MappedByteBuffer second = map(1);
+        MappedByteBuffer third = map(2);
+
+        long firstReserved = policy.mapped(first);
+        long secondReserved = policy.mapped(second);
+        assertEquals(NativeIO.pageSize, firstReserved);
+        assertEquals(NativeIO.pageSize, secondReserved);
+        assertEquals(2 * NativeIO.pageSize, policy.getResidentBytes());
+
+        // Over budget - left to the page cache
+        assertEquals(0, policy.mapped(third));
+        policy.unmapped(third, 0);
+        assertEquals(2 * NativeIO.pageSize, policy.getResidentBytes());
+
+        policy.unmapped(first, firstReserved);
+        assertEquals(NativeIO.pageSize, policy.getResidentBytes());
+        assertEquals(NativeIO.pageSize, policy.mapped(third));
+    }
+
+    @Test
+    public void testLockFallsBackToPrefault() throws IOException {
+        ResidencyPolicy policy = new ResidencyPolicy(false, true, true, NativeIO.pageSize);
+        MappedByteBuffer buffer = map(0);
+
+        // Locking may be refused by RLIMIT_MEMLOCK, but the region is still pre-faulted within the budget
+        long reserved = policy.mapped(buffer);
+        assertEquals(NativeIO.pageSize, reserved);
+        policy.unmapped(buffer, reserved);
+        assertEquals(0, policy.getResidentBytes());
+    }
+
+    @Test
+    public void testNone() throws IOException {
+        assertFalse(ResidencyPolicy.NONE.isEnabled());
+        assertEquals(0, ResidencyPolicy.NONE.mapped(map(0)));
+        assertEquals(0, ResidencyPolicy.NONE.getResidentBytes());
+    }
+
+    @Test
+    public void testVirtualPageFileReleasesOnClose() throws IOException {
+        ResidencyPolicy policy = new ResidencyPolicy(false, true, false, 1024L * 1024 * 1024);
+        VirtualPageFile file = new VirtualPageFile(rootPath.resolve("virtual"), 4, 1024, 16384, false, true, PageBackend.MAPPED, policy);
+        VirtualAppendOnlyBlobStore store = new VirtualAppendOnlyBlobStore(1, file);
+        long pos = store.append("abc".getBytes());
+        assertArrayEquals("abc".getBytes(), store.read(pos));
+        assertTrue(policy.getResidentBytes() > 0);
+
+        file.close();
+        assertEquals(0, policy.getResidentBytes());
+    }
+
+    private MappedByteBuffer map(int page) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, (long) page * NativeIO.pageSize, NativeIO.pageSize);
+    }
+}
@@ -1,17 +1,19 @@
 package com.upserve.uppend.blobs;
 
 import com.google.common.primitives.Longs;
+import com.upserve.uppend.metrics.BlobStoreMetrics;
 import com.upserve.uppend.util.SafeDeleting;
 import org.junit.*;
 import org.junit.rules.ExpectedException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.*;
+import java.util.*;
 import java.util.concurrent.*;
 import java.util.stream.*;
 
-import static org.junit.Assert.assertArrayEquals;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class VirtualAppendOnlyBlobStoreTest {
 
@@ -56,6 +58,27 @@ public class VirtualAppendOnlyBlobStoreTest {
         assertEquals(7, store.getPosition());
     }
 
+    @Test
+    public void testAppendPastMaxPosition() {
+        setup(4);
+        VirtualAppendOnlyBlobStore store = new VirtualAppendOnlyBlobStore(2, virtualPageFile);
+
+        long pos = store.append("abc".getBytes(), 7);
+        assertEquals(7, store.getPosition());
+        // The blob would start at 7, so it fits; the next one would not
+        assertEquals(7, store.append("d".getBytes(), 7));
+        long end = store.getPosition();
+        try {
+            store.append("ef".getBytes(), 7);
+            fail("Expected the append past the max position to fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertArrayEquals("abc".getBytes(), store.read(pos));
+        assertArrayEquals("d".getBytes(), store.read(7));
+        assertEquals(end, store.getPosition());
+    }
+
     @Test
     public void testAppendReadEmpty() {
         setup(12);
@@ -166,6 +189,35 @@ public class VirtualAppendOnlyBlobStoreTest {
         return String.format("%s_%05d_%05d", head, virtualStoreNumber, times);
     }
 
+    @Test
+    public void testAdvisedSequentialRead() {
+        setup(NativeIO.pageSize);
+        VirtualAppendOnlyBlobStore store = new VirtualAppendOnlyBlobStore(4, virtualPageFile);
+
+        long[] positions = IntStream.range(0, 200)
+                .mapToLong(i -> store.append(String.format("value %0500d", i).getBytes()))
+                .toArray();
+        assertEquals(24, store.pageNumber(store.getPosition()));
+
+        store.prefetch(positions);
+        // Positions out of order are sorted into runs of pages
+        store.prefetch(LongStream.range(0, positions.length).map(i -> positions[positions.length - 1 - (int) i]).toArray());
+        store.prefetch(new long[]{});
+        // Advising past the allocated pages is ignored
+        store.advise(store.getPosition(), 10 * NativeIO.pageSize, NativeIO.Advice.WillNeed);
+
+        try (SequentialReadAdvisor advisor = new SequentialReadAdvisor(store, 2)) {
+            for (int i = 0; i < positions.length; i++) {
+                advisor.advance(positions[i]);
+                assertArrayEquals(String.format("value %0500d", i).getBytes(), store.read(positions[i]));
+            }
+        }
+
+        // Released pages are read back from the page cache
+        assertArrayEquals(String.format("value %0500d", 0).getBytes(), store.read(positions[0]));
+        assertArrayEquals(String.format("value %0500d", 199).getBytes(), store.read(positions[199]));
+    }
+
     @Test
     public void testClose() throws IOException {
         setup(25);
@@ -185,6 +237,137 @@ public class VirtualAppendOnlyBlobStoreTest {
                 .forEach(storeNumber -> testVirtualBlobStore(storeNumber, 2));
     }
 
+    @Test
+    public void testReadCoalesced() {
+        setup(1280);
+        VirtualAppendOnlyBlobStore store = new VirtualAppendOnlyBlobStore(2, virtualPageFile);
+        VirtualAppendOnlyBlobStore other = new VirtualAppendOnlyBlobStore(3, virtualPageFile);
+
+        Random random = new Random(42);
+        byte[][] values = new byte[300][];
+        long[] positions = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            // Mostly small values appended back to back, with a few far apart or too large to coalesce
+            values[i] = new byte[i % 50 == 49 ? 3 * VirtualAppendOnlyBlobStore.COALESCE_BYTES : random.nextInt(200)];
+            random.nextBytes(values[i]);
+            positions[i] = store.append(values[i]);
+            if (i % 20 == 0) store.append(new byte[VirtualAppendOnlyBlobStore.COALESCE_BYTES]);
+            other.append(values[i]);
+        }
+
+        // Read in a shuffled order with a repeated position
+        int[] order = IntStream.range(0, values.length + 1).map(i -> i == values.length ? 7 : i).toArray();
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+
+        byte[][] result = store.read(Arrays.stream(order).mapToLong(i -> positions[i]).toArray());
+        assertEquals(order.length, result.length);
+        for (int i = 0; i < order.length; i++) {
+            assertArrayEquals(values[order[i]], result[i]);
+        }
+        assertEquals(0, store.read(new long[0]).length);
+    }
+
+    @Test
+    public void testCompactLengths() {
+        // Small pages so that lengths cross from one page into the next
+        setup(64);
+        VirtualAppendOnlyBlobStore store = new VirtualAppendOnlyBlobStore(2, virtualPageFile, new BlobStoreMetrics.Adders(), true);
+
+        Random random = new Random(11);
+        byte[][] values = new byte[200][];
+        long[] positions = new long[values.length];
+        long end = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new byte[i % 10 == 9 ? 200 + random.nextInt(200) : random.nextInt(20)];
+            random.nextBytes(values[i]);
+            positions[i] = store.append(values[i]);
+            assertEquals(end, positions[i]);
+            end += values[i].length + (values[i].length < 64 ? 1 : 2);
+        }
+        assertEquals(end, store.getPosition());
+
+        byte[][] result = store.read(positions);
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        for (int i = 0; i < values.length; i++) {
+            assertArrayEquals(values[i], store.read(positions[i]));
+            assertArrayEquals(values[i], result[i]);
+            ByteBuffer view = store.read(positions[i], buffer, ByteBuffer::allocate);
+            byte[] viewBytes = new byte[view.remaining()];
+            view.get(viewBytes);
+            assertArrayEquals(values[i], viewBytes);
+        }
+    }
+
+    @Test
+    public void testCompression() {
+        setup(256);
+        for (int virtualFileNumber : new int[]{2, 3}) {
+            final boolean compactLengths = virtualFileNumber == 3;
+            VirtualAppendOnlyBlobStore store = new VirtualAppendOnlyBlobStore(virtualFileNumber, virtualPageFile, new BlobStoreMetrics.Adders(), compactLengths, new DeflateCodec(), 100);
+
+            Random random = new Random(13);
+            byte[][] values = new byte[100][];
+            long[] positions = new long[values.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = new byte[i == 0 ? 50 : 200 + random.nextInt(800)];
+                // Every third value is incompressible, the rest compress well
+                if (i % 3 == 0) random.nextBytes(values[i]); else Arrays.fill(values[i], (byte) i);
+                positions[i] = store.append(values[i]);
+            }
+            long rawBytes = Arrays.stream(values).mapToLong(value -> value.length).sum();
+            assertTrue(store.getPosition() < rawBytes / 2);
+
+            byte[][] result = store.read(positions);
+            ByteBuffer buffer = ByteBuffer.allocate(8);
+            for (int i = 0; i < values.length; i++) {
+                assertArrayEquals(values[i], store.read(positions[i]));
+                assertArrayEquals(values[i], result[i]);
+                ByteBuffer view = store.read(positions[i], buffer, ByteBuffer::allocate);
+                byte[] viewBytes = new byte[view.remaining()];
+                view.get(viewBytes);
+                assertArrayEquals(values[i], viewBytes);
+            }
+
+            // Records which were stored as they are can be read without the codec
+            VirtualAppendOnlyBlobStore withoutCodec = new VirtualAppendOnlyBlobStore(virtualFileNumber, virtualPageFile, new BlobStoreMetrics.Adders(), compactLengths);
+            assertArrayEquals(values[0], withoutCodec.read(positions[0]));
+            try {
+                withoutCodec.read(positions[1]);
+                fail("Read a compressed record without a codec");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage().contains("codec"));
+            }
+        }
+    }
+
+    @Test
+    public void testValueCache() {
+        setup(256);
+        BlobStoreMetrics.Adders adders = new BlobStoreMetrics.Adders();
+        VirtualAppendOnlyBlobStore store = new VirtualAppendOnlyBlobStore(2, virtualPageFile, adders);
+        store.setValueCache(new BlobValueCache(1024 * 1024));
+
+        long pos1 = store.append(new byte[]{1, 2});
+        long pos2 = store.append(new byte[]{3});
+        assertArrayEquals(new byte[]{1, 2}, store.read(pos1));
+        assertArrayEquals(new byte[]{1, 2}, store.read(pos1));
+        assertEquals(1, adders.cacheHitCounter.sum());
+        assertEquals(1, adders.cacheMissCounter.sum());
+        assertEquals(1, adders.readCounter.sum());
+
+        byte[][] result = store.read(new long[]{pos2, pos1, pos2});
+        assertArrayEquals(new byte[][]{{3}, {1, 2}, {3}}, result);
+        assertEquals(2, adders.cacheHitCounter.sum());
+        assertEquals(3, adders.cacheMissCounter.sum());
+        assertArrayEquals(new byte[]{3}, store.read(pos2));
+        assertEquals(3, adders.cacheHitCounter.sum());
+    }
+
     @Test
     public void testConcurrent() {
         setup(1280);
@@ -3,7 +3,7 @@ package com.upserve.uppend.blobs;
 import com.upserve.uppend.util.SafeDeleting;
 import org.junit.*;
 
-import java.io.IOException;
+import java.io.*;
 import java.nio.file.*;
 
 import static junit.framework.TestCase.assertEquals;
@@ -73,6 +73,232 @@ public class VirtualPageFileTest {
         assertArrayEquals("ghi".getBytes(), result);
     }
 
+    @Test
+    public void testLazyPositionPublishing() throws IOException {
+        instance = new VirtualPageFile(path, 36, 1024, 16384, false);
+        instance.setLazyPositionPublishing(true);
+        VirtualPageFile reader = new VirtualPageFile(path, 36, 1024, 16384, true);
+
+        assertEquals(0, instance.appendPosition(0, 100));
+        assertEquals(100, instance.appendPosition(0, 100));
+        assertEquals(0, instance.appendPosition(1, 8));
+        assertEquals(200, instance.getPosition(0));
+        assertEquals(8, instance.getPosition(1));
+        assertEquals(0, reader.getPosition(0));
+        assertEquals(0, reader.getPosition(1));
+
+        // Crossing into a new page publishes the position
+        assertEquals(200, instance.appendPosition(0, 1000));
+        assertEquals(1200, reader.getPosition(0));
+        assertEquals(1200, instance.appendPosition(0, 10));
+        assertEquals(1200, reader.getPosition(0));
+
+        // Publishing one virtual file leaves the others
+        instance.publishPosition(1);
+        assertEquals(8, reader.getPosition(1));
+        assertEquals(1200, reader.getPosition(0));
+
+        instance.flush();
+        assertEquals(1210, reader.getPosition(0));
+        assertEquals(8, reader.getPosition(1));
+        reader.close();
+    }
+
+    @Test
+    public void testSizeClassPositions() throws IOException {
+        final int pageSize = NativeIO.pageSize * 16;
+        instance = new VirtualPageFile(path, 4, pageSize, pageSize * 4, false, true, PageBackend.MAPPED, ResidencyPolicy.NONE, true);
+        assertTrue(instance.hasSizeClasses());
+
+        // Pages double from a sixteenth of the page size
+        final int firstPageSize = NativeIO.pageSize;
+        assertEquals(firstPageSize, instance.getPageSize(0));
+        assertEquals(2 * firstPageSize, instance.getPageSize(1));
+        assertEquals(8 * firstPageSize, instance.getPageSize(3));
+        assertEquals(pageSize, instance.getPageSize(4));
+        assertEquals(pageSize, instance.getPageSize(40));
+
+        assertEquals(0, instance.pageNumber(firstPageSize - 1));
+        assertEquals(1, instance.pageNumber(firstPageSize));
+        assertEquals(0, instance.pagePosition(firstPageSize));
+        assertEquals(2, instance.pageNumber(3 * firstPageSize));
+        assertEquals(3, instance.pageNumber(15 * firstPageSize - 1));
+        assertEquals(4, instance.pageNumber(15 * firstPageSize));
+        assertEquals(5, instance.pageNumber(15 * firstPageSize + pageSize));
+        assertEquals(10, instance.pagePosition(15 * firstPageSize + pageSize + 10));
+
+        for (int page = 0; page < 8; page++) {
+            assertEquals(page, instance.pageNumber(instance.pageStart(page)));
+            assertEquals(page, instance.pageNumber(instance.pageStart(page) + instance.getPageSize(page) - 1));
+        }
+    }
+
+    @Test
+    public void testSizeClasses() throws IOException {
+        final int pageSize = NativeIO.pageSize * 16;
+        instance = new VirtualPageFile(path, 4, pageSize, pageSize * 4, false, true, PageBackend.MAPPED, ResidencyPolicy.NONE, true);
+        VirtualAppendOnlyBlobStore[] stores = new VirtualAppendOnlyBlobStore[4];
+        for (int i = 0; i < stores.length; i++) stores[i] = new VirtualAppendOnlyBlobStore(i, instance);
+
+        // Values which straddle the growing pages of interleaved virtual files
+        java.util.Random random = new java.util.Random(42);
+        byte[][] values = new byte[200][];
+        long[] positions = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = new byte[random.nextInt(3 * NativeIO.pageSize)];
+            random.nextBytes(values[i]);
+            positions[i] = stores[i % 4].append(values[i]);
+        }
+        for (int i = 0; i < values.length; i++) {
+            assertArrayEquals(values[i], stores[i % 4].read(positions[i]));
+        }
+
+        instance.close();
+        // An existing file keeps its layout
+        instance = new VirtualPageFile(path, 4, pageSize, pageSize * 4, false);
+        assertTrue(instance.hasSizeClasses());
+        for (int i = 0; i < stores.length; i++) stores[i] = new VirtualAppendOnlyBlobStore(i, instance);
+        long position = stores[1].append(values[0]);
+
+        instance.close();
+        instance = new VirtualPageFile(path, 4, pageSize, pageSize * 4, true);
+        for (int i = 0; i < values.length; i++) {
+            assertArrayEquals(values[i], new VirtualAppendOnlyBlobStore(i % 4, instance).read(positions[i]));
+        }
+        assertArrayEquals(values[0], new VirtualAppendOnlyBlobStore(1, instance).read(position));
+    }
+
+    @Test
+    public void testSizeClassesSaveSpace() throws IOException {
+        final int pageSize = NativeIO.pageSize * 64;
+        final Path uniformPath = rootPath.resolve("uniform");
+        instance = new VirtualPageFile(path, 32, pageSize, pageSize * 4, false, true, PageBackend.MAPPED, ResidencyPolicy.NONE, true);
+        VirtualPageFile uniform = new VirtualPageFile(uniformPath, 32, pageSize, pageSize * 4, false);
+        for (int i = 0; i < 32; i++) {
+            new VirtualAppendOnlyBlobStore(i, instance).append("abc".getBytes());
+            new VirtualAppendOnlyBlobStore(i, uniform).append("abc".getBytes());
+        }
+        instance.close();
+        uniform.close();
+        assertTrue(Files.size(path) * 8 < Files.size(uniformPath));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPageSizeMismatch() throws IOException {
+        new VirtualPageFile(path, 4, 1024, 16384, false).close();
+        instance = new VirtualPageFile(path, 4, 2048, 16384, false);
+    }
+
+    @Test
+    public void testFileChannelBackend() throws IOException {
+        backendHelper(PageBackend.FILE_CHANNEL, 1024);
+    }
+
+    @Test
+    public void testDirectBackend() throws IOException {
+        Assume.assumeTrue(System.getProperty("os.name").startsWith("Linux"));
+        try {
+            new VirtualPageFile(path, 4, NativeIO.pageSize, NativeIO.pageSize * 16, false, true, PageBackend.DIRECT).close();
+        } catch (UncheckedIOException e) {
+            Assume.assumeTrue("O_DIRECT is not supported by the test file system", false);
+        }
+        SafeDeleting.removeDirectory(rootPath);
+        Files.createDirectories(rootPath);
+
+        backendHelper(PageBackend.DIRECT, NativeIO.pageSize);
+    }
+
+    @Test
+    public void testDirectBackendPageSize() throws IOException {
+        Assume.assumeTrue(NativeIO.pageSize > 1024);
+        try {
+            new VirtualPageFile(path, 4, 1024, 16384, false, true, PageBackend.DIRECT);
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("multiple of the host system page size"));
+            return;
+        }
+        throw new AssertionError("Expected IllegalArgumentException");
+    }
+
+    @Test
+    public void testSegmentBackend() throws IOException {
+        Assume.assumeTrue("Memory segments require Java 21 with --enable-preview", VirtualPageFile.isSegmentSupported());
+        backendHelper(PageBackend.SEGMENT, 1024);
+    }
+
+    @Test
+    public void testSegmentBackendFallback() throws IOException {
+        Assume.assumeFalse(VirtualPageFile.isSegmentSupported());
+        instance = new VirtualPageFile(path, 4, 1024, 16384, false, true, PageBackend.SEGMENT);
+        assertEquals(PageBackend.MAPPED, instance.getPageBackend());
+    }
+
+    @Test
+    public void testBoundedMappedWindows() throws IOException {
+        MappedWindowPool pool = MappedWindowPool.getInstance();
+        long maxMappedBytes = pool.getMaxMappedBytes();
+        int maxMappings = pool.getMaxMappings();
+        pool.setLimits(0, 2);
+        try {
+            instance = new VirtualPageFile(path, 4, 1024, 2048, false);
+            VirtualAppendOnlyBlobStore[] stores = new VirtualAppendOnlyBlobStore[4];
+            for (int i = 0; i < stores.length; i++) stores[i] = new VirtualAppendOnlyBlobStore(i, instance);
+
+            long[] positions = new long[100];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = stores[i % 4].append(boundedValue(i));
+            }
+            assertTrue(pool.getMappingCount() <= 2);
+
+            for (int i = 0; i < positions.length; i++) {
+                assertArrayEquals(boundedValue(i), stores[i % 4].read(positions[i]));
+            }
+            assertTrue(pool.getMappingCount() <= 2);
+            assertTrue(pool.getEvictionCount() > 0);
+
+            instance.close();
+            instance = new VirtualPageFile(path, 4, 1024, 2048, true);
+            assertArrayEquals(boundedValue(99), new VirtualAppendOnlyBlobStore(3, instance).read(positions[99]));
+        } finally {
+            pool.setLimits(maxMappedBytes, maxMappings);
+        }
+    }
+
+    private byte[] boundedValue(int i) {
+        return String.format("value %0100d", i).getBytes();
+    }
+
+    private void backendHelper(PageBackend pageBackend, int pageSize) throws IOException {
+        instance = new VirtualPageFile(path, 4, pageSize, pageSize * 16, false, true, pageBackend);
+        assertEquals(pageBackend, instance.getPageBackend());
+
+        byte[] bytes = new byte[pageSize + 100];
+        new java.util.Random(42).nextBytes(bytes);
+
+        VirtualAppendOnlyBlobStore store = new VirtualAppendOnlyBlobStore(2, instance);
+        long pos1 = store.append("abc".getBytes());
+        long pos2 = store.append(bytes);
+        long pos3 = store.append("def".getBytes());
+
+        assertArrayEquals("abc".getBytes(), store.read(pos1));
+        assertArrayEquals(bytes, store.read(pos2));
+        assertArrayEquals("def".getBytes(), store.read(pos3));
+
+        instance.close();
+
+        // The file format does not depend on the backend
+        instance = new VirtualPageFile(path, 4, pageSize, pageSize * 16, true);
+        store = new VirtualAppendOnlyBlobStore(2, instance);
+        assertArrayEquals("abc".getBytes(), store.read(pos1));
+        assertArrayEquals(bytes, store.read(pos2));
+        assertArrayEquals("def".getBytes(), store.read(pos3));
+
+        instance.close();
+        instance = new VirtualPageFile(path, 4, pageSize, pageSize * 16, true, true, pageBackend);
+        store = new VirtualAppendOnlyBlobStore(2, instance);
+        assertArrayEquals(bytes, store.read(pos2));
+    }
+
     @Test
     public void testReadOnlyTruncation() throws IOException {
         instance = new VirtualPageFile(path, 36, 1024, 16384, false);
@@ -30,8 +30,14 @@ public class BenchmarkTest extends TestHelper.IoStreamHelper {
     @Test
     public void tesUsage() {
         commandLine.execute("--help");
-        assertStdOutContains("Usage: uppend benchmark [-k] [--help] [-b=<bufferSize>] [-c=<benchmarkCase>]");
-        assertStdOutContains("[-m=<mode>] [-s=<size>] <path>");
+        assertStdOutContains("Usage: uppend benchmark [-k] [--help] [-b=<bufferSize>]");
+        assertStdOutContains("[--blob-backend=<blobPageBackend>]");
+        assertStdOutContains("[-c=<benchmarkCase>]");
+        assertStdOutContains("[--key-backend=<keyPageBackend>]");
+        assertStdOutContains("[-m=<mode>]");
+        assertStdOutContains("[--metadata-backend=<metadataPageBackend>]");
+        assertStdOutContains("[-s=<size>]");
+        assertStdOutContains("<path>");
     }
 
     @Test
@@ -29,7 +29,9 @@ public class FileStoreBenchmarkTest extends TestHelper.IoStreamHelper {
     @Test
     public void tesUsage() {
         commandLine.execute("--help");
-        assertStdOutContains("Usage: uppend filestore [--help] [-b=<bufferSize>] [-n=<nfiles>]");
+        assertStdOutContains("Usage: uppend filestore [--help] [-b=<bufferSize>]");
+        assertStdOutContains("[--backend=<pageBackend>]");
+        assertStdOutContains("[-n=<nfiles>]");
         assertStdOutContains("[-p=<pageSize>] [-s=<size>] <path>");
     }
 
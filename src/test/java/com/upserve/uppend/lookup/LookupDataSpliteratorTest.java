@@ -0,0 +1,86 @@
+package com.upserve.uppend.lookup;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.*;
+
+import static org.junit.Assert.*;
+
+public class LookupDataSpliteratorTest {
+
+    @Test
+    public void testSequential() {
+        LookupDataSpliterator<Long> spliterator = new LookupDataSpliterator<>(new int[]{1, 2, 3}, Arrays.asList(10L, 11L), position -> position);
+        assertEquals(5, spliterator.estimateSize());
+        assertEquals(Arrays.asList(1L, 2L, 3L, 10L, 11L), StreamSupport.stream(spliterator, false).collect(Collectors.toList()));
+        assertEquals(0, spliterator.estimateSize());
+    }
+
+    @Test
+    public void testTryAdvance() {
+        LookupDataSpliterator<Long> spliterator = new LookupDataSpliterator<>(new int[]{1}, Collections.singletonList(10L), position -> position);
+        List<Long> result = new ArrayList<>();
+        while (spliterator.tryAdvance(result::add)) ;
+        assertEquals(Arrays.asList(1L, 10L), result);
+    }
+
+    @Test
+    public void testTryAdvanceOneAtATime() {
+        LookupDataSpliterator<Long> spliterator = new LookupDataSpliterator<>(new int[]{1}, Arrays.asList(10L, 11L, 12L), position -> position);
+        List<Long> result = new ArrayList<>();
+        assertTrue(spliterator.tryAdvance(result::add));
+        assertTrue(spliterator.tryAdvance(result::add));
+        assertEquals(Arrays.asList(1L, 10L), result);
+        assertEquals(2, spliterator.estimateSize());
+
+        // The rest of the write cache is split off after a partial advance
+        Spliterator<Long> rest = spliterator.trySplit();
+        assertEquals(2, rest.estimateSize());
+        rest.forEachRemaining(result::add);
+        assertEquals(Arrays.asList(1L, 10L, 11L, 12L), result);
+
+        assertEquals(Optional.of(10L), StreamSupport.stream(new LookupDataSpliterator<>(new int[0], Arrays.asList(10L, 11L), position -> position), false)
+                .peek(value -> assertEquals(10L, (long) value))
+                .findFirst());
+    }
+
+    @Test
+    public void testSplitWriteCacheFirst() {
+        LookupDataSpliterator<Long> spliterator = new LookupDataSpliterator<>(new int[]{1, 2, 3, 4}, Arrays.asList(10L, 11L), position -> position);
+
+        Spliterator<Long> writeCache = spliterator.trySplit();
+        assertEquals(2, writeCache.estimateSize());
+        assertEquals(4, spliterator.estimateSize());
+
+        Spliterator<Long> prefix = spliterator.trySplit();
+        assertEquals(2, prefix.estimateSize());
+        assertEquals(2, spliterator.estimateSize());
+
+        List<Long> result = new ArrayList<>();
+        writeCache.forEachRemaining(result::add);
+        prefix.forEachRemaining(result::add);
+        spliterator.forEachRemaining(result::add);
+        assertEquals(Arrays.asList(10L, 11L, 1L, 2L, 3L, 4L), result);
+    }
+
+    @Test
+    public void testSplitToSingleElements() {
+        LookupDataSpliterator<Long> spliterator = new LookupDataSpliterator<>(new int[]{1}, Collections.emptyList(), position -> position);
+        assertNull(spliterator.trySplit());
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SUBSIZED));
+    }
+
+    @Test
+    public void testParallel() {
+        int[] positions = IntStream.range(0, 100_000).toArray();
+        List<Long> writeCache = LongStream.range(100_000, 100_100).boxed().collect(Collectors.toList());
+
+        long[] result = StreamSupport.stream(new LookupDataSpliterator<>(positions, writeCache, position -> position), true)
+                .mapToLong(Long::longValue)
+                .sorted()
+                .toArray();
+
+        assertArrayEquals(LongStream.range(0, 100_100).toArray(), result);
+    }
+}
@@ -147,6 +147,75 @@ public class LookupDataTest {
         assertEquals(Long.valueOf(80), result);
     }
 
+    @Test
+    public void testGetValues() throws IOException {
+        LookupData data = LookupData.lookupWriter(keyBlobStore, mutableBlobStore, FLUSH_THRESHOLD);
+
+        LongStream.range(0, 10_000)
+                .filter(val -> val % 3 != 0)
+                .forEach(val -> data.put(new LookupKey(String.valueOf(val)), val));
+        data.flush();
+        data.put(new LookupKey("3"), 3);
+
+        List<LookupKey> keys = LongStream.range(0, 10_010)
+                .mapToObj(val -> new LookupKey(String.valueOf(val)))
+                .collect(Collectors.toList());
+        Collections.shuffle(keys, new Random(1234));
+
+        Long[] expected = keys.stream().map(data::getValue).toArray(Long[]::new);
+        assertArrayEquals(expected, data.getValues(keys));
+
+        tearDown();
+        setup(true);
+
+        LookupData reader = LookupData.lookupReader(keyBlobStore, mutableBlobStore, RELOAD_INTERVAL);
+        expected = keys.stream().map(reader::getValue).toArray(Long[]::new);
+        assertArrayEquals(expected, reader.getValues(keys));
+        assertEquals(3344, Arrays.stream(expected).filter(Objects::isNull).count());
+    }
+
+    @Test
+    public void testSortedRange() throws IOException {
+        LookupData data = LookupData.lookupWriter(keyBlobStore, mutableBlobStore, FLUSH_THRESHOLD);
+
+        LongStream.range(0, 10_000)
+                .filter(val -> val % 3 != 0)
+                .forEach(val -> data.put(new LookupKey(String.valueOf(val)), val));
+        data.flush();
+        LongStream.range(0, 100)
+                .filter(val -> val % 3 == 0)
+                .forEach(val -> data.put(new LookupKey(String.valueOf(val)), val));
+
+        assertSortedRange(data, null, null);
+        assertSortedRange(data, new LookupKey("12"), new LookupKey("5"));
+        assertSortedRange(data, new LookupKey("3"), new LookupKey("31"));
+        assertSortedRange(data, new LookupKey("99"), null);
+        assertSortedRange(data, new LookupKey("5"), new LookupKey("12"));
+
+        tearDown();
+        setup(true);
+
+        LookupData reader = LookupData.lookupReader(keyBlobStore, mutableBlobStore, RELOAD_INTERVAL);
+        assertSortedRange(reader, null, null);
+        assertSortedRange(reader, new LookupKey("12"), new LookupKey("5"));
+        assertEquals(6666, reader.keys(null, null).count());
+    }
+
+    private void assertSortedRange(LookupData data, LookupKey fromKey, LookupKey toKey) {
+        List<LookupKey> expected = data.keys()
+                .filter(key -> fromKey == null || key.compareTo(fromKey) >= 0)
+                .filter(key -> toKey == null || key.compareTo(toKey) < 0)
+                .sorted()
+                .collect(Collectors.toList());
+
+        assertEquals(expected, data.keys(fromKey, toKey).collect(Collectors.toList()));
+        assertEquals(
+                expected,
+                data.scan(fromKey, toKey).map(Map.Entry::getKey).collect(Collectors.toList())
+        );
+        data.scan(fromKey, toKey).forEach(entry -> assertEquals(entry.getValue(), data.getValue(entry.getKey())));
+    }
+
     @Test
     public void testWriteCacheUnderLoad() throws IOException {
         LookupData data = LookupData.lookupWriter(keyBlobStore, mutableBlobStore, FLUSH_THRESHOLD);
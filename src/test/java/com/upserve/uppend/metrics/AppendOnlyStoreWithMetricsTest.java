@@ -95,6 +95,20 @@ public class AppendOnlyStoreWithMetricsTest {
         assertEquals(4, metrics.meter(MetricRegistry.name("MetricsRoot", UPPEND_APPEND_STORE, store.getName(), READ_BYTES_METER_METRIC_NAME)).getCount());
     }
 
+    @Test
+    public void testReadHandles() {
+        assertEquals(0, metrics.timer(MetricRegistry.name("MetricsRoot", UPPEND_APPEND_STORE, store.getName(), READ_TIMER_METRIC_NAME)).getCount());
+        assertEquals(0, metrics.meter(MetricRegistry.name("MetricsRoot", UPPEND_APPEND_STORE, store.getName(), READ_BYTES_METER_METRIC_NAME)).getCount());
+        when(store.readHandles(new long[]{1, 2, 3}))
+                .thenReturn(new byte[][]{"first".getBytes(), null, "third".getBytes()});
+        assertEquals(
+                "third",
+                new String(instance.readHandles(new long[]{1, 2, 3})[2])
+        );
+        assertNotEquals(0, metrics.timer(MetricRegistry.name("MetricsRoot", UPPEND_APPEND_STORE, store.getName(), READ_TIMER_METRIC_NAME)).getCount());
+        assertEquals(10, metrics.meter(MetricRegistry.name("MetricsRoot", UPPEND_APPEND_STORE, store.getName(), READ_BYTES_METER_METRIC_NAME)).getCount());
+    }
+
     @Test
     public void testClear() {
         assertEquals(0, metrics.timer(MetricRegistry.name("MetricsRoot", UPPEND_APPEND_STORE, store.getName(), CLEAR_TIMER_METRIC_NAME)).getCount());
@@ -0,0 +1,65 @@
+package com.upserve.uppend.performance;
+
+import com.upserve.uppend.*;
+import com.upserve.uppend.util.SafeDeleting;
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.function.Supplier;
+import java.util.stream.*;
+
+import static com.upserve.uppend.performance.StreamTimerMethods.*;
+
+public class LookupDataKeysTest {
+
+    private static final int numPartitions = 4;
+    private static final int hashCount = 16;
+    private static final int keyCount = 1_000_000;
+
+    private final Path path = Paths.get("build/test/tmp/performance/lookup_data_keys");
+    private AppendOnlyStore appendOnlyStore;
+    private final int repeats = 5;
+
+    private final Supplier<LongStream> parallelStream = () -> appendOnlyStore.keys().mapToLong(String::length).parallel();
+    private final Supplier<LongStream> sequentialStream = () -> appendOnlyStore.keys().mapToLong(String::length).sequential();
+
+    @Before
+    public void loadStore() throws IOException {
+        SafeDeleting.removeTempPath(path);
+
+        appendOnlyStore = new AppendOnlyStoreBuilder()
+                .withPartitionCount(numPartitions)
+                .withLongLookupHashCount(hashCount)
+                .withDir(path).build();
+
+        IntStream.range(0, keyCount)
+                .parallel()
+                .forEach(value -> {
+                    String key = String.format("%08d", value);
+                    appendOnlyStore.append(key, key, TestHelper.genBytes(8));
+                });
+        appendOnlyStore.flush();
+    }
+
+    @After
+    public void cleanup() throws IOException {
+        SafeDeleting.removeTempPath(path);
+    }
+
+    @Test
+    public void sumTest() {
+        for (int i=0; i<repeats; i++) {
+            parallelTime(sum(parallelStream));
+            sequentialTime(sum(sequentialStream));
+        }
+    }
+
+    @Test
+    public void forEachAdderTest() {
+        for (int i=0; i<repeats; i++) {
+            parallelTime(forEachAdder(parallelStream));
+            sequentialTime(forEachAdder(sequentialStream));
+        }
+    }
+}
@@ -3,8 +3,9 @@ package com.upserve.uppend.util;
 import org.junit.*;
 
 import java.io.*;
+import java.util.*;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class VarintTest {
     @Test
@@ -141,6 +142,51 @@ public class VarintTest {
         }
     }
 
+    @Test
+    public void arrayRoundtrip() {
+        long[] vals = {0, 1, 127, 128, 16383, 16384, 72057594037927936L, 9223372036854775807L, -1, Long.MIN_VALUE};
+        byte[] buf = new byte[10];
+        for (long val : vals) {
+            int end = Varint.write(buf, 0, val);
+            assertEquals(Varint.computeSize(val), end);
+            assertArrayEquals(varintBytes(val), Arrays.copyOf(buf, end));
+            assertEquals(val, Varint.readLong(buf, 0));
+        }
+    }
+
+    @Test
+    public void bulkRead() {
+        Random random = new Random(3);
+        long[] vals = new long[1000];
+        byte[] buf = new byte[vals.length * 10];
+        int end = 0;
+        for (int i = 0; i < vals.length; i++) {
+            // Runs of single byte values broken up by larger ones
+            vals[i] = i % 37 == 0 ? random.nextLong() : random.nextInt(i % 3 == 0 ? 100_000 : 128);
+            end = Varint.write(buf, end, vals[i]);
+        }
+        long[] result = new long[vals.length + 2];
+        assertEquals(end, Varint.readLongs(buf, 0, result, 2, vals.length));
+        assertArrayEquals(vals, Arrays.copyOfRange(result, 2, result.length));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedArray() {
+        Varint.readLong(new byte[]{(byte) 0x80, (byte) 0x80}, 0);
+    }
+
+    @Test
+    public void zigZag() {
+        assertEquals(0, Varint.zigZag(0));
+        assertEquals(1, Varint.zigZag(-1));
+        assertEquals(2, Varint.zigZag(1));
+        assertEquals(3, Varint.zigZag(-2));
+        assertEquals(-1, Varint.zigZag(Long.MIN_VALUE));
+        for (long val : new long[]{0, 1, -1, 12345, -12345, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            assertEquals(val, Varint.unZigZag(Varint.zigZag(val)));
+        }
+    }
+
     @Test
     public void malformed() {
         ByteArrayInputStream in = new ByteArrayInputStream(new byte[] {